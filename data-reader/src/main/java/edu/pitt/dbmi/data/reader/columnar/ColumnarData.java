@@ -0,0 +1,54 @@
+/*
+ * Copyright (C) 2018 University of Pittsburgh.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package edu.pitt.dbmi.data.reader.columnar;
+
+import edu.pitt.dbmi.data.reader.Data;
+import edu.pitt.dbmi.data.reader.DiscreteDataColumn;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+
+/**
+ *
+ * Oct 16, 2026 2:11:40 PM
+ *
+ * @author Kevin V. Bui (kvb2@pitt.edu)
+ */
+public interface ColumnarData extends Data {
+
+    public int getNumOfRows();
+
+    public DiscreteDataColumn[] getDataColumns();
+
+    /**
+     * Get the values of a continuous column.
+     *
+     * @param column column index
+     * @return the values, or null if the column is discrete
+     */
+    public DoubleBuffer getContinuousData(int column);
+
+    /**
+     * Get the category indices of a discrete column.
+     *
+     * @param column column index
+     * @return the category indices, or null if the column is continuous
+     */
+    public IntBuffer getDiscreteData(int column);
+
+}
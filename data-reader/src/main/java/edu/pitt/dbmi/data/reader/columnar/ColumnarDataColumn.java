@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2018 University of Pittsburgh.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package edu.pitt.dbmi.data.reader.columnar;
+
+import edu.pitt.dbmi.data.reader.DataColumn;
+import edu.pitt.dbmi.data.reader.DiscreteDataColumn;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A column of a columnar data file. The categories of a discrete column are
+ * stored in the file, so they are fixed.
+ *
+ * Oct 16, 2026 2:14:52 PM
+ *
+ * @author Kevin V. Bui (kvb2@pitt.edu)
+ */
+public class ColumnarDataColumn implements DiscreteDataColumn {
+
+    private final DataColumn dataColumn;
+    private final List<String> categories;
+    private final Map<String, Integer> values;
+
+    public ColumnarDataColumn(DataColumn dataColumn, List<String> categories) {
+        this.dataColumn = dataColumn;
+        this.categories = (categories == null)
+                ? Collections.EMPTY_LIST
+                : Collections.unmodifiableList(categories);
+        this.values = new HashMap<>();
+        for (int i = 0; i < this.categories.size(); i++) {
+            this.values.put(this.categories.get(i), i);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "ColumnarDataColumn{" + "dataColumn=" + dataColumn + ", categories=" + categories + '}';
+    }
+
+    @Override
+    public Integer getEncodeValue(String value) {
+        return values.get(value);
+    }
+
+    @Override
+    public void recategorize() {
+    }
+
+    @Override
+    public void setValue(String value) {
+        if (!values.containsKey(value)) {
+            throw new UnsupportedOperationException("The categories of a columnar data column are fixed.");
+        }
+    }
+
+    @Override
+    public DataColumn getDataColumn() {
+        return dataColumn;
+    }
+
+    @Override
+    public List<String> getCategories() {
+        return categories;
+    }
+
+}
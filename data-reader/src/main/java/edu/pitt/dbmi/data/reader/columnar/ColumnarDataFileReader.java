@@ -0,0 +1,155 @@
+/*
+ * Copyright (C) 2018 University of Pittsburgh.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package edu.pitt.dbmi.data.reader.columnar;
+
+import edu.pitt.dbmi.data.reader.DataReaderException;
+import edu.pitt.dbmi.data.reader.DiscreteDataColumn;
+import edu.pitt.dbmi.data.reader.tabular.TabularDataColumn;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Reads a file in the binary columnar data format described in
+ * {@link ColumnarDataFormat}. The column blocks are memory-mapped and wrapped
+ * as buffers, so no data is copied and opening a file takes about as long as
+ * reading its header.
+ *
+ * Oct 16, 2026 2:26:09 PM
+ *
+ * @author Kevin V. Bui (kvb2@pitt.edu)
+ */
+public class ColumnarDataFileReader implements ColumnarDataReader {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ColumnarDataFileReader.class);
+
+    private final Path dataFile;
+
+    public ColumnarDataFileReader(Path dataFile) {
+        this.dataFile = dataFile;
+    }
+
+    @Override
+    public ColumnarData readInData() throws IOException {
+        try (FileChannel channel = FileChannel.open(dataFile, StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(fileSize, Integer.MAX_VALUE))
+                    .order(ColumnarDataFormat.BYTE_ORDER);
+
+            int numOfRows;
+            byte[] types;
+            DiscreteDataColumn[] dataColumns;
+            try {
+                byte[] magic = new byte[ColumnarDataFormat.MAGIC.length];
+                header.get(magic);
+                if (!Arrays.equals(magic, ColumnarDataFormat.MAGIC)) {
+                    throw error(String.format("%s is not a columnar data file.", dataFile));
+                }
+
+                int version = header.getInt();
+                if (version != ColumnarDataFormat.VERSION) {
+                    throw error(String.format("Unsupported columnar data file version %d.", version));
+                }
+
+                numOfRows = header.getInt();
+                int numOfCols = header.getInt();
+                if (numOfRows < 0 || numOfCols < 0) {
+                    throw error(String.format("Invalid data size of %d rows and %d columns.", numOfRows, numOfCols));
+                }
+
+                types = new byte[numOfCols];
+                dataColumns = new DiscreteDataColumn[numOfCols];
+                for (int i = 0; i < numOfCols; i++) {
+                    byte type = header.get();
+                    String name = readString(header);
+
+                    List<String> categories = null;
+                    if (type == ColumnarDataFormat.DISCRETE) {
+                        int numOfCategories = header.getInt();
+                        categories = new ArrayList<>(numOfCategories);
+                        for (int j = 0; j < numOfCategories; j++) {
+                            categories.add(readString(header));
+                        }
+                    } else if (type != ColumnarDataFormat.CONTINUOUS) {
+                        throw error(String.format("Unknown type %d of column %d.", type, i + 1));
+                    }
+
+                    types[i] = type;
+                    dataColumns[i] = new ColumnarDataColumn(new TabularDataColumn(name, i + 1, false, type == ColumnarDataFormat.DISCRETE), categories);
+                }
+            } catch (BufferUnderflowException | IllegalArgumentException exception) {
+                String errMsg = String.format("Incomplete header in %s.", dataFile);
+                LOGGER.error(errMsg, exception);
+                throw new DataReaderException(errMsg, exception);
+            }
+
+            DoubleBuffer[] continuousData = new DoubleBuffer[types.length];
+            IntBuffer[] discreteData = new IntBuffer[types.length];
+            long position = header.position();
+            for (int i = 0; i < types.length; i++) {
+                position = ColumnarDataFormat.align(position);
+                long blockSize = ColumnarDataFormat.getBlockSize(types[i], numOfRows);
+                if (position + blockSize > fileSize) {
+                    throw error(String.format("Missing data of column %d in %s.", i + 1, dataFile));
+                }
+
+                ByteBuffer block = channel.map(FileChannel.MapMode.READ_ONLY, position, blockSize)
+                        .order(ColumnarDataFormat.BYTE_ORDER);
+                if (types[i] == ColumnarDataFormat.CONTINUOUS) {
+                    continuousData[i] = block.asDoubleBuffer();
+                } else {
+                    discreteData[i] = block.asIntBuffer();
+                }
+
+                position += blockSize;
+            }
+
+            return new MappedColumnarData(numOfRows, dataColumns, continuousData, discreteData);
+        }
+    }
+
+    private String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) {
+            throw new IllegalArgumentException("Negative string length.");
+        }
+
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+
+        return new String(bytes, ColumnarDataFormat.CHARSET);
+    }
+
+    private DataReaderException error(String errMsg) {
+        LOGGER.error(errMsg);
+
+        return new DataReaderException(errMsg);
+    }
+
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2018 University of Pittsburgh.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package edu.pitt.dbmi.data.reader.columnar;
+
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Constants of the binary columnar data format.
+ *
+ * A file starts with a header:
+ * <pre>
+ * magic         4 bytes, "TCDF"
+ * version       int
+ * rows          int
+ * columns       int
+ * per column    byte type (CONTINUOUS or DISCRETE), string name and, for a
+ *               discrete column, int number of categories followed by the
+ *               category strings
+ * </pre>
+ * where a string is an int byte length followed by UTF-8 bytes. The header is
+ * followed by one block per column, in column order, each starting at a
+ * multiple of {@link #ALIGNMENT} bytes. A continuous block holds a double for
+ * each row, with NaN for missing values, and a discrete block holds an int
+ * category index for each row, with -99 for missing values. All numbers are
+ * little-endian.
+ *
+ * Oct 16, 2026 2:05:18 PM
+ *
+ * @author Kevin V. Bui (kvb2@pitt.edu)
+ */
+public final class ColumnarDataFormat {
+
+    public static final byte[] MAGIC = {'T', 'C', 'D', 'F'};
+
+    public static final int VERSION = 1;
+
+    public static final byte CONTINUOUS = 0;
+
+    public static final byte DISCRETE = 1;
+
+    public static final int ALIGNMENT = 8;
+
+    public static final ByteOrder BYTE_ORDER = ByteOrder.LITTLE_ENDIAN;
+
+    public static final Charset CHARSET = StandardCharsets.UTF_8;
+
+    private ColumnarDataFormat() {
+    }
+
+    /**
+     * Round a position up to the start of the next column block.
+     *
+     * @param position
+     * @return the smallest multiple of {@link #ALIGNMENT} not less than
+     * position
+     */
+    public static long align(long position) {
+        return (position + ALIGNMENT - 1) / ALIGNMENT * ALIGNMENT;
+    }
+
+    /**
+     * Get the number of bytes of a column block.
+     *
+     * @param type CONTINUOUS or DISCRETE
+     * @param numOfRows
+     * @return
+     */
+    public static long getBlockSize(byte type, int numOfRows) {
+        return (type == CONTINUOUS) ? 8L * numOfRows : 4L * numOfRows;
+    }
+
+}
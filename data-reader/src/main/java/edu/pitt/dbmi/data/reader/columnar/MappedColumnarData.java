@@ -0,0 +1,70 @@
+/*
+ * Copyright (C) 2018 University of Pittsburgh.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package edu.pitt.dbmi.data.reader.columnar;
+
+import edu.pitt.dbmi.data.reader.DiscreteDataColumn;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+
+/**
+ * Columnar data whose columns are read-only views of a memory-mapped file.
+ *
+ * Oct 16, 2026 2:20:31 PM
+ *
+ * @author Kevin V. Bui (kvb2@pitt.edu)
+ */
+public class MappedColumnarData implements ColumnarData {
+
+    private final int numOfRows;
+    private final DiscreteDataColumn[] dataColumns;
+    private final DoubleBuffer[] continuousData;
+    private final IntBuffer[] discreteData;
+
+    public MappedColumnarData(int numOfRows, DiscreteDataColumn[] dataColumns, DoubleBuffer[] continuousData, IntBuffer[] discreteData) {
+        this.numOfRows = numOfRows;
+        this.dataColumns = dataColumns;
+        this.continuousData = continuousData;
+        this.discreteData = discreteData;
+    }
+
+    @Override
+    public int getNumOfRows() {
+        return numOfRows;
+    }
+
+    @Override
+    public DiscreteDataColumn[] getDataColumns() {
+        return dataColumns;
+    }
+
+    @Override
+    public DoubleBuffer getContinuousData(int column) {
+        DoubleBuffer buffer = continuousData[column];
+
+        return (buffer == null) ? null : buffer.duplicate();
+    }
+
+    @Override
+    public IntBuffer getDiscreteData(int column) {
+        IntBuffer buffer = discreteData[column];
+
+        return (buffer == null) ? null : buffer.duplicate();
+    }
+
+}
@@ -0,0 +1,975 @@
+/*
+ * Copyright (C) 2018 University of Pittsburgh.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package edu.pitt.dbmi.data.reader.tabular;
+
+import edu.pitt.dbmi.data.reader.Data;
+import edu.pitt.dbmi.data.reader.DataColumn;
+import edu.pitt.dbmi.data.reader.DataReaderException;
+import edu.pitt.dbmi.data.reader.DatasetFileReader;
+import edu.pitt.dbmi.data.reader.Delimiter;
+import edu.pitt.dbmi.data.reader.DiscreteDataColumn;
+import edu.pitt.dbmi.data.reader.metadata.Metadata;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A tabular data reader that memory-maps the data file and parses it on
+ * several threads. The file is split into line-aligned chunks and each chunk
+ * is parsed straight into the final primitive arrays at the rows it owns.
+ * Discrete column detection counts the rows of every chunk in the same pass
+ * and that chunk layout is reused by the following read, so a file is scanned
+ * twice at most.
+ *
+ * The results are the same as the ones from {@link TabularDataFileReader},
+ * except that an unbalanced quote character is closed at the end of its line
+ * instead of being carried over to the next line.
+ *
+ * Oct 16, 2026 10:41:07 AM
+ *
+ * @author Kevin V. Bui (kvb2@pitt.edu)
+ */
+public final class MappedTabularDataFileReader extends DatasetFileReader implements TabularDataReader {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(MappedTabularDataFileReader.class);
+
+    /**
+     * Default number of bytes in a chunk.
+     */
+    public static final long DEFAULT_CHUNK_SIZE = 64 * 1024 * 1024;
+
+    private int numOfThreads;
+    private long chunkSize;
+
+    // chunk layout from the last pass over the file
+    private Layout layout;
+
+    public MappedTabularDataFileReader(Path dataFile, Delimiter delimiter) {
+        super(dataFile, delimiter);
+        this.numOfThreads = Runtime.getRuntime().availableProcessors();
+        this.chunkSize = DEFAULT_CHUNK_SIZE;
+    }
+
+    @Override
+    public void determineDiscreteDataColumns(DataColumn[] dataColumns, int numberOfCategories, boolean hasHeader) throws IOException {
+        int numOfColsInDataFile = countNumberOfColumnsInDataFile(dataColumns);
+
+        try (FileChannel channel = FileChannel.open(dataFile, StandardOpenOption.READ)) {
+            Layout chunkLayout = split(channel, hasHeader);
+
+            List<Categorizer> categorizers = new ArrayList<>(chunkLayout.chunks.length);
+            for (Chunk chunk : chunkLayout.chunks) {
+                categorizers.add(new Categorizer(channel, chunkLayout, chunk, dataColumns, numOfColsInDataFile, numberOfCategories));
+            }
+            invokeAll(categorizers);
+
+            chunkLayout.finish();
+            layout = chunkLayout;
+
+            for (int i = 0; i < numOfColsInDataFile; i++) {
+                Set<String> categories = new HashSet<>();
+                for (Categorizer categorizer : categorizers) {
+                    categories.addAll(categorizer.columnCategories[i]);
+                }
+                dataColumns[i].setDiscrete(categories.size() <= numberOfCategories);
+            }
+        }
+    }
+
+    @Override
+    public Data read(DataColumn[] dataColumns, boolean hasHeader) throws IOException {
+        if (dataColumns == null) {
+            return null;
+        }
+
+        int numOfColsInDataFile = countNumberOfColumnsInDataFile(dataColumns);
+        boolean isDiscrete = false;
+        boolean isContinuous = false;
+        for (DataColumn dataColumn : dataColumns) {
+            if (dataColumn.isDiscrete()) {
+                isDiscrete = true;
+            } else {
+                isContinuous = true;
+            }
+        }
+
+        if (!(isDiscrete || isContinuous)) {
+            return null;
+        }
+
+        try (FileChannel channel = FileChannel.open(dataFile, StandardOpenOption.READ)) {
+            Layout chunkLayout = getLayout(channel, hasHeader);
+
+            int numOfCols = dataColumns.length;
+            int numOfRows = chunkLayout.numOfRows;
+            if (isContinuous && !isDiscrete) {
+                double[][] data = new double[numOfRows][numOfCols];
+                List<DataParser> parsers = new ArrayList<>(chunkLayout.chunks.length);
+                for (Chunk chunk : chunkLayout.chunks) {
+                    parsers.add(new DataParser(channel, chunkLayout, chunk, dataColumns, numOfColsInDataFile, data, null, null));
+                }
+                invokeAll(parsers);
+
+                return new ContinuousTabularData(dataColumns, data);
+            }
+
+            DiscreteDataColumn[] discreteDataColumns = new DiscreteDataColumn[numOfCols];
+            double[][] continuousData = new double[numOfCols][];
+            int[][] discreteData = new int[numOfCols][];
+            for (int i = 0; i < numOfCols; i++) {
+                DataColumn dataColumn = dataColumns[i];
+                if (dataColumn.isDiscrete()) {
+                    discreteData[i] = new int[numOfRows];
+                } else {
+                    continuousData[i] = new double[numOfRows];
+                }
+
+                discreteDataColumns[i] = isContinuous
+                        ? new MixedTabularDataColumn(dataColumn)
+                        : new DiscreteTabularDataColumn(dataColumn);
+            }
+
+            List<DataParser> parsers = new ArrayList<>(chunkLayout.chunks.length);
+            for (Chunk chunk : chunkLayout.chunks) {
+                parsers.add(new DataParser(channel, chunkLayout, chunk, dataColumns, numOfColsInDataFile, null, continuousData, discreteData));
+            }
+            invokeAll(parsers);
+
+            // categorize the values seen in all the chunks
+            for (int i = 0; i < numOfCols; i++) {
+                DiscreteDataColumn discreteDataColumn = discreteDataColumns[i];
+                if (discreteData[i] != null) {
+                    for (DataParser parser : parsers) {
+                        parser.codes[i].keySet().forEach(discreteDataColumn::setValue);
+                    }
+                }
+
+                if (discreteDataColumn.getDataColumn().isGenerated()) {
+                    discreteDataColumn.setValue("0");
+                    discreteDataColumn.setValue("1");
+                }
+
+                discreteDataColumn.recategorize();
+            }
+
+            // replace each chunk's own codes with the category encodings
+            List<Callable<Void>> encoders = new ArrayList<>(parsers.size());
+            for (DataParser parser : parsers) {
+                encoders.add(() -> {
+                    parser.encode(discreteDataColumns);
+                    return null;
+                });
+            }
+            invokeAll(encoders);
+
+            return isContinuous
+                    ? new MixedTabularData(numOfRows, discreteDataColumns, continuousData, discreteData)
+                    : new VerticalDiscreteTabularData(discreteDataColumns, discreteData);
+        }
+    }
+
+    @Override
+    public Data read(DataColumn[] dataColumns, boolean hasHeader, Metadata metadata) throws IOException {
+        Data data = read(dataColumns, hasHeader);
+
+        if (metadata != null) {
+            TabularDataFileReader.applyMetadata(data, dataColumns, metadata);
+        }
+
+        return data;
+    }
+
+    /**
+     * Set the number of threads used to parse the file. The default is the
+     * number of available processors.
+     *
+     * @param numOfThreads
+     */
+    public void setNumberOfThreads(int numOfThreads) {
+        if (numOfThreads < 1) {
+            throw new IllegalArgumentException("Number of threads must be at least 1.");
+        }
+
+        this.numOfThreads = numOfThreads;
+    }
+
+    /**
+     * Set the approximate number of bytes in a chunk. A chunk is extended to
+     * the end of the line it stops in.
+     *
+     * @param chunkSize
+     */
+    public void setChunkSize(long chunkSize) {
+        if (chunkSize < 1 || chunkSize > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException(String.format("Chunk size must be between 1 and %d.", Integer.MAX_VALUE));
+        }
+
+        this.chunkSize = chunkSize;
+    }
+
+    private int countNumberOfColumnsInDataFile(DataColumn[] dataColumns) {
+        int numOfColsInDataFile = 0;
+        for (DataColumn dataColumn : dataColumns) {
+            if (!dataColumn.isGenerated()) {
+                numOfColsInDataFile++;
+            }
+        }
+
+        return numOfColsInDataFile;
+    }
+
+    /**
+     * Get the chunk layout of the file with the rows counted, reusing the one
+     * from the last pass if the file and the settings have not changed.
+     */
+    private Layout getLayout(FileChannel channel, boolean hasHeader) throws IOException {
+        if (layout != null
+                && layout.hasHeader == hasHeader
+                && layout.chunkSize == chunkSize
+                && layout.commentMarker.equals(commentMarker)
+                && layout.fileSize == channel.size()
+                && layout.lastModified == Files.getLastModifiedTime(dataFile).toMillis()) {
+            return layout;
+        }
+
+        Layout chunkLayout = split(channel, hasHeader);
+
+        List<Callable<Void>> counters = new ArrayList<>(chunkLayout.chunks.length);
+        for (Chunk chunk : chunkLayout.chunks) {
+            counters.add(() -> {
+                int[] counts = countLines(channel, chunk);
+                chunk.numOfLines = counts[0];
+                chunk.numOfRows = counts[1];
+                return null;
+            });
+        }
+        invokeAll(counters);
+
+        chunkLayout.finish();
+        layout = chunkLayout;
+
+        return chunkLayout;
+    }
+
+    /**
+     * Split the data after the header into line-aligned chunks.
+     */
+    private Layout split(FileChannel channel, boolean hasHeader) throws IOException {
+        Layout chunkLayout = new Layout(hasHeader, chunkSize, commentMarker, channel.size(), Files.getLastModifiedTime(dataFile).toMillis());
+        if (hasHeader) {
+            skipHeader(chunkLayout);
+        }
+
+        long fileSize = chunkLayout.fileSize;
+        List<Chunk> chunks = new ArrayList<>();
+        long start = chunkLayout.dataStart;
+        while (start < fileSize) {
+            long end = (fileSize - start > chunkSize)
+                    ? findNextLine(channel, start + chunkSize, fileSize)
+                    : fileSize;
+            if (end - start > Integer.MAX_VALUE) {
+                String errMsg = String.format("Line starting after byte %d is too long.", start);
+                LOGGER.error(errMsg);
+                throw new DataReaderException(errMsg);
+            }
+
+            byte prevChar = (start > 0) ? readByte(channel, start - 1) : -1;
+            chunks.add(new Chunk(chunks.size(), start, end, prevChar));
+
+            start = end;
+        }
+        chunkLayout.chunks = chunks.toArray(new Chunk[chunks.size()]);
+
+        return chunkLayout;
+    }
+
+    /**
+     * Find the end of the header, the first non-blank and non-commented line.
+     */
+    private void skipHeader(Layout chunkLayout) throws IOException {
+        try (InputStream in = Files.newInputStream(dataFile, StandardOpenOption.READ)) {
+            boolean skip = false;
+            boolean hasSeenNonblankChar = false;
+
+            // comment marker check
+            byte[] comment = commentMarker.getBytes();
+            int cmntIndex = 0;
+            boolean checkForComment = comment.length > 0;
+
+            int lineNum = 1;
+            long position = 0;
+
+            byte prevChar = -1;
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int len;
+            while ((len = in.read(buffer)) != -1 && !Thread.currentThread().isInterrupted()) {
+                for (int i = 0; i < len; i++) {
+                    byte currChar = buffer[i];
+
+                    if (currChar == CARRIAGE_RETURN || currChar == LINE_FEED) {
+                        if (currChar == LINE_FEED && prevChar == CARRIAGE_RETURN) {
+                            prevChar = currChar;
+                            continue;
+                        }
+
+                        lineNum++;
+
+                        if (hasSeenNonblankChar && !skip) {
+                            chunkLayout.dataStart = position + i + 1;
+                            chunkLayout.firstLineNum = lineNum;
+
+                            return;
+                        }
+
+                        // reset states
+                        skip = false;
+                        hasSeenNonblankChar = false;
+                        cmntIndex = 0;
+                        checkForComment = comment.length > 0;
+                    } else if (!skip) {
+                        if (currChar > SPACE_CHAR) {
+                            hasSeenNonblankChar = true;
+                        }
+
+                        // skip blank chars at the begining of the line
+                        if (currChar <= SPACE_CHAR && !hasSeenNonblankChar) {
+                            continue;
+                        }
+
+                        // check for comment marker to skip line
+                        if (checkForComment) {
+                            if (currChar == comment[cmntIndex]) {
+                                cmntIndex++;
+                                if (cmntIndex == comment.length) {
+                                    skip = true;
+                                    prevChar = currChar;
+                                    continue;
+                                }
+                            } else {
+                                checkForComment = false;
+                            }
+                        }
+                    }
+
+                    prevChar = currChar;
+                }
+
+                position += len;
+            }
+
+            // the header is the last line or there is no header
+            chunkLayout.dataStart = position;
+            chunkLayout.firstLineNum = lineNum;
+        }
+    }
+
+    /**
+     * Get the position right after the first line terminator found at or
+     * after the given position. A carriage return and line feed pair is never
+     * split.
+     */
+    private long findNextLine(FileChannel channel, long position, long fileSize) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(8192);
+        while (position < fileSize) {
+            buffer.clear();
+            int len = channel.read(buffer, position);
+            if (len <= 0) {
+                break;
+            }
+
+            for (int i = 0; i < len; i++) {
+                byte currChar = buffer.get(i);
+                if (currChar == LINE_FEED) {
+                    return position + i + 1;
+                } else if (currChar == CARRIAGE_RETURN) {
+                    long next = position + i + 1;
+
+                    return (next < fileSize && readByte(channel, next) == LINE_FEED) ? next + 1 : next;
+                }
+            }
+
+            position += len;
+        }
+
+        return fileSize;
+    }
+
+    private byte readByte(FileChannel channel, long position) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(1);
+        if (channel.read(buffer, position) != 1) {
+            throw new IOException(String.format("Unable to read byte %d of %s.", position, dataFile));
+        }
+
+        return buffer.get(0);
+    }
+
+    private ByteBuffer map(FileChannel channel, Chunk chunk) throws IOException {
+        return channel.map(FileChannel.MapMode.READ_ONLY, chunk.start, chunk.end - chunk.start);
+    }
+
+    /**
+     * Count the number of lines and the number of non-blank, non-commented
+     * lines in a chunk.
+     *
+     * @return the number of lines and the number of data lines
+     */
+    private int[] countLines(FileChannel channel, Chunk chunk) throws IOException {
+        ByteBuffer buffer = map(channel, chunk);
+        int size = buffer.limit();
+
+        boolean skip = false;
+        boolean hasSeenNonblankChar = false;
+
+        // comment marker check
+        byte[] comment = commentMarker.getBytes();
+        int cmntIndex = 0;
+        boolean checkForComment = comment.length > 0;
+
+        int numOfLines = 0;
+        int numOfRows = 0;
+
+        byte prevChar = chunk.prevChar;
+        for (int i = 0; i < size; i++) {
+            byte currChar = buffer.get(i);
+
+            if (currChar == CARRIAGE_RETURN || currChar == LINE_FEED) {
+                if (currChar == LINE_FEED && prevChar == CARRIAGE_RETURN) {
+                    prevChar = currChar;
+                    continue;
+                }
+
+                if (hasSeenNonblankChar && !skip) {
+                    numOfRows++;
+                }
+                numOfLines++;
+
+                // reset states
+                skip = false;
+                hasSeenNonblankChar = false;
+                cmntIndex = 0;
+                checkForComment = comment.length > 0;
+            } else if (!skip) {
+                if (currChar > SPACE_CHAR) {
+                    hasSeenNonblankChar = true;
+                }
+
+                // skip blank chars at the begining of the line
+                if (currChar <= SPACE_CHAR && !hasSeenNonblankChar) {
+                    continue;
+                }
+
+                // check for comment marker to skip line
+                if (checkForComment) {
+                    if (currChar == comment[cmntIndex]) {
+                        cmntIndex++;
+                        if (cmntIndex == comment.length) {
+                            skip = true;
+                            prevChar = currChar;
+                            continue;
+                        }
+                    } else {
+                        checkForComment = false;
+                    }
+                }
+            }
+
+            prevChar = currChar;
+        }
+
+        // case when no newline char at end of file
+        if (hasSeenNonblankChar && !skip) {
+            numOfRows++;
+        }
+
+        return new int[]{numOfLines, numOfRows};
+    }
+
+    /**
+     * Get the line number in the file of a line in a chunk. The lines of the
+     * previous chunks are counted if the layout has not been counted yet.
+     */
+    private int getLineNumber(FileChannel channel, Layout chunkLayout, Chunk chunk, int localLineNum) throws IOException {
+        if (chunkLayout.isCounted) {
+            return chunk.lineNum + localLineNum;
+        }
+
+        int lineNum = chunkLayout.firstLineNum + localLineNum;
+        for (int i = 0; i < chunk.index; i++) {
+            lineNum += countLines(channel, chunkLayout.chunks[i])[0];
+        }
+
+        return lineNum;
+    }
+
+    /**
+     * Run the tasks on the thread pool, stopping the remaining tasks at the
+     * first failure.
+     */
+    private <T> void invokeAll(List<? extends Callable<T>> tasks) throws IOException {
+        if (tasks.isEmpty()) {
+            return;
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(numOfThreads, tasks.size()));
+        try {
+            CompletionService<T> completionService = new ExecutorCompletionService<>(executor);
+            tasks.forEach(completionService::submit);
+            for (int i = tasks.size(); i > 0; i--) {
+                completionService.take().get();
+            }
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Reading of the data file was interrupted.");
+        } catch (ExecutionException exception) {
+            Throwable cause = exception.getCause();
+            if (cause instanceof DataReaderException) {
+                throw (DataReaderException) cause;
+            } else if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            } else {
+                throw new DataReaderException("Unable to read the data file.", cause);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Parses the fields of the selected columns in a chunk.
+     */
+    private abstract class ChunkParser implements Callable<Void> {
+
+        protected final FileChannel channel;
+        protected final Layout chunkLayout;
+        protected final Chunk chunk;
+        protected final DataColumn[] dataColumns;
+        protected final int numOfColsInDataFile;
+
+        // the rest of a line is skipped once this many columns have been read
+        private final int numOfColsToRead;
+
+        private final StringBuilder dataBuilder = new StringBuilder();
+
+        public ChunkParser(FileChannel channel, Layout chunkLayout, Chunk chunk, DataColumn[] dataColumns, int numOfColsInDataFile, int numOfColsToRead) {
+            this.channel = channel;
+            this.chunkLayout = chunkLayout;
+            this.chunk = chunk;
+            this.dataColumns = dataColumns;
+            this.numOfColsInDataFile = numOfColsInDataFile;
+            this.numOfColsToRead = numOfColsToRead;
+        }
+
+        /**
+         * Set the value of a column.
+         *
+         * @param columnIndex index of the column in the data columns
+         * @param row row number in the chunk
+         * @param value the value, null if it is missing
+         * @param colNum column number in the file
+         * @param localLineNum line number in the chunk
+         */
+        protected abstract void setValue(int columnIndex, int row, String value, int colNum, int localLineNum) throws IOException;
+
+        /**
+         * True if the values of the column are still needed.
+         *
+         * @param columnIndex index of the column in the data columns
+         * @return
+         */
+        protected boolean isValueNeeded(int columnIndex) {
+            return true;
+        }
+
+        @Override
+        public Void call() throws IOException {
+            ByteBuffer buffer = map(channel, chunk);
+            int size = buffer.limit();
+
+            boolean skip = false;
+            boolean hasSeenNonblankChar = false;
+            boolean hasQuoteChar = false;
+
+            byte delimChar = delimiter.getByteValue();
+            boolean isWhitespace = (delimiter == Delimiter.WHITESPACE);
+
+            // comment marker check
+            byte[] comment = commentMarker.getBytes();
+            int cmntIndex = 0;
+            boolean checkForComment = comment.length > 0;
+
+            int colNum = 0;
+            int columnIndex = 0;
+
+            int numOfLines = 0;
+            int numOfRows = 0;
+
+            byte prevChar = chunk.prevChar;
+            for (int i = 0; i < size; i++) {
+                byte currChar = buffer.get(i);
+
+                if (currChar == CARRIAGE_RETURN || currChar == LINE_FEED) {
+                    if (currChar == LINE_FEED && prevChar == CARRIAGE_RETURN) {
+                        prevChar = currChar;
+                        continue;
+                    }
+
+                    if (hasSeenNonblankChar && !skip) {
+                        endRecord(columnIndex, colNum, numOfRows, numOfLines);
+                        numOfRows++;
+                    }
+
+                    numOfLines++;
+
+                    if (Thread.currentThread().isInterrupted()) {
+                        return null;
+                    }
+
+                    // clear data
+                    dataBuilder.setLength(0);
+
+                    // reset states
+                    skip = false;
+                    hasSeenNonblankChar = false;
+                    hasQuoteChar = false;
+                    cmntIndex = 0;
+                    checkForComment = comment.length > 0;
+                    columnIndex = 0;
+                    colNum = 0;
+                } else if (!skip) {
+                    if (currChar > SPACE_CHAR) {
+                        hasSeenNonblankChar = true;
+                    }
+
+                    // skip blank chars at the begining of the line
+                    if (currChar <= SPACE_CHAR && !hasSeenNonblankChar) {
+                        continue;
+                    }
+
+                    // check for comment marker to skip line
+                    if (checkForComment) {
+                        if (currChar == comment[cmntIndex]) {
+                            cmntIndex++;
+                            if (cmntIndex == comment.length) {
+                                skip = true;
+                                prevChar = currChar;
+                                continue;
+                            }
+                        } else {
+                            checkForComment = false;
+                        }
+                    }
+
+                    if (currChar == quoteCharacter) {
+                        hasQuoteChar = !hasQuoteChar;
+                    } else if (hasQuoteChar) {
+                        dataBuilder.append((char) currChar);
+                    } else {
+                        boolean isDelimiter = isWhitespace
+                                ? (currChar <= SPACE_CHAR) && (prevChar > SPACE_CHAR)
+                                : (currChar == delimChar);
+                        if (isDelimiter) {
+                            colNum++;
+
+                            if (columnIndex < dataColumns.length && dataColumns[columnIndex].getColumnNumber() == colNum) {
+                                addValue(columnIndex, numOfRows, colNum, numOfLines);
+
+                                columnIndex++;
+                                if (columnIndex == numOfColsToRead) {
+                                    numOfRows++;
+                                    skip = true;
+                                }
+                            }
+
+                            // clear data
+                            dataBuilder.setLength(0);
+                        } else {
+                            dataBuilder.append((char) currChar);
+                        }
+                    }
+                }
+
+                prevChar = currChar;
+            }
+
+            // case when no newline char at end of file
+            if (hasSeenNonblankChar && !skip) {
+                endRecord(columnIndex, colNum, numOfRows, numOfLines);
+                numOfRows++;
+            }
+
+            chunk.numOfLines = numOfLines;
+            chunk.numOfRows = numOfRows;
+
+            return null;
+        }
+
+        private void endRecord(int columnIndex, int colNum, int row, int localLineNum) throws IOException {
+            colNum++;
+
+            if (columnIndex < dataColumns.length && dataColumns[columnIndex].getColumnNumber() == colNum) {
+                addValue(columnIndex, row, colNum, localLineNum);
+                columnIndex++;
+            }
+
+            // ensure we have enough data
+            if (columnIndex < numOfColsInDataFile) {
+                String errMsg = String.format("Insufficient data on line %d.  Extracted %d value(s) but expected %d.",
+                        getLineNumber(channel, chunkLayout, chunk, localLineNum), columnIndex, numOfColsInDataFile);
+                LOGGER.error(errMsg);
+                throw new DataReaderException(errMsg);
+            }
+        }
+
+        private void addValue(int columnIndex, int row, int colNum, int localLineNum) throws IOException {
+            if (isValueNeeded(columnIndex)) {
+                String value = dataBuilder.toString().trim();
+                if (value.isEmpty() || value.equals(missingDataMarker)) {
+                    setValue(columnIndex, row, null, colNum, localLineNum);
+                } else {
+                    setValue(columnIndex, row, value, colNum, localLineNum);
+                }
+            }
+        }
+
+    }
+
+    /**
+     * Collects the distinct values of each column in a chunk, up to one more
+     * than the maximum number of categories.
+     */
+    private final class Categorizer extends ChunkParser {
+
+        private final Set<String>[] columnCategories;
+        private final int maxCategoryToAdd;
+
+        public Categorizer(FileChannel channel, Layout chunkLayout, Chunk chunk, DataColumn[] dataColumns, int numOfColsInDataFile, int numberOfCategories) {
+            super(channel, chunkLayout, chunk, dataColumns, numOfColsInDataFile, numOfColsInDataFile);
+            this.maxCategoryToAdd = numberOfCategories + 1;
+            this.columnCategories = new Set[numOfColsInDataFile];
+            for (int i = 0; i < numOfColsInDataFile; i++) {
+                this.columnCategories[i] = new HashSet<>();
+            }
+        }
+
+        @Override
+        protected boolean isValueNeeded(int columnIndex) {
+            return columnIndex < numOfColsInDataFile && columnCategories[columnIndex].size() < maxCategoryToAdd;
+        }
+
+        @Override
+        protected void setValue(int columnIndex, int row, String value, int colNum, int localLineNum) {
+            if (value != null) {
+                columnCategories[columnIndex].add(value);
+            }
+        }
+
+    }
+
+    /**
+     * Parses the values of a chunk into the data arrays. Continuous values are
+     * stored by row when there are only continuous columns and by column
+     * otherwise. Discrete values are stored as codes local to the chunk until
+     * they are encoded.
+     */
+    private final class DataParser extends ChunkParser {
+
+        private final double[][] data;
+        private final double[][] continuousData;
+        private final int[][] discreteData;
+        private final Map<String, Integer>[] codes;
+        private final String numberErrorFormat;
+
+        public DataParser(FileChannel channel, Layout chunkLayout, Chunk chunk, DataColumn[] dataColumns, int numOfColsInDataFile, double[][] data, double[][] continuousData, int[][] discreteData) {
+            super(channel, chunkLayout, chunk, dataColumns, numOfColsInDataFile, dataColumns.length);
+            this.data = data;
+            this.continuousData = continuousData;
+            this.discreteData = discreteData;
+            this.codes = new Map[dataColumns.length];
+            if (discreteData != null) {
+                for (int i = 0; i < dataColumns.length; i++) {
+                    if (discreteData[i] != null) {
+                        this.codes[i] = new HashMap<>();
+                    }
+                }
+            }
+            this.numberErrorFormat = (data == null)
+                    ? "Invalid number %s on line %d at column %d."
+                    : "Non-continuous number %s on line %d at column %d.";
+        }
+
+        @Override
+        protected void setValue(int columnIndex, int row, String value, int colNum, int localLineNum) throws IOException {
+            row += chunk.row;
+
+            Map<String, Integer> columnCodes = codes[columnIndex];
+            if (columnCodes != null) {
+                if (value == null) {
+                    discreteData[columnIndex][row] = DISCRETE_MISSING_VALUE;
+                } else {
+                    Integer code = columnCodes.get(value);
+                    if (code == null) {
+                        code = columnCodes.size();
+                        columnCodes.put(value, code);
+                    }
+                    discreteData[columnIndex][row] = code;
+                }
+            } else {
+                double number = CONTINUOUS_MISSING_VALUE;
+                if (value != null) {
+                    try {
+                        number = Double.parseDouble(value);
+                    } catch (NumberFormatException exception) {
+                        String errMsg = String.format(numberErrorFormat, value, getLineNumber(channel, chunkLayout, chunk, localLineNum), colNum);
+                        LOGGER.error(errMsg, exception);
+                        throw new DataReaderException(errMsg);
+                    }
+                }
+
+                if (data == null) {
+                    continuousData[columnIndex][row] = number;
+                } else {
+                    data[row][columnIndex] = number;
+                }
+            }
+        }
+
+        /**
+         * Replace the chunk's codes with the encodings of the categorized
+         * columns.
+         */
+        public void encode(DiscreteDataColumn[] discreteDataColumns) {
+            int start = chunk.row;
+            int end = chunk.row + chunk.numOfRows;
+            for (int i = 0; i < codes.length; i++) {
+                Map<String, Integer> columnCodes = codes[i];
+                if (columnCodes == null || columnCodes.isEmpty()) {
+                    continue;
+                }
+
+                DiscreteDataColumn discreteDataColumn = discreteDataColumns[i];
+                int[] encodings = new int[columnCodes.size()];
+                columnCodes.forEach((value, code) -> encodings[code] = discreteDataColumn.getEncodeValue(value));
+
+                int[] values = discreteData[i];
+                for (int row = start; row < end; row++) {
+                    if (values[row] != DISCRETE_MISSING_VALUE) {
+                        values[row] = encodings[values[row]];
+                    }
+                }
+            }
+        }
+
+    }
+
+    /**
+     * A line-aligned range of bytes of the data file.
+     */
+    private static final class Chunk {
+
+        private final int index;
+        private final long start;
+        private final long end;
+
+        // the byte before the chunk, -1 at the start of the file
+        private final byte prevChar;
+
+        private int numOfLines;
+        private int numOfRows;
+
+        // first line number and first row, set once all the chunks are counted
+        private int lineNum;
+        private int row;
+
+        public Chunk(int index, long start, long end, byte prevChar) {
+            this.index = index;
+            this.start = start;
+            this.end = end;
+            this.prevChar = prevChar;
+        }
+
+    }
+
+    /**
+     * The chunks of the data file after the header.
+     */
+    private static final class Layout {
+
+        private final boolean hasHeader;
+        private final long chunkSize;
+        private final String commentMarker;
+        private final long fileSize;
+        private final long lastModified;
+
+        private long dataStart;
+        private int firstLineNum = 1;
+        private Chunk[] chunks;
+
+        private boolean isCounted;
+        private int numOfRows;
+
+        public Layout(boolean hasHeader, long chunkSize, String commentMarker, long fileSize, long lastModified) {
+            this.hasHeader = hasHeader;
+            this.chunkSize = chunkSize;
+            this.commentMarker = commentMarker;
+            this.fileSize = fileSize;
+            this.lastModified = lastModified;
+        }
+
+        /**
+         * Set the first line number and first row of each chunk from the
+         * counts of the chunks before it.
+         */
+        public void finish() {
+            int lineNum = firstLineNum;
+            int row = 0;
+            for (Chunk chunk : chunks) {
+                chunk.lineNum = lineNum;
+                chunk.row = row;
+                lineNum += chunk.numOfLines;
+                row += chunk.numOfRows;
+            }
+
+            numOfRows = row;
+            isCounted = true;
+        }
+
+    }
+
+}
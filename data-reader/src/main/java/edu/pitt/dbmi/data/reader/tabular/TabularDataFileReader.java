@@ -329,105 +329,117 @@ public final class TabularDataFileReader extends DatasetFileReader implements Ta
         Data data = read(dataColumns, hasHeader);
 
         if (metadata != null) {
-            if (data instanceof ContinuousData) {
-                ContinuousData continuousData = (ContinuousData) data;
-                double[][] contData = continuousData.getData();
-                metadata.getInterventionalColumns().forEach(column -> {
-                    ColumnMetadata valCol = column.getValueColumn();
-                    ColumnMetadata statCol = column.getStatusColumn();
-                    int valColNum = valCol.getColumnNumber() - 1;
-                    int statColNum = statCol.getColumnNumber() - 1;
-                    double[] val = contData[valColNum];
-                    double[] stat = contData[statColNum];
-                    for (int i = 0; i < val.length; i++) {
-                        if (Double.isNaN(val[i])) {
-                            val[i] = 0.0;
-                            stat[i] = 0.0;
-                        } else if (dataColumns[statColNum].isGenerated()) {
-                            stat[i] = 1.0;
-                        }
+            applyMetadata(data, dataColumns, metadata);
+        }
+
+        return data;
+    }
+
+    /**
+     * Fill in the interventional value and status columns described by the
+     * metadata.
+     *
+     * @param data
+     * @param dataColumns
+     * @param metadata
+     */
+    static void applyMetadata(Data data, DataColumn[] dataColumns, Metadata metadata) {
+        if (data instanceof ContinuousData) {
+            ContinuousData continuousData = (ContinuousData) data;
+            double[][] contData = continuousData.getData();
+            metadata.getInterventionalColumns().forEach(column -> {
+                ColumnMetadata valCol = column.getValueColumn();
+                ColumnMetadata statCol = column.getStatusColumn();
+                int valColNum = valCol.getColumnNumber() - 1;
+                int statColNum = statCol.getColumnNumber() - 1;
+                double[] val = contData[valColNum];
+                double[] stat = contData[statColNum];
+                for (int i = 0; i < val.length; i++) {
+                    if (Double.isNaN(val[i])) {
+                        val[i] = 0.0;
+                        stat[i] = 0.0;
+                    } else if (dataColumns[statColNum].isGenerated()) {
+                        stat[i] = 1.0;
                     }
-                });
-            } else if (data instanceof DiscreteData) {
-                DiscreteData verticalDiscreteData = (DiscreteData) data;
-                int[][] discreteData = verticalDiscreteData.getData();
-                metadata.getInterventionalColumns().forEach(column -> {
-                    ColumnMetadata valCol = column.getValueColumn();
-                    ColumnMetadata statCol = column.getStatusColumn();
-                    int valColNum = valCol.getColumnNumber() - 1;
-                    int statColNum = statCol.getColumnNumber() - 1;
+                }
+            });
+        } else if (data instanceof DiscreteData) {
+            DiscreteData verticalDiscreteData = (DiscreteData) data;
+            int[][] discreteData = verticalDiscreteData.getData();
+            metadata.getInterventionalColumns().forEach(column -> {
+                ColumnMetadata valCol = column.getValueColumn();
+                ColumnMetadata statCol = column.getStatusColumn();
+                int valColNum = valCol.getColumnNumber() - 1;
+                int statColNum = statCol.getColumnNumber() - 1;
+                int[] val = discreteData[valColNum];
+                int[] stat = discreteData[statColNum];
+                for (int i = 0; i < val.length; i++) {
+                    if (val[i] == DISCRETE_MISSING_VALUE) {
+                        val[i] = 0;
+                        stat[i] = 0;
+                    } else if (dataColumns[statColNum].isGenerated()) {
+                        stat[i] = 1;
+                    }
+                }
+            });
+        } else if (data instanceof MixedTabularData) {
+            MixedTabularData mixedTabularData = (MixedTabularData) data;
+            double[][] continuousData = mixedTabularData.getContinuousData();
+            int[][] discreteData = mixedTabularData.getDiscreteData();
+            metadata.getInterventionalColumns().forEach(column -> {
+                ColumnMetadata valCol = column.getValueColumn();
+                ColumnMetadata statCol = column.getStatusColumn();
+                int valColNum = valCol.getColumnNumber() - 1;
+                int statColNum = statCol.getColumnNumber() - 1;
+                if (valCol.isDiscrete()) {
                     int[] val = discreteData[valColNum];
-                    int[] stat = discreteData[statColNum];
-                    for (int i = 0; i < val.length; i++) {
-                        if (val[i] == DISCRETE_MISSING_VALUE) {
-                            val[i] = 0;
-                            stat[i] = 0;
-                        } else if (dataColumns[statColNum].isGenerated()) {
-                            stat[i] = 1;
+                    if (statCol.isDiscrete()) {
+                        int[] stat = discreteData[statColNum];
+                        for (int i = 0; i < val.length; i++) {
+                            if (val[i] == DISCRETE_MISSING_VALUE) {
+                                val[i] = 0;
+                                stat[i] = 0;
+                            } else if (dataColumns[statColNum].isGenerated()) {
+                                stat[i] = 1;
+                            }
                         }
-                    }
-                });
-            } else if (data instanceof MixedTabularData) {
-                MixedTabularData mixedTabularData = (MixedTabularData) data;
-                double[][] continuousData = mixedTabularData.getContinuousData();
-                int[][] discreteData = mixedTabularData.getDiscreteData();
-                metadata.getInterventionalColumns().forEach(column -> {
-                    ColumnMetadata valCol = column.getValueColumn();
-                    ColumnMetadata statCol = column.getStatusColumn();
-                    int valColNum = valCol.getColumnNumber() - 1;
-                    int statColNum = statCol.getColumnNumber() - 1;
-                    if (valCol.isDiscrete()) {
-                        int[] val = discreteData[valColNum];
-                        if (statCol.isDiscrete()) {
-                            int[] stat = discreteData[statColNum];
-                            for (int i = 0; i < val.length; i++) {
-                                if (val[i] == DISCRETE_MISSING_VALUE) {
-                                    val[i] = 0;
-                                    stat[i] = 0;
-                                } else if (dataColumns[statColNum].isGenerated()) {
-                                    stat[i] = 1;
-                                }
+                    } else {
+                        double[] stat = continuousData[statColNum];
+                        for (int i = 0; i < val.length; i++) {
+                            if (val[i] == DISCRETE_MISSING_VALUE) {
+                                val[i] = 0;
+                                stat[i] = 0.0;
+                            } else if (dataColumns[statColNum].isGenerated()) {
+                                stat[i] = 1.0;
                             }
-                        } else {
-                            double[] stat = continuousData[statColNum];
-                            for (int i = 0; i < val.length; i++) {
-                                if (val[i] == DISCRETE_MISSING_VALUE) {
-                                    val[i] = 0;
-                                    stat[i] = 0.0;
-                                } else if (dataColumns[statColNum].isGenerated()) {
-                                    stat[i] = 1.0;
-                                }
+                        }
+                    }
+                } else {
+                    double[] val = continuousData[valColNum];
+                    if (statCol.isDiscrete()) {
+                        int[] stat = discreteData[statColNum];
+                        for (int i = 0; i < val.length; i++) {
+                            if (Double.isNaN(val[i])) {
+                                val[i] = 0.0;
+                                stat[i] = 0;
+                            } else if (dataColumns[statColNum].isGenerated()) {
+                                stat[i] = 1;
                             }
                         }
                     } else {
-                        double[] val = continuousData[valColNum];
-                        if (statCol.isDiscrete()) {
-                            int[] stat = discreteData[statColNum];
-                            for (int i = 0; i < val.length; i++) {
-                                if (Double.isNaN(val[i])) {
-                                    val[i] = 0.0;
-                                    stat[i] = 0;
-                                } else if (dataColumns[statColNum].isGenerated()) {
-                                    stat[i] = 1;
-                                }
-                            }
-                        } else {
-                            double[] stat = continuousData[statColNum];
-                            for (int i = 0; i < val.length; i++) {
-                                if (Double.isNaN(val[i])) {
-                                    val[i] = 0.0;
-                                    stat[i] = 0.0;
-                                } else if (dataColumns[statColNum].isGenerated()) {
-                                    stat[i] = 1.0;
-                                }
+                        double[] stat = continuousData[statColNum];
+                        for (int i = 0; i < val.length; i++) {
+                            if (Double.isNaN(val[i])) {
+                                val[i] = 0.0;
+                                stat[i] = 0.0;
+                            } else if (dataColumns[statColNum].isGenerated()) {
+                                stat[i] = 1.0;
                             }
                         }
                     }
-                });
-            }
+                }
+            });
         }
-
-        return data;
     }
 
     private Data readInMixedData(DataColumn[] dataColumns, boolean hasHeader, int numOfColsInDataFile) throws IOException {
@@ -0,0 +1,210 @@
+/*
+ * Copyright (C) 2018 University of Pittsburgh.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package edu.pitt.dbmi.data.reader.tabular;
+
+import edu.pitt.dbmi.data.reader.ContinuousData;
+import edu.pitt.dbmi.data.reader.Data;
+import edu.pitt.dbmi.data.reader.DataColumn;
+import edu.pitt.dbmi.data.reader.DataReaderException;
+import edu.pitt.dbmi.data.reader.Delimiter;
+import edu.pitt.dbmi.data.reader.DiscreteData;
+import edu.pitt.dbmi.data.reader.DiscreteDataColumn;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ *
+ * Oct 16, 2026 11:20:45 AM
+ *
+ * @author Kevin V. Bui (kvb2@pitt.edu)
+ */
+public class MappedTabularDataFileReaderTest {
+
+    private final Delimiter delimiter = Delimiter.COMMA;
+    private final char quoteCharacter = '"';
+    private final String missingValueMarker = "*";
+    private final String commentMarker = "//";
+    private final boolean hasHeader = true;
+
+    private final String[] dataTypes = {"continuous", "discrete", "mixed"};
+
+    private final String[] dataFileNames = {
+        "dos_sim_test_data.csv",
+        "mac_sim_test_data.csv",
+        "sim_test_data.csv",
+        "quotes_sim_test_data.csv"
+    };
+
+    public MappedTabularDataFileReaderTest() {
+    }
+
+    /**
+     * Test that small chunks read on several threads give the same data as
+     * the sequential reader.
+     *
+     * @throws IOException
+     */
+    @Test
+    public void testReadInDataSameAsSequentialReader() throws IOException {
+        for (String dataType : dataTypes) {
+            for (String dataFileName : dataFileNames) {
+                Path dataFile = Paths.get(getClass().getResource("/data/tabular/" + dataType + "/" + dataFileName).getFile());
+                for (long chunkSize : new long[]{1, 97, MappedTabularDataFileReader.DEFAULT_CHUNK_SIZE}) {
+                    assertSameData(dataFile, delimiter, hasHeader, chunkSize);
+                }
+            }
+
+            Path dataFile = Paths.get(getClass().getResource("/data/tabular/" + dataType + "/no_header_sim_test_data.csv").getFile());
+            assertSameData(dataFile, delimiter, !hasHeader, 97);
+        }
+    }
+
+    /**
+     * Test blank lines, comments, quotes, missing values and line endings
+     * around the chunk boundaries.
+     *
+     * @throws IOException
+     */
+    @Test
+    public void testReadInDataWithMixedLineEndings() throws IOException {
+        String content = "\r\n// comment\r\n  X1,X2,X3\r\n"
+                + "1.5,a,*\r\n"
+                + "\n"
+                + "// 9,z,9\n"
+                + "2.5 , \"b c\",1\r"
+                + "   \r"
+                + "-3,a,2\n"
+                + "4.25,a,1\n"
+                + "7e-1,b,2\n"
+                + ",b,1";
+        Path dataFile = Files.createTempFile("mapped_test_data", ".csv");
+        try {
+            Files.write(dataFile, content.getBytes(StandardCharsets.UTF_8));
+            for (long chunkSize = 1; chunkSize <= content.length(); chunkSize++) {
+                assertSameData(dataFile, delimiter, hasHeader, chunkSize);
+            }
+        } finally {
+            Files.deleteIfExists(dataFile);
+        }
+    }
+
+    /**
+     * Test that the line number of bad data is reported the same way.
+     *
+     * @throws IOException
+     */
+    @Test
+    public void testReadInBadData() throws IOException {
+        Path dataFile = Paths.get(getClass().getResource("/data/tabular/continuous/bad_data_sim_test_data.csv").getFile());
+
+        String expected = null;
+        try {
+            readInData(new TabularDataFileReader(dataFile, delimiter), dataFile, delimiter, hasHeader);
+        } catch (DataReaderException exception) {
+            expected = exception.getMessage();
+        }
+        Assert.assertNotNull(expected);
+
+        MappedTabularDataFileReader dataReader = new MappedTabularDataFileReader(dataFile, delimiter);
+        dataReader.setChunkSize(64);
+        dataReader.setNumberOfThreads(3);
+
+        String actual = null;
+        try {
+            readInData(dataReader, dataFile, delimiter, hasHeader);
+        } catch (DataReaderException exception) {
+            actual = exception.getMessage();
+        }
+        Assert.assertEquals(expected, actual);
+    }
+
+    private void assertSameData(Path dataFile, Delimiter delimiter, boolean hasHeader, long chunkSize) throws IOException {
+        MappedTabularDataFileReader dataReader = new MappedTabularDataFileReader(dataFile, delimiter);
+        dataReader.setChunkSize(chunkSize);
+        dataReader.setNumberOfThreads(3);
+
+        Data expected = readInData(new TabularDataFileReader(dataFile, delimiter), dataFile, delimiter, hasHeader);
+        Data actual = readInData(dataReader, dataFile, delimiter, hasHeader);
+
+        Assert.assertEquals(expected.getClass(), actual.getClass());
+        if (expected instanceof ContinuousData) {
+            double[][] expectedData = ((ContinuousData) expected).getData();
+            double[][] actualData = ((ContinuousData) actual).getData();
+            Assert.assertEquals(expectedData.length, actualData.length);
+            for (int i = 0; i < expectedData.length; i++) {
+                Assert.assertArrayEquals(expectedData[i], actualData[i], 0);
+            }
+        } else if (expected instanceof DiscreteData) {
+            assertSameCategories(((DiscreteData) expected).getDataColumns(), ((DiscreteData) actual).getDataColumns());
+            int[][] expectedData = ((DiscreteData) expected).getData();
+            int[][] actualData = ((DiscreteData) actual).getData();
+            Assert.assertEquals(expectedData.length, actualData.length);
+            for (int i = 0; i < expectedData.length; i++) {
+                Assert.assertArrayEquals(expectedData[i], actualData[i]);
+            }
+        } else {
+            MixedTabularData expectedData = (MixedTabularData) expected;
+            MixedTabularData actualData = (MixedTabularData) actual;
+            Assert.assertEquals(expectedData.getNumOfRows(), actualData.getNumOfRows());
+            assertSameCategories(expectedData.getDataColumns(), actualData.getDataColumns());
+            for (int i = 0; i < expectedData.getDataColumns().length; i++) {
+                if (expectedData.getContinuousData()[i] == null) {
+                    Assert.assertNull(actualData.getContinuousData()[i]);
+                    Assert.assertArrayEquals(expectedData.getDiscreteData()[i], actualData.getDiscreteData()[i]);
+                } else {
+                    Assert.assertNull(actualData.getDiscreteData()[i]);
+                    Assert.assertArrayEquals(expectedData.getContinuousData()[i], actualData.getContinuousData()[i], 0);
+                }
+            }
+        }
+    }
+
+    private void assertSameCategories(DiscreteDataColumn[] expected, DiscreteDataColumn[] actual) {
+        Assert.assertEquals(expected.length, actual.length);
+        for (int i = 0; i < expected.length; i++) {
+            Assert.assertEquals(expected[i].getCategories(), actual[i].getCategories());
+        }
+    }
+
+    private Data readInData(TabularDataReader dataReader, Path dataFile, Delimiter delimiter, boolean hasHeader) throws IOException {
+        TabularColumnReader columnReader = new TabularColumnFileReader(dataFile, delimiter);
+        columnReader.setCommentMarker(commentMarker);
+        columnReader.setQuoteCharacter(quoteCharacter);
+
+        boolean isDiscrete = false;
+        DataColumn[] dataColumns = hasHeader
+                ? columnReader.readInDataColumns(isDiscrete)
+                : columnReader.generateColumns(new int[0], isDiscrete);
+
+        dataReader.setCommentMarker(commentMarker);
+        dataReader.setQuoteCharacter(quoteCharacter);
+        dataReader.setMissingDataMarker(missingValueMarker);
+
+        int numberOfCategories = 4;
+        dataReader.determineDiscreteDataColumns(dataColumns, numberOfCategories, hasHeader);
+
+        return dataReader.read(dataColumns, hasHeader);
+    }
+
+}
@@ -34,6 +34,9 @@ public class Kci implements IndependenceWrapper {
         kci.setNumBootstraps(parameters.getInt(Params.KCI_NUM_BOOTSTRAPS));
         kci.setThreshold(parameters.getDouble(Params.THRESHOLD_FOR_NUM_EIGENVALUES));
         kci.setEpsilon(parameters.getDouble(Params.KCI_EPSILON));
+        kci.setNumFeatures(parameters.getInt(Params.KCI_NUM_FEATURES));
+        kci.setNumProducts(parameters.getInt(Params.KCI_NUM_PRODUCTS));
+        kci.setRandomFeatures(parameters.getBoolean(Params.KCI_USE_RANDOM_FEATURES));
         return kci;
     }
 
@@ -56,6 +59,9 @@ public class Kci implements IndependenceWrapper {
         params.add(Params.KCI_NUM_BOOTSTRAPS);
         params.add(Params.THRESHOLD_FOR_NUM_EIGENVALUES);
         params.add(Params.KCI_EPSILON);
+        params.add(Params.KCI_NUM_FEATURES);
+        params.add(Params.KCI_NUM_PRODUCTS);
+        params.add(Params.KCI_USE_RANDOM_FEATURES);
         return params;
     }
 }
\ No newline at end of file
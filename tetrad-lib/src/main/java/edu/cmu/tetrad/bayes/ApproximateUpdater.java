@@ -29,20 +29,25 @@ import edu.cmu.tetrad.util.RandomUtil;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.util.Collection;
-import java.util.List;
 
 /**
  * Calculates updated marginals for a Bayes net by simulating data and
- * calculating likelihood ratios. The method is as follows. For P(A | B), enough
- * sample points are simulated from the underlying BayesIm so that 1000 satisfy
- * the condition B. Then the maximum likelihood estimate of condition A is
- * calculated.
+ * calculating likelihood ratios. The method is as follows. For P(A | B),
+ * sample points are simulated from the manipulated BayesIm by likelihood
+ * weighting: variables in B are drawn only from their allowed categories, and
+ * each point is weighted by the probability of B given its parents. Then the
+ * weighted estimate of A is calculated.
  *
  * @author Joseph Ramsey
  */
 public final class ApproximateUpdater implements ManipulatingBayesUpdater {
     static final long serialVersionUID = 23L;
 
+    /**
+     * The number of weighted points simulated for each update.
+     */
+    private static final int NUM_SAMPLES = 100000;
+
     /**
      * The IM which this updater modifies.
      *
@@ -58,11 +63,9 @@ public final class ApproximateUpdater implements ManipulatingBayesUpdater {
     private Evidence evidence;
 
     /**
-     * Counts of data points for each variable value.
-     *
-     * @serial
+     * Marginals for each variable value, from the last update.
      */
-    private int[][] counts;
+    private transient double[][] marginals;
 
     /**
      * This is the source BayesIm after manipulation; all data simulations
@@ -160,18 +163,12 @@ public final class ApproximateUpdater implements ManipulatingBayesUpdater {
         BayesPm manipulatedBayesPm = createUpdatedBayesPm(manipulatedGraph);
         this.manipulatedBayesIm = createdUpdatedBayesIm(manipulatedBayesPm);
 
-        this.counts = null;
+        this.marginals = null;
     }
 
     public double getMarginal(int variable, int value) {
         doUpdate();
-        int sum = 0;
-
-        for (int i = 0; i < manipulatedBayesIm.getNumColumns(variable); i++) {
-            sum += counts[variable][i];
-        }
-
-        return counts[variable][value] / (double) sum;
+        return marginals[variable][value];
     }
 
     public boolean isJointMarginalSupported() {
@@ -221,45 +218,13 @@ public final class ApproximateUpdater implements ManipulatingBayesUpdater {
     //==============================PRIVATE METHODS=======================//
 
     private void doUpdate() {
-        if (counts != null) {
+        if (marginals != null) {
             return;
         }
 
-        this.counts = new int[manipulatedBayesIm.getNumNodes()][];
-
-        for (int i = 0; i < manipulatedBayesIm.getNumNodes(); i++) {
-            this.counts[i] = new int[manipulatedBayesIm.getNumColumns(i)];
-        }
-
-        // Get a tier ordering and convert it to an int array.
-        Graph graph = getManipulatedGraph();
-        List<Node> tierOrdering = graph.getCausalOrdering();
-        int[] tiers = new int[tierOrdering.size()];
-
-        for (int i = 0; i < tierOrdering.size(); i++) {
-            tiers[i] = getManipulatedBayesIm().getNodeIndex(tierOrdering.get(i));
-        }
-
-        int numCounted = 0;
-
-        // Adding an "ur"-counter--if the counting procedure exceeds this many
-        // iterations, just give up. Handles the case there there simply aren't
-        // enough (say, none) legitimate combinations to count, which was
-        // leading to infinite loops. jdramsey 2/7/12
-        int numSurveyed = 0;
-
-        // Construct the sample.
-        while (numCounted < 1000 && ++numSurveyed < 10000) {
-            int[] point = getSinglePoint(getBayesIm(), tiers);
-
-            if (evidence.getProposition().isPermissibleCombination(point)) {
-                numCounted++;
-
-                for (int j = 0; j < getManipulatedBayesIm().getNumNodes(); j++) {
-                    counts[j][point[j]]++;
-                }
-            }
-        }
+        BayesSampler sampler = new BayesSampler(getManipulatedBayesIm());
+        this.marginals = sampler.likelihoodWeighting(evidence.getProposition(),
+                NUM_SAMPLES, RandomUtil.getInstance().nextStream());
     }
 
     private BayesIm createdUpdatedBayesIm(BayesPm updatedBayesPm) {
@@ -289,43 +254,6 @@ public final class ApproximateUpdater implements ManipulatingBayesUpdater {
         return updatedGraph;
     }
 
-    private static int[] getSinglePoint(BayesIm bayesIm, int[] tiers) {
-        int[] point = new int[bayesIm.getNumNodes()];
-        int[] combination = new int[bayesIm.getNumNodes()];
-        RandomUtil randomUtil = RandomUtil.getInstance();
-
-        for (int nodeIndex : tiers) {
-            double cutoff = randomUtil.nextDouble();
-
-            for (int k = 0; k < bayesIm.getNumParents(nodeIndex); k++) {
-                combination[k] = point[bayesIm.getParent(nodeIndex, k)];
-            }
-
-            int rowIndex = bayesIm.getRowIndex(nodeIndex, combination);
-            double sum = 0.0;
-
-            for (int k = 0; k < bayesIm.getNumColumns(nodeIndex); k++) {
-                double probability =
-                        bayesIm.getProbability(nodeIndex, rowIndex, k);
-
-                if (Double.isNaN(probability)) {
-                    throw new IllegalStateException("Some probability " +
-                            "values in the BayesIm are not filled in; " +
-                            "cannot simulate data to do approximate updating.");
-                }
-
-                sum += probability;
-
-                if (sum >= cutoff) {
-                    point[nodeIndex] = k;
-                    break;
-                }
-            }
-        }
-
-        return point;
-    }
-
     /**
      * Adds semantic checks to the default deserialization method. This method
      * must have the standard signature for a readObject method, and the body of
@@ -0,0 +1,377 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.bayes;
+
+import edu.cmu.tetrad.data.BoxDataSet;
+import edu.cmu.tetrad.data.DataSet;
+import edu.cmu.tetrad.data.DataUtils;
+import edu.cmu.tetrad.data.DiscreteVariable;
+import edu.cmu.tetrad.data.VerticalIntDataBox;
+import edu.cmu.tetrad.graph.Graph;
+import edu.cmu.tetrad.graph.Node;
+import edu.cmu.tetrad.util.RandomStream;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Forward samples a Bayes net in blocks of rows, for large samples and for approximate updating. The conditional
+ * probability tables are compiled into flat arrays of cumulative probabilities, one row of the table after another,
+ * and each parent is given a stride so that a row of a table is found by a sum rather than through
+ * <code>getRowIndex</code>. Within a block, each variable is a column, filled in causal order from its parents'
+ * columns. Blocks are simulated in parallel, each drawing from its own substream, so the results depend only on the
+ * stream and not on the number of threads.
+ * <p>
+ * For approximate updating, evidence is handled by likelihood weighting: a variable restricted by the evidence is
+ * drawn only from its allowed categories, and the row is weighted by the probability of those categories given its
+ * parents.
+ *
+ * @author Joseph Ramsey
+ */
+public final class BayesSampler {
+
+    // The number of rows simulated from each substream.
+    private static final int BLOCK_SIZE = 1000;
+
+    private final List<Node> variables;
+
+    // The variables in the order they are sampled.
+    private final int[] order;
+
+    private final int[] numCategories;
+
+    // For each variable, its parents and the amount each parent's value adds to the row index of its table.
+    private final int[][] parents;
+    private final int[][] strides;
+
+    // For each variable, the cumulative probabilities of its table, row by row.
+    private final double[][] cumulative;
+
+    /**
+     * Constructs a sampler for the given model, as it stands. Later changes to the model are not seen by the
+     * sampler.
+     *
+     * @param bayesIm A Bayes IM over a DAG, which must not be a time lag model.
+     */
+    public BayesSampler(BayesIm bayesIm) {
+        Graph graph = bayesIm.getBayesPm().getDag();
+
+        if (graph.isTimeLagModel()) {
+            throw new IllegalArgumentException("Time lag models can't be simulated in blocks.");
+        }
+
+        if (graph.existsDirectedCycle()) {
+            throw new IllegalArgumentException("Graph must be acyclic to simulate from discrete Bayes net.");
+        }
+
+        int numNodes = bayesIm.getNumNodes();
+        BayesPm bayesPm = bayesIm.getBayesPm();
+        this.variables = new ArrayList<>();
+
+        for (int i = 0; i < numNodes; i++) {
+            Node node = bayesIm.getNode(i);
+            List<String> categories = new ArrayList<>();
+
+            for (int k = 0; k < bayesPm.getNumCategories(node); k++) {
+                categories.add(bayesPm.getCategory(node, k));
+            }
+
+            DiscreteVariable var = new DiscreteVariable(node.getName(), categories);
+            var.setNodeType(node.getNodeType());
+            variables.add(var);
+        }
+
+        List<Node> causalOrdering = graph.getCausalOrdering();
+        this.order = new int[causalOrdering.size()];
+
+        for (int i = 0; i < causalOrdering.size(); i++) {
+            order[i] = bayesIm.getNodeIndex(causalOrdering.get(i));
+        }
+
+        this.numCategories = new int[numNodes];
+        this.parents = new int[numNodes][];
+        this.strides = new int[numNodes][];
+        this.cumulative = new double[numNodes][];
+
+        for (int i = 0; i < numNodes; i++) {
+            int numParents = bayesIm.getNumParents(i);
+            numCategories[i] = bayesIm.getNumColumns(i);
+            parents[i] = new int[numParents];
+            strides[i] = new int[numParents];
+
+            // The first parent varies slowest, as in getRowIndex.
+            int stride = 1;
+
+            for (int k = numParents - 1; k >= 0; k--) {
+                parents[i][k] = bayesIm.getParent(i, k);
+                strides[i][k] = stride;
+                stride *= bayesIm.getParentDim(i, k);
+            }
+
+            int numRows = bayesIm.getNumRows(i);
+            int numCols = numCategories[i];
+            cumulative[i] = new double[numRows * numCols];
+
+            for (int row = 0; row < numRows; row++) {
+                double sum = 0.0;
+
+                for (int col = 0; col < numCols; col++) {
+                    double probability = bayesIm.getProbability(i, row, col);
+
+                    if (Double.isNaN(probability)) {
+                        throw new IllegalStateException("Some probability "
+                                + "values in the BayesIm are not filled in; "
+                                + "cannot simulate data.");
+                    }
+
+                    sum += probability;
+                    cumulative[i][row * numCols + col] = sum;
+                }
+            }
+        }
+    }
+
+    /**
+     * Simulates data.
+     *
+     * @param sampleSize      The number of rows to simulate.
+     * @param random          The stream to draw from.
+     * @param latentDataSaved True iff data for latents should be saved.
+     * @return the simulated data set.
+     */
+    public DataSet sample(int sampleSize, RandomStream random, boolean latentDataSaved) {
+        if (sampleSize < 0) {
+            throw new IllegalArgumentException("Sample size must be >= 0: " + sampleSize);
+        }
+
+        final int[][] data = new int[variables.size()][sampleSize];
+        int numBlocks = (sampleSize + BLOCK_SIZE - 1) / BLOCK_SIZE;
+
+        IntStream.range(0, numBlocks).parallel().forEach(block -> {
+            int from = block * BLOCK_SIZE;
+            int rows = Math.min(sampleSize - from, BLOCK_SIZE);
+            RandomStream stream = random.substream(block);
+
+            for (int i : order) {
+                sampleColumn(i, data, from, rows, stream);
+            }
+        });
+
+        DataSet fullDataSet = new BoxDataSet(new VerticalIntDataBox(data), new ArrayList<>(variables));
+
+        if (latentDataSaved) {
+            return fullDataSet;
+        } else {
+            return DataUtils.restrictToMeasured(fullDataSet);
+        }
+    }
+
+    /**
+     * Estimates the marginals of every variable given a proposition, by likelihood weighting.
+     *
+     * @param proposition The evidence, over the variables of the model.
+     * @param sampleSize  The number of weighted rows to simulate.
+     * @param random      The stream to draw from.
+     * @return the estimated marginals, indexed by variable and then category. If the proposition has probability
+     * zero in every row drawn, the marginals are NaN.
+     */
+    public double[][] likelihoodWeighting(Proposition proposition, int sampleSize, RandomStream random) {
+        if (!getVariableNames().equals(proposition.getVariableSource().getVariableNames())) {
+            throw new IllegalArgumentException("The variables for the given "
+                    + "proposition must be those of the Bayes IM being sampled.");
+        }
+
+        if (sampleSize < 0) {
+            throw new IllegalArgumentException("Sample size must be >= 0: " + sampleSize);
+        }
+
+        int numNodes = variables.size();
+        final boolean[][] allowed = new boolean[numNodes][];
+
+        for (int i = 0; i < numNodes; i++) {
+            if (proposition.isConditioned(i)) {
+                allowed[i] = new boolean[numCategories[i]];
+
+                for (int k = 0; k < numCategories[i]; k++) {
+                    allowed[i][k] = proposition.isAllowed(i, k);
+                }
+            }
+        }
+
+        int numBlocks = (sampleSize + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        final double[][][] blockSums = new double[numBlocks][][];
+
+        IntStream.range(0, numBlocks).parallel().forEach(block -> {
+            int rows = Math.min(sampleSize - block * BLOCK_SIZE, BLOCK_SIZE);
+            RandomStream stream = random.substream(block);
+            int[][] data = new int[numNodes][rows];
+            double[] weights = new double[rows];
+            Arrays.fill(weights, 1.0);
+
+            for (int i : order) {
+                if (allowed[i] == null) {
+                    sampleColumn(i, data, 0, rows, stream);
+                } else {
+                    sampleColumn(i, allowed[i], data, weights, rows, stream);
+                }
+            }
+
+            double[][] sums = new double[numNodes][];
+
+            for (int i = 0; i < numNodes; i++) {
+                sums[i] = new double[numCategories[i]];
+
+                for (int r = 0; r < rows; r++) {
+                    sums[i][data[i][r]] += weights[r];
+                }
+            }
+
+            blockSums[block] = sums;
+        });
+
+        // Blocks are added in order so that the result doesn't depend on the number of threads.
+        double[][] marginals = new double[numNodes][];
+
+        for (int i = 0; i < numNodes; i++) {
+            marginals[i] = new double[numCategories[i]];
+        }
+
+        for (double[][] sums : blockSums) {
+            for (int i = 0; i < numNodes; i++) {
+                for (int k = 0; k < numCategories[i]; k++) {
+                    marginals[i][k] += sums[i][k];
+                }
+            }
+        }
+
+        for (double[] marginal : marginals) {
+            double total = 0.0;
+
+            for (double weight : marginal) {
+                total += weight;
+            }
+
+            for (int k = 0; k < marginal.length; k++) {
+                marginal[k] /= total;
+            }
+        }
+
+        return marginals;
+    }
+
+    /**
+     * @return the discrete variables of the model, in the order of its nodes.
+     */
+    public List<Node> getVariables() {
+        return new ArrayList<>(variables);
+    }
+
+    //==============================PRIVATE METHODS=======================//
+
+    private List<String> getVariableNames() {
+        List<String> names = new ArrayList<>();
+
+        for (Node variable : variables) {
+            names.add(variable.getName());
+        }
+
+        return names;
+    }
+
+    // Fills rows [from, from + rows) of variable i's column from its parents' columns.
+    private void sampleColumn(int i, int[][] data, int from, int rows, RandomStream random) {
+        int numCols = numCategories[i];
+        double[] cum = cumulative[i];
+        int[] column = data[i];
+
+        for (int r = from; r < from + rows; r++) {
+            int offset = rowIndex(i, data, r) * numCols;
+            double cutoff = random.nextDouble();
+            int k = 0;
+
+            // Rounding can leave the last cumulative probability just under the cutoff.
+            while (k < numCols - 1 && cum[offset + k] < cutoff) {
+                k++;
+            }
+
+            column[r] = k;
+        }
+    }
+
+    // Fills the first rows of variable i's column with allowed categories only, multiplying each row's weight by
+    // the probability of the allowed categories given the parents.
+    private void sampleColumn(int i, boolean[] allowed, int[][] data, double[] weights, int rows,
+                              RandomStream random) {
+        int numCols = numCategories[i];
+        double[] cum = cumulative[i];
+        int[] column = data[i];
+        int firstAllowed = 0;
+
+        while (firstAllowed < numCols - 1 && !allowed[firstAllowed]) {
+            firstAllowed++;
+        }
+
+        for (int r = 0; r < rows; r++) {
+            int offset = rowIndex(i, data, r) * numCols;
+            double mass = 0.0;
+
+            for (int k = 0; k < numCols; k++) {
+                if (allowed[k]) mass += probability(cum, offset, k);
+            }
+
+            weights[r] *= mass;
+            column[r] = firstAllowed;
+
+            if (mass == 0.0) {
+                continue;
+            }
+
+            double cutoff = random.nextDouble() * mass;
+            double sum = 0.0;
+
+            for (int k = 0; k < numCols; k++) {
+                if (!allowed[k]) continue;
+                column[r] = k;
+                sum += probability(cum, offset, k);
+                if (sum >= cutoff) break;
+            }
+        }
+    }
+
+    private int rowIndex(int i, int[][] data, int r) {
+        int[] _parents = parents[i];
+        int[] _strides = strides[i];
+        int rowIndex = 0;
+
+        for (int k = 0; k < _parents.length; k++) {
+            rowIndex += _strides[k] * data[_parents[k]][r];
+        }
+
+        return rowIndex;
+    }
+
+    private static double probability(double[] cum, int offset, int k) {
+        return k == 0 ? cum[offset] : cum[offset + k] - cum[offset + k - 1];
+    }
+}
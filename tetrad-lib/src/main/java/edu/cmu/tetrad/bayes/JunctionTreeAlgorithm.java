@@ -26,15 +26,18 @@ import edu.cmu.tetrad.graph.Endpoint;
 import edu.cmu.tetrad.graph.Graph;
 import edu.cmu.tetrad.graph.Node;
 import edu.cmu.tetrad.util.TetradSerializable;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 /**
  * Junction Tree Algorithm.
@@ -51,6 +54,18 @@ public class JunctionTreeAlgorithm implements TetradSerializable {
 
     static final long serialVersionUID = 23L;
 
+    /**
+     * The default number of evidence patterns whose calibrations are kept for
+     * batch queries.
+     */
+    public static final int DEFAULT_CACHE_SIZE = 1000;
+
+    /**
+     * Subtrees whose tables together have at least this many entries pass
+     * messages to and from their children in parallel.
+     */
+    private static final long PARALLEL_THRESHOLD = 1 << 14;
+
     private final TreeNode root;
 
     private final Node[] graphNodes;
@@ -61,6 +76,19 @@ public class JunctionTreeAlgorithm implements TetradSerializable {
     private final BayesIm bayesIm;
     private final Map<Node, TreeNode> treeNodes;
 
+    private int cacheSize = DEFAULT_CACHE_SIZE;
+
+    /**
+     * The junction tree in flat tables for batch queries, built on first use.
+     */
+    private transient CompiledTree compiledTree;
+
+    /**
+     * Calibrations for batch queries, least recently used first, keyed by
+     * evidence.
+     */
+    private transient Map<EvidenceKey, Calibration> calibrations;
+
     public JunctionTreeAlgorithm(Graph graph, DataModel dataModel) {
         this.bayesPm = createBayesPm(dataModel, graph);
         this.bayesIm = createBayesIm(dataModel, this.bayesPm);
@@ -520,6 +548,91 @@ public class JunctionTreeAlgorithm implements TetradSerializable {
         return margins[iNode][value];
     }
 
+    /**
+     * Get the marginal probabilities of all nodes given each of a batch of
+     * evidence records. Records with the same evidence share one calibration
+     * of the junction tree, and calibrations are cached across calls.
+     *
+     * @param evidence evidence[r][i] is the value of node i observed in record
+     * r, or -1 if node i is not observed
+     * @return marginals[r][i] is the distribution of node i given record r.
+     * The probabilities are NaN if the evidence has probability zero.
+     */
+    public double[][][] getMarginalProbabilities(int[][] evidence) {
+        Calibration[] calibrations = calibrate(evidence);
+
+        double[][][] marginals = new double[evidence.length][][];
+        for (int r = 0; r < evidence.length; r++) {
+            double[][] cached = calibrations[r].marginals;
+            marginals[r] = new double[cached.length][];
+
+            for (int i = 0; i < cached.length; i++) {
+                marginals[r][i] = cached[i].clone();
+            }
+        }
+
+        return marginals;
+    }
+
+    /**
+     * Get the marginal probabilities of a node given each of a batch of
+     * evidence records.
+     *
+     * @param iNode the node
+     * @param evidence evidence[r][i] is the value of node i observed in record
+     * r, or -1 if node i is not observed
+     * @return marginals[r] is the distribution of the node given record r
+     */
+    public double[][] getMarginalProbabilities(int iNode, int[][] evidence) {
+        validate(iNode);
+
+        Calibration[] calibrations = calibrate(evidence);
+
+        double[][] marginals = new double[evidence.length][];
+        for (int r = 0; r < evidence.length; r++) {
+            marginals[r] = calibrations[r].marginals[iNode].clone();
+        }
+
+        return marginals;
+    }
+
+    /**
+     * Get the probability of each of a batch of evidence records.
+     *
+     * @param evidence evidence[r][i] is the value of node i observed in record
+     * r, or -1 if node i is not observed
+     * @return the probability of each record
+     */
+    public double[] getEvidenceProbabilities(int[][] evidence) {
+        Calibration[] calibrations = calibrate(evidence);
+
+        double[] probabilities = new double[evidence.length];
+        for (int r = 0; r < evidence.length; r++) {
+            probabilities[r] = calibrations[r].probability;
+        }
+
+        return probabilities;
+    }
+
+    public int getCacheSize() {
+        return cacheSize;
+    }
+
+    /**
+     * Set the number of evidence patterns whose calibrations are kept for
+     * batch queries.
+     *
+     * @param cacheSize the number of calibrations kept, 0 to keep none
+     */
+    public void setCacheSize(int cacheSize) {
+        if (cacheSize < 0) {
+            throw new IllegalArgumentException("Cache size cannot be negative.");
+        }
+
+        this.cacheSize = cacheSize;
+        this.calibrations = null;
+    }
+
     public List<Node> getNodes() {
         return Collections.unmodifiableList(Arrays.asList(graphNodes));
     }
@@ -533,6 +646,401 @@ public class JunctionTreeAlgorithm implements TetradSerializable {
         return root.toString().trim();
     }
 
+    /**
+     * Calibrate the junction tree once for each distinct evidence in the
+     * batch, reusing cached calibrations.
+     */
+    private Calibration[] calibrate(int[][] evidence) {
+        if (evidence == null) {
+            throw new IllegalArgumentException("Evidence cannot be null.");
+        }
+
+        CompiledTree tree;
+        Map<EvidenceKey, Calibration> cache;
+        synchronized (this) {
+            if (compiledTree == null) {
+                compiledTree = new CompiledTree();
+            }
+            if (calibrations == null) {
+                calibrations = new LinkedHashMap<>(16, 0.75f, true);
+            }
+
+            tree = compiledTree;
+            cache = calibrations;
+        }
+
+        EvidenceKey[] keys = new EvidenceKey[evidence.length];
+        Map<EvidenceKey, Calibration> found = new HashMap<>();
+        for (int r = 0; r < evidence.length; r++) {
+            validateEvidence(evidence[r]);
+            keys[r] = new EvidenceKey(evidence[r]);
+            found.put(keys[r], null);
+        }
+
+        synchronized (cache) {
+            for (EvidenceKey key : found.keySet()) {
+                found.put(key, cache.get(key));
+            }
+        }
+
+        List<EvidenceKey> missing = new ArrayList<>();
+        found.forEach((key, calibration) -> {
+            if (calibration == null) {
+                missing.add(key);
+            }
+        });
+
+        Calibration[] calibrated = new Calibration[missing.size()];
+        IntStream.range(0, missing.size()).parallel()
+                .forEach(i -> calibrated[i] = tree.calibrate(missing.get(i).values));
+
+        synchronized (cache) {
+            for (int i = 0; i < calibrated.length; i++) {
+                found.put(missing.get(i), calibrated[i]);
+
+                if (cacheSize > 0) {
+                    cache.put(missing.get(i), calibrated[i]);
+                }
+            }
+
+            while (cache.size() > cacheSize) {
+                cache.remove(cache.keySet().iterator().next());
+            }
+        }
+
+        Calibration[] result = new Calibration[evidence.length];
+        for (int r = 0; r < evidence.length; r++) {
+            result[r] = found.get(keys[r]);
+        }
+
+        return result;
+    }
+
+    private void validateEvidence(int[] values) {
+        if (values == null || values.length != graphNodes.length) {
+            throw new IllegalArgumentException("EvidenceKey must have a value for each of the nodes.");
+        }
+
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] != -1) {
+                validate(i, values[i]);
+            }
+        }
+    }
+
+    /**
+     * Observed values of all nodes, -1 for a node not observed.
+     */
+    private static final class EvidenceKey {
+
+        private final int[] values;
+        private final int hashCode;
+
+        public EvidenceKey(int[] values) {
+            this.values = values.clone();
+            this.hashCode = Arrays.hashCode(values);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof EvidenceKey && Arrays.equals(values, ((EvidenceKey) o).values);
+        }
+
+    }
+
+    /**
+     * The marginal probabilities of all nodes given some evidence, and the
+     * probability of the evidence.
+     */
+    private static final class Calibration {
+
+        private final double[][] marginals;
+        private final double probability;
+
+        public Calibration(double[][] marginals, double probability) {
+            this.marginals = marginals;
+            this.probability = probability;
+        }
+
+    }
+
+    /**
+     * The junction tree with cliques numbered so that parents come before
+     * their children, and with each clique's table flattened into a double[]
+     * in the same layout as TreeNode. The index maps between cliques and
+     * separators are worked out once here, so calibrating only multiplies and
+     * adds along them.
+     */
+    private final class CompiledTree {
+
+        private final int[] roots;
+        private final int[] parents;
+        private final int[][] children;
+
+        /**
+         * The initial potentials of each clique.
+         */
+        private final double[][] potentials;
+
+        /**
+         * For each clique, the separator entry with its parent for each of its
+         * entries.
+         */
+        private final int[][] toParentSeparator;
+
+        /**
+         * For each clique, the entry of the separator with its parent for each
+         * of the parent's entries.
+         */
+        private final int[][] fromParentSeparator;
+
+        private final int[] separatorSizes;
+
+        /**
+         * The number of table entries in the subtree of each clique.
+         */
+        private final long[] work;
+
+        /**
+         * For each node, a clique containing it, and the stride and number of
+         * categories of the node in the clique's table.
+         */
+        private final int[] nodeCliques;
+        private final int[] nodeStrides;
+        private final int[] nodeCategories;
+
+        public CompiledTree() {
+            // number the cliques breadth first from the roots
+            List<TreeNode> order = new ArrayList<>();
+            for (Node node : maxCardOrdering) {
+                TreeNode treeNode = treeNodes.get(node);
+                if (treeNode != null && treeNode.parentSeparator == null) {
+                    order.add(treeNode);
+                }
+            }
+
+            int numRoots = order.size();
+            for (int i = 0; i < order.size(); i++) {
+                order.addAll(order.get(i).children);
+            }
+
+            int numCliques = order.size();
+            Map<TreeNode, Integer> indices = new HashMap<>();
+            for (int i = 0; i < numCliques; i++) {
+                indices.put(order.get(i), i);
+            }
+
+            this.roots = IntStream.range(0, numRoots).toArray();
+            this.parents = new int[numCliques];
+            this.children = new int[numCliques][];
+            this.potentials = new double[numCliques][];
+            this.toParentSeparator = new int[numCliques][];
+            this.fromParentSeparator = new int[numCliques][];
+            this.separatorSizes = new int[numCliques];
+            this.work = new long[numCliques];
+
+            for (int c = 0; c < numCliques; c++) {
+                TreeNode treeNode = order.get(c);
+
+                potentials[c] = treeNode.potentials.clone();
+                children[c] = treeNode.children.stream().mapToInt(indices::get).toArray();
+
+                TreeSeparator separator = treeNode.parentSeparator;
+                if (separator == null) {
+                    parents[c] = -1;
+                } else {
+                    parents[c] = indices.get(separator.parentNode);
+                    separatorSizes[c] = separator.cardinality;
+                    toParentSeparator[c] = getSeparatorIndices(treeNode.nodes, separator.nodes);
+                    fromParentSeparator[c] = getSeparatorIndices(separator.parentNode.nodes, separator.nodes);
+                }
+            }
+
+            for (int c = numCliques - 1; c >= 0; c--) {
+                work[c] += potentials[c].length;
+                if (parents[c] != -1) {
+                    work[parents[c]] += work[c];
+                }
+            }
+
+            int numNodes = graphNodes.length;
+            this.nodeCliques = new int[numNodes];
+            this.nodeStrides = new int[numNodes];
+            this.nodeCategories = new int[numNodes];
+
+            for (int i = 0; i < numNodes; i++) {
+                Node node = bayesIm.getNode(i);
+                TreeNode treeNode = getCliqueContainsNode(node);
+                if (treeNode == null) {
+                    String msg = String.format("Node %s is not in junction tree.", node.getName());
+                    throw new IllegalArgumentException(msg);
+                }
+
+                int position = treeNode.getNodeIndex(node);
+                nodeCliques[i] = indices.get(treeNode);
+                nodeStrides[i] = getStrides(treeNode.nodes)[position];
+                nodeCategories[i] = bayesPm.getNumCategories(node);
+            }
+        }
+
+        private int[] getStrides(Node[] nodes) {
+            int[] strides = new int[nodes.length];
+
+            int stride = 1;
+            for (int i = nodes.length - 1; i >= 0; i--) {
+                strides[i] = stride;
+                stride *= bayesPm.getNumCategories(nodes[i]);
+            }
+
+            return strides;
+        }
+
+        /**
+         * For each entry of the table over the given nodes, the entry of the
+         * table over the separator nodes, a subset of them, with the same
+         * values.
+         */
+        private int[] getSeparatorIndices(Node[] nodes, Node[] separatorNodes) {
+            int[] strides = getStrides(nodes);
+            int[] separatorStrides = getStrides(separatorNodes);
+
+            int size = 1;
+            for (Node node : nodes) {
+                size *= bayesPm.getNumCategories(node);
+            }
+
+            int[] indices = new int[size];
+            for (int j = 0; j < separatorNodes.length; j++) {
+                int i = Arrays.asList(nodes).indexOf(separatorNodes[j]);
+                int numCategories = bayesPm.getNumCategories(nodes[i]);
+
+                for (int k = 0; k < size; k++) {
+                    indices[k] += ((k / strides[i]) % numCategories) * separatorStrides[j];
+                }
+            }
+
+            return indices;
+        }
+
+        public Calibration calibrate(int[] evidence) {
+            double[][] prob = new double[potentials.length][];
+            for (int c = 0; c < potentials.length; c++) {
+                prob[c] = potentials[c].clone();
+            }
+
+            // zero out the entries that disagree with the evidence
+            for (int i = 0; i < evidence.length; i++) {
+                if (evidence[i] != -1) {
+                    double[] table = prob[nodeCliques[i]];
+                    for (int k = 0; k < table.length; k++) {
+                        if ((k / nodeStrides[i]) % nodeCategories[i] != evidence[i]) {
+                            table[k] = 0;
+                        }
+                    }
+                }
+            }
+
+            double[][] messages = new double[potentials.length][];
+
+            double probability = 1;
+            for (int root : roots) {
+                collect(root, prob, messages);
+                probability *= Arrays.stream(prob[root]).sum();
+            }
+
+            for (int root : roots) {
+                distribute(root, prob, messages);
+            }
+
+            double[][] marginals = new double[evidence.length][];
+            for (int i = 0; i < evidence.length; i++) {
+                double[] table = prob[nodeCliques[i]];
+                double[] marginal = new double[nodeCategories[i]];
+                for (int k = 0; k < table.length; k++) {
+                    marginal[(k / nodeStrides[i]) % nodeCategories[i]] += table[k];
+                }
+
+                normalize(marginal);
+                marginals[i] = marginal;
+            }
+
+            return new Calibration(marginals, probability);
+        }
+
+        /**
+         * Pass messages up from the leaves of the subtree to the clique, and
+         * from the clique to the separator with its parent.
+         */
+        private void collect(int c, double[][] prob, double[][] messages) {
+            if (work[c] >= PARALLEL_THRESHOLD && children[c].length > 1) {
+                Arrays.stream(children[c]).parallel().forEach(child -> collect(child, prob, messages));
+            } else {
+                for (int child : children[c]) {
+                    collect(child, prob, messages);
+                }
+            }
+
+            double[] table = prob[c];
+            for (int child : children[c]) {
+                double[] message = messages[child];
+                int[] indices = fromParentSeparator[child];
+                for (int k = 0; k < table.length; k++) {
+                    table[k] *= message[indices[k]];
+                }
+            }
+
+            if (parents[c] != -1) {
+                messages[c] = marginalize(table, toParentSeparator[c], separatorSizes[c]);
+            }
+        }
+
+        /**
+         * Pass messages down from the clique to the leaves of the subtree.
+         */
+        private void distribute(int c, double[][] prob, double[][] messages) {
+            if (work[c] >= PARALLEL_THRESHOLD && children[c].length > 1) {
+                Arrays.stream(children[c]).parallel().forEach(child -> distribute(c, child, prob, messages));
+            } else {
+                for (int child : children[c]) {
+                    distribute(c, child, prob, messages);
+                }
+            }
+        }
+
+        private void distribute(int c, int child, double[][] prob, double[][] messages) {
+            double[] message = marginalize(prob[c], fromParentSeparator[child], separatorSizes[child]);
+            double[] previous = messages[child];
+            int[] indices = toParentSeparator[child];
+
+            double[] table = prob[child];
+            for (int k = 0; k < table.length; k++) {
+                int s = indices[k];
+                if (previous[s] > 0) {
+                    table[k] *= message[s] / previous[s];
+                } else {
+                    table[k] = 0;
+                }
+            }
+
+            distribute(child, prob, messages);
+        }
+
+        private double[] marginalize(double[] table, int[] indices, int size) {
+            double[] marginal = new double[size];
+            for (int k = 0; k < table.length; k++) {
+                marginal[indices[k]] += table[k];
+            }
+
+            return marginal;
+        }
+
+    }
+
     private class TreeSeparator implements TetradSerializable {
 
         static final long serialVersionUID = 23L;
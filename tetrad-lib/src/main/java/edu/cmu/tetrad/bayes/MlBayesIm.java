@@ -25,6 +25,7 @@ import edu.cmu.tetrad.graph.Graph;
 import edu.cmu.tetrad.graph.Node;
 import edu.cmu.tetrad.graph.TimeLagGraph;
 import edu.cmu.tetrad.util.NumberFormatUtil;
+import edu.cmu.tetrad.util.RandomStream;
 import edu.cmu.tetrad.util.RandomUtil;
 import java.io.IOException;
 import java.io.ObjectInputStream;
@@ -1057,16 +1058,36 @@ public final class MlBayesIm implements BayesIm {
      * @param sampleSize the sample size.
      * @param seed the random number generator seed allows you recreate the
      * simulated data by passing in the same seed (so you don't have to store
-     * the sample data
+     * the sample data); the data depend only on this, not on RandomUtil or the
+     * number of threads
      * @return the simulated sample as a DataSet.
      */
     public DataSet simulateData(int sampleSize, long seed, boolean latentDataSaved) {
-        RandomUtil random = RandomUtil.getInstance();
-        long _seed = random.getSeed();
-        random.setSeed(seed);
-        DataSet dataSet = simulateData(sampleSize, latentDataSaved);
-        random.revertSeed(_seed);
-        return dataSet;
+        if (getBayesPm().getDag().isTimeLagModel()) {
+            RandomUtil random = RandomUtil.getInstance();
+            long _seed = random.getSeed();
+            random.setSeed(seed);
+            DataSet dataSet = simulateData(sampleSize, latentDataSaved);
+            random.revertSeed(_seed);
+            return dataSet;
+        }
+
+        return simulateData(sampleSize, new RandomStream(seed), latentDataSaved);
+    }
+
+    /**
+     * Simulates a sample with the given sample size, drawing from the given
+     * stream rather than from RandomUtil. Rows are simulated in parallel
+     * blocks by a BayesSampler, so the data depend only on the stream and not
+     * on the number of threads. Suited to very large samples.
+     *
+     * @param sampleSize the sample size.
+     * @param random the stream to draw from.
+     * @return the simulated sample as a DataSet.
+     * @see BayesSampler
+     */
+    public DataSet simulateData(int sampleSize, RandomStream random, boolean latentDataSaved) {
+        return new BayesSampler(this).sample(sampleSize, random, latentDataSaved);
     }
 
     public DataSet simulateData(DataSet dataSet, long seed, boolean latentDataSaved) {
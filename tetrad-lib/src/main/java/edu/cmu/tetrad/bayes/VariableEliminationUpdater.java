@@ -0,0 +1,791 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.bayes;
+
+import edu.cmu.tetrad.graph.Dag;
+import edu.cmu.tetrad.graph.Graph;
+import edu.cmu.tetrad.graph.Node;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.util.*;
+
+/**
+ * Performs updating operations on a BayesIm by variable elimination. The
+ * conditional probability tables of the Bayes net are held as flat factors,
+ * and the variables not asked about are summed out of them one at a time in
+ * an order chosen by the min-fill heuristic. Each step multiplies the factors
+ * mentioning the variable and sums it out in one pass, without forming their
+ * product. Variables that are neither asked about, in evidence, nor ancestors
+ * of these are dropped first, since they sum out to one.
+ * <p>
+ * Unlike RowSummingExactUpdater, the time taken depends on the size of the
+ * largest factor formed rather than on the number of variables not in
+ * evidence, so sparse networks with hundreds of nodes can be updated.
+ * Elimination orders are worked out once for each pattern of variables in
+ * evidence, manipulated, and asked about, and reused.
+ *
+ * @author Joseph Ramsey
+ */
+public final class VariableEliminationUpdater implements ManipulatingBayesUpdater {
+    static final long serialVersionUID = 23L;
+
+    /**
+     * The BayesIm which this updater modifies.
+     *
+     * @serial Cannot be null.
+     */
+    private BayesIm bayesIm;
+
+    /**
+     * Stores evidence for all variables.
+     *
+     * @serial Cannot be null.
+     */
+    private Evidence evidence;
+
+    /**
+     * The last manipulated BayesIm.
+     *
+     * @serial Can be null.
+     */
+    private BayesIm manipulatedBayesIm;
+
+    /**
+     * The BayesIm after update, if this was calculated.
+     *
+     * @serial Can be null.
+     */
+    private BayesIm updatedBayesIm;
+
+    /**
+     * The conditional probability table of each node of the manipulated
+     * BayesIm, with the categories not allowed by the evidence set to zero.
+     */
+    private transient Factor[] factors;
+
+    /**
+     * The elimination plans worked out so far, keyed by the variables in
+     * evidence, the variables manipulated, and the variables asked about.
+     */
+    private transient Map<List<BitSet>, Plan> plans;
+
+    /**
+     * The marginals of each variable given the evidence, as calculated.
+     */
+    private transient double[][] marginals;
+
+    //==============================CONSTRUCTORS===========================//
+
+    /**
+     * Constructs a new updater for the given Bayes net.
+     */
+    public VariableEliminationUpdater(BayesIm bayesIm) {
+        if (bayesIm == null) {
+            throw new NullPointerException();
+        }
+
+        this.bayesIm = bayesIm;
+        setEvidence(Evidence.tautology(bayesIm));
+    }
+
+    /**
+     * Constructs a new updater for the given Bayes net.
+     */
+    public VariableEliminationUpdater(BayesIm bayesIm, Evidence evidence) {
+        if (bayesIm == null) {
+            throw new NullPointerException();
+        }
+
+        this.bayesIm = bayesIm;
+        setEvidence(evidence);
+    }
+
+    /**
+     * Generates a simple exemplar of this class to test serialization.
+     */
+    public static VariableEliminationUpdater serializableInstance() {
+        return new VariableEliminationUpdater(MlBayesIm.serializableInstance());
+    }
+
+    //============================PUBLIC METHODS==========================//
+
+    /**
+     * The BayesIm that this updater bases its update on. This BayesIm is not
+     * modified; rather, a new BayesIm is created and updated.
+     */
+    public BayesIm getBayesIm() {
+        return bayesIm;
+    }
+
+    /**
+     * @return the updated BayesIm.
+     */
+    public BayesIm getManipulatedBayesIm() {
+        return this.manipulatedBayesIm;
+    }
+
+    public Graph getManipulatedGraph() {
+        return getManipulatedBayesIm().getDag();
+    }
+
+    /**
+     * The updated BayesIm. This is a different object from the source BayesIm.
+     *
+     * @see #getBayesIm
+     */
+    public BayesIm getUpdatedBayesIm() {
+        if (updatedBayesIm == null) {
+            updateAll();
+        }
+
+        return updatedBayesIm;
+    }
+
+    /**
+     * @return a defensive copy of the evidence.
+     */
+    public Evidence getEvidence() {
+        return new Evidence(this.evidence);
+    }
+
+    public final void setEvidence(Evidence evidence) {
+        if (evidence == null) {
+            throw new NullPointerException();
+        }
+
+        if (evidence.isIncompatibleWith(bayesIm)) {
+            throw new IllegalArgumentException("The variable list for the " +
+                    "given bayesIm must be compatible with the variable list " +
+                    "for this evidence.");
+        }
+
+        this.evidence = evidence;
+
+        Graph graph = bayesIm.getBayesPm().getDag();
+        Dag manipulatedGraph = createManipulatedGraph(graph);
+        BayesPm manipulatedPm = createUpdatedBayesPm(manipulatedGraph);
+
+        this.manipulatedBayesIm = createdUpdatedBayesIm(manipulatedPm);
+
+        for (int i = 0; i < evidence.getNumNodes(); i++) {
+            if (evidence.isManipulated(i)) {
+                for (int j = 0; j < evidence.getNumCategories(i); j++) {
+                    if (evidence.getProposition().isAllowed(i, j)) {
+                        manipulatedBayesIm.setProbability(i, 0, j, 1.0);
+                    } else {
+                        manipulatedBayesIm.setProbability(i, 0, j, 0.0);
+                    }
+                }
+            }
+        }
+
+        this.factors = null;
+        this.marginals = null;
+        this.updatedBayesIm = null;
+    }
+
+    public boolean isJointMarginalSupported() {
+        return true;
+    }
+
+    public double getJointMarginal(int[] variables, int[] values) {
+        if (variables.length != values.length) {
+            throw new IllegalArgumentException("Values must match variables.");
+        }
+
+        Map<Integer, Integer> assertion = new TreeMap<>();
+
+        for (int i = 0; i < variables.length; i++) {
+            assertion.put(variables[i], values[i]);
+        }
+
+        int[] query = new int[assertion.size()];
+        int index = 0;
+
+        for (int variable : assertion.keySet()) {
+            query[index++] = variable;
+        }
+
+        double[] joint = query(query);
+
+        int row = 0;
+
+        for (int variable : query) {
+            row = row * getNumCategories(variable) + assertion.get(variable);
+        }
+
+        return joint[row] / sum(joint);
+    }
+
+    /**
+     * @return P&lpar;variable&equals;value &vbar; evidence&rpar; where evidence is getEvidence().
+     */
+    public double getMarginal(int variable, int value) {
+        return getMarginals(variable)[value];
+    }
+
+    public double[] calculatePriorMarginals(int nodeIndex) {
+        Evidence evidence = getEvidence();
+        setEvidence(Evidence.tautology(evidence.getVariableSource()));
+
+        double[] marginals = getMarginals(nodeIndex).clone();
+
+        setEvidence(evidence);
+        return marginals;
+    }
+
+    public double[] calculateUpdatedMarginals(int nodeIndex) {
+        return getMarginals(nodeIndex).clone();
+    }
+
+    /**
+     * Prints out the most recent marginal.
+     */
+    public String toString() {
+        return "Variable elimination updater, evidence = " + evidence;
+    }
+
+    //==============================PRIVATE METHODS=======================//
+
+    private double[] getMarginals(int variable) {
+        if (marginals == null) {
+            marginals = new double[manipulatedBayesIm.getNumNodes()][];
+        }
+
+        if (marginals[variable] == null) {
+            double[] marginal = query(new int[]{variable});
+            double sum = sum(marginal);
+
+            for (int i = 0; i < marginal.length; i++) {
+                marginal[i] /= sum;
+            }
+
+            marginals[variable] = marginal;
+        }
+
+        return marginals[variable];
+    }
+
+    private void updateAll() {
+        BayesIm updatedBayesIm = new MlBayesIm(manipulatedBayesIm);
+        int numNodes = manipulatedBayesIm.getNumNodes();
+
+        for (int node = 0; node < numNodes; node++) {
+            int numCols = manipulatedBayesIm.getNumColumns(node);
+            int[] parents = manipulatedBayesIm.getParents(node);
+
+            // The joint of the node and its parents with the evidence, in
+            // the order of the node's factor.
+            int[] variables = getFactors()[node].variables;
+            double[] joint = query(variables);
+
+            int[] strides = strides(variables);
+            int nodeStride = strides[Arrays.binarySearch(variables, node)];
+            int[] parentStrides = new int[parents.length];
+
+            for (int k = 0; k < parents.length; k++) {
+                parentStrides[k] = strides[Arrays.binarySearch(variables, parents[k])];
+            }
+
+            for (int row = 0; row < manipulatedBayesIm.getNumRows(node); row++) {
+                int[] parentValues = manipulatedBayesIm.getParentValues(node, row);
+                int offset = 0;
+
+                for (int k = 0; k < parents.length; k++) {
+                    offset += parentValues[k] * parentStrides[k];
+                }
+
+                double sum = 0;
+
+                for (int col = 0; col < numCols; col++) {
+                    sum += joint[offset + col * nodeStride];
+                }
+
+                for (int col = 0; col < numCols; col++) {
+                    double p = sum > 0 ? joint[offset + col * nodeStride] / sum : Double.NaN;
+                    updatedBayesIm.setProbability(node, row, col, p);
+                }
+            }
+        }
+
+        this.updatedBayesIm = updatedBayesIm;
+    }
+
+    /**
+     * @return the joint of the given variables, in increasing order, and the
+     * evidence, up to a constant factor.
+     */
+    private double[] query(int[] variables) {
+        Factor[] factors = getFactors();
+
+        BitSet query = new BitSet();
+
+        for (int variable : variables) {
+            query.set(variable);
+        }
+
+        Plan plan = getPlan(query);
+
+        Factor[] results = new Factor[plan.nodes.length + plan.inputs.length];
+
+        for (int i = 0; i < plan.nodes.length; i++) {
+            results[i] = factors[plan.nodes[i]];
+        }
+
+        for (int s = 0; s < plan.inputs.length; s++) {
+            results[plan.nodes.length + s] = multiplyAndSumOut(results, plan.inputs[s],
+                    plan.variables[s], plan.eliminated[s]);
+        }
+
+        return results[results.length - 1].values;
+    }
+
+    /**
+     * Multiplies the input factors and sums the eliminated variable out of
+     * the product in one pass, without forming the product. The result is
+     * scaled to sum to one, which only changes answers by a constant factor
+     * and keeps long products from underflowing.
+     *
+     * @param eliminated the variable summed out, or -1 to sum out nothing.
+     */
+    private Factor multiplyAndSumOut(Factor[] factors, int[] inputs, int[] variables, int eliminated) {
+        int numInputs = inputs.length;
+        int numVariables = variables.length;
+
+        double[][] tables = new double[numInputs][];
+        int[][] strides = new int[numInputs][numVariables];
+        int[] eliminatedStrides = new int[numInputs];
+
+        for (int j = 0; j < numInputs; j++) {
+            Factor factor = factors[inputs[j]];
+            int[] factorStrides = strides(factor.variables);
+            tables[j] = factor.values;
+
+            for (int p = 0; p < numVariables; p++) {
+                int index = Arrays.binarySearch(factor.variables, variables[p]);
+                strides[j][p] = index >= 0 ? factorStrides[index] : 0;
+            }
+
+            if (eliminated != -1) {
+                eliminatedStrides[j] = factorStrides[Arrays.binarySearch(factor.variables, eliminated)];
+            }
+        }
+
+        int[] dims = new int[numVariables];
+        int size = 1;
+
+        for (int p = 0; p < numVariables; p++) {
+            dims[p] = getNumCategories(variables[p]);
+            size *= dims[p];
+        }
+
+        int numEliminated = eliminated == -1 ? 1 : getNumCategories(eliminated);
+
+        double[] values = new double[size];
+        int[] offsets = new int[numInputs];
+        int[] counter = new int[numVariables];
+        double total = 0;
+
+        for (int index = 0; index < size; index++) {
+            double sum = 0;
+
+            for (int e = 0; e < numEliminated; e++) {
+                double product = 1;
+
+                for (int j = 0; j < numInputs && product != 0; j++) {
+                    product *= tables[j][offsets[j] + e * eliminatedStrides[j]];
+                }
+
+                sum += product;
+            }
+
+            values[index] = sum;
+            total += sum;
+
+            for (int p = numVariables - 1; p >= 0; p--) {
+                counter[p]++;
+
+                for (int j = 0; j < numInputs; j++) {
+                    offsets[j] += strides[j][p];
+                }
+
+                if (counter[p] < dims[p]) {
+                    break;
+                }
+
+                for (int j = 0; j < numInputs; j++) {
+                    offsets[j] -= strides[j][p] * dims[p];
+                }
+
+                counter[p] = 0;
+            }
+        }
+
+        if (total > 0) {
+            for (int index = 0; index < size; index++) {
+                values[index] /= total;
+            }
+        }
+
+        return new Factor(variables, values);
+    }
+
+    private Factor[] getFactors() {
+        if (factors == null) {
+            int numNodes = manipulatedBayesIm.getNumNodes();
+            Factor[] factors = new Factor[numNodes];
+
+            for (int node = 0; node < numNodes; node++) {
+                int[] parents = manipulatedBayesIm.getParents(node);
+
+                int[] variables = Arrays.copyOf(parents, parents.length + 1);
+                variables[parents.length] = node;
+                Arrays.sort(variables);
+
+                int[] strides = strides(variables);
+                int size = strides[0] * getNumCategories(variables[0]);
+                double[] values = new double[size];
+
+                int nodeStride = strides[Arrays.binarySearch(variables, node)];
+                int[] parentValues = new int[parents.length];
+
+                for (int index = 0; index < size; index++) {
+                    for (int k = 0; k < parents.length; k++) {
+                        int p = Arrays.binarySearch(variables, parents[k]);
+                        parentValues[k] = (index / strides[p]) % getNumCategories(parents[k]);
+                    }
+
+                    int row = manipulatedBayesIm.getRowIndex(node, parentValues);
+                    int col = (index / nodeStride) % getNumCategories(node);
+
+                    if (evidence.getProposition().isAllowed(node, col)) {
+                        values[index] = manipulatedBayesIm.getProbability(node, row, col);
+                    }
+                }
+
+                factors[node] = new Factor(variables, values);
+            }
+
+            this.factors = factors;
+        }
+
+        return factors;
+    }
+
+    private Plan getPlan(BitSet query) {
+        if (plans == null) {
+            plans = new HashMap<>();
+        }
+
+        BitSet restricted = new BitSet();
+        BitSet manipulated = new BitSet();
+
+        for (int i = 0; i < evidence.getNumNodes(); i++) {
+            if (evidence.isManipulated(i)) {
+                manipulated.set(i);
+            }
+
+            for (int j = 0; j < evidence.getNumCategories(i); j++) {
+                if (!evidence.getProposition().isAllowed(i, j)) {
+                    restricted.set(i);
+                    break;
+                }
+            }
+        }
+
+        List<BitSet> key = Arrays.asList(restricted, manipulated, query);
+        Plan plan = plans.get(key);
+
+        if (plan == null) {
+            plan = new Plan(restricted, query);
+            plans.put(key, plan);
+        }
+
+        return plan;
+    }
+
+    private int getNumCategories(int variable) {
+        return manipulatedBayesIm.getNumColumns(variable);
+    }
+
+    /**
+     * @return the stride of each variable in a factor over the given
+     * variables, the last varying fastest.
+     */
+    private int[] strides(int[] variables) {
+        int[] strides = new int[variables.length];
+        int stride = 1;
+
+        for (int p = variables.length - 1; p >= 0; p--) {
+            strides[p] = stride;
+            stride *= getNumCategories(variables[p]);
+        }
+
+        return strides;
+    }
+
+    private static double sum(double[] values) {
+        double sum = 0;
+
+        for (double value : values) {
+            sum += value;
+        }
+
+        return sum;
+    }
+
+    private BayesIm createdUpdatedBayesIm(BayesPm updatedBayesPm) {
+
+        // Switching this to MANUAL since the initial values don't matter.
+        return new MlBayesIm(updatedBayesPm, bayesIm, MlBayesIm.MANUAL);
+    }
+
+    private BayesPm createUpdatedBayesPm(Dag updatedGraph) {
+        return new BayesPm(updatedGraph, bayesIm.getBayesPm());
+    }
+
+    private Dag createManipulatedGraph(Graph graph) {
+        Dag updatedGraph = new Dag(graph);
+
+        // alters graph for manipulated evidenceItems
+        for (int i = 0; i < evidence.getNumNodes(); ++i) {
+            if (evidence.isManipulated(i)) {
+                Node node = updatedGraph.getNode(evidence.getNode(i).getName());
+                List<Node> parents = updatedGraph.getParents(node);
+
+                for (Node parent : parents) {
+                    updatedGraph.removeEdge(node, parent);
+                }
+            }
+        }
+
+        return updatedGraph;
+    }
+
+    /**
+     * Adds semantic checks to the default deserialization method. This method
+     * must have the standard signature for a readObject method, and the body of
+     * the method must begin with "s.defaultReadObject();". Other than that, any
+     * semantic checks can be specified and do not need to stay the same from
+     * version to version. A readObject method of this form may be added to any
+     * class, even if Tetrad sessions were previously saved out using a version
+     * of the class that didn't include it. (That's what the
+     * "s.defaultReadObject();" is for. See J. Bloch, Effective Java, for help.
+     *
+     * @throws java.io.IOException
+     * @throws ClassNotFoundException
+     */
+    private void readObject(ObjectInputStream s)
+            throws IOException, ClassNotFoundException {
+        s.defaultReadObject();
+
+        if (bayesIm == null) {
+            throw new NullPointerException();
+        }
+
+        if (evidence == null) {
+            throw new NullPointerException();
+        }
+    }
+
+    //==============================CLASSES=======================//
+
+    /**
+     * A table over some variables, in increasing order, the last varying
+     * fastest.
+     */
+    private static final class Factor {
+        private final int[] variables;
+        private final double[] values;
+
+        private Factor(int[] variables, double[] values) {
+            this.variables = variables;
+            this.values = values;
+        }
+    }
+
+    /**
+     * The steps for a query. The factors of the given nodes come first; step
+     * s multiplies the factors numbered inputs[s] and sums out eliminated[s],
+     * giving factor nodes.length + s over variables[s]. The last step
+     * multiplies what is left into a factor over the variables asked about.
+     */
+    private final class Plan {
+        private final int[] nodes;
+        private final int[][] inputs;
+        private final int[][] variables;
+        private final int[] eliminated;
+
+        private Plan(BitSet restricted, BitSet query) {
+            int numNodes = manipulatedBayesIm.getNumNodes();
+
+            // Only ancestors of the variables asked about or in evidence
+            // matter; the rest sum out to one.
+            BitSet relevant = new BitSet(numNodes);
+            relevant.or(query);
+            relevant.or(restricted);
+
+            Deque<Integer> stack = new ArrayDeque<>();
+
+            for (int node = relevant.nextSetBit(0); node >= 0; node = relevant.nextSetBit(node + 1)) {
+                stack.push(node);
+            }
+
+            while (!stack.isEmpty()) {
+                for (int parent : manipulatedBayesIm.getParents(stack.pop())) {
+                    if (!relevant.get(parent)) {
+                        relevant.set(parent);
+                        stack.push(parent);
+                    }
+                }
+            }
+
+            this.nodes = relevant.stream().toArray();
+
+            List<int[]> scopes = new ArrayList<>();
+            List<Integer> active = new ArrayList<>();
+            BitSet[] adjacencies = new BitSet[numNodes];
+
+            for (int node : nodes) {
+                adjacencies[node] = new BitSet(numNodes);
+            }
+
+            for (int node : nodes) {
+                int[] scope = getFactors()[node].variables;
+                active.add(scopes.size());
+                scopes.add(scope);
+
+                for (int a : scope) {
+                    for (int b : scope) {
+                        if (a != b) adjacencies[a].set(b);
+                    }
+                }
+            }
+
+            List<int[]> inputs = new ArrayList<>();
+            List<int[]> variables = new ArrayList<>();
+            List<Integer> eliminated = new ArrayList<>();
+
+            BitSet remaining = (BitSet) relevant.clone();
+            remaining.andNot(query);
+
+            int[] fills = new int[numNodes];
+
+            for (int v = remaining.nextSetBit(0); v >= 0; v = remaining.nextSetBit(v + 1)) {
+                fills[v] = fill(adjacencies[v], adjacencies);
+            }
+
+            while (!remaining.isEmpty()) {
+                int v = nextToEliminate(remaining, fills, adjacencies);
+
+                List<Integer> _inputs = new ArrayList<>();
+                BitSet scope = new BitSet(numNodes);
+
+                for (int f : active) {
+                    if (Arrays.binarySearch(scopes.get(f), v) >= 0) {
+                        _inputs.add(f);
+
+                        for (int a : scopes.get(f)) {
+                            scope.set(a);
+                        }
+                    }
+                }
+
+                scope.clear(v);
+
+                BitSet neighbors = adjacencies[v];
+
+                for (int a = neighbors.nextSetBit(0); a >= 0; a = neighbors.nextSetBit(a + 1)) {
+                    adjacencies[a].or(neighbors);
+                    adjacencies[a].clear(a);
+                    adjacencies[a].clear(v);
+                }
+
+                active.removeAll(_inputs);
+                active.add(scopes.size());
+                scopes.add(scope.stream().toArray());
+                remaining.clear(v);
+
+                // Only the fills of variables within two steps of v change.
+                BitSet changed = (BitSet) neighbors.clone();
+
+                for (int a = neighbors.nextSetBit(0); a >= 0; a = neighbors.nextSetBit(a + 1)) {
+                    changed.or(adjacencies[a]);
+                }
+
+                changed.and(remaining);
+
+                for (int a = changed.nextSetBit(0); a >= 0; a = changed.nextSetBit(a + 1)) {
+                    fills[a] = fill(adjacencies[a], adjacencies);
+                }
+
+                inputs.add(_inputs.stream().mapToInt(Integer::intValue).toArray());
+                variables.add(scope.stream().toArray());
+                eliminated.add(v);
+            }
+
+            inputs.add(active.stream().mapToInt(Integer::intValue).toArray());
+            variables.add(query.stream().toArray());
+            eliminated.add(-1);
+
+            this.inputs = inputs.toArray(new int[0][]);
+            this.variables = variables.toArray(new int[0][]);
+            this.eliminated = eliminated.stream().mapToInt(Integer::intValue).toArray();
+        }
+
+        /**
+         * @return the remaining variable whose elimination adds the fewest
+         * edges among its neighbors, breaking ties by fewest neighbors.
+         */
+        private int nextToEliminate(BitSet remaining, int[] fills, BitSet[] adjacencies) {
+            int best = -1;
+
+            for (int v = remaining.nextSetBit(0); v >= 0; v = remaining.nextSetBit(v + 1)) {
+                if (best == -1 || fills[v] < fills[best] || (fills[v] == fills[best]
+                        && adjacencies[v].cardinality() < adjacencies[best].cardinality())) {
+                    best = v;
+                }
+            }
+
+            return best;
+        }
+
+        /**
+         * @return the number of pairs of the given neighbors not adjacent to
+         * each other.
+         */
+        private int fill(BitSet neighbors, BitSet[] adjacencies) {
+            int fill = 0;
+
+            for (int a = neighbors.nextSetBit(0); a >= 0; a = neighbors.nextSetBit(a + 1)) {
+                for (int b = neighbors.nextSetBit(a + 1); b >= 0; b = neighbors.nextSetBit(b + 1)) {
+                    if (!adjacencies[a].get(b)) {
+                        fill++;
+                    }
+                }
+            }
+
+            return fill;
+        }
+    }
+}
@@ -0,0 +1,435 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.calculator.expression;
+
+import edu.cmu.tetrad.util.RandomStream;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An expression compiled for repeated evaluation, as in simulation. Variables are read from a double array by
+ * index rather than looked up by name in a Context, and parameters are folded in as constants, so that evaluation
+ * does no boxing or map lookups. Normal and uniform draws are taken from a RandomStream passed in by the caller.
+ * <p>
+ * Operators the compiler doesn't know--most of the distributions, for instance--are evaluated by the original
+ * expression, through a Context that reads the same array. These draw from RandomUtil, so an expression that
+ * contains any of them is not thread safe; see <code>isThreadSafe</code>.
+ *
+ * @author Joseph Ramsey
+ */
+public final class CompiledExpression {
+
+    /**
+     * A compiled subexpression.
+     */
+    private interface Evaluator {
+        double evaluate(double[] values, RandomStream random);
+    }
+
+    /**
+     * The original expression.
+     */
+    private final Expression expression;
+
+    /**
+     * Values for names that are constant for this compilation, usually the parameters of a model.
+     */
+    private final Map<String, Double> constants;
+
+    /**
+     * The index in the values array of each variable.
+     */
+    private final Map<String, Integer> indices;
+
+    /**
+     * The root of the compiled expression.
+     */
+    private final Evaluator evaluator;
+
+    /**
+     * True if some subexpression is evaluated by the original expression.
+     */
+    private boolean interpreted = false;
+
+    private CompiledExpression(Expression expression, Map<String, Double> constants, List<String> variables) {
+        if (expression == null) {
+            throw new NullPointerException("Expression must not be null.");
+        }
+
+        this.expression = expression;
+        this.constants = new HashMap<>(constants);
+        this.indices = new HashMap<>();
+
+        for (int i = 0; i < variables.size(); i++) {
+            indices.put(variables.get(i), i);
+        }
+
+        this.evaluator = compileExpression(expression);
+    }
+
+    /**
+     * Compiles the given expression.
+     *
+     * @param expression The expression to compile.
+     * @param constants  Values for names that don't change between evaluations, such as the parameters of a model.
+     *                   These take precedence over variables of the same name.
+     * @param variables  The variables the expression may refer to. The value of the i'th variable is read from index
+     *                   i of the array passed to <code>evaluate</code>.
+     * @return the compiled expression.
+     */
+    public static CompiledExpression compile(Expression expression, Map<String, Double> constants,
+                                             List<String> variables) {
+        return new CompiledExpression(expression, constants, variables);
+    }
+
+    /**
+     * Evaluates the expression.
+     *
+     * @param values The values of the variables, in the order given when compiling.
+     * @param random The stream that Normal and Uniform draw from.
+     * @return the value of the expression.
+     */
+    public double evaluate(double[] values, RandomStream random) {
+        return evaluator.evaluate(values, random);
+    }
+
+    /**
+     * @return true if the expression draws random numbers only from the stream passed to <code>evaluate</code>, in
+     * which case it may be evaluated on several threads at once, each with its own stream, and its values depend only
+     * on the streams.
+     */
+    public boolean isThreadSafe() {
+        return !interpreted;
+    }
+
+    /**
+     * @return the original expression.
+     */
+    public Expression getExpression() {
+        return expression;
+    }
+
+    public String toString() {
+        return expression.toString();
+    }
+
+    //==================================PRIVATE METHODS=============================//
+
+    private Evaluator compileExpression(Expression expression) {
+        if (expression instanceof ConstantExpression) {
+            return new Constant(expression.evaluate(null));
+        }
+
+        if (expression instanceof VariableExpression) {
+            return compileVariable(((VariableExpression) expression).getVariable());
+        }
+
+        List<Expression> expressions = expression.getExpressions();
+        Evaluator[] args = new Evaluator[expressions.size()];
+        boolean constant = true;
+
+        for (int i = 0; i < args.length; i++) {
+            args[i] = compileExpression(expressions.get(i));
+            constant &= args[i] instanceof Constant;
+        }
+
+        Evaluator evaluator = compileOperator(expression, args);
+
+        if (evaluator == null) {
+            return interpret(expression);
+        }
+
+        // Deterministic operators with constant arguments are folded.
+        if (constant && !isRandom(expression.getToken())) {
+            return new Constant(evaluator.evaluate(null, null));
+        }
+
+        return evaluator;
+    }
+
+    private Evaluator compileVariable(final String name) {
+        Double value = constants.get(name);
+
+        if (value != null) {
+            return new Constant(value);
+        }
+
+        Integer index = indices.get(name);
+
+        if (index != null) {
+            return new Variable(index);
+        }
+
+        return (values, random) -> {
+            throw new IllegalArgumentException("No value recorded for '" + name + "'");
+        };
+    }
+
+    /**
+     * @return an evaluator for the given operator applied to the given compiled arguments, or null if the operator
+     * isn't one the compiler knows. The arguments have already been checked by the expression's descriptor.
+     */
+    private Evaluator compileOperator(Expression expression, final Evaluator[] args) {
+        if (!(expression instanceof AbstractExpression)) {
+            return null;
+        }
+
+        final Evaluator a = args.length > 0 ? args[0] : null;
+        final Evaluator b = args.length > 1 ? args[1] : null;
+
+        switch (expression.getToken()) {
+            case "+":
+                return (values, random) -> {
+                    double sum = 0.0;
+
+                    // As in the interpreter, a term that can't be evaluated counts as zero.
+                    for (Evaluator arg : args) {
+                        try {
+                            sum += arg.evaluate(values, random);
+                        } catch (Exception e) {
+                            // Skip it.
+                        }
+                    }
+
+                    return sum;
+                };
+            case "-":
+                if (args.length == 1) {
+                    return (values, random) -> -a.evaluate(values, random);
+                }
+
+                return (values, random) -> a.evaluate(values, random) - b.evaluate(values, random);
+            case "*":
+                if (args.length == 2) {
+                    return compileProduct(a, b);
+                }
+
+                return (values, random) -> {
+                    double product = 1.0;
+
+                    for (Evaluator arg : args) {
+                        product *= arg.evaluate(values, random);
+                    }
+
+                    return product;
+                };
+            case "/":
+                return (values, random) -> a.evaluate(values, random) / b.evaluate(values, random);
+            case "pow":
+            case "^":
+                return (values, random) -> Math.pow(a.evaluate(values, random), b.evaluate(values, random));
+            case "exp":
+                return (values, random) -> Math.exp(a.evaluate(values, random));
+            case "ln":
+                return (values, random) -> Math.log(a.evaluate(values, random));
+            case "log10":
+                return (values, random) -> Math.log10(a.evaluate(values, random));
+            case "sqrt":
+                return (values, random) -> Math.sqrt(a.evaluate(values, random));
+            case "abs":
+                return (values, random) -> Math.abs(a.evaluate(values, random));
+            case "signum":
+                return (values, random) -> Math.signum(a.evaluate(values, random));
+            case "round":
+                return (values, random) -> Math.round(a.evaluate(values, random));
+            case "ceil":
+                return (values, random) -> Math.ceil(a.evaluate(values, random));
+            case "floor":
+                return (values, random) -> Math.floor(a.evaluate(values, random));
+            case "sin":
+                return (values, random) -> Math.sin(a.evaluate(values, random));
+            case "cos":
+                return (values, random) -> Math.cos(a.evaluate(values, random));
+            case "tan":
+                return (values, random) -> Math.tan(a.evaluate(values, random));
+            case "asin":
+                return (values, random) -> Math.asin(a.evaluate(values, random));
+            case "acos":
+                return (values, random) -> Math.acos(a.evaluate(values, random));
+            case "atan":
+                return (values, random) -> Math.atan(a.evaluate(values, random));
+            case "sinh":
+                return (values, random) -> Math.sinh(a.evaluate(values, random));
+            case "cosh":
+                return (values, random) -> Math.cosh(a.evaluate(values, random));
+            case "tanh":
+                return (values, random) -> Math.tanh(a.evaluate(values, random));
+            case "logistic":
+                return (values, random) -> 1.0 / (1.0 + Math.exp(-a.evaluate(values, random)));
+            case "max":
+                return (values, random) -> {
+                    double max = a.evaluate(values, random);
+
+                    for (int i = 1; i < args.length; i++) {
+                        double d = args[i].evaluate(values, random);
+                        if (max < d) max = d;
+                    }
+
+                    return max;
+                };
+            case "min":
+                return (values, random) -> {
+                    double min = a.evaluate(values, random);
+
+                    for (int i = 1; i < args.length; i++) {
+                        double d = args[i].evaluate(values, random);
+                        if (d < min) min = d;
+                    }
+
+                    return min;
+                };
+            case "AND":
+                return (values, random) -> {
+                    boolean allOnes = true;
+
+                    // Every argument is evaluated, since an argument may draw a random number.
+                    for (Evaluator arg : args) {
+                        if (arg.evaluate(values, random) != 1.0) {
+                            allOnes = false;
+                        }
+                    }
+
+                    return allOnes ? 1.0 : 0.0;
+                };
+            case "OR":
+                return (values, random) -> {
+                    for (Evaluator arg : args) {
+                        if (arg.evaluate(values, random) == 1.0) {
+                            return 1.0;
+                        }
+                    }
+
+                    return 0.0;
+                };
+            case "XOR":
+                return (values, random) -> {
+                    boolean first = a.evaluate(values, random) == 1.0;
+                    boolean second = b.evaluate(values, random) == 1.0;
+                    return first != second ? 1.0 : 0.0;
+                };
+            case "<":
+                return (values, random) -> a.evaluate(values, random) < b.evaluate(values, random) ? 1.0 : 0.0;
+            case "<=":
+                return (values, random) -> a.evaluate(values, random) <= b.evaluate(values, random) ? 1.0 : 0.0;
+            case "=":
+                return (values, random) -> a.evaluate(values, random) == b.evaluate(values, random) ? 1.0 : 0.0;
+            case ">":
+                return (values, random) -> a.evaluate(values, random) > b.evaluate(values, random) ? 1.0 : 0.0;
+            case ">=":
+                return (values, random) -> a.evaluate(values, random) >= b.evaluate(values, random) ? 1.0 : 0.0;
+            case "IF": {
+                final Evaluator c = args[2];
+
+                return (values, random) -> {
+                    double condition = a.evaluate(values, random);
+                    double then = b.evaluate(values, random);
+                    double otherwise = c.evaluate(values, random);
+                    return condition == 1.0 ? then : otherwise;
+                };
+            }
+            case "random":
+                return (values, random) -> random.nextDouble();
+            case "N":
+            case "Normal":
+                return (values, random) -> random.nextNormal(a.evaluate(values, random), b.evaluate(values, random));
+            case "Uniform":
+                return (values, random) -> {
+                    double low = a.evaluate(values, random);
+                    double high = b.evaluate(values, random);
+
+                    if (low >= high) {
+                        throw new IllegalArgumentException("Lower bound must be less than upper bound: "
+                                + low + " >= " + high);
+                    }
+
+                    return random.nextUniform(low, high);
+                };
+            default:
+                return null;
+        }
+    }
+
+    // The usual term of a linear model, a coefficient times a variable, reads the variable directly.
+    private static Evaluator compileProduct(final Evaluator a, final Evaluator b) {
+        if (a instanceof Constant && b instanceof Variable) {
+            final double coef = ((Constant) a).value;
+            final int index = ((Variable) b).index;
+            return (values, random) -> coef * values[index];
+        }
+
+        if (a instanceof Variable && b instanceof Constant) {
+            return compileProduct(b, a);
+        }
+
+        if (a instanceof Constant) {
+            final double coef = ((Constant) a).value;
+            return (values, random) -> coef * b.evaluate(values, random);
+        }
+
+        return (values, random) -> a.evaluate(values, random) * b.evaluate(values, random);
+    }
+
+    private static boolean isRandom(String token) {
+        return "random".equals(token) || "N".equals(token) || "Normal".equals(token) || "Uniform".equals(token);
+    }
+
+    private Evaluator interpret(final Expression expression) {
+        interpreted = true;
+
+        return (values, random) -> expression.evaluate(var -> {
+            Double value = constants.get(var);
+
+            if (value != null) {
+                return value;
+            }
+
+            Integer index = indices.get(var);
+            return index == null ? null : values[index];
+        });
+    }
+
+    private static final class Constant implements Evaluator {
+        private final double value;
+
+        Constant(double value) {
+            this.value = value;
+        }
+
+        public double evaluate(double[] values, RandomStream random) {
+            return value;
+        }
+    }
+
+    private static final class Variable implements Evaluator {
+        private final int index;
+
+        Variable(int index) {
+            this.index = index;
+        }
+
+        public double evaluate(double[] values, RandomStream random) {
+            return values[index];
+        }
+    }
+}
@@ -2168,7 +2168,7 @@ public class ExpressionManager {
                 throw new ExpressionInitializationException("Must have two arguments.");
             }
 
-            return new AbstractExpression("<", Position.BOTH, expressions) {
+            return new AbstractExpression(">", Position.BOTH, expressions) {
                 static final long serialVersionUID = 23L;
 
                 public double evaluate(Context context) {
@@ -2193,7 +2193,7 @@ public class ExpressionManager {
                 throw new ExpressionInitializationException("Must have two arguments.");
             }
 
-            return new AbstractExpression("<", Position.BOTH, expressions) {
+            return new AbstractExpression(">=", Position.BOTH, expressions) {
                 static final long serialVersionUID = 23L;
 
                 public double evaluate(Context context) {
@@ -0,0 +1,242 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+
+package edu.cmu.tetrad.data;
+
+import edu.cmu.tetrad.graph.Node;
+import edu.cmu.tetrad.util.RandomStream;
+import edu.cmu.tetrad.util.RandomUtil;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.IntUnaryOperator;
+import java.util.stream.IntStream;
+
+/**
+ * Computes covariance matrices of bootstrap samples and subsamples of a
+ * continuous data set without making the resampled data sets. A resample is
+ * represented by the number of times each row of the original data was drawn,
+ * and its covariance matrix is computed from the original columns weighted by
+ * those counts, in blocks of rows, in parallel over the variables. The result
+ * is the covariance matrix of the resampled data set, up to rounding.
+ * <p>
+ * The columns of the data are copied once, when this object is made, and are
+ * shared by all of the resamples.
+ *
+ * @author Joseph Ramsey
+ */
+public class BootstrapCovariances {
+
+    // The number of drawn rows gathered into each block.
+    private static final int BLOCK_SIZE = 1024;
+
+    private final List<Node> variables;
+    private final double[][] columns;
+    private final int numRows;
+
+    /**
+     * @param dataSet a continuous data set.
+     * @throws IllegalArgumentException if this is not a continuous data set.
+     */
+    public BootstrapCovariances(DataSet dataSet) {
+        if (!dataSet.isContinuous()) {
+            throw new IllegalArgumentException("Not a continuous data set.");
+        }
+
+        this.variables = Collections.unmodifiableList(new ArrayList<>(dataSet.getVariables()));
+        this.numRows = dataSet.getNumRows();
+        this.columns = new double[dataSet.getNumColumns()][];
+
+        IntStream.range(0, columns.length).parallel().forEach(j -> {
+            double[] column = new double[numRows];
+            for (int i = 0; i < numRows; i++) column[i] = dataSet.getDouble(i, j);
+            columns[j] = column;
+        });
+    }
+
+    /**
+     * @return the variables of the data.
+     */
+    public List<Node> getVariables() {
+        return variables;
+    }
+
+    /**
+     * @return the number of rows in the original data.
+     */
+    public int getNumRows() {
+        return numRows;
+    }
+
+    /**
+     * Draws a bootstrap sample, with replacement.
+     *
+     * @param sampleSize the number of rows to draw.
+     * @return the number of times each row was drawn.
+     */
+    public int[] getBootstrapCounts(int sampleSize) {
+        return getBootstrapCounts(sampleSize, RandomUtil.getInstance()::nextInt);
+    }
+
+    /**
+     * Draws a bootstrap sample, with replacement, from the given stream.
+     *
+     * @param sampleSize the number of rows to draw.
+     * @return the number of times each row was drawn.
+     */
+    public int[] getBootstrapCounts(int sampleSize, RandomStream random) {
+        return getBootstrapCounts(sampleSize, random::nextInt);
+    }
+
+    /**
+     * Draws a subsample, without replacement.
+     *
+     * @param sampleSize the number of rows to draw; at most the number of
+     *                   rows in the data are drawn.
+     * @return 1 for each row drawn, 0 for the others.
+     */
+    public int[] getSubsampleCounts(int sampleSize) {
+        return getSubsampleCounts(sampleSize, RandomUtil.getInstance()::nextInt);
+    }
+
+    /**
+     * Draws a subsample, without replacement, from the given stream.
+     *
+     * @param sampleSize the number of rows to draw; at most the number of
+     *                   rows in the data are drawn.
+     * @return 1 for each row drawn, 0 for the others.
+     */
+    public int[] getSubsampleCounts(int sampleSize, RandomStream random) {
+        return getSubsampleCounts(sampleSize, random::nextInt);
+    }
+
+    private int[] getBootstrapCounts(int sampleSize, IntUnaryOperator nextInt) {
+        int[] counts = new int[numRows];
+
+        for (int i = 0; i < sampleSize; i++) {
+            counts[nextInt.applyAsInt(numRows)]++;
+        }
+
+        return counts;
+    }
+
+    private int[] getSubsampleCounts(int sampleSize, IntUnaryOperator nextInt) {
+        int[] rows = new int[numRows];
+        for (int i = 0; i < numRows; i++) rows[i] = i;
+
+        int[] counts = new int[numRows];
+        int size = Math.min(sampleSize, numRows);
+
+        for (int i = 0; i < size; i++) {
+            int j = i + nextInt.applyAsInt(numRows - i);
+            int row = rows[j];
+            rows[j] = rows[i];
+            rows[i] = row;
+            counts[row] = 1;
+        }
+
+        return counts;
+    }
+
+    /**
+     * @param counts the number of times each row was drawn.
+     * @return the bias-corrected covariance matrix of the resampled data, with
+     * the number of rows drawn as its sample size.
+     */
+    public ICovarianceMatrix getCovarianceMatrix(int[] counts) {
+        if (counts.length != numRows) {
+            throw new IllegalArgumentException("Expecting a count for each of the " + numRows + " rows.");
+        }
+
+        int numDrawn = 0;
+        int sampleSize = 0;
+
+        for (int count : counts) {
+            if (count < 0) {
+                throw new IllegalArgumentException("Counts must be nonnegative.");
+            }
+
+            if (count > 0) numDrawn++;
+            sampleSize += count;
+        }
+
+        if (sampleSize < 2) {
+            throw new IllegalArgumentException("Need at least two rows to compute covariances: " + sampleSize);
+        }
+
+        int[] rows = new int[numDrawn];
+        double[] weights = new double[numDrawn];
+
+        for (int i = 0, r = 0; i < numRows; i++) {
+            if (counts[i] > 0) {
+                rows[r] = i;
+                weights[r++] = counts[i];
+            }
+        }
+
+        int numVars = columns.length;
+        double[] means = new double[numVars];
+        double n = sampleSize;
+
+        IntStream.range(0, numVars).parallel().forEach(j -> {
+            double[] column = columns[j];
+            double sum = 0;
+            for (int r = 0; r < rows.length; r++) sum += weights[r] * column[rows[r]];
+            means[j] = sum / n;
+        });
+
+        double[][] covariances = new double[numVars][numVars];
+        double[][] block = new double[numVars][BLOCK_SIZE];
+
+        for (int start = 0; start < rows.length; start += BLOCK_SIZE) {
+            int from = start;
+            int size = Math.min(BLOCK_SIZE, rows.length - start);
+
+            IntStream.range(0, numVars).parallel().forEach(j -> {
+                double[] column = columns[j];
+                double mean = means[j];
+                for (int b = 0; b < size; b++) block[j][b] = column[rows[from + b]] - mean;
+            });
+
+            IntStream.range(0, numVars).parallel().forEach(j -> {
+                double[] x = block[j];
+
+                for (int k = 0; k <= j; k++) {
+                    double[] y = block[k];
+                    double sum = 0;
+                    for (int b = 0; b < size; b++) sum += weights[from + b] * x[b] * y[b];
+                    covariances[j][k] += sum;
+                }
+            });
+        }
+
+        for (int j = 0; j < numVars; j++) {
+            for (int k = 0; k <= j; k++) {
+                covariances[j][k] /= n - 1;
+                covariances[k][j] = covariances[j][k];
+            }
+        }
+
+        return new CovarianceMatrix(variables, covariances, sampleSize);
+    }
+}
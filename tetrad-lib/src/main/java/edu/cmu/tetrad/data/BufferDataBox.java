@@ -0,0 +1,471 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+
+package edu.cmu.tetrad.data;
+
+import edu.cmu.tetrad.graph.Node;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Stores data column by column in NIO buffers, a DoubleBuffer for each
+ * continuous column and an IntBuffer for each discrete column, so that the
+ * columns of a memory-mapped file can be used without copying them onto the
+ * heap. Read-only columns are shared by copies and views and are copied the
+ * first time a value in them is set. Missing values are NaN for continuous
+ * columns and -99 for discrete columns.
+ * <p>
+ * Boxes made with allocateDirect keep their columns off the heap, and boxes
+ * made with allocateMapped keep them in temporary files in a spill directory,
+ * so that data sets larger than the Java heap can be held. Copies, views and
+ * copied read-only columns are allocated the same way as the box they come
+ * from.
+ *
+ * @author Joseph Ramsey
+ */
+public class BufferDataBox implements DataBox {
+    static final long serialVersionUID = 23L;
+
+    private final List<Node> variables;
+    private final int numRows;
+    private final DoubleBuffer[] continuousData;
+    private final IntBuffer[] discreteData;
+
+    // Where new columns are allocated: on the heap unless direct is true or a
+    // spill directory is given.
+    private final boolean direct;
+    private final Path spillDirectory;
+
+    /**
+     * Constructs a data box over the given column buffers. Exactly one of
+     * continuousData[j] and discreteData[j] must be non-null for each column
+     * j, holding numRows values starting at index 0.
+     *
+     * @param variables      the variables, used only for the names and types
+     *                       of copies
+     * @param numRows        number of cases in the data set
+     * @param continuousData continuous columns
+     * @param discreteData   discrete columns
+     */
+    public BufferDataBox(List<Node> variables, int numRows, DoubleBuffer[] continuousData, IntBuffer[] discreteData) {
+        this(variables, numRows, continuousData, discreteData, false, null);
+    }
+
+    private BufferDataBox(List<Node> variables, int numRows, DoubleBuffer[] continuousData, IntBuffer[] discreteData,
+                          boolean direct, Path spillDirectory) {
+        if (variables == null) {
+            throw new IllegalArgumentException("Parameter variables cannot be null.");
+        }
+        if (numRows < 0) {
+            throw new IllegalArgumentException("Parameter numRows cannot be negative.");
+        }
+        if (continuousData.length != variables.size() || discreteData.length != variables.size()) {
+            throw new IllegalArgumentException("Expecting one column for each variable.");
+        }
+
+        for (int j = 0; j < variables.size(); j++) {
+            if (!(continuousData[j] == null ^ discreteData[j] == null)) {
+                throw new IllegalArgumentException("Column " + j + " must be either continuous or discrete.");
+            }
+
+            int capacity = continuousData[j] != null ? continuousData[j].capacity() : discreteData[j].capacity();
+
+            if (capacity < numRows) {
+                throw new IllegalArgumentException("Column " + j + " has only " + capacity + " rows.");
+            }
+        }
+
+        this.variables = variables;
+        this.numRows = numRows;
+        this.continuousData = continuousData;
+        this.discreteData = discreteData;
+        this.direct = direct;
+        this.spillDirectory = spillDirectory;
+    }
+
+    /**
+     * Constructs a data box with all values missing whose columns are held in
+     * direct buffers, outside the Java heap. Discrete variables get discrete
+     * columns; all other variables get continuous columns.
+     *
+     * @param variables the variables
+     * @param numRows   number of cases in the data set
+     */
+    public static BufferDataBox allocateDirect(List<Node> variables, int numRows) {
+        return allocate(variables, numRows, true, null);
+    }
+
+    /**
+     * Constructs a data box with all values missing whose columns are mapped
+     * from temporary files in the given directory. The files are deleted as
+     * soon as they are mapped (or on exit, where open files can't be deleted),
+     * and the operating system pages the data in and out as needed.
+     *
+     * @param variables      the variables
+     * @param numRows        number of cases in the data set
+     * @param spillDirectory the directory to create the temporary files in
+     */
+    public static BufferDataBox allocateMapped(List<Node> variables, int numRows, Path spillDirectory) {
+        if (spillDirectory == null) {
+            throw new IllegalArgumentException("Parameter spillDirectory cannot be null.");
+        }
+
+        return allocate(variables, numRows, false, spillDirectory);
+    }
+
+    private static BufferDataBox allocate(List<Node> variables, int numRows, boolean direct, Path spillDirectory) {
+        if (numRows < 0) {
+            throw new IllegalArgumentException("Parameter numRows cannot be negative.");
+        }
+
+        DoubleBuffer[] continuousData = new DoubleBuffer[variables.size()];
+        IntBuffer[] discreteData = new IntBuffer[variables.size()];
+
+        for (int j = 0; j < variables.size(); j++) {
+            if (variables.get(j) instanceof DiscreteVariable) {
+                discreteData[j] = allocateInts(numRows, direct, spillDirectory);
+                for (int i = 0; i < numRows; i++) discreteData[j].put(i, -99);
+            } else {
+                continuousData[j] = allocateDoubles(numRows, direct, spillDirectory);
+                for (int i = 0; i < numRows; i++) continuousData[j].put(i, Double.NaN);
+            }
+        }
+
+        return new BufferDataBox(new ArrayList<>(variables), numRows, continuousData, discreteData,
+                direct, spillDirectory);
+    }
+
+    /**
+     * Generates a simple exemplar of this class to test serialization.
+     */
+    public static BoxDataSet serializableInstance() {
+        List<Node> vars = new ArrayList<>();
+        for (int i = 0; i < 4; i++) vars.add(new ContinuousVariable("X" + i));
+        DoubleBuffer[] continuousData = new DoubleBuffer[4];
+        for (int j = 0; j < 4; j++) continuousData[j] = DoubleBuffer.allocate(4);
+        return new BoxDataSet(new BufferDataBox(vars, 4, continuousData, new IntBuffer[4]), vars);
+    }
+
+    /**
+     * @return the number of rows in this data box.
+     */
+    public int numRows() {
+        return numRows;
+    }
+
+    /**
+     * @return the number of columns in this data box.
+     */
+    public int numCols() {
+        return variables.size();
+    }
+
+    /**
+     * Sets the value at the given row/column to the given Number value. A
+     * read-only column is first copied onto the heap.
+     */
+    public void set(int row, int col, Number value) {
+        if (continuousData[col] != null) {
+            synchronized (continuousData) {
+                if (continuousData[col].isReadOnly()) {
+                    continuousData[col] = copy(continuousData[col]);
+                }
+
+                continuousData[col].put(row, value == null ? Double.NaN : value.doubleValue());
+            }
+        } else {
+            synchronized (discreteData) {
+                if (discreteData[col].isReadOnly()) {
+                    discreteData[col] = copy(discreteData[col]);
+                }
+
+                discreteData[col].put(row, value == null ? -99 : value.intValue());
+            }
+        }
+    }
+
+    /**
+     * @return the Number value at the given row and column. A missing
+     * discrete value (-99) is returned as null.
+     */
+    public Number get(int row, int col) {
+        if (continuousData[col] != null) {
+            return continuousData[col].get(row);
+        }
+
+        int datum = discreteData[col].get(row);
+
+        if (datum == -99) {
+            return null;
+        } else {
+            return datum;
+        }
+    }
+
+    /**
+     * @return the buffer of the given continuous column, or null if the
+     * column is discrete. The buffer should not be modified.
+     */
+    public DoubleBuffer getContinuousData(int col) {
+        return continuousData[col];
+    }
+
+    /**
+     * @return the buffer of the given discrete column, or null if the column
+     * is continuous. The buffer should not be modified.
+     */
+    public IntBuffer getDiscreteData(int col) {
+        return discreteData[col];
+    }
+
+    /**
+     * Computes the covariance matrix of the columns of this data box directly
+     * from the column buffers, a column at a time in parallel, without
+     * copying the data into a matrix. All columns must be continuous.
+     *
+     * @param biasCorrected whether to divide by N - 1 rather than by N
+     * @return the covariance matrix, indexed by column
+     */
+    public double[][] getCovarianceMatrix(boolean biasCorrected) {
+        int numCols = numCols();
+
+        for (int j = 0; j < numCols; j++) {
+            if (continuousData[j] == null) {
+                throw new IllegalStateException("Column " + j + " is not continuous.");
+            }
+        }
+
+        double[] means = new double[numCols];
+        double[][] covariances = new double[numCols][numCols];
+        double n = biasCorrected ? numRows - 1 : numRows;
+
+        IntStream.range(0, numCols).parallel().forEach(j -> {
+            DoubleBuffer column = continuousData[j];
+            double sum = 0;
+            for (int i = 0; i < numRows; i++) sum += column.get(i);
+            means[j] = sum / numRows;
+        });
+
+        IntStream.range(0, numCols).parallel().forEach(j -> {
+            DoubleBuffer column = continuousData[j];
+            double mean = means[j];
+
+            for (int k = 0; k <= j; k++) {
+                DoubleBuffer column2 = continuousData[k];
+                double mean2 = means[k];
+                double sum = 0;
+                for (int i = 0; i < numRows; i++) sum += (column.get(i) - mean) * (column2.get(i) - mean2);
+                covariances[j][k] = sum / n;
+                covariances[k][j] = sum / n;
+            }
+        });
+
+        return covariances;
+    }
+
+    /**
+     * @return a copy of this data box, allocated the same way. Read-only
+     * columns are shared.
+     */
+    public DataBox copy() {
+        int[] cols = new int[numCols()];
+        for (int j = 0; j < numCols(); j++) cols[j] = j;
+        return selectColumns(cols);
+    }
+
+    /**
+     * @return a BufferDataBox with the same dimensions and column types as
+     * this one, allocated the same way, with all values zero.
+     */
+    public DataBox like() {
+        DoubleBuffer[] newContinuousData = new DoubleBuffer[numCols()];
+        IntBuffer[] newDiscreteData = new IntBuffer[numCols()];
+
+        for (int j = 0; j < numCols(); j++) {
+            if (continuousData[j] != null) {
+                newContinuousData[j] = allocateDoubles(numRows, direct, spillDirectory);
+            } else {
+                newDiscreteData[j] = allocateInts(numRows, direct, spillDirectory);
+            }
+        }
+
+        return new BufferDataBox(new ArrayList<>(variables), numRows, newContinuousData, newDiscreteData,
+                direct, spillDirectory);
+    }
+
+    @Override
+    public DataBox viewSelection(int[] rows, int[] cols) {
+        boolean allRows = rows.length == numRows;
+
+        for (int i = 0; i < rows.length && allRows; i++) {
+            allRows = rows[i] == i;
+        }
+
+        if (allRows) {
+            return selectColumns(cols);
+        }
+
+        List<Node> newVars = new ArrayList<>();
+        DoubleBuffer[] newContinuousData = new DoubleBuffer[cols.length];
+        IntBuffer[] newDiscreteData = new IntBuffer[cols.length];
+
+        for (int j = 0; j < cols.length; j++) {
+            newVars.add(variables.get(cols[j]));
+            DoubleBuffer continuous = continuousData[cols[j]];
+            IntBuffer discrete = discreteData[cols[j]];
+
+            if (continuous != null) {
+                DoubleBuffer column = allocateDoubles(rows.length, direct, spillDirectory);
+                for (int i = 0; i < rows.length; i++) column.put(i, continuous.get(rows[i]));
+                newContinuousData[j] = column;
+            } else {
+                IntBuffer column = allocateInts(rows.length, direct, spillDirectory);
+                for (int i = 0; i < rows.length; i++) column.put(i, discrete.get(rows[i]));
+                newDiscreteData[j] = column;
+            }
+        }
+
+        return new BufferDataBox(newVars, rows.length, newContinuousData, newDiscreteData, direct, spillDirectory);
+    }
+
+    /**
+     * Buffers cannot be serialized, so the data is serialized as a
+     * MixedDataBox.
+     */
+    private Object writeReplace() {
+        double[][] _continuousData = new double[numCols()][];
+        int[][] _discreteData = new int[numCols()][];
+
+        for (int j = 0; j < numCols(); j++) {
+            if (continuousData[j] != null) {
+                _continuousData[j] = new double[numRows];
+                ((DoubleBuffer) continuousData[j].duplicate().clear()).get(_continuousData[j]);
+            } else {
+                _discreteData[j] = new int[numRows];
+                ((IntBuffer) discreteData[j].duplicate().clear()).get(_discreteData[j]);
+            }
+        }
+
+        return new MixedDataBox(new ArrayList<>(variables), numRows, _continuousData, _discreteData);
+    }
+
+    private BufferDataBox selectColumns(int[] cols) {
+        List<Node> newVars = new ArrayList<>();
+        DoubleBuffer[] newContinuousData = new DoubleBuffer[cols.length];
+        IntBuffer[] newDiscreteData = new IntBuffer[cols.length];
+
+        for (int j = 0; j < cols.length; j++) {
+            newVars.add(variables.get(cols[j]));
+            DoubleBuffer continuous = continuousData[cols[j]];
+            IntBuffer discrete = discreteData[cols[j]];
+
+            if (continuous != null) {
+                newContinuousData[j] = continuous.isReadOnly() ? continuous.duplicate() : copy(continuous);
+            } else {
+                newDiscreteData[j] = discrete.isReadOnly() ? discrete.duplicate() : copy(discrete);
+            }
+        }
+
+        return new BufferDataBox(newVars, numRows, newContinuousData, newDiscreteData, direct, spillDirectory);
+    }
+
+    private DoubleBuffer copy(DoubleBuffer buffer) {
+        DoubleBuffer column = allocateDoubles(numRows, direct, spillDirectory);
+        column.put((DoubleBuffer) buffer.duplicate().clear().limit(numRows));
+        return (DoubleBuffer) column.clear();
+    }
+
+    private IntBuffer copy(IntBuffer buffer) {
+        IntBuffer column = allocateInts(numRows, direct, spillDirectory);
+        column.put((IntBuffer) buffer.duplicate().clear().limit(numRows));
+        return (IntBuffer) column.clear();
+    }
+
+    private static DoubleBuffer allocateDoubles(int numRows, boolean direct, Path spillDirectory) {
+        long size = checkColumnSize(Double.BYTES * (long) numRows);
+
+        if (spillDirectory != null) {
+            return map(spillDirectory, size).asDoubleBuffer();
+        } else if (direct) {
+            return ByteBuffer.allocateDirect((int) size).order(ByteOrder.nativeOrder()).asDoubleBuffer();
+        } else {
+            return DoubleBuffer.wrap(new double[numRows]);
+        }
+    }
+
+    private static IntBuffer allocateInts(int numRows, boolean direct, Path spillDirectory) {
+        long size = checkColumnSize(Integer.BYTES * (long) numRows);
+
+        if (spillDirectory != null) {
+            return map(spillDirectory, size).asIntBuffer();
+        } else if (direct) {
+            return ByteBuffer.allocateDirect((int) size).order(ByteOrder.nativeOrder()).asIntBuffer();
+        } else {
+            return IntBuffer.wrap(new int[numRows]);
+        }
+    }
+
+    // Byte buffers are indexed by int, so no column can be larger than that.
+    private static long checkColumnSize(long size) {
+        if (size > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("A column can't be larger than " + Integer.MAX_VALUE + " bytes.");
+        }
+
+        return size;
+    }
+
+    private static ByteBuffer map(Path spillDirectory, long size) {
+        try {
+            Path file = Files.createTempFile(spillDirectory, "tetrad", ".column");
+            ByteBuffer buffer;
+
+            try (RandomAccessFile randomAccessFile = new RandomAccessFile(file.toFile(), "rw")) {
+                randomAccessFile.setLength(size);
+                buffer = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+            }
+
+            try {
+                Files.delete(file);
+            } catch (IOException e) {
+                file.toFile().deleteOnExit();
+            }
+
+            return buffer.order(ByteOrder.nativeOrder());
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
+
+
+
@@ -0,0 +1,161 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+
+package edu.cmu.tetrad.data;
+
+import edu.cmu.tetrad.graph.Node;
+import edu.pitt.dbmi.data.reader.columnar.ColumnarDataFormat;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * Saves data sets in the binary columnar format described in
+ * ColumnarDataFormat. Such files are read back by ColumnarDataFileReader,
+ * which maps the columns into memory instead of parsing them.
+ *
+ * @author Joseph Ramsey
+ * @see DataWriter
+ */
+public final class ColumnarDataWriter {
+
+    private static final int BUFFER_SIZE = 1024 * 1024;
+
+    private ColumnarDataWriter() {
+    }
+
+    /**
+     * Writes a data set to file in the columnar format. All variables must be
+     * continuous or discrete.
+     *
+     * @param dataSet The data set to save.
+     * @param file    The file to write, which is replaced if it exists.
+     * @throws IOException If there is some problem writing the file.
+     */
+    public static void writeColumnarData(DataSet dataSet, Path file) throws IOException {
+        List<Node> variables = dataSet.getVariables();
+        int numRows = dataSet.getNumRows();
+
+        byte[] types = new byte[variables.size()];
+        byte[][] names = new byte[variables.size()][];
+        byte[][][] categories = new byte[variables.size()][][];
+        int headerSize = ColumnarDataFormat.MAGIC.length + 12;
+
+        for (int j = 0; j < variables.size(); j++) {
+            Node variable = variables.get(j);
+            names[j] = variable.getName().getBytes(ColumnarDataFormat.CHARSET);
+            headerSize += 1 + 4 + names[j].length;
+
+            if (variable instanceof ContinuousVariable) {
+                types[j] = ColumnarDataFormat.CONTINUOUS;
+            } else if (variable instanceof DiscreteVariable) {
+                types[j] = ColumnarDataFormat.DISCRETE;
+
+                List<String> _categories = ((DiscreteVariable) variable).getCategories();
+                categories[j] = new byte[_categories.size()][];
+                headerSize += 4;
+
+                for (int k = 0; k < _categories.size(); k++) {
+                    categories[j][k] = _categories.get(k).getBytes(ColumnarDataFormat.CHARSET);
+                    headerSize += 4 + categories[j][k].length;
+                }
+            } else {
+                throw new IllegalArgumentException("Only continuous and discrete variables can be saved: " + variable);
+            }
+        }
+
+        ByteBuffer header = ByteBuffer.allocate(headerSize).order(ColumnarDataFormat.BYTE_ORDER);
+        header.put(ColumnarDataFormat.MAGIC);
+        header.putInt(ColumnarDataFormat.VERSION);
+        header.putInt(numRows);
+        header.putInt(variables.size());
+
+        for (int j = 0; j < variables.size(); j++) {
+            header.put(types[j]);
+            putString(header, names[j]);
+
+            if (types[j] == ColumnarDataFormat.DISCRETE) {
+                header.putInt(categories[j].length);
+
+                for (byte[] category : categories[j]) {
+                    putString(header, category);
+                }
+            }
+        }
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            header.flip();
+            writeFully(channel, header);
+
+            ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ColumnarDataFormat.BYTE_ORDER);
+            long position = headerSize;
+
+            for (int j = 0; j < variables.size(); j++) {
+                long start = ColumnarDataFormat.align(position);
+
+                // pad up to the start of the column block
+                buffer.clear();
+                for (long p = position; p < start; p++) {
+                    buffer.put((byte) 0);
+                }
+
+                for (int i = 0; i < numRows; i++) {
+                    if (buffer.remaining() < 8) {
+                        buffer.flip();
+                        writeFully(channel, buffer);
+                        buffer.clear();
+                    }
+
+                    if (types[j] == ColumnarDataFormat.CONTINUOUS) {
+                        buffer.putDouble(dataSet.getDouble(i, j));
+                    } else {
+                        buffer.putInt(dataSet.getInt(i, j));
+                    }
+                }
+
+                buffer.flip();
+                writeFully(channel, buffer);
+
+                position = start + ColumnarDataFormat.getBlockSize(types[j], numRows);
+            }
+        }
+    }
+
+    private static void putString(ByteBuffer buffer, byte[] bytes) {
+        buffer.putInt(bytes.length);
+        buffer.put(bytes);
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+}
+
+
+
@@ -0,0 +1,265 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+
+package edu.cmu.tetrad.data;
+
+import edu.cmu.tetrad.graph.Node;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Accumulates means and covariances of continuous data one row or one batch of
+ * rows at a time, so that a covariance matrix can be made from data that is
+ * read once but never held in memory as a whole. Rows are added with Welford's
+ * update; batches are summarized by their own means and centered sums and then
+ * merged in, which is also how accumulators built on different threads or from
+ * different files are combined (Chan, Golub and LeVeque, 1979).
+ * <p>
+ * An accumulator is not thread-safe; give each thread its own and merge them.
+ *
+ * @author Joseph Ramsey
+ */
+public class CovarianceAccumulator {
+
+    private final List<Node> variables;
+    private final int numVars;
+
+    // Number of rows added.
+    private long n = 0;
+
+    // Running means.
+    private final double[] means;
+
+    // Lower triangle, row by row, of the sums of products of deviations from
+    // the running means.
+    private final double[] comoments;
+
+    /**
+     * Constructs an empty accumulator for the given continuous variables.
+     *
+     * @param variables the variables, in the column order of the rows that
+     *                  will be added.
+     */
+    public CovarianceAccumulator(List<Node> variables) {
+        if (variables == null) {
+            throw new NullPointerException("Variables must not be null.");
+        }
+
+        this.variables = new ArrayList<>(variables);
+        this.numVars = variables.size();
+        this.means = new double[numVars];
+        this.comoments = new double[(numVars * (numVars + 1)) / 2];
+    }
+
+    /**
+     * Adds a single row.
+     *
+     * @param row the values of the variables, in order.
+     */
+    public void addRow(double[] row) {
+        checkRow(row);
+
+        n++;
+
+        double[] delta = new double[numVars];
+
+        for (int j = 0; j < numVars; j++) {
+            delta[j] = row[j] - means[j];
+            means[j] += delta[j] / n;
+        }
+
+        int index = 0;
+
+        for (int j = 0; j < numVars; j++) {
+            double residual = row[j] - means[j];
+
+            for (int k = 0; k <= j; k++) {
+                comoments[index++] += residual * delta[k];
+            }
+        }
+    }
+
+    /**
+     * Adds a batch of rows, for instance the data of a continuous tabular
+     * data file as read by the data reader.
+     *
+     * @param rows the rows, each with the values of the variables in order.
+     */
+    public void addRows(double[][] rows) {
+        if (rows.length == 0) {
+            return;
+        }
+
+        for (double[] row : rows) {
+            checkRow(row);
+        }
+
+        CovarianceAccumulator batch = new CovarianceAccumulator(variables);
+        batch.n = rows.length;
+
+        for (double[] row : rows) {
+            for (int j = 0; j < numVars; j++) {
+                batch.means[j] += row[j];
+            }
+        }
+
+        for (int j = 0; j < numVars; j++) {
+            batch.means[j] /= rows.length;
+        }
+
+        double[] residuals = new double[numVars];
+
+        for (double[] row : rows) {
+            for (int j = 0; j < numVars; j++) {
+                residuals[j] = row[j] - batch.means[j];
+            }
+
+            int index = 0;
+
+            for (int j = 0; j < numVars; j++) {
+                for (int k = 0; k <= j; k++) {
+                    batch.comoments[index++] += residuals[j] * residuals[k];
+                }
+            }
+        }
+
+        merge(batch);
+    }
+
+    /**
+     * Adds the rows of the given continuous data set. Its columns must be the
+     * variables of this accumulator, in order.
+     *
+     * @param dataSet the data set.
+     */
+    public void addRows(DataSet dataSet) {
+        if (dataSet.getNumColumns() != numVars) {
+            throw new IllegalArgumentException("Expecting " + numVars + " columns: " + dataSet.getNumColumns());
+        }
+
+        double[][] rows = new double[dataSet.getNumRows()][numVars];
+
+        for (int i = 0; i < rows.length; i++) {
+            for (int j = 0; j < numVars; j++) {
+                rows[i][j] = dataSet.getDouble(i, j);
+            }
+        }
+
+        addRows(rows);
+    }
+
+    /**
+     * Merges the rows added to another accumulator for the same variables into
+     * this one. The other accumulator is unchanged.
+     *
+     * @param other the other accumulator.
+     */
+    public void merge(CovarianceAccumulator other) {
+        if (other.numVars != numVars) {
+            throw new IllegalArgumentException("Accumulators are for different numbers of variables.");
+        }
+
+        if (other.n == 0) {
+            return;
+        }
+
+        long total = n + other.n;
+        double weight = (double) n * other.n / total;
+        double[] delta = new double[numVars];
+
+        for (int j = 0; j < numVars; j++) {
+            delta[j] = other.means[j] - means[j];
+        }
+
+        int index = 0;
+
+        for (int j = 0; j < numVars; j++) {
+            for (int k = 0; k <= j; k++) {
+                comoments[index] += other.comoments[index] + delta[j] * delta[k] * weight;
+                index++;
+            }
+        }
+
+        for (int j = 0; j < numVars; j++) {
+            means[j] += delta[j] * other.n / total;
+        }
+
+        n = total;
+    }
+
+    /**
+     * @return the number of rows added so far.
+     */
+    public long getSampleSize() {
+        return n;
+    }
+
+    /**
+     * @return the means of the variables over the rows added so far.
+     */
+    public double[] getMeans() {
+        return means.clone();
+    }
+
+    /**
+     * @return the covariance matrix of the rows added so far, with N - 1 in
+     * the denominator.
+     */
+    public ICovarianceMatrix getCovarianceMatrix() {
+        return getCovarianceMatrix(true);
+    }
+
+    /**
+     * @param biasCorrected whether to divide by N - 1 rather than by N.
+     * @return the covariance matrix of the rows added so far.
+     */
+    public ICovarianceMatrix getCovarianceMatrix(boolean biasCorrected) {
+        if (n < 2) {
+            throw new IllegalStateException("Need at least two rows to compute covariances: " + n);
+        }
+
+        if (n > Integer.MAX_VALUE) {
+            throw new IllegalStateException("Sample size too large for a covariance matrix: " + n);
+        }
+
+        double denominator = biasCorrected ? n - 1 : n;
+        double[][] covariances = new double[numVars][numVars];
+        int index = 0;
+
+        for (int j = 0; j < numVars; j++) {
+            for (int k = 0; k <= j; k++) {
+                covariances[j][k] = comoments[index] / denominator;
+                covariances[k][j] = comoments[index] / denominator;
+                index++;
+            }
+        }
+
+        return new CovarianceMatrix(new ArrayList<>(variables), covariances, (int) n);
+    }
+
+    private void checkRow(double[] row) {
+        if (row.length != numVars) {
+            throw new IllegalArgumentException("Expecting " + numVars + " values in each row: " + row.length);
+        }
+    }
+}
@@ -102,10 +102,18 @@ public class CovarianceMatrix implements ICovarianceMatrix {
             throw new IllegalArgumentException("Not a continuous data set.");
         }
 
-        CovariancesDoubleForkJoin covariances = new CovariancesDoubleForkJoin(dataSet.getDoubleData().toArray(), biasCorrected);
         this.variables = Collections.unmodifiableList(dataSet.getVariables());
         this.sampleSize = dataSet.getNumRows();
-        this._covariancesMatrix = new TetradMatrix(covariances.getMatrix());
+
+        // Buffer-backed data may not fit on the heap as a matrix, so it is
+        // read column by column where it is.
+        if (dataSet instanceof BoxDataSet && ((BoxDataSet) dataSet).getDataBox() instanceof BufferDataBox) {
+            BufferDataBox dataBox = (BufferDataBox) ((BoxDataSet) dataSet).getDataBox();
+            this._covariancesMatrix = new TetradMatrix(dataBox.getCovarianceMatrix(biasCorrected));
+        } else {
+            CovariancesDoubleForkJoin covariances = new CovariancesDoubleForkJoin(dataSet.getDoubleData().toArray(), biasCorrected);
+            this._covariancesMatrix = new TetradMatrix(covariances.getMatrix());
+        }
     }
 
     /**
@@ -0,0 +1,686 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+
+package edu.cmu.tetrad.data;
+
+import edu.cmu.tetrad.graph.Node;
+import edu.cmu.tetrad.util.NumberFormatUtil;
+import edu.cmu.tetrad.util.TetradMatrix;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.text.NumberFormat;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.IntStream;
+
+/**
+ * A covariance matrix for data sets with too many variables for the whole
+ * matrix to be stored. Covariances are computed from the mean-centered data in
+ * square tiles, only when a tile is first needed, and the most recently used
+ * tiles are kept in a cache of bounded size. A search that looks at a small
+ * part of the matrix then only pays for the tiles it touches.
+ * <p>
+ * getSelection computes the tiles it needs that aren't cached in parallel
+ * and copies the values out of the tiles. The numbers of tile hits and misses
+ * are reported by getTileHits and getTileMisses.
+ *
+ * @author Joseph Ramsey
+ * @see CovarianceMatrix
+ */
+public class CovarianceMatrixOnTheFly implements ICovarianceMatrix {
+    static final long serialVersionUID = 23L;
+
+    /**
+     * The default number of variables along each side of a tile.
+     */
+    public static final int DEFAULT_TILE_SIZE = 64;
+
+    /**
+     * The default maximum number of cached tiles.
+     */
+    public static final int DEFAULT_MAX_TILES = 1024;
+
+    /**
+     * The name of the covariance matrix.
+     *
+     * @serial May be null.
+     */
+    private String name;
+
+    /**
+     * The variables (in order) for this covariance matrix.
+     *
+     * @serial Cannot be null.
+     */
+    private List<Node> variables;
+
+    /**
+     * The size of the sample from which this covariance matrix was calculated.
+     *
+     * @serial Range > 0.
+     */
+    private int sampleSize;
+
+    /**
+     * The mean-centered data, column by column.
+     *
+     * @serial Cannot be null.
+     */
+    private final double[][] vectors;
+
+    /**
+     * True if covariances are divided by N - 1 rather than by N.
+     *
+     * @serial
+     */
+    private final boolean biasCorrected;
+
+    /**
+     * The number of variables along each side of a tile.
+     *
+     * @serial Range > 0.
+     */
+    private final int tileSize;
+
+    /**
+     * The maximum number of tiles kept in the cache.
+     *
+     * @serial Range > 0.
+     */
+    private final int maxTiles;
+
+    /**
+     * The list of selected variables.
+     *
+     * @serial Cannot be null.
+     */
+    private Set<Node> selectedVariables = new HashSet<>();
+
+    /**
+     * The knowledge for this data.
+     *
+     * @serial Cannot be null.
+     */
+    private IKnowledge knowledge = new Knowledge2();
+
+    // Tiles on or below the diagonal, by tile row and column, in access order.
+    private transient Map<Long, double[]> tiles;
+
+    private transient AtomicLong tileHits;
+    private transient AtomicLong tileMisses;
+
+    //=============================CONSTRUCTORS=========================//
+
+    /**
+     * Constructs a new covariance matrix from the given continuous data set,
+     * with the default tile size and cache bound. Covariances are bias
+     * corrected.
+     *
+     * @throws IllegalArgumentException if this is not a continuous data set.
+     */
+    public CovarianceMatrixOnTheFly(DataSet dataSet) {
+        this(dataSet, true);
+    }
+
+    public CovarianceMatrixOnTheFly(DataSet dataSet, boolean biasCorrected) {
+        this(dataSet, biasCorrected, DEFAULT_TILE_SIZE, DEFAULT_MAX_TILES);
+    }
+
+    /**
+     * Constructs a new covariance matrix from the given continuous data set.
+     *
+     * @param dataSet       the data.
+     * @param biasCorrected whether to divide by N - 1 rather than by N.
+     * @param tileSize      the number of variables along each side of a tile.
+     * @param maxTiles      the maximum number of tiles to cache; each takes
+     *                      8 * tileSize * tileSize bytes.
+     * @throws IllegalArgumentException if this is not a continuous data set.
+     */
+    public CovarianceMatrixOnTheFly(DataSet dataSet, boolean biasCorrected, int tileSize, int maxTiles) {
+        if (!dataSet.isContinuous()) {
+            throw new IllegalArgumentException("Not a continuous data set.");
+        }
+
+        if (tileSize < 1) {
+            throw new IllegalArgumentException("Tile size must be at least 1: " + tileSize);
+        }
+
+        if (maxTiles < 1) {
+            throw new IllegalArgumentException("The cache must hold at least one tile: " + maxTiles);
+        }
+
+        this.variables = Collections.unmodifiableList(dataSet.getVariables());
+        this.sampleSize = dataSet.getNumRows();
+        this.biasCorrected = biasCorrected;
+        this.tileSize = tileSize;
+        this.maxTiles = maxTiles;
+        this.vectors = new double[dataSet.getNumColumns()][];
+
+        IntStream.range(0, vectors.length).parallel().forEach(j -> {
+            double[] vector = new double[sampleSize];
+            double sum = 0;
+
+            for (int i = 0; i < sampleSize; i++) {
+                vector[i] = dataSet.getDouble(i, j);
+                sum += vector[i];
+            }
+
+            double mean = sum / sampleSize;
+
+            for (int i = 0; i < sampleSize; i++) {
+                vector[i] -= mean;
+            }
+
+            vectors[j] = vector;
+        });
+
+        initializeCache();
+    }
+
+    private CovarianceMatrixOnTheFly(CovarianceMatrixOnTheFly cov) {
+        this.name = cov.name;
+        this.variables = cov.variables;
+        this.sampleSize = cov.sampleSize;
+        this.vectors = cov.vectors;
+        this.biasCorrected = cov.biasCorrected;
+        this.tileSize = cov.tileSize;
+        this.maxTiles = cov.maxTiles;
+        this.selectedVariables = new HashSet<>(cov.selectedVariables);
+        this.knowledge = cov.knowledge.copy();
+
+        initializeCache();
+    }
+
+    /**
+     * Generates a simple exemplar of this class to test serialization.
+     */
+    public static CovarianceMatrixOnTheFly serializableInstance() {
+        List<Node> variables = new ArrayList<>();
+        variables.add(new ContinuousVariable("X"));
+        return new CovarianceMatrixOnTheFly(new BoxDataSet(new DoubleDataBox(2, 1), variables));
+    }
+
+    //============================PUBLIC METHODS=========================//
+
+    /**
+     * @return the list of variables (unmodifiable).
+     */
+    public final List<Node> getVariables() {
+        return this.variables;
+    }
+
+    /**
+     * @return the variable names, in order.
+     */
+    public final List<String> getVariableNames() {
+        List<String> names = new ArrayList<>();
+
+        for (Node variable : getVariables()) {
+            names.add(variable.getName());
+        }
+
+        return names;
+    }
+
+    /**
+     * @return the variable name at the given index.
+     */
+    public final String getVariableName(int index) {
+        if (index >= getVariables().size()) {
+            throw new IllegalArgumentException("Index out of range: " + index);
+        }
+
+        return getVariables().get(index).getName();
+    }
+
+    /**
+     * @return the dimension of the covariance matrix.
+     */
+    public final int getDimension() {
+        return variables.size();
+    }
+
+    /**
+     * The size of the sample used to calculated this covariance matrix.
+     *
+     * @return The sample size (> 0).
+     */
+    public final int getSampleSize() {
+        return this.sampleSize;
+    }
+
+    /**
+     * Gets the name of the covariance matrix.
+     */
+    public final String getName() {
+        return this.name;
+    }
+
+    /**
+     * Sets the name of the covariance matrix.
+     */
+    public final void setName(String name) {
+        this.name = name;
+    }
+
+    /**
+     * @return the knowledge associated with this data.
+     */
+    public final IKnowledge getKnowledge() {
+        return this.knowledge.copy();
+    }
+
+    /**
+     * Associates knowledge with this data.
+     */
+    public final void setKnowledge(IKnowledge knowledge) {
+        if (knowledge == null) {
+            throw new NullPointerException();
+        }
+
+        this.knowledge = knowledge.copy();
+    }
+
+    /**
+     * @return a submatrix of the covariance matrix with variables in the
+     * given order.
+     */
+    public final ICovarianceMatrix getSubmatrix(int[] indices) {
+        List<Node> submatrixVars = new LinkedList<>();
+
+        for (int index : indices) {
+            submatrixVars.add(variables.get(index));
+        }
+
+        return new CovarianceMatrix(submatrixVars, getSelection(indices, indices), getSampleSize());
+    }
+
+    public final ICovarianceMatrix getSubmatrix(List<String> submatrixVarNames) {
+        return getSubmatrix(submatrixVarNames.toArray(new String[0]));
+    }
+
+    /**
+     * @return a submatrix of this matrix, with variables in the given order.
+     */
+    public final ICovarianceMatrix getSubmatrix(String[] submatrixVarNames) {
+        int[] indices = new int[submatrixVarNames.length];
+
+        for (int i = 0; i < submatrixVarNames.length; i++) {
+            indices[i] = getVariableNames().indexOf(submatrixVarNames[i]);
+
+            if (indices[i] == -1) {
+                throw new IllegalArgumentException("The variables in the submatrix must be in the original matrix: "
+                        + submatrixVarNames[i]);
+            }
+        }
+
+        return getSubmatrix(indices);
+    }
+
+    /**
+     * @return the value of element (i,j) in the matrix
+     */
+    public final double getValue(int i, int j) {
+        if (i < j) {
+            return getValue(j, i);
+        }
+
+        double[] tile = getTile(i / tileSize, j / tileSize);
+        return tile[(i % tileSize) * tileSize + (j % tileSize)];
+    }
+
+    public void setMatrix(TetradMatrix matrix) {
+        throw new UnsupportedOperationException("Covariances are computed from the data.");
+    }
+
+    public final void setSampleSize(int sampleSize) {
+        if (sampleSize <= 0) {
+            throw new IllegalArgumentException("Sample size must be > 0.");
+        }
+
+        this.sampleSize = sampleSize;
+    }
+
+    /**
+     * @return the size of the square matrix.
+     */
+    public final int getSize() {
+        return getDimension();
+    }
+
+    /**
+     * @return the whole covariance matrix. This stores every covariance, so it
+     * should be used only when there are few enough variables.
+     */
+    public final TetradMatrix getMatrix() {
+        int[] indices = new int[getDimension()];
+        for (int i = 0; i < indices.length; i++) indices[i] = i;
+        return getSelection(indices, indices);
+    }
+
+    public final void select(Node variable) {
+        if (variables.contains(variable)) {
+            selectedVariables.add(variable);
+        }
+    }
+
+    public final void clearSelection() {
+        selectedVariables.clear();
+    }
+
+    public final boolean isSelected(Node variable) {
+        if (variable == null) {
+            throw new NullPointerException("Null variable. Try again.");
+        }
+
+        return selectedVariables.contains(variable);
+    }
+
+    public final List<String> getSelectedVariableNames() {
+        List<String> selectedVariableNames = new LinkedList<>();
+
+        for (Node variable : selectedVariables) {
+            selectedVariableNames.add(variable.getName());
+        }
+
+        return selectedVariableNames;
+    }
+
+    /**
+     * Prints out the matrix
+     */
+    public final String toString() {
+        NumberFormat nf = NumberFormatUtil.getInstance().getNumberFormat();
+
+        StringBuilder buf = new StringBuilder();
+
+        int numVars = getVariableNames().size();
+        buf.append(getSampleSize()).append("\n");
+
+        for (int i = 0; i < numVars; i++) {
+            String name = getVariableNames().get(i);
+            buf.append(name).append("\t");
+        }
+
+        buf.append("\n");
+
+        for (int j = 0; j < numVars; j++) {
+            for (int i = 0; i <= j; i++) {
+                buf.append(nf.format(getValue(i, j))).append("\t");
+            }
+            buf.append("\n");
+        }
+
+        return buf.toString();
+    }
+
+    @Override
+    public boolean isContinuous() {
+        return true;
+    }
+
+    @Override
+    public boolean isDiscrete() {
+        return false;
+    }
+
+    @Override
+    public boolean isMixed() {
+        return false;
+    }
+
+    public void setVariables(List<Node> variables) {
+        if (variables.size() != this.variables.size()) throw new IllegalArgumentException("Wrong # of variables.");
+        this.variables = Collections.unmodifiableList(new ArrayList<>(variables));
+    }
+
+    /**
+     * @return the covariances between the given rows and columns. Tiles that
+     * are needed but not cached are computed in parallel first.
+     */
+    @Override
+    public TetradMatrix getSelection(int[] rows, int[] cols) {
+        int numTiles = numTiles();
+        Set<Long> keys = new HashSet<>();
+
+        for (int row : rows) {
+            for (int col : cols) {
+                int tileRow = Math.max(row, col) / tileSize;
+                int tileCol = Math.min(row, col) / tileSize;
+                keys.add((long) tileRow * numTiles + tileCol);
+            }
+        }
+
+        Map<Long, double[]> selectedTiles = new HashMap<>();
+        List<Long> missing = new ArrayList<>();
+
+        for (long key : keys) {
+            double[] tile = getCachedTile(key);
+
+            if (tile != null) {
+                selectedTiles.put(key, tile);
+            } else {
+                missing.add(key);
+            }
+        }
+
+        if (!missing.isEmpty()) {
+            tileMisses.addAndGet(missing.size());
+
+            Map<Long, double[]> computed = new HashMap<>();
+            missing.parallelStream().forEach(key -> {
+                double[] tile = computeTile((int) (key / numTiles), (int) (key % numTiles));
+
+                synchronized (computed) {
+                    computed.put(key, tile);
+                }
+            });
+
+            selectedTiles.putAll(computed);
+
+            synchronized (tiles) {
+                tiles.putAll(computed);
+            }
+        }
+
+        TetradMatrix m = new TetradMatrix(rows.length, cols.length);
+
+        for (int i = 0; i < rows.length; i++) {
+            for (int j = 0; j < cols.length; j++) {
+                int row = Math.max(rows[i], cols[j]);
+                int col = Math.min(rows[i], cols[j]);
+                double[] tile = selectedTiles.get((long) (row / tileSize) * numTiles + col / tileSize);
+                m.set(i, j, tile[(row % tileSize) * tileSize + (col % tileSize)]);
+            }
+        }
+
+        return m;
+    }
+
+    public Node getVariable(String name) {
+        for (Node variable : getVariables()) {
+            if (name.equals(variable.getName())) {
+                return variable;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * @return a copy of this matrix, sharing the data but with its own tile
+     * cache.
+     */
+    @Override
+    public DataModel copy() {
+        return new CovarianceMatrixOnTheFly(this);
+    }
+
+    @Override
+    public void setValue(int i, int j, double v) {
+        throw new UnsupportedOperationException("Covariances are computed from the data.");
+    }
+
+    @Override
+    public void removeVariables(List<String> remaining) {
+        throw new IllegalStateException();
+    }
+
+    /**
+     * @return the number of tile lookups that found the tile in the cache.
+     */
+    public long getTileHits() {
+        return tileHits.get();
+    }
+
+    /**
+     * @return the number of tile lookups that had to compute the tile.
+     */
+    public long getTileMisses() {
+        return tileMisses.get();
+    }
+
+    /**
+     * @return the number of tiles in the cache.
+     */
+    public int getNumCachedTiles() {
+        synchronized (tiles) {
+            return tiles.size();
+        }
+    }
+
+    //========================PRIVATE METHODS============================//
+
+    private void initializeCache() {
+        this.tiles = new LinkedHashMap<Long, double[]>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, double[]> eldest) {
+                return size() > maxTiles;
+            }
+        };
+
+        this.tileHits = new AtomicLong();
+        this.tileMisses = new AtomicLong();
+    }
+
+    private int numTiles() {
+        return (getDimension() + tileSize - 1) / tileSize;
+    }
+
+    private double[] getCachedTile(long key) {
+        double[] tile;
+
+        synchronized (tiles) {
+            tile = tiles.get(key);
+        }
+
+        if (tile != null) {
+            tileHits.incrementAndGet();
+        }
+
+        return tile;
+    }
+
+    private double[] getTile(int tileRow, int tileCol) {
+        long key = (long) tileRow * numTiles() + tileCol;
+        double[] tile = getCachedTile(key);
+
+        if (tile == null) {
+            tileMisses.incrementAndGet();
+            tile = computeTile(tileRow, tileCol);
+
+            synchronized (tiles) {
+                tiles.put(key, tile);
+            }
+        }
+
+        return tile;
+    }
+
+    /**
+     * Computes the tile at the given tile row and column, row by row in
+     * parallel. Entries past the last variable are left at zero. The
+     * covariances are scaled by the number of rows in the data, not by the
+     * sample size, which setSampleSize may change after tiles are cached.
+     */
+    private double[] computeTile(int tileRow, int tileCol) {
+        double[] tile = new double[tileSize * tileSize];
+        int numVars = getDimension();
+        int numRows = vectors[0].length;
+        double n = biasCorrected ? numRows - 1 : numRows;
+
+        IntStream.range(0, tileSize).parallel().forEach(r -> {
+            int i = tileRow * tileSize + r;
+            if (i >= numVars) return;
+            double[] vector = vectors[i];
+
+            for (int c = 0; c < tileSize; c++) {
+                int j = tileCol * tileSize + c;
+                if (j >= numVars) break;
+                double[] vector2 = vectors[j];
+
+                double sum = 0;
+                for (int k = 0; k < vector.length; k++) sum += vector[k] * vector2[k];
+                tile[r * tileSize + c] = sum / n;
+            }
+        });
+
+        return tile;
+    }
+
+    /**
+     * Adds semantic checks to the default deserialization method. This method
+     * must have the standard signature for a readObject method, and the body of
+     * the method must begin with "s.defaultReadObject();". Other than that, any
+     * semantic checks can be specified and do not need to stay the same from
+     * version to version. A readObject method of this form may be added to any
+     * class, even if Tetrad sessions were previously saved out using a version
+     * of the class that didn't include it. (That's what the
+     * "s.defaultReadObject();" is for. See J. Bloch, Effective Java, for help.
+     *
+     * @throws IOException
+     * @throws ClassNotFoundException
+     */
+    private void readObject(ObjectInputStream s)
+            throws IOException, ClassNotFoundException {
+        s.defaultReadObject();
+
+        if (getVariables() == null) {
+            throw new NullPointerException();
+        }
+
+        if (vectors == null) {
+            throw new NullPointerException();
+        }
+
+        if (knowledge == null) {
+            throw new NullPointerException();
+        }
+
+        if (selectedVariables == null) {
+            selectedVariables = new HashSet<>();
+        }
+
+        initializeCache();
+    }
+}
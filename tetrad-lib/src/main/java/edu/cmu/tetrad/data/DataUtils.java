@@ -1462,6 +1462,34 @@ public final class DataUtils {
         return new BoxDataSet(new VerticalDoubleDataBox(data.getDoubleData().getSelection(rows, cols).transpose().toArray()), data.getVariables());
     }
 
+    /**
+     * @return a sample without replacement with the given sample size from the
+     * given dataset, drawn from the given stream. The rows are in the order
+     * drawn.
+     */
+    public static DataSet getResamplingDataset(DataSet data, int sampleSize, RandomStream random) {
+        int numRows = data.getNumRows();
+        int size = Math.min(sampleSize, numRows);
+
+        int[] order = new int[numRows];
+        for (int i = 0; i < numRows; i++) order[i] = i;
+
+        // A partial Fisher-Yates shuffle.
+        for (int i = 0; i < size; i++) {
+            int j = i + random.nextInt(numRows - i);
+            int row = order[j];
+            order[j] = order[i];
+            order[i] = row;
+        }
+
+        int[] rows = Arrays.copyOf(order, size);
+
+        int[] cols = new int[data.getNumColumns()];
+        for (int i = 0; i < cols.length; i++) cols[i] = i;
+
+        return new BoxDataSet(new VerticalDoubleDataBox(data.getDoubleData().getSelection(rows, cols).transpose().toArray()), data.getVariables());
+    }
+
     /**
      * @return a sample with replacement with the given sample size from the
      * given dataset.
@@ -1482,6 +1510,26 @@ public final class DataUtils {
                 data.getVariables());
     }
 
+    /**
+     * @return a sample with replacement with the given sample size from the
+     * given dataset, drawn from the given stream.
+     */
+    public static DataSet getBootstrapSample(DataSet data, int sampleSize, RandomStream random) {
+        int actualSampleSize = data.getNumRows();
+
+        int[] rows = new int[sampleSize];
+
+        for (int i = 0; i < rows.length; i++) {
+            rows[i] = random.nextInt(actualSampleSize);
+        }
+
+        int[] cols = new int[data.getNumColumns()];
+        for (int i = 0; i < cols.length; i++) cols[i] = i;
+
+        return new BoxDataSet(new VerticalDoubleDataBox(data.getDoubleData().getSelection(rows, cols).transpose().toArray()),
+                data.getVariables());
+    }
+
     /**
      * @return a sample without replacement with the given sample size from the
      * given dataset. May return a sample of less than the given size; makes
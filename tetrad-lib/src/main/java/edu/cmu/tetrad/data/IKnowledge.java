@@ -126,5 +126,12 @@ public interface IKnowledge extends TetradSerializable {
 
     boolean isOnlyCanCauseNextTier(int tier);
 
+    /**
+     * @return this knowledge compiled into an index for fast lookups by
+     * variable. The index does not change; a new one is made after the
+     * knowledge changes.
+     */
+    KnowledgeIndex getIndex();
+
     void setOnlyCanCauseNextTier(int tier, boolean onlyCausesNext);
 }
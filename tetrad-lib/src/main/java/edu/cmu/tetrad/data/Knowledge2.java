@@ -32,6 +32,7 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.LinkedList;
@@ -83,6 +84,9 @@ public final class Knowledge2 implements TetradSerializable, IKnowledge {
     private final List<KnowledgeGroup> knowledgeGroups;
     private final Map<KnowledgeGroup, OrderedPair<Set<String>>> knowledgeGroupRules;
 
+    // The compiled form of the above, rebuilt on demand after any change.
+    private transient volatile KnowledgeIndex index;
+
     public Knowledge2() {
         this.variables = new HashSet<>();
         this.forbiddenRulesSpecs = new HashSet<>();
@@ -107,13 +111,30 @@ public final class Knowledge2 implements TetradSerializable, IKnowledge {
     public Knowledge2(Knowledge2 knowledge) {
         this.defaultToKnowledgeLayout = knowledge.defaultToKnowledgeLayout;
 
+        // Rules share their sets with the tiers, so the sets are copied
+        // once each, keeping that sharing, and not shared with the original.
+        Map<Set<String>, Set<String>> sets = new IdentityHashMap<>();
+
         this.variables = new HashSet<>(knowledge.variables);
-        this.forbiddenRulesSpecs = new HashSet<>(knowledge.forbiddenRulesSpecs);
-        this.requiredRulesSpecs = new HashSet<>(knowledge.requiredRulesSpecs);
-        this.tierSpecs = new ArrayList<>(knowledge.tierSpecs);
+        this.forbiddenRulesSpecs = new HashSet<>();
+        this.requiredRulesSpecs = new HashSet<>();
+        this.tierSpecs = new ArrayList<>();
+
+        knowledge.tierSpecs.forEach(e -> tierSpecs.add(copy(e, sets)));
+        knowledge.forbiddenRulesSpecs.forEach(e -> forbiddenRulesSpecs.add(copy(e, sets)));
+        knowledge.requiredRulesSpecs.forEach(e -> requiredRulesSpecs.add(copy(e, sets)));
+
+        this.knowledgeGroups = new LinkedList<>(knowledge.knowledgeGroups);
+        this.knowledgeGroupRules = new HashMap<>();
+        knowledge.knowledgeGroupRules.forEach((k, v) -> knowledgeGroupRules.put(k, copy(v, sets)));
+    }
+
+    private static Set<String> copy(Set<String> set, Map<Set<String>, Set<String>> sets) {
+        return sets.computeIfAbsent(set, LinkedHashSet::new);
+    }
 
-        this.knowledgeGroups = knowledge.knowledgeGroups;
-        this.knowledgeGroupRules = knowledge.knowledgeGroupRules;
+    private static OrderedPair<Set<String>> copy(OrderedPair<Set<String>> rule, Map<Set<String>, Set<String>> sets) {
+        return new OrderedPair<>(copy(rule.getFirst(), sets), copy(rule.getSecond(), sets));
     }
 
     private boolean checkVarName(String name) {
@@ -161,6 +182,7 @@ public final class Knowledge2 implements TetradSerializable, IKnowledge {
 
     private void ensureTiers(int tier) {
         for (int i = tierSpecs.size(); i <= tier; i++) {
+            this.index = null;
             tierSpecs.add(new LinkedHashSet<>());
 
             for (int j = 0; j < i; j++) {
@@ -233,6 +255,8 @@ public final class Knowledge2 implements TetradSerializable, IKnowledge {
                     variables.add(e);
                     tierSpecs.get(tier).add(e);
                 });
+
+        this.index = null;
     }
 
     /**
@@ -259,6 +283,8 @@ public final class Knowledge2 implements TetradSerializable, IKnowledge {
                 addToTier(Integer.parseInt(e.substring(index + 2)), e);
             }
         });
+
+        this.index = null;
     }
 
     /**
@@ -279,12 +305,15 @@ public final class Knowledge2 implements TetradSerializable, IKnowledge {
         } else if (group.getType() == KnowledgeGroup.REQUIRED) {
             requiredRulesSpecs.add(o);
         }
+
+        this.index = null;
     }
 
     @Override
     public void addVariable(String varName) {
         if (!variables.contains(varName) && checkVarName(varName)) {
             variables.add(varName);
+            this.index = null;
         }
     }
 
@@ -296,6 +325,8 @@ public final class Knowledge2 implements TetradSerializable, IKnowledge {
         this.forbiddenRulesSpecs.clear();
         this.requiredRulesSpecs.clear();
         this.tierSpecs.clear();
+
+        this.index = null;
     }
 
     /**
@@ -417,11 +448,36 @@ public final class Knowledge2 implements TetradSerializable, IKnowledge {
         return defaultToKnowledgeLayout;
     }
 
-    private boolean isForbiddenByRules(String var1, String var2) {
-        return forbiddenRulesSpecs.stream()
-                .anyMatch(rule -> !var1.equals(var2)
-                && rule.getFirst().contains(var1)
-                && rule.getSecond().contains(var2));
+    /**
+     * Compiles this knowledge into an index over variables. The index is kept
+     * and returned again until the knowledge changes.
+     *
+     * @return
+     */
+    @Override
+    public KnowledgeIndex getIndex() {
+        KnowledgeIndex index = this.index;
+
+        if (index == null) {
+            Set<String> names = new LinkedHashSet<>(getVariables());
+            tierSpecs.forEach(names::addAll);
+
+            forbiddenRulesSpecs.forEach(e -> {
+                names.addAll(e.getFirst());
+                names.addAll(e.getSecond());
+            });
+
+            requiredRulesSpecs.forEach(e -> {
+                names.addAll(e.getFirst());
+                names.addAll(e.getSecond());
+            });
+
+            index = new KnowledgeIndex(names, tierSpecs, forbiddenRulesSpecs,
+                    forbiddenTierRules(), requiredRulesSpecs);
+            this.index = index;
+        }
+
+        return index;
     }
 
     /**
@@ -433,11 +489,8 @@ public final class Knowledge2 implements TetradSerializable, IKnowledge {
      */
     @Override
     public boolean isForbidden(String var1, String var2) {
-        if (isRequired(var1, var2)) {
-            return false;
-        }
-
-        return isForbiddenByRules(var1, var2) || isForbiddenByTiers(var1, var2);
+        KnowledgeIndex index = getIndex();
+        return index.isForbidden(index.indexOf(var1), index.indexOf(var2));
     }
 
     /**
@@ -469,9 +522,8 @@ public final class Knowledge2 implements TetradSerializable, IKnowledge {
      */
     @Override
     public boolean isForbiddenByTiers(String var1, String var2) {
-        return forbiddenTierRules().stream()
-                .anyMatch(rule -> rule.getFirst().contains(var1)
-                && rule.getSecond().contains(var2));
+        KnowledgeIndex index = getIndex();
+        return index.isForbiddenByTiers(index.indexOf(var1), index.indexOf(var2));
     }
 
     /**
@@ -483,10 +535,8 @@ public final class Knowledge2 implements TetradSerializable, IKnowledge {
      */
     @Override
     public boolean isRequired(String var1, String var2) {
-        return requiredRulesSpecs.stream()
-                .anyMatch(rule -> !var1.equals(var2)
-                && rule.getFirst().contains(var1)
-                && rule.getSecond().contains(var2));
+        KnowledgeIndex index = getIndex();
+        return index.isRequired(index.indexOf(var1), index.indexOf(var2));
     }
 
     /**
@@ -563,7 +613,8 @@ public final class Knowledge2 implements TetradSerializable, IKnowledge {
      */
     @Override
     public boolean noEdgeRequired(String x, String y) {
-        return !(isRequired(x, y) || isRequired(y, x));
+        KnowledgeIndex index = getIndex();
+        return index.noEdgeRequired(index.indexOf(x), index.indexOf(y));
     }
 
     /**
@@ -579,6 +630,8 @@ public final class Knowledge2 implements TetradSerializable, IKnowledge {
 
         spec = checkSpec(spec);
         getExtent(spec).forEach(s -> tierSpecs.forEach(tier -> tier.remove(s)));
+
+        this.index = null;
     }
 
     /**
@@ -594,6 +647,8 @@ public final class Knowledge2 implements TetradSerializable, IKnowledge {
         requiredRulesSpecs.remove(old);
 
         this.knowledgeGroups.remove(index);
+
+        this.index = null;
     }
 
     /**
@@ -620,6 +675,8 @@ public final class Knowledge2 implements TetradSerializable, IKnowledge {
         });
 
         tierSpecs.forEach(tier -> tier.remove(name));
+
+        this.index = null;
     }
 
     /**
@@ -662,6 +719,8 @@ public final class Knowledge2 implements TetradSerializable, IKnowledge {
         Set<String> f2 = getExtent(var2);
 
         forbiddenRulesSpecs.add(new OrderedPair<>(f1, f2));
+
+        this.index = null;
     }
 
     /**
@@ -679,6 +738,8 @@ public final class Knowledge2 implements TetradSerializable, IKnowledge {
         Set<String> f2 = getExtent(var2);
 
         forbiddenRulesSpecs.remove(new OrderedPair<>(f1, f2));
+
+        this.index = null;
     }
 
     /**
@@ -710,6 +771,8 @@ public final class Knowledge2 implements TetradSerializable, IKnowledge {
         });
 
         requiredRulesSpecs.add(new OrderedPair<>(f1, f2));
+
+        this.index = null;
     }
 
     /**
@@ -727,6 +790,8 @@ public final class Knowledge2 implements TetradSerializable, IKnowledge {
         Set<String> f2 = getExtent(var2);
 
         requiredRulesSpecs.remove(new OrderedPair<>(f1, f2));
+
+        this.index = null;
     }
 
     /**
@@ -750,6 +815,8 @@ public final class Knowledge2 implements TetradSerializable, IKnowledge {
         }
 
         knowledgeGroups.set(index, group);
+
+        this.index = null;
     }
 
     /**
@@ -767,6 +834,8 @@ public final class Knowledge2 implements TetradSerializable, IKnowledge {
         }
 
         vars.forEach(var -> addToTier(tier, var));
+
+        this.index = null;
     }
 
     /**
@@ -786,6 +855,8 @@ public final class Knowledge2 implements TetradSerializable, IKnowledge {
         } else {
             forbiddenRulesSpecs.remove(new OrderedPair<>(varsInTier, varsInTier));
         }
+
+        this.index = null;
     }
 
     /**
@@ -827,17 +898,8 @@ public final class Knowledge2 implements TetradSerializable, IKnowledge {
      */
     @Override
     public int isInWhichTier(Node node) {
-        for (int i = 0; i < tierSpecs.size(); i++) {
-            Set<String> tier = tierSpecs.get(i);
-
-            for (String myNode : tier) {
-                if (myNode.equals(node.getName())) {
-                    return i;
-                }
-            }
-        }
-
-        return -1;
+        KnowledgeIndex index = getIndex();
+        return index.getTier(index.indexOf(node.getName()));
     } // added by DMalinsky for tsFCI on 4/20/16
 
     @Override
@@ -938,6 +1000,8 @@ public final class Knowledge2 implements TetradSerializable, IKnowledge {
                 forbiddenRulesSpecs.remove(new OrderedPair<>(varsInTier, varsInTierN));
             }
         }
+
+        this.index = null;
     }
 
     /**
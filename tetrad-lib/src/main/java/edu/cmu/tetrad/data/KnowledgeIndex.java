@@ -0,0 +1,241 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+package edu.cmu.tetrad.data;
+
+import edu.cmu.tetrad.graph.Node;
+import edu.cmu.tetrad.graph.OrderedPair;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An immutable, compiled form of background knowledge, indexed by variable
+ * rather than by name. Each variable has a tier, and forbidden and required
+ * edges are held in bit matrices, so that each check is a single lookup.
+ * Searches that ask about many pairs of variables should get the index once,
+ * map their nodes to indices with <code>indicesOf</code>, and ask the index.
+ * <p>
+ * An index of -1 stands for a variable the knowledge does not know about;
+ * nothing is forbidden or required for such a variable.
+ *
+ * @author Joseph Ramsey
+ * @see IKnowledge#getIndex()
+ */
+public final class KnowledgeIndex {
+
+    private final List<String> variables;
+    private final Map<String, Integer> indices;
+    private final int[] tiers;
+
+    // Row-major bit matrices; bit j of row i is set if i --> j is
+    // forbidden (taking required edges into account), forbidden by the
+    // tiers alone, or required. A matrix with no bits set is null.
+    private final int numWords;
+    private final long[] forbidden;
+    private final long[] forbiddenByTiers;
+    private final long[] required;
+
+    /**
+     * Compiles the given rules. Each rule forbids or requires every edge from
+     * a variable in its first set to a variable in its second set; edges from
+     * a variable to itself are only forbidden by tier rules.
+     */
+    KnowledgeIndex(Collection<String> variables, List<Set<String>> tiers,
+                   Collection<OrderedPair<Set<String>>> forbiddenRules,
+                   Collection<OrderedPair<Set<String>>> tierRules,
+                   Collection<OrderedPair<Set<String>>> requiredRules) {
+        this.variables = Collections.unmodifiableList(new ArrayList<>(variables));
+        this.indices = new HashMap<>();
+
+        for (int i = 0; i < this.variables.size(); i++) {
+            indices.put(this.variables.get(i), i);
+        }
+
+        int numVariables = this.variables.size();
+        this.numWords = (numVariables + 63) >>> 6;
+
+        this.tiers = new int[numVariables];
+        Arrays.fill(this.tiers, -1);
+
+        for (int tier = tiers.size() - 1; tier >= 0; tier--) {
+            for (String name : tiers.get(tier)) {
+                int i = indexOf(name);
+                if (i != -1) {
+                    this.tiers[i] = tier;
+                }
+            }
+        }
+
+        this.required = compile(requiredRules, false);
+        this.forbiddenByTiers = compile(tierRules, true);
+        long[] forbidden = compile(forbiddenRules, false);
+
+        if (forbidden == null) {
+            forbidden = forbiddenByTiers == null ? null : forbiddenByTiers.clone();
+        } else if (forbiddenByTiers != null) {
+            for (int k = 0; k < forbidden.length; k++) {
+                forbidden[k] |= forbiddenByTiers[k];
+            }
+        }
+
+        if (forbidden != null && required != null) {
+            for (int k = 0; k < forbidden.length; k++) {
+                forbidden[k] &= ~required[k];
+            }
+        }
+
+        this.forbidden = forbidden;
+    }
+
+    /**
+     * @return the number of variables indexed.
+     */
+    public int getNumVariables() {
+        return variables.size();
+    }
+
+    /**
+     * @return the variables indexed, in index order.
+     */
+    public List<String> getVariables() {
+        return variables;
+    }
+
+    /**
+     * @return the index of the variable with the given name, or -1 if there
+     * is none.
+     */
+    public int indexOf(String name) {
+        Integer index = indices.get(name);
+        return index == null ? -1 : index;
+    }
+
+    /**
+     * @return the indices of the given nodes, by name, in order; -1 for
+     * nodes the knowledge does not know about.
+     */
+    public int[] indicesOf(List<Node> nodes) {
+        int[] indices = new int[nodes.size()];
+
+        for (int i = 0; i < nodes.size(); i++) {
+            indices[i] = indexOf(nodes.get(i).getName());
+        }
+
+        return indices;
+    }
+
+    /**
+     * @return the first tier the given variable is in, or -1 if it is in
+     * none.
+     */
+    public int getTier(int variable) {
+        return variable == -1 ? -1 : tiers[variable];
+    }
+
+    /**
+     * @return true if the edge from --> to is forbidden and not required.
+     */
+    public boolean isForbidden(int from, int to) {
+        return get(forbidden, from, to);
+    }
+
+    /**
+     * @return true if the edge from --> to is forbidden by the temporal
+     * tiers.
+     */
+    public boolean isForbiddenByTiers(int from, int to) {
+        return get(forbiddenByTiers, from, to);
+    }
+
+    /**
+     * @return true if the edge from --> to is required.
+     */
+    public boolean isRequired(int from, int to) {
+        return get(required, from, to);
+    }
+
+    /**
+     * @return true iff no edge between x and y is required.
+     */
+    public boolean noEdgeRequired(int x, int y) {
+        return !(isRequired(x, y) || isRequired(y, x));
+    }
+
+    private boolean get(long[] matrix, int from, int to) {
+        if (matrix == null || from == -1 || to == -1) {
+            return false;
+        }
+
+        return (matrix[from * numWords + (to >>> 6)] & (1L << to)) != 0;
+    }
+
+    private long[] compile(Collection<OrderedPair<Set<String>>> rules, boolean allowSelfLoops) {
+        long[] matrix = null;
+        long[] row = new long[numWords];
+
+        for (OrderedPair<Set<String>> rule : rules) {
+            Arrays.fill(row, 0L);
+            boolean empty = true;
+
+            for (String name : rule.getSecond()) {
+                int j = indexOf(name);
+
+                if (j != -1) {
+                    row[j >>> 6] |= 1L << j;
+                    empty = false;
+                }
+            }
+
+            if (empty) {
+                continue;
+            }
+
+            for (String name : rule.getFirst()) {
+                int i = indexOf(name);
+
+                if (i == -1) {
+                    continue;
+                }
+
+                if (matrix == null) {
+                    matrix = new long[variables.size() * numWords];
+                }
+
+                int offset = i * numWords;
+
+                for (int w = 0; w < numWords; w++) {
+                    matrix[offset + w] |= row[w];
+                }
+
+                if (!allowSelfLoops && (row[i >>> 6] & (1L << i)) != 0) {
+                    matrix[offset + (i >>> 6)] &= ~(1L << i);
+                }
+            }
+        }
+
+        return matrix;
+    }
+}
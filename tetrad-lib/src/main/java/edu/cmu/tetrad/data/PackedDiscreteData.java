@@ -0,0 +1,501 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+
+package edu.cmu.tetrad.data;
+
+import edu.cmu.tetrad.graph.Node;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Stores the columns of a discrete data set packed into byte arrays (or short arrays, for
+ * variables with more than 127 categories) and counts conditional cell tables over them, for
+ * scores like BDeu and tests like G square.
+ * <p>
+ * Parent configurations are computed column by column in mixed radix, one tight loop per parent
+ * over a packed column, rather than row by row. Only configurations that occur in the data are
+ * given cells. While the number of possible configurations is at most the sample size they are
+ * indexed directly; past that, they are renumbered through a hash table, so that the cell table
+ * never has more than N rows however many parents there are. Scratch space is kept per thread
+ * and reused, so counting allocates nothing once warmed up and one instance may be shared by
+ * parallel tasks.
+ *
+ * @author Joseph Ramsey
+ */
+public final class PackedDiscreteData {
+
+    // The code for a missing value in a packed column.
+    private static final int MISSING = -1;
+
+    // The number of rows.
+    private final int numRows;
+
+    // The number of categories of each column.
+    private final int[] numCategories;
+
+    // For each column, the packed values if the column has at most 127 categories, else null.
+    private final byte[][] bytes;
+
+    // For each column, the packed values if the column has more than 127 categories, else null.
+    private final short[][] shorts;
+
+    // True for each column with a missing value.
+    private final boolean[] hasMissing;
+
+    // Scratch space, one per thread.
+    private final ThreadLocal<Counts> scratch = ThreadLocal.withInitial(Counts::new);
+
+    /**
+     * Packs the given data set, which must be discrete.
+     */
+    public PackedDiscreteData(DataSet dataSet) {
+        this(columns(dataSet), numCategories(dataSet.getVariables()));
+    }
+
+    /**
+     * Packs the given columns, with values in 0..numCategories[j] - 1 for column j, or -99 for
+     * missing.
+     */
+    public PackedDiscreteData(int[][] columns, int[] numCategories) {
+        if (columns.length != numCategories.length) {
+            throw new IllegalArgumentException("Expecting a number of categories for each column.");
+        }
+
+        this.numRows = columns.length == 0 ? 0 : columns[0].length;
+        this.numCategories = Arrays.copyOf(numCategories, numCategories.length);
+        this.bytes = new byte[columns.length][];
+        this.shorts = new short[columns.length][];
+        this.hasMissing = new boolean[columns.length];
+
+        for (int j = 0; j < columns.length; j++) {
+            if (numCategories[j] > Short.MAX_VALUE) {
+                throw new IllegalArgumentException("Too many categories for column " + j + ": "
+                        + numCategories[j]);
+            }
+
+            if (numCategories[j] <= Byte.MAX_VALUE) {
+                bytes[j] = new byte[numRows];
+            } else {
+                shorts[j] = new short[numRows];
+            }
+
+            for (int i = 0; i < numRows; i++) {
+                int value = columns[j][i];
+
+                if (value == DiscreteVariable.MISSING_VALUE) {
+                    value = MISSING;
+                    hasMissing[j] = true;
+                } else if (value < 0 || value >= numCategories[j]) {
+                    throw new IllegalArgumentException("Value out of range in column " + j + ", row "
+                            + i + ": " + value);
+                }
+
+                if (bytes[j] != null) {
+                    bytes[j][i] = (byte) value;
+                } else {
+                    shorts[j][i] = (short) value;
+                }
+            }
+        }
+    }
+
+    /**
+     * Counts, for each configuration of the parents occurring in the data, the number of rows with
+     * each value of the child. Rows with a missing value among these columns are skipped.
+     *
+     * @return the counts, in scratch space belonging to the calling thread, valid until its next
+     * call to a counting method of this object.
+     */
+    public Counts count(int child, int[] parents) {
+        Counts counts = scratch.get().prepare(numRows);
+        boolean missing = hasMissing[child] || anyMissing(parents);
+
+        counts.numValues = numCategories[child];
+        load(counts.values, child);
+        count(counts, parents, missing);
+        return counts;
+    }
+
+    /**
+     * Counts, for each configuration of the conditioning variables occurring in the data, the number
+     * of rows with each pair of values of x and y, the pair (i, j) being value i * (number of
+     * categories of y) + j. Rows with a missing value among these columns are skipped.
+     *
+     * @return the counts, in scratch space belonging to the calling thread, valid until its next
+     * call to a counting method of this object.
+     */
+    public Counts count(int x, int y, int[] conditioning) {
+        Counts counts = scratch.get().prepare(numRows);
+        boolean missing = hasMissing[x] || hasMissing[y] || anyMissing(conditioning);
+
+        counts.numValues = numCategories[x] * numCategories[y];
+        load(counts.values, x);
+        mix(counts.values, y, missing);
+        count(counts, conditioning, missing);
+        return counts;
+    }
+
+    /**
+     * @return the number of rows.
+     */
+    public int getNumRows() {
+        return numRows;
+    }
+
+    /**
+     * @return the number of columns.
+     */
+    public int getNumColumns() {
+        return numCategories.length;
+    }
+
+    /**
+     * @return the number of categories of the given column.
+     */
+    public int getNumCategories(int column) {
+        return numCategories[column];
+    }
+
+    //=============================PRIVATE METHODS=========================//
+
+    private void count(Counts counts, int[] parents, boolean missing) {
+        long[] keys = counts.keys;
+        Arrays.fill(keys, 0, numRows, 0L);
+
+        long radix = 1;
+        counts.numConfigurations = 1.0;
+
+        for (int parent : parents) {
+            int dim = numCategories[parent];
+            counts.numConfigurations *= dim;
+
+            // Renumber the configurations so far densely before they can outgrow the sample size.
+            if (radix > 1 && radix * dim > numRows) {
+                radix = counts.group(keys, radix, numRows);
+                int[] ids = counts.ids;
+
+                for (int i = 0; i < numRows; i++) {
+                    keys[i] = ids[i];
+                }
+            }
+
+            mix(keys, parent, missing);
+            radix *= dim;
+        }
+
+        // Rows missing a child value must not give their parent configuration a row of the table.
+        if (missing) {
+            int[] values = counts.values;
+
+            for (int i = 0; i < numRows; i++) {
+                if (values[i] < 0) keys[i] = MISSING;
+            }
+        }
+
+        int numOccupied = counts.group(keys, radix, numRows);
+        counts.numOccupied = numOccupied;
+
+        int c = counts.numValues;
+        counts.ensureCells(numOccupied, c);
+
+        int[] ids = counts.ids;
+        int[] values = counts.values;
+        int[] cells = counts.cells;
+        int[] rowTotals = counts.rowTotals;
+
+        for (int i = 0; i < numRows; i++) {
+            int id = ids[i];
+            int value = values[i];
+
+            if (id < 0) continue;
+
+            cells[id * c + value]++;
+            rowTotals[id]++;
+        }
+    }
+
+    private void load(int[] values, int column) {
+        if (bytes[column] != null) {
+            byte[] col = bytes[column];
+            for (int i = 0; i < numRows; i++) values[i] = col[i];
+        } else {
+            short[] col = shorts[column];
+            for (int i = 0; i < numRows; i++) values[i] = col[i];
+        }
+    }
+
+    // values[i] = values[i] * dim + column[i], with missing values sticky if checked.
+    private void mix(int[] values, int column, boolean missing) {
+        int dim = numCategories[column];
+
+        if (bytes[column] != null) {
+            byte[] col = bytes[column];
+
+            if (missing) {
+                for (int i = 0; i < numRows; i++) {
+                    values[i] = values[i] < 0 || col[i] < 0 ? MISSING : values[i] * dim + col[i];
+                }
+            } else {
+                for (int i = 0; i < numRows; i++) values[i] = values[i] * dim + col[i];
+            }
+        } else {
+            short[] col = shorts[column];
+
+            if (missing) {
+                for (int i = 0; i < numRows; i++) {
+                    values[i] = values[i] < 0 || col[i] < 0 ? MISSING : values[i] * dim + col[i];
+                }
+            } else {
+                for (int i = 0; i < numRows; i++) values[i] = values[i] * dim + col[i];
+            }
+        }
+    }
+
+    // keys[i] = keys[i] * dim + column[i], with missing values sticky if checked.
+    private void mix(long[] keys, int column, boolean missing) {
+        int dim = numCategories[column];
+
+        if (bytes[column] != null) {
+            byte[] col = bytes[column];
+
+            if (missing) {
+                for (int i = 0; i < numRows; i++) {
+                    keys[i] = keys[i] < 0 || col[i] < 0 ? MISSING : keys[i] * dim + col[i];
+                }
+            } else {
+                for (int i = 0; i < numRows; i++) keys[i] = keys[i] * dim + col[i];
+            }
+        } else {
+            short[] col = shorts[column];
+
+            if (missing) {
+                for (int i = 0; i < numRows; i++) {
+                    keys[i] = keys[i] < 0 || col[i] < 0 ? MISSING : keys[i] * dim + col[i];
+                }
+            } else {
+                for (int i = 0; i < numRows; i++) keys[i] = keys[i] * dim + col[i];
+            }
+        }
+    }
+
+    private boolean anyMissing(int[] columns) {
+        for (int column : columns) {
+            if (hasMissing[column]) return true;
+        }
+
+        return false;
+    }
+
+    private static int[][] columns(DataSet dataSet) {
+        int[][] columns = new int[dataSet.getNumColumns()][dataSet.getNumRows()];
+
+        for (int j = 0; j < dataSet.getNumColumns(); j++) {
+            for (int i = 0; i < dataSet.getNumRows(); i++) {
+                columns[j][i] = dataSet.getInt(i, j);
+            }
+        }
+
+        return columns;
+    }
+
+    private static int[] numCategories(List<Node> variables) {
+        int[] numCategories = new int[variables.size()];
+
+        for (int j = 0; j < variables.size(); j++) {
+            if (!(variables.get(j) instanceof DiscreteVariable)) {
+                throw new IllegalArgumentException("Expecting a discrete variable: " + variables.get(j));
+            }
+
+            numCategories[j] = ((DiscreteVariable) variables.get(j)).getNumCategories();
+        }
+
+        return numCategories;
+    }
+
+    /**
+     * Cell counts for the configurations of a set of parents that occur in the data. The occurring
+     * configurations are numbered 0..getNumOccupied() - 1 in no particular order.
+     */
+    public static final class Counts {
+        private long[] keys = new long[0];
+        private int[] values = new int[0];
+        private int[] ids = new int[0];
+        private int[] cells = new int[0];
+        private int[] rowTotals = new int[0];
+
+        // Dense renumbering: configuration to id, or -1.
+        private int[] idOf = new int[0];
+
+        // Sparse renumbering: an open addressing table from configuration to id.
+        private long[] hashKeys = new long[0];
+        private int[] hashIds = new int[0];
+
+        // The configurations given ids, in order, for resetting idOf.
+        private long[] occupied = new long[0];
+
+        private int numValues;
+        private int numOccupied;
+        private double numConfigurations;
+
+        private Counts prepare(int numRows) {
+            if (keys.length < numRows) {
+                keys = new long[numRows];
+                values = new int[numRows];
+                ids = new int[numRows];
+                occupied = new long[numRows];
+            }
+
+            return this;
+        }
+
+        /**
+         * @return the number of values of the child (or of pairs of values, for two children).
+         */
+        public int getNumValues() {
+            return numValues;
+        }
+
+        /**
+         * @return the number of configurations of the parents that occur in the data.
+         */
+        public int getNumOccupied() {
+            return numOccupied;
+        }
+
+        /**
+         * @return the number of possible configurations of the parents, the product of their
+         * numbers of categories, as a double since it may be very large.
+         */
+        public double getNumConfigurations() {
+            return numConfigurations;
+        }
+
+        /**
+         * @return the number of rows with the given (occurring) parent configuration.
+         */
+        public int getRowTotal(int configuration) {
+            return rowTotals[configuration];
+        }
+
+        /**
+         * @return the number of rows with the given (occurring) parent configuration and the given
+         * value of the child.
+         */
+        public int getCount(int configuration, int value) {
+            return cells[configuration * numValues + value];
+        }
+
+        private void ensureCells(int numOccupied, int numValues) {
+            int size = numOccupied * numValues;
+
+            if (cells.length < size) {
+                cells = new int[Math.max(size, 2 * cells.length)];
+            } else {
+                Arrays.fill(cells, 0, size, 0);
+            }
+
+            if (rowTotals.length < numOccupied) {
+                rowTotals = new int[Math.max(numOccupied, 2 * rowTotals.length)];
+            } else {
+                Arrays.fill(rowTotals, 0, numOccupied, 0);
+            }
+        }
+
+        // Numbers the distinct nonnegative keys 0, 1, ... into ids (-1 for negative keys), given
+        // that the keys are less than radix; returns how many there are.
+        private int group(long[] keys, long radix, int numRows) {
+            return radix <= numRows ? groupDense(keys, (int) radix, numRows) : groupSparse(keys, numRows);
+        }
+
+        private int groupDense(long[] keys, int radix, int numRows) {
+            if (idOf.length < radix) {
+                idOf = new int[Math.max(radix, 2 * idOf.length)];
+                Arrays.fill(idOf, -1);
+            }
+
+            int m = 0;
+
+            for (int i = 0; i < numRows; i++) {
+                if (keys[i] < 0) {
+                    ids[i] = -1;
+                    continue;
+                }
+
+                int k = (int) keys[i];
+                int id = idOf[k];
+
+                if (id < 0) {
+                    id = m++;
+                    idOf[k] = id;
+                    occupied[id] = k;
+                }
+
+                ids[i] = id;
+            }
+
+            for (int id = 0; id < m; id++) {
+                idOf[(int) occupied[id]] = -1;
+            }
+
+            return m;
+        }
+
+        private int groupSparse(long[] keys, int numRows) {
+            int capacity = Integer.highestOneBit(Math.max(2 * numRows, 2)) << 1;
+
+            if (hashKeys.length < capacity) {
+                hashKeys = new long[capacity];
+                hashIds = new int[capacity];
+            }
+
+            Arrays.fill(hashKeys, -1L);
+            int mask = hashKeys.length - 1;
+            int m = 0;
+
+            for (int i = 0; i < numRows; i++) {
+                long k = keys[i];
+
+                if (k < 0) {
+                    ids[i] = -1;
+                    continue;
+                }
+
+                long h = k * 0x9E3779B97F4A7C15L;
+                int slot = (int) (h ^ (h >>> 32)) & mask;
+
+                while (hashKeys[slot] != -1L && hashKeys[slot] != k) {
+                    slot = (slot + 1) & mask;
+                }
+
+                if (hashKeys[slot] == -1L) {
+                    hashKeys[slot] = k;
+                    hashIds[slot] = m++;
+                }
+
+                ids[i] = hashIds[slot];
+            }
+
+            return m;
+        }
+    }
+}
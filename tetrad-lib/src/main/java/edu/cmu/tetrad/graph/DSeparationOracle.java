@@ -0,0 +1,385 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+
+package edu.cmu.tetrad.graph;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.IntStream;
+
+/**
+ * Answers d-connection queries for a fixed graph. The graph is copied into int-indexed adjacency arrays, and the
+ * ancestors of each node are calculated once as bit sets. A single breadth first pass from x then finds every node
+ * d-connected to x given Z, and the result is cached under (x, Z), so that later queries for x, or for any y with
+ * the same Z, are answered by a bit test. The rules followed are those of GraphUtils.isDConnectedTo.
+ * <p>
+ * Changes to the graph after construction are not seen; make a new oracle for the new graph.
+ *
+ * @author Joseph Ramsey
+ */
+public final class DSeparationOracle {
+
+    /**
+     * The default maximum number of (x, Z) results kept.
+     */
+    public static final int DEFAULT_MAX_CACHE_SIZE = 100000;
+
+    /**
+     * The graph.
+     */
+    private final Graph graph;
+
+    /**
+     * The nodes of the graph, in index order.
+     */
+    private final List<Node> nodes;
+
+    /**
+     * Map from nodes to their indices.
+     */
+    private final Map<Node, Integer> indices = new HashMap<>();
+
+    /**
+     * For each node a, the nodes at the other ends of the edges of a.
+     */
+    private final int[][] adjacents;
+
+    /**
+     * For each node a and each edge of a, whether the edge has an arrow at a.
+     */
+    private final boolean[][] arrowsIn;
+
+    /**
+     * For each node a and each edge of a, whether the edge has an arrow at the other end.
+     */
+    private final boolean[][] arrowsOut;
+
+    /**
+     * The offset of the edges of each node in the list of all (node, edge) pairs.
+     */
+    private final int[] offsets;
+
+    /**
+     * The node each (node, edge) pair belongs to.
+     */
+    private final int[] owners;
+
+    /**
+     * The ancestors of each node, including the node itself.
+     */
+    private final BitSet[] ancestors;
+
+    /**
+     * True if the graph has underline triples, which make colliders passable.
+     */
+    private final boolean hasUnderlines;
+
+    /**
+     * The nodes d-connected to x given Z, keyed by (x, Z).
+     */
+    private final Map<Key, BitSet> cache = new ConcurrentHashMap<>();
+
+    private int maxCacheSize = DEFAULT_MAX_CACHE_SIZE;
+
+    //==============================CONSTUCTORS===========================//
+
+    public DSeparationOracle(Graph graph) {
+        if (graph == null) {
+            throw new NullPointerException("Graph must not be null.");
+        }
+
+        this.graph = graph;
+        this.nodes = graph.getNodes();
+
+        int numNodes = nodes.size();
+
+        for (int i = 0; i < numNodes; i++) {
+            indices.put(nodes.get(i), i);
+        }
+
+        this.adjacents = new int[numNodes][];
+        this.arrowsIn = new boolean[numNodes][];
+        this.arrowsOut = new boolean[numNodes][];
+        this.offsets = new int[numNodes + 1];
+
+        int[][] parents = new int[numNodes][];
+
+        for (int a = 0; a < numNodes; a++) {
+            Node node = nodes.get(a);
+            List<Edge> edges = graph.getEdges(node);
+
+            adjacents[a] = new int[edges.size()];
+            arrowsIn[a] = new boolean[edges.size()];
+            arrowsOut[a] = new boolean[edges.size()];
+            int numParents = 0;
+
+            for (int k = 0; k < edges.size(); k++) {
+                Edge edge = edges.get(k);
+                adjacents[a][k] = indices.get(edge.getDistalNode(node));
+                arrowsIn[a][k] = edge.getProximalEndpoint(node) == Endpoint.ARROW;
+                arrowsOut[a][k] = edge.getDistalEndpoint(node) == Endpoint.ARROW;
+
+                if (arrowsIn[a][k] && edge.getDistalEndpoint(node) == Endpoint.TAIL) {
+                    numParents++;
+                }
+            }
+
+            parents[a] = new int[numParents];
+            numParents = 0;
+
+            for (int k = 0; k < edges.size(); k++) {
+                if (arrowsIn[a][k] && edges.get(k).getDistalEndpoint(node) == Endpoint.TAIL) {
+                    parents[a][numParents++] = adjacents[a][k];
+                }
+            }
+
+            offsets[a + 1] = offsets[a] + edges.size();
+        }
+
+        this.owners = new int[offsets[numNodes]];
+
+        for (int a = 0; a < numNodes; a++) {
+            Arrays.fill(owners, offsets[a], offsets[a + 1], a);
+        }
+
+        this.ancestors = new BitSet[numNodes];
+
+        IntStream.range(0, numNodes).parallel().forEach(a -> ancestors[a] = ancestors(a, parents));
+
+        this.hasUnderlines = !graph.getUnderLines().isEmpty();
+    }
+
+    //===============================PUBLIC METHODS========================//
+
+    /**
+     * @return true iff x is d-connected to y given z.
+     */
+    public boolean isDConnectedTo(Node x, Node y, List<Node> z) {
+        if (x == y) {
+            return true;
+        }
+
+        int _x = index(x);
+        int _y = index(y);
+        int[] _z = indices(z);
+
+        BitSet connected = cache.get(new Key(_y, _z));
+
+        if (connected != null) {
+            return connected.get(_x);
+        }
+
+        return dConnected(_x, _z).get(_y);
+    }
+
+    /**
+     * @return true iff x is d-separated from y given z.
+     */
+    public boolean isDSeparatedFrom(Node x, Node y, List<Node> z) {
+        return !isDConnectedTo(x, y, z);
+    }
+
+    /**
+     * @return the nodes d-connected to x given z. The nodes not in this list, other than x, are d-separated from x
+     * given z.
+     */
+    public List<Node> getDConnectedNodes(Node x, List<Node> z) {
+        BitSet connected = dConnected(index(x), indices(z));
+        List<Node> _nodes = new ArrayList<>();
+
+        for (int i = connected.nextSetBit(0); i >= 0; i = connected.nextSetBit(i + 1)) {
+            _nodes.add(nodes.get(i));
+        }
+
+        return _nodes;
+    }
+
+    /**
+     * @return the graph.
+     */
+    public Graph getGraph() {
+        return graph;
+    }
+
+    public int getMaxCacheSize() {
+        return maxCacheSize;
+    }
+
+    /**
+     * Sets the number of (x, Z) results kept. When more are found the cache is cleared.
+     */
+    public void setMaxCacheSize(int maxCacheSize) {
+        if (maxCacheSize < 0) {
+            throw new IllegalArgumentException("Max cache size must be >= 0: " + maxCacheSize);
+        }
+
+        this.maxCacheSize = maxCacheSize;
+    }
+
+    //==============================PRIVATE METHODS========================//
+
+    // The nodes d-connected to x given z, from the cache if possible.
+    private BitSet dConnected(int x, int[] z) {
+        Key key = new Key(x, z);
+        BitSet connected = cache.get(key);
+
+        if (connected == null) {
+            connected = reachable(x, z);
+
+            if (cache.size() >= maxCacheSize) {
+                cache.clear();
+            }
+
+            if (maxCacheSize > 0) {
+                cache.put(key, connected);
+            }
+        }
+
+        return connected;
+    }
+
+    // Breadth first search over (node, edge) pairs, as in GraphUtils.getDconnectedVars. The pair (a, k) stands for
+    // having reached the node at the other end of the kth edge of a along that edge.
+    private BitSet reachable(int x, int[] z) {
+        BitSet inZ = new BitSet(nodes.size());
+        BitSet zAncestors = new BitSet(nodes.size());
+
+        for (int _z : z) {
+            inZ.set(_z);
+            zAncestors.or(ancestors[_z]);
+        }
+
+        BitSet connected = new BitSet(nodes.size());
+        BitSet visited = new BitSet(offsets[nodes.size()]);
+        int[] queue = new int[offsets[nodes.size()]];
+        int head = 0;
+        int tail = 0;
+
+        for (int k = 0; k < adjacents[x].length; k++) {
+            visited.set(offsets[x] + k);
+            queue[tail++] = offsets[x] + k;
+            connected.set(adjacents[x][k]);
+        }
+
+        while (head < tail) {
+            int state = queue[head++];
+            int a = owners[state];
+            int k = state - offsets[a];
+            int b = adjacents[a][k];
+            boolean arrowAtB = arrowsOut[a][k];
+
+            for (int m = 0; m < adjacents[b].length; m++) {
+                int c = adjacents[b][m];
+
+                if (c == a) {
+                    continue;
+                }
+
+                boolean collider = arrowAtB && arrowsIn[b][m];
+
+                boolean pass;
+
+                if ((!collider || (hasUnderlines && isUnderline(a, b, c))) && !inZ.get(b)) {
+                    pass = true;
+                } else {
+                    pass = collider && zAncestors.get(b);
+                }
+
+                if (pass && !visited.get(offsets[b] + m)) {
+                    visited.set(offsets[b] + m);
+                    queue[tail++] = offsets[b] + m;
+                    connected.set(c);
+                }
+            }
+        }
+
+        return connected;
+    }
+
+    private boolean isUnderline(int a, int b, int c) {
+        return graph.isUnderlineTriple(nodes.get(a), nodes.get(b), nodes.get(c));
+    }
+
+    private static BitSet ancestors(int node, int[][] parents) {
+        BitSet ancestors = new BitSet(parents.length);
+        ancestors.set(node);
+
+        int[] queue = new int[parents.length];
+        int head = 0;
+        int tail = 0;
+        queue[tail++] = node;
+
+        while (head < tail) {
+            for (int p : parents[queue[head++]]) {
+                if (!ancestors.get(p)) {
+                    ancestors.set(p);
+                    queue[tail++] = p;
+                }
+            }
+        }
+
+        return ancestors;
+    }
+
+    private int index(Node node) {
+        Integer index = indices.get(node);
+
+        if (index == null) {
+            throw new IllegalArgumentException("Not a node in the graph: " + node);
+        }
+
+        return index;
+    }
+
+    private int[] indices(List<Node> z) {
+        int[] _z = new int[z.size()];
+
+        for (int i = 0; i < z.size(); i++) {
+            _z[i] = index(z.get(i));
+        }
+
+        Arrays.sort(_z);
+        return _z;
+    }
+
+    private static final class Key {
+        private final int x;
+        private final int[] z;
+        private final int hashCode;
+
+        Key(int x, int[] z) {
+            this.x = x;
+            this.z = z;
+            this.hashCode = 31 * x + Arrays.hashCode(z);
+        }
+
+        public int hashCode() {
+            return hashCode;
+        }
+
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) return false;
+            Key key = (Key) o;
+            return x == key.x && Arrays.equals(z, key.z);
+        }
+    }
+}
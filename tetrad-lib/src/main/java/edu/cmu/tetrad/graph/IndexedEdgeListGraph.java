@@ -0,0 +1,528 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+
+package edu.cmu.tetrad.graph;
+
+import java.util.*;
+
+/**
+ * An EdgeListGraph that also keeps the adjacency, parent and child relations of its nodes as bit sets indexed by
+ * the position of each node in the graph, so that the queries search algorithms make in their inner loops--is X
+ * adjacent to Y, is X a parent of Y, is X an ancestor of Y--are answered with a hash lookup and a bit test rather
+ * than a scan of edge lists. The ancestors of each node are computed on demand and then kept up to date as directed
+ * edges are added; removing a directed edge discards them. The int-indexed methods allow nodes to be visited without
+ * allocating lists.
+ * <p>
+ * Since this is an EdgeListGraph, conversion to one is free; conversion from another graph goes through the
+ * copy constructor.
+ *
+ * @author Joseph Ramsey
+ */
+public class IndexedEdgeListGraph extends EdgeListGraph {
+    static final long serialVersionUID = 23L;
+
+    /**
+     * The nodes of the graph, in index order. These and the following are rebuilt when needed from the edge lists.
+     */
+    private transient List<Node> indexedNodes;
+
+    /**
+     * Map from nodes to their indices.
+     */
+    private transient Map<Node, Integer> indices;
+
+    /**
+     * The ith bit set gives the indices of the nodes adjacent to the ith node.
+     */
+    private transient List<BitSet> adjacencies;
+
+    /**
+     * The ith bit set gives the indices of the parents of the ith node.
+     */
+    private transient List<BitSet> parents;
+
+    /**
+     * The ith bit set gives the indices of the children of the ith node.
+     */
+    private transient List<BitSet> children;
+
+    /**
+     * The ith bit set gives the indices of the ancestors of the ith node, including the node itself, or is null if
+     * these have not been calculated.
+     */
+    private transient List<BitSet> ancestorSets;
+
+    //==============================CONSTUCTORS===========================//
+
+    /**
+     * Constructs a new (empty) graph.
+     */
+    public IndexedEdgeListGraph() {
+        super();
+    }
+
+    /**
+     * Constructs a graph using the nodes and edges of the given graph.
+     *
+     * @param graph the graph from which nodes and edges are is to be extracted.
+     * @throws IllegalArgumentException if a duplicate edge is added.
+     */
+    public IndexedEdgeListGraph(Graph graph) throws IllegalArgumentException {
+        this();
+
+        if (graph == null) {
+            throw new NullPointerException("Graph must not be null.");
+        }
+
+        transferNodesAndEdges(graph);
+        transferAttributes(graph);
+
+        this.ambiguousTriples = graph.getAmbiguousTriples();
+        this.underLineTriples = graph.getUnderLines();
+        this.dottedUnderLineTriples = graph.getDottedUnderlines();
+
+        for (Edge edge : graph.getEdges()) {
+            if (graph.isHighlighted(edge)) {
+                setHighlighted(edge, true);
+            }
+        }
+
+        setPag(graph.isPag());
+        setPattern(graph.isPattern());
+    }
+
+    /**
+     * Constructs a new graph, with no edges, using the the given nodes.
+     */
+    public IndexedEdgeListGraph(List<Node> nodes) {
+        this();
+
+        if (nodes == null) {
+            throw new NullPointerException();
+        }
+
+        for (Node node : nodes) {
+            if (!addNode(node)) {
+                throw new IllegalArgumentException();
+            }
+        }
+    }
+
+    /**
+     * Generates a simple exemplar of this class to test serialization.
+     */
+    public static IndexedEdgeListGraph serializableInstance() {
+        return new IndexedEdgeListGraph();
+    }
+
+    //===============================PUBLIC METHODS========================//
+
+    /**
+     * @return the index of the given node in this graph, or -1 if the node is not in the graph. Indices change only
+     * when nodes are removed.
+     */
+    public synchronized int getIndex(Node node) {
+        if (indices == null) {
+            reindex();
+        }
+
+        Integer index = indices.get(node);
+
+        if (index == null && nodes.contains(node)) {
+
+            // Node names may have changed.
+            reindex();
+            index = indices.get(node);
+        }
+
+        return index == null ? -1 : index;
+    }
+
+    /**
+     * @return the node with the given index.
+     */
+    public synchronized Node getNode(int index) {
+        if (indices == null) {
+            reindex();
+        }
+
+        return indexedNodes.get(index);
+    }
+
+    /**
+     * Determines whether some edge or other exists between the nodes with the given indices.
+     */
+    public synchronized boolean isAdjacentTo(int node1, int node2) {
+        if (indices == null) {
+            reindex();
+        }
+
+        return adjacencies.get(node1).get(node2);
+    }
+
+    /**
+     * Determines whether node1 --> node2 is in the graph, for the nodes with the given indices.
+     */
+    public synchronized boolean isParentOf(int node1, int node2) {
+        if (indices == null) {
+            reindex();
+        }
+
+        return parents.get(node2).get(node1);
+    }
+
+    /**
+     * Determines whether there is a directed path from node1 to node2, for the nodes with the given indices. A node
+     * is its own ancestor.
+     */
+    public synchronized boolean isAncestorOf(int node1, int node2) {
+        if (indices == null) {
+            reindex();
+        }
+
+        return ancestors(node2).get(node1);
+    }
+
+    /**
+     * @return the index of the first node at or after <code>from</code> that is adjacent to the given node, or -1 if
+     * there is none. Loop with <code>for (int j = g.nextAdjacent(i, 0); j >= 0; j = g.nextAdjacent(i, j + 1))</code>.
+     */
+    public synchronized int nextAdjacent(int node, int from) {
+        if (indices == null) {
+            reindex();
+        }
+
+        return adjacencies.get(node).nextSetBit(from);
+    }
+
+    /**
+     * @return the index of the first parent of the given node at or after <code>from</code>, or -1 if there is none.
+     */
+    public synchronized int nextParent(int node, int from) {
+        if (indices == null) {
+            reindex();
+        }
+
+        return parents.get(node).nextSetBit(from);
+    }
+
+    /**
+     * @return the index of the first child of the given node at or after <code>from</code>, or -1 if there is none.
+     */
+    public synchronized int nextChild(int node, int from) {
+        if (indices == null) {
+            reindex();
+        }
+
+        return children.get(node).nextSetBit(from);
+    }
+
+    public boolean isAdjacentTo(Node node1, Node node2) {
+        int i = getIndex(node1);
+        int j = getIndex(node2);
+        return i != -1 && j != -1 && isAdjacentTo(i, j);
+    }
+
+    public boolean isParentOf(Node node1, Node node2) {
+        int i = getIndex(node1);
+        int j = getIndex(node2);
+        return i != -1 && j != -1 && isParentOf(i, j);
+    }
+
+    public boolean isChildOf(Node node1, Node node2) {
+        return isParentOf(node2, node1);
+    }
+
+    public boolean isAncestorOf(Node node1, Node node2) {
+        int i = getIndex(node1);
+        int j = getIndex(node2);
+
+        if (j == -1) {
+            return false;
+        }
+
+        return node1 == node2 || (i != -1 && isAncestorOf(i, j));
+    }
+
+    public boolean isDescendentOf(Node node1, Node node2) {
+        return isAncestorOf(node2, node1);
+    }
+
+    public boolean isProperDescendentOf(Node node1, Node node2) {
+        return node1 != node2 && isDescendentOf(node1, node2);
+    }
+
+    public synchronized List<Node> getAncestors(List<Node> nodes) {
+        BitSet union = new BitSet();
+
+        for (Node node : nodes) {
+            int i = getIndex(node);
+
+            if (i == -1) {
+                union = null;
+                break;
+            }
+
+            union.or(ancestors(i));
+        }
+
+        if (union == null) {
+            return super.getAncestors(nodes);
+        }
+
+        return toNodes(union);
+    }
+
+    public synchronized List<Node> getAdjacentNodes(Node node) {
+        int i = getIndex(node);
+        return i == -1 ? super.getAdjacentNodes(node) : toNodes(adjacencies.get(i));
+    }
+
+    public synchronized List<Node> getParents(Node node) {
+        int i = getIndex(node);
+        return i == -1 ? super.getParents(node) : toNodes(parents.get(i));
+    }
+
+    public synchronized List<Node> getChildren(Node node) {
+        int i = getIndex(node);
+        return i == -1 ? super.getChildren(node) : toNodes(children.get(i));
+    }
+
+    public synchronized int getIndegree(Node node) {
+        int i = getIndex(node);
+        return i == -1 ? super.getIndegree(node) : parents.get(i).cardinality();
+    }
+
+    public synchronized int getOutdegree(Node node) {
+        int i = getIndex(node);
+        return i == -1 ? super.getOutdegree(node) : children.get(i).cardinality();
+    }
+
+    public synchronized boolean addNode(Node node) {
+        boolean added = super.addNode(node);
+
+        if (indices != null && added && !indices.containsKey(node)) {
+            addIndex(node);
+        }
+
+        return added;
+    }
+
+    public synchronized boolean addEdge(Edge edge) {
+        boolean added = super.addEdge(edge);
+
+        if (added) {
+            updatePair(edge.getNode1(), edge.getNode2());
+        }
+
+        return added;
+    }
+
+    public synchronized boolean removeEdge(Edge edge) {
+        boolean removed = super.removeEdge(edge);
+
+        if (removed) {
+            updatePair(edge.getNode1(), edge.getNode2());
+        }
+
+        return removed;
+    }
+
+    public synchronized boolean removeNode(Node node) {
+        boolean changed = super.removeNode(node);
+        indices = null;
+        return changed;
+    }
+
+    public synchronized void clear() {
+        super.clear();
+        indices = null;
+    }
+
+    public synchronized void fullyConnect(Endpoint endpoint) {
+        indices = null;
+        super.fullyConnect(endpoint);
+        indices = null;
+    }
+
+    public synchronized void setNodes(List<Node> nodes) {
+        super.setNodes(nodes);
+        indices = null;
+    }
+
+    public synchronized void changeName(String name, String newName) {
+        super.changeName(name, newName);
+        indices = null;
+    }
+
+    //==============================PRIVATE METHODS========================//
+
+    // Rebuilds the indices and relations from the edge lists.
+    private void reindex() {
+        indexedNodes = new ArrayList<>();
+        indices = new HashMap<>();
+        adjacencies = new ArrayList<>();
+        parents = new ArrayList<>();
+        children = new ArrayList<>();
+        ancestorSets = new ArrayList<>();
+
+        for (Node node : nodes) {
+            addIndex(node);
+        }
+
+        for (Edge edge : edgesSet) {
+            int i = indices.get(edge.getNode1());
+            int j = indices.get(edge.getNode2());
+            adjacencies.get(i).set(j);
+            adjacencies.get(j).set(i);
+
+            if (Edges.traverseDirected(edge.getNode1(), edge) == edge.getNode2()) {
+                parents.get(j).set(i);
+                children.get(i).set(j);
+            }
+
+            if (Edges.traverseDirected(edge.getNode2(), edge) == edge.getNode1()) {
+                parents.get(i).set(j);
+                children.get(j).set(i);
+            }
+        }
+    }
+
+    private void addIndex(Node node) {
+        indices.put(node, indexedNodes.size());
+        indexedNodes.add(node);
+        adjacencies.add(new BitSet());
+        parents.add(new BitSet());
+        children.add(new BitSet());
+        ancestorSets.add(null);
+    }
+
+    // Brings the relations between the two nodes up to date with the edges now between them. Since more than one
+    // edge may connect a pair of nodes, the relations are recalculated from those edges rather than from the edge
+    // that was added or removed.
+    private void updatePair(Node node1, Node node2) {
+        if (indices == null) {
+            return;
+        }
+
+        Integer i = indices.get(node1);
+        Integer j = indices.get(node2);
+
+        if (i == null || j == null) {
+            indices = null;
+            return;
+        }
+
+        boolean adjacent = false;
+        boolean ij = false;
+        boolean ji = false;
+
+        for (Edge edge : edgeLists.get(node1)) {
+            if (edge.getDistalNode(node1) != node2) {
+                continue;
+            }
+
+            adjacent = true;
+            ij |= Edges.traverseDirected(node1, edge) == node2;
+            ji |= Edges.traverseDirected(node2, edge) == node1;
+        }
+
+        adjacencies.get(i).set(j, adjacent);
+        adjacencies.get(j).set(i, adjacent);
+
+        updateParent(i, j, ij);
+        updateParent(j, i, ji);
+    }
+
+    private void updateParent(int parent, int child, boolean isParent) {
+        boolean wasParent = parents.get(child).get(parent);
+
+        if (isParent == wasParent) {
+            return;
+        }
+
+        parents.get(child).set(parent, isParent);
+        children.get(parent).set(child, isParent);
+
+        if (!isParent) {
+            Collections.fill(ancestorSets, null);
+            return;
+        }
+
+        // The new ancestors of each descendant of the child are the ancestors of the parent. These are not changed
+        // by the new edge, and descendants whose ancestors have not been calculated will find them when they are.
+        BitSet parentAncestors = null;
+
+        for (int d = 0; d < ancestorSets.size(); d++) {
+            BitSet _ancestors = ancestorSets.get(d);
+
+            if (_ancestors != null && _ancestors.get(child)) {
+                if (parentAncestors == null) {
+                    parentAncestors = (BitSet) ancestors(parent).clone();
+                }
+
+                _ancestors.or(parentAncestors);
+            }
+        }
+    }
+
+    // The ancestors of the node with the given index, calculated by a breadth first search over parents if they are
+    // not known.
+    private BitSet ancestors(int node) {
+        BitSet _ancestors = ancestorSets.get(node);
+
+        if (_ancestors == null) {
+            _ancestors = new BitSet(indexedNodes.size());
+            _ancestors.set(node);
+
+            int[] queue = new int[indexedNodes.size()];
+            int head = 0;
+            int tail = 0;
+            queue[tail++] = node;
+
+            while (head < tail) {
+                BitSet _parents = parents.get(queue[head++]);
+
+                for (int p = _parents.nextSetBit(0); p >= 0; p = _parents.nextSetBit(p + 1)) {
+                    if (!_ancestors.get(p)) {
+                        _ancestors.set(p);
+                        queue[tail++] = p;
+                    }
+                }
+            }
+
+            ancestorSets.set(node, _ancestors);
+        }
+
+        return _ancestors;
+    }
+
+    private List<Node> toNodes(BitSet bits) {
+        List<Node> _nodes = new ArrayList<>(bits.cardinality());
+
+        for (int i = bits.nextSetBit(0); i >= 0; i = bits.nextSetBit(i + 1)) {
+            _nodes.add(indexedNodes.get(i));
+        }
+
+        return _nodes;
+    }
+}
@@ -32,7 +32,7 @@ import java.util.List;
  */
 public class BDeuScore implements LocalDiscreteScore, IBDeuScore, Score {
     private List<Node> variables;
-    private int[][] data;
+    private PackedDiscreteData data;
     private int sampleSize;
 
     private double samplePrior = 1;
@@ -45,6 +45,8 @@ public class BDeuScore implements LocalDiscreteScore, IBDeuScore, Score {
             throw new NullPointerException("Data was not provided.");
         }
 
+        int[][] columns;
+
         if (dataSet instanceof BoxDataSet) {
             DataBox dataBox = ((BoxDataSet) dataSet).getDataBox();
 
@@ -56,17 +58,17 @@ public class BDeuScore implements LocalDiscreteScore, IBDeuScore, Score {
 
             VerticalIntDataBox box = (VerticalIntDataBox) dataBox;
 
-            data = box.getVariableVectors();
+            columns = box.getVariableVectors();
             this.sampleSize = box.numRows();
         } else {
-            data = new int[dataSet.getNumColumns()][];
+            columns = new int[dataSet.getNumColumns()][];
             this.variables = dataSet.getVariables();
 
             for (int j = 0; j < dataSet.getNumColumns(); j++) {
-                data[j] = new int[dataSet.getNumRows()];
+                columns[j] = new int[dataSet.getNumRows()];
 
                 for (int i = 0; i < dataSet.getNumRows(); i++) {
-                    data[j][i] = dataSet.getInt(i, j);
+                    columns[j][i] = dataSet.getInt(i, j);
                 }
             }
 
@@ -78,6 +80,8 @@ public class BDeuScore implements LocalDiscreteScore, IBDeuScore, Score {
         for (int i = 0; i < variables.size(); i++) {
             numCategories[i] = (getVariable(i)).getNumCategories();
         }
+
+        this.data = new PackedDiscreteData(columns, numCategories);
     }
 
     private DiscreteVariable getVariable(int i) {
@@ -87,57 +91,14 @@ public class BDeuScore implements LocalDiscreteScore, IBDeuScore, Score {
     @Override
     public double localScore(int node, int parents[]) {
 
-        // Number of categories for node.
-        int c = numCategories[node];
-
-        // Numbers of categories of parents.
-        int[] dims = new int[parents.length];
-
-        for (int p = 0; p < parents.length; p++) {
-            dims[p] = numCategories[parents[p]];
-        }
-
-        // Number of parent states.
-        int r = 1;
-
-        for (int p = 0; p < parents.length; p++) {
-            r *= dims[p];
-        }
-
         // Conditional cell coefs of data for node given parents(node).
-        int n_jk[][] = new int[r][c];
-        int n_j[] = new int[r];
-
-        int[] parentValues = new int[parents.length];
-
-        int[][] myParents = new int[parents.length][];
-        for (int i = 0; i < parents.length; i++) {
-            myParents[i] = data[parents[i]];
-        }
-
-        int[] myChild = data[node];
+        PackedDiscreteData.Counts counts = data.count(node, parents);
 
+        // Number of categories for node.
+        int c = counts.getNumValues();
 
-        ROW:
-        for (int i = 0; i < sampleSize; i++) {
-            for (int p = 0; p < parents.length; p++) {
-                if (myParents[p][i] == -99) continue ROW;
-                parentValues[p] = myParents[p][i];
-            }
-
-            int childValue = myChild[i];
-
-            if (childValue == -99) {
-                continue ROW;
-//                throw new IllegalStateException("Please remove or impute missing " +
-//                        "values (record " + i + " column " + i + ")");
-            }
-
-            int rowIndex = getRowIndex(dims, parentValues);
-
-            n_jk[rowIndex][childValue]++;
-            n_j[rowIndex]++;
-        }
+        // Number of parent states.
+        double r = counts.getNumConfigurations();
 
         //Finally, compute the score
         double score = 0.0;
@@ -146,24 +107,29 @@ public class BDeuScore implements LocalDiscreteScore, IBDeuScore, Score {
 
         final double cellPrior = getSamplePrior() / (c * r);
         final double rowPrior = getSamplePrior() / r;
+        final double logGammaCellPrior = Gamma.logGamma(cellPrior);
+        final double logGammaRowPrior = Gamma.logGamma(rowPrior);
 
-        for (int j = 0; j < r; j++) {
-            score -= Gamma.logGamma(rowPrior + n_j[j]);
+        // Parent states and cells with no counts contribute nothing, so only parent states that
+        // occur in the data are visited.
+        for (int j = 0; j < counts.getNumOccupied(); j++) {
+            score -= Gamma.logGamma(rowPrior + counts.getRowTotal(j)) - logGammaRowPrior;
 
             for (int k = 0; k < c; k++) {
-                score += Gamma.logGamma(cellPrior + n_jk[j][k]);
+                int n_jk = counts.getCount(j, k);
+
+                if (n_jk > 0) {
+                    score += Gamma.logGamma(cellPrior + n_jk) - logGammaCellPrior;
+                }
             }
         }
 
-        score += r * Gamma.logGamma(rowPrior);
-        score -= c * r * Gamma.logGamma(cellPrior);
-
         return score;
     }
 
     private double getPriorForStructure(int numParents) {
         double e = getStructurePrior();
-        int vm = data.length - 1;
+        int vm = data.getNumColumns() - 1;
         return numParents * Math.log(e / (vm)) + (vm - numParents) * Math.log(1.0 - (e / (vm)));
     }
 
@@ -215,15 +181,6 @@ public class BDeuScore implements LocalDiscreteScore, IBDeuScore, Score {
         throw new UnsupportedOperationException();
     }
 
-    private static int getRowIndex(int[] dim, int[] values) {
-        int rowIndex = 0;
-        for (int i = 0; i < dim.length; i++) {
-            rowIndex *= dim[i];
-            rowIndex += values[i];
-        }
-        return rowIndex;
-    }
-
     @Override
     public double getStructurePrior() {
         return structurePrior;
@@ -186,8 +186,6 @@ public final class BayesUpdaterClassifier
         }
 
         //Create an updater for the instantiated Bayes net.
-        BayesUpdater bayesUpdater = new RowSummingExactUpdater(getBayesIm());
-
         //Get the raw data from the dataset to be classified, the number
         //of variables and the number of cases.
         int nvars = getBayesImVars().size();
@@ -225,20 +223,16 @@ public final class BayesUpdaterClassifier
                 new double[numTargetCategories][ncases];
         Arrays.fill(estimatedValues, -1);
 
-        //For each case in the dataset to be classified compute the estimated
-        //value of the target variable and increment the appropriate element
-        //of the crosstabulation array. Compute the estimated value of the
-        // target variable by using the observed values of the other variables
-        // and Bayesian updating.
-        for (int i = 0; i < ncases; i++) {
+        Node targetNode = getBayesIm().getNode(targetVariable.getName());
+        int indexTargetBN = getBayesIm().getNodeIndex(targetNode);
 
-            //Create an Evidence instance for the instantiated Bayes net
-            //which will allow that updating.
-            Evidence evidence = Evidence.tautology(getBayesIm());
+        //For each case, let the target variable range over all its values,
+        //and leave a variable unrestricted (-1) where its value is missing.
+        int[][] evidence = new int[ncases][];
 
-            //Let the target variable range over all its values.
-            int itarget = evidence.getNodeIndex(targetVariable.getName());
-            evidence.getProposition().setVariable(itarget, true);
+        for (int i = 0; i < ncases; i++) {
+            evidence[i] = new int[getBayesIm().getNumNodes()];
+            Arrays.fill(evidence[i], -1);
 
             this.missingValueCaseFound = false;
 
@@ -257,18 +251,22 @@ public final class BayesUpdaterClassifier
                 }
 
                 String jName = getBayesImVars().get(j).getName();
-                int jIndex = evidence.getNodeIndex(jName);
-                evidence.getProposition().setCategory(jIndex, observedValue);
+                int jIndex = getBayesIm().getNodeIndex(getBayesIm().getNode(jName));
+                evidence[i][jIndex] = observedValue;
             }
+        }
 
-            //Update using those values.
-            bayesUpdater.setEvidence(evidence);
+        //Update using those values, all cases at once. Cases with the same
+        //observed values are updated together.
+        double[][] targetMarginals = new JunctionTreeAlgorithm(getBayesIm())
+                .getMarginalProbabilities(indexTargetBN, evidence);
 
-            //for each possible value of target compute its probability in
-            //the updated Bayes net.  Select the value with the highest
-            //probability as the estimated value.
-            Node targetNode = getBayesIm().getNode(targetVariable.getName());
-            int indexTargetBN = getBayesIm().getNodeIndex(targetNode);
+        //For each case in the dataset to be classified compute the estimated
+        //value of the target variable and increment the appropriate element
+        //of the crosstabulation array. For each possible value of target
+        //take its probability in the updated Bayes net.  Select the value
+        //with the highest probability as the estimated value.
+        for (int i = 0; i < ncases; i++) {
 
             //Straw man values--to be replaced.
             int estimatedValue = -1;
@@ -276,7 +274,7 @@ public final class BayesUpdaterClassifier
 //            if (numTargetCategories == 2) {
 //                for (int j = 0; j < numTargetCategories; j++) {
 //                    double marginal =
-//                            bayesUpdater.getMarginal(indexTargetBN, j);
+//                            targetMarginals[i][j];
 //                    probOfClassifiedValues[j][i] = marginal;
 //                    probOfClassifiedValues[1 - j][i] = 1.0 - marginal;
 //
@@ -295,8 +293,7 @@ public final class BayesUpdaterClassifier
                 double highestProb = -0.1;
 
                 for (int j = 0; j < numTargetCategories; j++) {
-                    double marginal =
-                            bayesUpdater.getMarginal(indexTargetBN, j);
+                    double marginal = targetMarginals[i][j];
                     probOfClassifiedValues[j][i] = marginal;
 
                     if (marginal >= highestProb) {
@@ -0,0 +1,504 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+
+package edu.cmu.tetrad.search;
+
+import edu.cmu.tetrad.data.ICovarianceMatrix;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Caches Cholesky factors of principal submatrices of a covariance matrix, keyed by the set of
+ * variable indices, so that regressions on the same set of regressors share one factorization.
+ * Given the factor L of S(Z, Z), residual variances and partial covariances given Z cost one
+ * forward solve each, O(k^2) for k = |Z|, instead of an O(k^3) inverse.
+ * <p>
+ * A factor that is not in the cache is obtained, where possible, by a rank-one update of a cached
+ * factor for the set with one index fewer (appending a row, O(k^2)) or one index more (deleting
+ * a row and restoring triangularity with Givens rotations, O(k^2)). Only if neither is cached is
+ * the factor computed from scratch. The cache holds a bounded number of factors, evicting the
+ * least recently used. It is safe for use by several threads.
+ *
+ * @author Joseph Ramsey
+ */
+public class CholeskyCache {
+
+    // The default bound on the number of cached factors.
+    private static final int DEFAULT_MAX_FACTORS = 100000;
+
+    // A pivot this small relative to the variance being regressed marks a singular submatrix.
+    private static final double SINGULARITY_TOLERANCE = 1e-11;
+
+    // The covariance matrix.
+    private final ICovarianceMatrix covariances;
+
+    // The least recently used map from sorted index sets to factors.
+    private final Map<IndexSet, Factor> factors;
+
+    // Statistics.
+    private long hits = 0;
+    private long updates = 0;
+    private long misses = 0;
+
+    /**
+     * Constructs a cache holding at most 100,000 factors.
+     */
+    public CholeskyCache(ICovarianceMatrix covariances) {
+        this(covariances, DEFAULT_MAX_FACTORS);
+    }
+
+    /**
+     * Constructs a cache holding at most the given number of factors.
+     */
+    public CholeskyCache(ICovarianceMatrix covariances, final int maxFactors) {
+        if (covariances == null) {
+            throw new NullPointerException("Covariance matrix not specified.");
+        }
+
+        if (maxFactors < 1) {
+            throw new IllegalArgumentException("Max factors must be at least 1: " + maxFactors);
+        }
+
+        this.covariances = covariances;
+        this.factors = new LinkedHashMap<IndexSet, Factor>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<IndexSet, Factor> eldest) {
+                return size() > maxFactors;
+            }
+        };
+    }
+
+    /**
+     * @return the Cholesky factor of the submatrix of the covariance matrix for the given indices,
+     * in any order, or null if that submatrix is singular.
+     */
+    public Factor getFactor(int[] indices) {
+        return getFactor(indices, -1);
+    }
+
+    /**
+     * @return the Cholesky factor of the submatrix of the covariance matrix for the given indices,
+     * in any order, or null if that submatrix is singular. If it is not cached, the factor for the
+     * given indices plus the given extra index, if cached, may be downdated to obtain it; this
+     * suits a caller that has just regressed on that larger set.
+     */
+    public Factor getFactor(int[] indices, int extra) {
+        IndexSet key = new IndexSet(sorted(indices));
+
+        synchronized (factors) {
+            if (factors.containsKey(key)) {
+                hits++;
+                return factors.get(key);
+            }
+        }
+
+        Factor factor = updateCachedFactor(key, extra);
+
+        if (factor != null) {
+            synchronized (factors) {
+                updates++;
+            }
+        } else {
+            factor = computeFactor(key.indices);
+
+            synchronized (factors) {
+                misses++;
+            }
+        }
+
+        synchronized (factors) {
+            factors.put(key, factor);
+        }
+
+        return factor;
+    }
+
+    /**
+     * @return the factor for the given indices plus the given extra index, or null if that
+     * submatrix is singular. Computed by a rank-one update of the given factor.
+     */
+    public Factor extend(Factor factor, int index) {
+        int k = factor.indices.length;
+        double[] w = solve(factor, index);
+        double d2 = covariances.getValue(index, index) - dot(w, w);
+
+        if (!(d2 > SINGULARITY_TOLERANCE * covariances.getValue(index, index))) {
+            return null;
+        }
+
+        int[] indices = Arrays.copyOf(factor.indices, k + 1);
+        indices[k] = index;
+
+        double[] l = Arrays.copyOf(factor.l, (k + 1) * (k + 2) / 2);
+        System.arraycopy(w, 0, l, k * (k + 1) / 2, k);
+        l[(k + 1) * (k + 2) / 2 - 1] = Math.sqrt(d2);
+
+        return new Factor(indices, l);
+    }
+
+    /**
+     * @return the factor for the given indices less the given index, which must be among them.
+     * Computed by deleting a row of the given factor and restoring triangularity with Givens
+     * rotations.
+     */
+    public Factor remove(Factor factor, int index) {
+        int k = factor.indices.length;
+        int q = -1;
+
+        for (int i = 0; i < k; i++) {
+            if (factor.indices[i] == index) q = i;
+        }
+
+        if (q == -1) {
+            throw new IllegalArgumentException("Index not in factor: " + index);
+        }
+
+        // Rows of L other than q; lower triangular except for one superdiagonal from row q on.
+        double[][] a = new double[k - 1][];
+        int[] indices = new int[k - 1];
+
+        for (int r = 0, s = 0; r < k; r++) {
+            if (r == q) continue;
+            a[s] = new double[k];
+            System.arraycopy(factor.l, r * (r + 1) / 2, a[s], 0, r + 1);
+            indices[s++] = factor.indices[r];
+        }
+
+        for (int c = q; c < k - 1; c++) {
+            double x = a[c][c];
+            double y = a[c][c + 1];
+            double h = Math.hypot(x, y);
+            double cos = x / h;
+            double sin = y / h;
+
+            for (int r = c; r < k - 1; r++) {
+                double u = a[r][c];
+                double v = a[r][c + 1];
+                a[r][c] = cos * u + sin * v;
+                a[r][c + 1] = -sin * u + cos * v;
+            }
+        }
+
+        double[] l = new double[(k - 1) * k / 2];
+
+        for (int r = 0; r < k - 1; r++) {
+            System.arraycopy(a[r], 0, l, r * (r + 1) / 2, r + 1);
+        }
+
+        return new Factor(indices, l);
+    }
+
+    /**
+     * @return w = L^-1 S(Z, j), where L is the factor for Z. The residual variance of j given Z is
+     * S(j, j) - w.w, and the partial covariance of i and j given Z is S(i, j) - w_i.w_j.
+     */
+    public double[] solve(Factor factor, int j) {
+        int k = factor.indices.length;
+        double[] l = factor.l;
+        double[] w = new double[k];
+
+        for (int r = 0; r < k; r++) {
+            int row = r * (r + 1) / 2;
+            double sum = covariances.getValue(factor.indices[r], j);
+
+            for (int c = 0; c < r; c++) {
+                sum -= l[row + c] * w[c];
+            }
+
+            w[r] = sum / l[row + r];
+        }
+
+        return w;
+    }
+
+    /**
+     * @return the variance of j conditional on the indices of the given factor.
+     */
+    public double residualVariance(Factor factor, int j) {
+        double[] w = solve(factor, j);
+        return covariances.getValue(j, j) - dot(w, w);
+    }
+
+    /**
+     * @return the covariance of i and j conditional on the indices of the given factor.
+     */
+    public double partialCovariance(Factor factor, int i, int j) {
+        double[] wi = solve(factor, i);
+        double[] wj = solve(factor, j);
+        return covariances.getValue(i, j) - dot(wi, wj);
+    }
+
+    /**
+     * @return the correlation of i and j conditional on the indices of the given factor.
+     */
+    public double partialCorrelation(Factor factor, int i, int j) {
+        double[] wi = solve(factor, i);
+        double[] wj = solve(factor, j);
+        double vi = covariances.getValue(i, i) - dot(wi, wi);
+        double vj = covariances.getValue(j, j) - dot(wj, wj);
+        return (covariances.getValue(i, j) - dot(wi, wj)) / Math.sqrt(vi * vj);
+    }
+
+    /**
+     * @return the correlations of xs[i] and ys[i] conditional on the indices of the given factor,
+     * for each i. Each distinct index is solved for once, so a batch of m pairs over v distinct
+     * variables costs O(v k^2 + m k) rather than O(m k^2).
+     */
+    public double[] partialCorrelations(Factor factor, int[] xs, int[] ys) {
+        if (xs.length != ys.length) {
+            throw new IllegalArgumentException("Expecting as many xs as ys.");
+        }
+
+        Map<Integer, double[]> solved = new HashMap<>();
+        Map<Integer, Double> variances = new HashMap<>();
+
+        for (int[] side : new int[][]{xs, ys}) {
+            for (int j : side) {
+                if (!solved.containsKey(j)) {
+                    double[] w = solve(factor, j);
+                    solved.put(j, w);
+                    variances.put(j, covariances.getValue(j, j) - dot(w, w));
+                }
+            }
+        }
+
+        double[] r = new double[xs.length];
+
+        for (int i = 0; i < xs.length; i++) {
+            double c = covariances.getValue(xs[i], ys[i]) - dot(solved.get(xs[i]), solved.get(ys[i]));
+            r[i] = c / Math.sqrt(variances.get(xs[i]) * variances.get(ys[i]));
+        }
+
+        return r;
+    }
+
+    /**
+     * @return the residual variances of y given Z and of y given Z plus x, where the given factor
+     * is for Z, at the cost of two forward solves. The second is NaN if x is linearly dependent
+     * on Z.
+     */
+    public double[] residualVariances(Factor factor, int x, int y) {
+        double[] wx = solve(factor, x);
+        double[] wy = solve(factor, y);
+
+        double vy = covariances.getValue(y, y) - dot(wy, wy);
+        double vx = covariances.getValue(x, x) - dot(wx, wx);
+        double cxy = covariances.getValue(x, y) - dot(wx, wy);
+
+        if (!(vx > SINGULARITY_TOLERANCE * covariances.getValue(x, x))) {
+            return new double[]{vy, Double.NaN};
+        }
+
+        return new double[]{vy, vy - cxy * cxy / vx};
+    }
+
+    /**
+     * @return the covariance matrix being factored.
+     */
+    public ICovarianceMatrix getCovariances() {
+        return covariances;
+    }
+
+    /**
+     * @return the number of cached factors.
+     */
+    public int size() {
+        synchronized (factors) {
+            return factors.size();
+        }
+    }
+
+    /**
+     * @return the number of requests for a factor that was in the cache.
+     */
+    public long getNumHits() {
+        synchronized (factors) {
+            return hits;
+        }
+    }
+
+    /**
+     * @return the number of requests for a factor computed by a rank-one update of a cached one.
+     */
+    public long getNumUpdates() {
+        synchronized (factors) {
+            return updates;
+        }
+    }
+
+    /**
+     * @return the number of requests for a factor computed from scratch.
+     */
+    public long getNumMisses() {
+        synchronized (factors) {
+            return misses;
+        }
+    }
+
+    /**
+     * Removes all cached factors.
+     */
+    public void clear() {
+        synchronized (factors) {
+            factors.clear();
+        }
+    }
+
+    //=============================PRIVATE METHODS=========================//
+
+    // Updates a cached factor for a set differing from the key by one index, or returns null if
+    // there is none. A null factor in the cache means that set is singular.
+    private Factor updateCachedFactor(IndexSet key, int extra) {
+        int[] indices = key.indices;
+        int k = indices.length;
+
+        if (extra >= 0 && Arrays.binarySearch(indices, extra) < 0) {
+            int[] larger = Arrays.copyOf(indices, k + 1);
+            larger[k] = extra;
+            Arrays.sort(larger);
+            Factor factor;
+
+            synchronized (factors) {
+                factor = factors.get(new IndexSet(larger));
+            }
+
+            if (factor != null) {
+                return remove(factor, extra);
+            }
+        }
+
+        if (k == 0) {
+            return null;
+        }
+
+        int[] smaller = new int[k - 1];
+
+        for (int q = 0; q < k; q++) {
+            for (int i = 0, j = 0; i < k; i++) {
+                if (i != q) smaller[j++] = indices[i];
+            }
+
+            Factor factor;
+
+            synchronized (factors) {
+                factor = factors.get(new IndexSet(smaller));
+            }
+
+            if (factor != null) {
+                return extend(factor, indices[q]);
+            }
+        }
+
+        return null;
+    }
+
+    private Factor computeFactor(int[] indices) {
+        Factor factor = new Factor(new int[0], new double[0]);
+
+        for (int index : indices) {
+            factor = extend(factor, index);
+
+            if (factor == null) {
+                return null;
+            }
+        }
+
+        return factor;
+    }
+
+    private static int[] sorted(int[] indices) {
+        int[] sorted = Arrays.copyOf(indices, indices.length);
+        Arrays.sort(sorted);
+        return sorted;
+    }
+
+    private static double dot(double[] a, double[] b) {
+        double sum = 0.0;
+
+        for (int i = 0; i < a.length; i++) {
+            sum += a[i] * b[i];
+        }
+
+        return sum;
+    }
+
+    /**
+     * A Cholesky factor L of S(Z, Z), with S(Z, Z) = L L'. The rows of L, in the order of the
+     * indices, are packed into one array, row r starting at r(r + 1) / 2.
+     */
+    public static final class Factor {
+        private final int[] indices;
+        private final double[] l;
+
+        private Factor(int[] indices, double[] l) {
+            this.indices = indices;
+            this.l = l;
+        }
+
+        /**
+         * @return the indices of Z, in the order of the rows of L.
+         */
+        public int[] getIndices() {
+            return Arrays.copyOf(indices, indices.length);
+        }
+
+        /**
+         * @return the size of Z.
+         */
+        public int size() {
+            return indices.length;
+        }
+
+        /**
+         * @return element (i, j) of L.
+         */
+        public double get(int i, int j) {
+            return j > i ? 0.0 : l[i * (i + 1) / 2 + j];
+        }
+    }
+
+    /**
+     * A sorted set of indices, as a map key.
+     */
+    private static final class IndexSet {
+        private final int[] indices;
+        private final int hashCode;
+
+        IndexSet(int[] sorted) {
+            this.indices = sorted;
+            this.hashCode = Arrays.hashCode(sorted);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof IndexSet && Arrays.equals(indices, ((IndexSet) o).indices);
+        }
+    }
+}
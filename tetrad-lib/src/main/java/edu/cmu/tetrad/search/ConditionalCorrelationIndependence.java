@@ -28,6 +28,7 @@ import edu.cmu.tetrad.util.StatUtils;
 import org.apache.commons.math3.distribution.NormalDistribution;
 
 import java.util.*;
+import java.util.stream.IntStream;
 
 import static edu.cmu.tetrad.util.StatUtils.*;
 import static java.lang.Math.*;
@@ -50,6 +51,8 @@ import static java.lang.Math.pow;
  * Biometrika, 67(3), 581-590.
  * <p>
  * We use Nadaraya-Watson kernel regression, though we further restrict the sample size to nearby points.
+ * The nearby points are found using a k-d tree over the conditioning variables; the neighbors of every
+ * point are found once for each conditioning set and kept for the next few tests that condition on it.
  *
  * @author Joseph Ramsey
  */
@@ -65,11 +68,6 @@ public final class ConditionalCorrelationIndependence {
      */
     private final double[][] data;
 
-    /**
-     * The ith array gives indices into the ith variables in sorted order.
-     */
-    private final ArrayList<List<Integer>> sortedIndices;
-
     /**
      * The significance level of the independence tests.
      */
@@ -80,11 +78,6 @@ public final class ConditionalCorrelationIndependence {
      */
     private final double[] h;
 
-    /**
-     * Looks up the index of a record in the the sorted order for each variable z.
-     */
-    private final List<Map<Integer, Integer>> reverseLookup;
-
     /**
      * Depth 0 residuals for reuse.
      */
@@ -141,6 +134,22 @@ public final class ConditionalCorrelationIndependence {
      */
     private int numDependenceSpotChecks = 10;
 
+    /**
+     * The number of conditioning sets for which nearest neighbors are kept.
+     */
+    private static final int NEIGHBOR_CACHE_SIZE = 10;
+
+    /**
+     * The nearest neighbors of each sample for the most recently used conditioning sets, keyed by the sorted
+     * indices of the conditioning variables.
+     */
+    private final Map<List<Integer>, int[][]> neighbors = new LinkedHashMap<List<Integer>, int[][]>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<List<Integer>, int[][]> eldest) {
+            return size() > NEIGHBOR_CACHE_SIZE;
+        }
+    };
+
     //==================CONSTRUCTORS====================//
 
     /**
@@ -189,16 +198,6 @@ public final class ConditionalCorrelationIndependence {
 
         this.cutoff = getZForAlpha(alpha);
 
-        sortedIndices = new ArrayList<>();
-
-        for (double[] x : data) {
-            List<Integer> sorted = new ArrayList<>();
-            for (int t = 0; t < x.length; t++) sorted.add(t);
-
-            sorted.sort(Comparator.comparingDouble(o -> x[o]));
-            sortedIndices.add(sorted);
-        }
-
         double[] means = new double[data.length];
 
         for (int r = 0; r < data.length; r++) {
@@ -214,18 +213,6 @@ public final class ConditionalCorrelationIndependence {
                 depth0Residuals[z][i] = data[z][i] - means[z];
             }
         }
-
-        reverseLookup = new ArrayList<>();
-
-        for (int z2 = 0; z2 < data.length; z2++) {
-            Map<Integer, Integer> m = new HashMap<>();
-
-            for (int j = 0; j < data[z2].length; j++) {
-                m.put(sortedIndices.get(z2).get(j), j);
-            }
-
-            reverseLookup.add(m);
-        }
     }
 
     //=================PUBLIC METHODS====================//
@@ -257,18 +244,18 @@ public final class ConditionalCorrelationIndependence {
                 return getPValue(score);
             } else {
                 double min = Double.POSITIVE_INFINITY;
+                int[][] neighbors = getNeighbors(_z);
 
                 // X _||_ Y | Z ? Look for a dependence rx ~_||_ ry | Z = _z
                 for (int i = 0; i < numDependenceSpotChecks; i++) {
-                    List<Integer> js = new ArrayList<>(getCloseZs(data, _z,
-                            RandomUtil.getInstance().nextInt(N), kernelRegressionSampleSize));
+                    int[] js = neighbors[RandomUtil.getInstance().nextInt(N)];
 
-                    double[] rx2 = new double[js.size()];
-                    double[] ry2 = new double[js.size()];
+                    double[] rx2 = new double[js.length];
+                    double[] ry2 = new double[js.length];
 
-                    for (int k = 0; k < js.size(); k++) {
-                        rx2[k] = rx[js.get(k)];
-                        ry2[k] = ry[js.get(k)];
+                    for (int k = 0; k < js.length; k++) {
+                        rx2[k] = rx[js[k]];
+                        ry2[k] = ry[js[k]];
                     }
 
                     double _score = independent(rx2, ry2);
@@ -320,11 +307,10 @@ public final class ConditionalCorrelationIndependence {
         }
 
         double h = getH(_z);
+        int[][] neighbors = getNeighbors(_z);
 
-        for (int i = 0; i < N; i++) {
-            Set<Integer> js = getCloseZs(data, _z, i, kernelRegressionSampleSize);
-
-            for (int j : js) {
+        IntStream.range(0, N).parallel().forEach(i -> {
+            for (int j : neighbors[i]) {
                 double xj = xdata[j];
                 double d = distance(data, _z, i, j);
 
@@ -341,7 +327,7 @@ public final class ConditionalCorrelationIndependence {
                 sumx[i] += k * xj;
                 totalWeightx[i] += k;
             }
-        }
+        });
 
         for (int i = 0; i < N; i++) {
             if (totalWeightx[i] == 0) totalWeightx[i] = 1;
@@ -414,6 +400,10 @@ public final class ConditionalCorrelationIndependence {
 
     public void setKernelRegressionSampleSize(int kernelRegressionSapleSize) {
         this.kernelRegressionSampleSize = kernelRegressionSapleSize;
+
+        synchronized (neighbors) {
+            neighbors.clear();
+        }
     }
 
     public void setEarlyReturn(boolean earlyReturn) {
@@ -599,85 +589,31 @@ public final class ConditionalCorrelationIndependence {
         return data;
     }
 
-//    private Set<Integer> getCloseZs(double[][] data, int[] _z, int i, int sampleSize) {
-//        try {
-//            Set<Integer> js = new HashSet<>();
-//
-//            if (sampleSize > data[0].length) sampleSize = (int) ceil(0.8 * data.length);
-//            if (_z.length == 0) return new HashSet<>();
-//
-//            int[] left = new int[_z.length];
-//            int[] right = new int[_z.length];
-//
-//            while (true) {
-//                for (int k = 0; k < _z.length; k++) {
-//                    int z1 = _z[k];
-//                    int l = -1, r = -1;
-//
-//                    int q = reverseLookup.get(z1).get(k);
-//                    int qq = sortedIndices.get(z1).get(q);
-//
-//                    if (q - left[k] >= 0 && q - left[k] < data[z1].length) {
-//                        l = sortedIndices.get(z1).get(q - left[k]);
-//                    }
-//
-//                    if (q + right[k] >= 0 && q + right[k] < data[z1].length) {
-//                        r = sortedIndices.get(z1).get(q + right[k]);
-//                    }
-//
-//                    final double L = l == -1 ? 0 : data[z1][qq] - data[z1][l];
-//                    final double R = r == -1 ? 0 : data[z1][r] - data[z1][qq];
-//
-//                    if (L == 0 && R == 0) {
-//                        js.add(qq);
-//                        if (js.size() >= sampleSize) return js;
-//                        left[k]++;
-//                        right[k]++;
-//                    } else if (L > R) {
-//                        js.add(l);
-//                        if (js.size() >= sampleSize) return js;
-//                        left[k]++;
-//                    } else {
-//                        js.add(r);
-//                        if (js.size() >= sampleSize) return js;
-//                        right[k]++;
-//                    }
-//                }
-//            }
-//        } catch (Exception e) {
-//            e.printStackTrace();
-//            throw new RuntimeException(e);
-//        }
-//    }
-
-    private Set<Integer> getCloseZs(double[][] data, int[] _z, int i, int sampleSize) {
-        Set<Integer> js = new HashSet<>();
-
-        if (sampleSize > data[0].length) sampleSize = (int) ceil(0.8 * data.length);
-        if (_z.length == 0) return new HashSet<>();
-
-        int radius = 0;
-
-        while (true) {
-            for (int z1 : _z) {
-                int q = reverseLookup.get(z1).get(i);
-
-                if (q - radius >= 0 && q - radius < data[z1].length) {
-                    final int r2 = sortedIndices.get(z1).get(q - radius);
-                    js.add(r2);
-                }
+    // The kernelRegressionSampleSize nearest neighbors of each sample in the space of the conditioning
+    // variables, found using a k-d tree.
+    private int[][] getNeighbors(int[] _z) {
+        int[] sorted = _z.clone();
+        Arrays.sort(sorted);
 
-                if (q + radius >= 0 && q + radius < data[z1].length) {
-                    final int r2 = sortedIndices.get(z1).get(q + radius);
-                    js.add(r2);
-                }
+        List<Integer> key = new ArrayList<>();
+        for (int z : sorted) key.add(z);
 
-            }
+        int[][] _neighbors;
 
-            if (js.size() >= sampleSize) return js;
+        synchronized (neighbors) {
+            _neighbors = neighbors.get(key);
+        }
+
+        if (_neighbors == null) {
+            int sampleSize = min(kernelRegressionSampleSize, data[0].length);
+            _neighbors = new KdTree(data, sorted).nearest(sampleSize);
 
-            radius++;
+            synchronized (neighbors) {
+                neighbors.put(key, _neighbors);
+            }
         }
+
+        return _neighbors;
     }
 
     private double getH(int[] _z) {
@@ -251,7 +251,7 @@ public class DagInPatternIterator {
                 meek.orientImplied(graph);
 
                 // Keep track of changed edges for highlighting
-                Set<Edge> changedEdges = meek.getChangedEdges().keySet();
+                Collection<Edge> changedEdges = meek.getChangedEdges().values();
 
                 edges.addAll(changedEdges);
                 this.getChangedEdges().put(graph, edges);
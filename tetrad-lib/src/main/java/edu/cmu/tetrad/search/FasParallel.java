@@ -0,0 +1,637 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+
+package edu.cmu.tetrad.search;
+
+import edu.cmu.tetrad.data.IKnowledge;
+import edu.cmu.tetrad.data.Knowledge2;
+import edu.cmu.tetrad.graph.*;
+import edu.cmu.tetrad.util.ChoiceSpliterator;
+import edu.cmu.tetrad.util.ForkJoinPoolInstance;
+import edu.cmu.tetrad.util.TetradLogger;
+
+import java.io.PrintStream;
+import java.text.DecimalFormat;
+import java.text.NumberFormat;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.IntStream;
+
+/**
+ * Implements the "fast adjacency search" used in several causal algorithm in this package. In the fast adjacency
+ * search, at a given stage of the search, an edge X*-*Y is removed from the graph if X _||_ Y | S, where S is a subset
+ * of size d either of adj(X) or of adj(Y), where d is the depth of the search. The fast adjacency search performs this
+ * procedure for each pair of adjacent edges in the graph and for each depth d = 0, 1, 2, ..., d1, where d1 is either
+ * the maximum depth or else the first such depth at which no edges can be removed. A mapping from {x, y} to
+ * S({x, y}) is returned for edges x *-* y that have been removed.
+ * <p>
+ * This variant uses the PC-Stable modification. Each depth is run in a shared pool. The candidate sets for each side
+ * of an edge are taken by the pool's threads in work items, runs of consecutive candidate sets claimed from a shared
+ * cursor as they are needed, and the work items for an edge stop as soon as a sepset is found that comes earlier in
+ * the order of candidate sets: the subsets of adj(X) in ChoiceGenerator order, then those of adj(Y), with nodes in
+ * the order given. The sepset recorded for an edge is always the first in that order, so results do not depend on the
+ * number of threads or on the order in which work items are run.
+ *
+ * @author Joseph Ramsey.
+ */
+public class FasParallel implements IFas {
+
+    /**
+     * The independence test. This should be appropriate to the types
+     */
+    private final IndependenceTest test;
+
+    /**
+     * Specification of which edges are forbidden or required.
+     */
+    private IKnowledge knowledge = new Knowledge2();
+
+    /**
+     * The maximum number of variables conditioned on in any conditional independence test. If the depth is -1, it will
+     * be taken to be the maximum value, which is 1000. Otherwise, it should be set to a non-negative integer.
+     */
+    private int depth = 1000;
+
+    /**
+     * The largest number of candidate sets in a work item.
+     */
+    private int chunk = 64;
+
+    /**
+     * The number of independence tests.
+     */
+    private final AtomicInteger numIndependenceTests = new AtomicInteger();
+
+    /**
+     * The logger, by default the empty logger.
+     */
+    private TetradLogger logger = TetradLogger.getInstance();
+
+    /**
+     * The sepsets found during the search.
+     */
+    private SepsetMap sepsets = new SepsetMap();
+
+    /**
+     * The depth 0 graph, specified initially.
+     */
+    private Graph initialGraph;
+
+    private NumberFormat nf = new DecimalFormat("0.00E0");
+
+    /**
+     * True iff verbose output should be printed.
+     */
+    private boolean verbose = false;
+
+    private PrintStream out = System.out;
+
+    /**
+     * The pool the work items for each depth are run in.
+     */
+    private ForkJoinPool pool = ForkJoinPoolInstance.getInstance().getPool();
+
+    /**
+     * The number of independence tests done per second at each depth of the last search.
+     */
+    private List<Double> testsPerSecond = new ArrayList<>();
+
+    /**
+     * The elapsed time of the last search, in milliseconds.
+     */
+    private long elapsedTime = 0;
+
+    //==========================CONSTRUCTORS=============================//
+
+    /**
+     * Constructs a new FastAdjacencySearch.
+     */
+    public FasParallel(IndependenceTest test) {
+        if (test == null) {
+            throw new NullPointerException("Independence test must not be null.");
+        }
+
+        this.test = test;
+    }
+
+    //==========================PUBLIC METHODS===========================//
+
+    /**
+     * Discovers all adjacencies in data.  The procedure is to remove edges in the graph which connect pairs of
+     * variables which are independent conditional on some other set of variables in the graph (the "sepset"). These are
+     * removed in tiers.  First, edges which are independent conditional on zero other variables are removed, then edges
+     * which are independent conditional on one other variable are removed, then two, then three, and so on, until no
+     * more edges can be removed from the graph.  The edges which remain in the graph after this procedure are the
+     * adjacencies in the data.
+     *
+     * @return a SepSet, which indicates which variables are independent conditional on which other variables
+     */
+    public Graph search() {
+        return search(test.getVariables());
+    }
+
+    /**
+     * Runs the search over the given variables of the independence test.
+     */
+    public Graph search(List<Node> nodes) {
+        this.logger.log("info", "Starting Fast Adjacency Search.");
+        long start = System.currentTimeMillis();
+
+        nodes = new ArrayList<>(nodes);
+        sepsets = new SepsetMap();
+        numIndependenceTests.set(0);
+        testsPerSecond = new ArrayList<>();
+
+        int _depth = depth;
+
+        if (_depth == -1) {
+            _depth = 1000;
+        }
+
+        Map<Node, Set<Node>> adjacencies = new ConcurrentHashMap<>();
+
+        for (Node node : nodes) {
+            adjacencies.put(node, ConcurrentHashMap.<Node>newKeySet());
+        }
+
+        for (int d = 0; d <= _depth; d++) {
+            boolean more;
+
+            if (d == 0) {
+                more = searchAtDepth0(nodes, adjacencies);
+            } else {
+                more = searchAtDepth(nodes, adjacencies, d);
+            }
+
+            if (!more) {
+                break;
+            }
+        }
+
+        Graph graph = new EdgeListGraphSingleConnections(nodes);
+
+        for (int i = 0; i < nodes.size(); i++) {
+            for (int j = i + 1; j < nodes.size(); j++) {
+                Node x = nodes.get(i);
+                Node y = nodes.get(j);
+
+                if (adjacencies.get(x).contains(y)) {
+                    graph.addUndirectedEdge(x, y);
+                }
+            }
+        }
+
+        this.elapsedTime = System.currentTimeMillis() - start;
+        this.logger.log("info", "Finishing Fast Adjacency Search.");
+
+        return graph;
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+
+    public void setDepth(int depth) {
+        if (depth < -1) {
+            throw new IllegalArgumentException(
+                    "Depth must be -1 (unlimited) or >= 0.");
+        }
+
+        this.depth = depth;
+    }
+
+    public IKnowledge getKnowledge() {
+        return knowledge;
+    }
+
+    public void setKnowledge(IKnowledge knowledge) {
+        if (knowledge == null) {
+            throw new NullPointerException("Cannot set knowledge to null");
+        }
+        this.knowledge = knowledge;
+    }
+
+    /**
+     * @return the number of independence tests done per second at each depth of the last search, starting with
+     * depth 0.
+     */
+    public List<Double> getTestsPerSecond() {
+        return new ArrayList<>(testsPerSecond);
+    }
+
+    public int getChunk() {
+        return chunk;
+    }
+
+    /**
+     * Sets the largest number of candidate sets tested in a single work item.
+     */
+    public void setChunk(int chunk) {
+        if (chunk < 1) {
+            throw new IllegalArgumentException("Chunk must be at least 1: " + chunk);
+        }
+
+        this.chunk = chunk;
+    }
+
+    /**
+     * Sets the pool the work items for each depth are run in. By default this is the shared pool.
+     */
+    public void setPool(ForkJoinPool pool) {
+        if (pool == null) {
+            throw new NullPointerException("Pool must not be null.");
+        }
+
+        this.pool = pool;
+    }
+
+    //==============================PRIVATE METHODS======================/
+
+    private boolean searchAtDepth0(final List<Node> nodes, final Map<Node, Set<Node>> adjacencies) {
+        final List<Node> empty = Collections.emptyList();
+        final Queue<NodePair> independent = new ConcurrentLinkedQueue<>();
+
+        long start = System.nanoTime();
+        int numTests = numIndependenceTests.get();
+
+        run(() -> IntStream.range(0, nodes.size()).parallel().forEach(i -> {
+            if (Thread.currentThread().isInterrupted()) {
+                return;
+            }
+
+            Node x = nodes.get(i);
+
+            for (int j = i + 1; j < nodes.size(); j++) {
+                Node y = nodes.get(j);
+
+                if (initialGraph != null) {
+                    Node x2 = initialGraph.getNode(x.getName());
+                    Node y2 = initialGraph.getNode(y.getName());
+
+                    if (!initialGraph.isAdjacentTo(x2, y2)) {
+                        continue;
+                    }
+                }
+
+                boolean _independent;
+
+                try {
+                    numIndependenceTests.incrementAndGet();
+                    _independent = test.isIndependent(x, y, empty);
+                } catch (Exception e) {
+                    testFailed(x, y, empty, e);
+                    _independent = false;
+                }
+
+                boolean noEdgeRequired =
+                        knowledge.noEdgeRequired(x.getName(), y.getName());
+
+                if (_independent && noEdgeRequired) {
+                    independent.add(new NodePair(x, y));
+                } else if (!forbiddenEdge(x, y)) {
+                    adjacencies.get(x).add(y);
+                    adjacencies.get(y).add(x);
+                }
+            }
+        }));
+
+        for (NodePair pair : independent) {
+            getSepsets().set(pair.getFirst(), pair.getSecond(), empty);
+        }
+
+        logThroughput(0, numIndependenceTests.get() - numTests, System.nanoTime() - start);
+
+        return freeDegree(nodes, adjacencies) > 0;
+    }
+
+    private boolean searchAtDepth(List<Node> nodes, final Map<Node, Set<Node>> adjacencies, final int depth) {
+        final Map<Node, Integer> indices = new HashMap<>();
+
+        for (int i = 0; i < nodes.size(); i++) {
+            indices.put(nodes.get(i), i);
+        }
+
+        // The adjacencies at the start of the depth, in node order, from which all candidate sets are taken.
+        final Map<Node, List<Node>> adjacenciesCopy = new HashMap<>();
+
+        for (Node node : nodes) {
+            List<Node> adj = new ArrayList<>(adjacencies.get(node));
+            adj.sort(Comparator.comparing(indices::get));
+            adjacenciesCopy.put(node, adj);
+        }
+
+        List<Pair> pairs = new ArrayList<>();
+        List<Side> sides = new ArrayList<>();
+
+        for (Node x : nodes) {
+            for (Node y : adjacenciesCopy.get(x)) {
+                if (indices.get(y) < indices.get(x)) continue;
+                if (!knowledge.noEdgeRequired(x.getName(), y.getName())) continue;
+
+                Pair pair = new Pair(x, y);
+                pairs.add(pair);
+                addSide(sides, pair, x, y, adjacenciesCopy.get(x), depth, 0);
+                addSide(sides, pair, y, x, adjacenciesCopy.get(y), depth, Long.MAX_VALUE / 2);
+            }
+        }
+
+        long start = System.nanoTime();
+        int numTests = numIndependenceTests.get();
+
+        // Each side gets at most as many workers as the pool has threads; the workers claim work items until the
+        // candidate sets run out or a sepset earlier in the order is found.
+        run(() -> sides.parallelStream().forEach(side -> {
+            long numWorkers = Math.min(pool.getParallelism(), (side.numChoices + chunk - 1) / chunk);
+            IntStream.range(0, (int) numWorkers).parallel().forEach(worker -> {
+                long from;
+
+                while ((from = side.next.getAndAdd(chunk)) < side.numChoices) {
+                    if (!testRange(side, from, Math.min(from + chunk, side.numChoices), adjacencies)) {
+                        return;
+                    }
+                }
+            });
+        }));
+
+        for (Pair pair : pairs) {
+            if (pair.sepset != null) {
+                getSepsets().set(pair.x, pair.y, pair.sepset);
+
+                if (verbose) {
+                    String message = SearchLogUtils.independenceFact(pair.x, pair.y, pair.sepset);
+                    TetradLogger.getInstance().forceLogMessage(message);
+                    out.println(message);
+                }
+            }
+        }
+
+        logThroughput(depth, numIndependenceTests.get() - numTests, System.nanoTime() - start);
+
+        return freeDegree(nodes, adjacencies) > depth;
+    }
+
+    // Adds the candidate sets for x _||_ y | S, S a subset of the possible parents of x, if there are any.
+    private void addSide(List<Side> sides, Pair pair, Node x, Node y, List<Node> adj, int depth, long offset) {
+        List<Node> adjx = new ArrayList<>(adj);
+        adjx.remove(y);
+        List<Node> ppx = possibleParents(x, adjx, knowledge);
+
+        if (ppx.size() < depth) {
+            return;
+        }
+
+        sides.add(new Side(pair, x, y, ppx, new ChoiceSpliterator(ppx.size(), depth), offset));
+    }
+
+    // Tests the candidate sets of the side with ranks from (inclusive) to to (exclusive), in order. Returns false if
+    // the edge needs no more tests on this side, because a sepset has been found at or before the last set tested.
+    private boolean testRange(Side side, long from, long to, Map<Node, Set<Node>> adjacencies) {
+        ChoiceSpliterator choices = side.choices.range(from, to);
+        int[][] choice = new int[1][];
+        long index = side.offset + from;
+
+        while (choices.tryAdvance(c -> choice[0] = c)) {
+            if (index >= side.pair.first.get() || Thread.currentThread().isInterrupted()) {
+                return false;
+            }
+
+            List<Node> condSet = GraphUtils.asList(choice[0], side.ppx);
+
+            boolean independent;
+
+            try {
+                numIndependenceTests.incrementAndGet();
+                independent = test.isIndependent(side.x, side.y, condSet);
+            } catch (Exception e) {
+                testFailed(side.x, side.y, condSet, e);
+                independent = false;
+            }
+
+            if (independent) {
+                side.pair.found(index, condSet);
+                adjacencies.get(side.x).remove(side.y);
+                adjacencies.get(side.y).remove(side.x);
+                return false;
+            }
+
+            index++;
+        }
+
+        return true;
+    }
+
+    private void run(Runnable task) {
+        try {
+            pool.submit(task).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    private void logThroughput(int depth, int numTests, long nanos) {
+        double seconds = nanos / 1e9;
+        double rate = seconds > 0 ? numTests / seconds : 0;
+        testsPerSecond.add(rate);
+
+        String message = "Depth " + depth + ": " + numTests + " tests in " + nf.format(seconds) + " s, "
+                + nf.format(rate) + " tests/sec";
+
+        this.logger.log("info", message);
+
+        if (verbose) {
+            out.println(message);
+        }
+    }
+
+    // A test that fails counts as dependence, which keeps the edge; the failure is logged at every depth.
+    private void testFailed(Node x, Node y, List<Node> z, Exception e) {
+        this.logger.error("Independence test failed for " + SearchLogUtils.independenceFact(x, y, z) + ": " + e);
+        e.printStackTrace();
+    }
+
+    private int freeDegree(List<Node> nodes, Map<Node, Set<Node>> adjacencies) {
+        int max = 0;
+
+        for (Node x : nodes) {
+            max = Math.max(max, adjacencies.get(x).size() - 1);
+        }
+
+        return max;
+    }
+
+    private boolean forbiddenEdge(Node x, Node y) {
+        String name1 = x.getName();
+        String name2 = y.getName();
+
+        if (knowledge.isForbidden(name1, name2) &&
+                knowledge.isForbidden(name2, name1)) {
+            this.logger.log("edgeRemoved", "Removed " + Edges.undirectedEdge(x, y) + " because it was " +
+                    "forbidden by background knowledge.");
+
+            return true;
+        }
+
+        return false;
+    }
+
+    private List<Node> possibleParents(Node x, List<Node> adjx,
+                                       IKnowledge knowledge) {
+        List<Node> possibleParents = new ArrayList<>();
+        String _x = x.getName();
+
+        for (Node z : adjx) {
+            String _z = z.getName();
+
+            if (possibleParentOf(_z, _x, knowledge)) {
+                possibleParents.add(z);
+            }
+        }
+
+        return possibleParents;
+    }
+
+    private boolean possibleParentOf(String z, String x, IKnowledge knowledge) {
+        return !knowledge.isForbidden(z, x) && !knowledge.isRequired(x, z);
+    }
+
+    public int getNumIndependenceTests() {
+        return numIndependenceTests.get();
+    }
+
+    @Override
+    public void setTrueGraph(Graph trueGraph) {
+
+    }
+
+    @Override
+    public int getNumFalseDependenceJudgments() {
+        return 0;
+    }
+
+    @Override
+    public int getNumDependenceJudgments() {
+        return 0;
+    }
+
+    public SepsetMap getSepsets() {
+        return sepsets;
+    }
+
+    public void setInitialGraph(Graph initialGraph) {
+        this.initialGraph = initialGraph;
+    }
+
+    public boolean isVerbose() {
+        return verbose;
+    }
+
+    public void setVerbose(boolean verbose) {
+        this.verbose = verbose;
+    }
+
+    @Override
+    public boolean isAggressivelyPreventCycles() {
+        return false;
+    }
+
+    @Override
+    public void setAggressivelyPreventCycles(boolean aggressivelyPreventCycles) {
+
+    }
+
+    @Override
+    public IndependenceTest getIndependenceTest() {
+        return test;
+    }
+
+    @Override
+    public long getElapsedTime() {
+        return elapsedTime;
+    }
+
+    @Override
+    public List<Node> getNodes() {
+        return test.getVariables();
+    }
+
+    @Override
+    public List<Triple> getAmbiguousTriples(Node node) {
+        return null;
+    }
+
+    @Override
+    public void setOut(PrintStream out) {
+        if (out == null) throw new NullPointerException();
+        this.out = out;
+    }
+
+    // An edge being tested at the current depth, with the earliest sepset found for it so far.
+    private static class Pair {
+        private final Node x;
+        private final Node y;
+        private final AtomicLong first = new AtomicLong(Long.MAX_VALUE);
+        private List<Node> sepset = null;
+
+        private Pair(Node x, Node y) {
+            this.x = x;
+            this.y = y;
+        }
+
+        private synchronized void found(long index, List<Node> sepset) {
+            if (index < first.get()) {
+                first.set(index);
+                this.sepset = sepset;
+            }
+        }
+    }
+
+    // The tests of x _||_ y | S for the subsets S of the possible parents of x, handed out in work items of
+    // consecutive subsets from the cursor next. The position of S in the order of candidate sets for the edge is
+    // offset plus the rank of S.
+    private static class Side {
+        private final Pair pair;
+        private final Node x;
+        private final Node y;
+        private final List<Node> ppx;
+        private final ChoiceSpliterator choices;
+        private final long numChoices;
+        private final long offset;
+        private final AtomicLong next = new AtomicLong();
+
+        private Side(Pair pair, Node x, Node y, List<Node> ppx, ChoiceSpliterator choices, long offset) {
+            this.pair = pair;
+            this.x = x;
+            this.y = y;
+            this.ppx = ppx;
+            this.choices = choices;
+            this.numChoices = choices.estimateSize();
+            this.offset = offset;
+        }
+    }
+}
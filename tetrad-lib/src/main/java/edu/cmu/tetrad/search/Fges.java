@@ -66,6 +66,13 @@ public final class Fges implements GraphSearch, GraphScorer {
      */
     private IKnowledge knowledge = new Knowledge2();
 
+    /**
+     * The knowledge as compiled at the start of the search, and the index in
+     * it of each variable, by column.
+     */
+    private KnowledgeIndex knowledgeIndex;
+    private int[] knowledgeIndices;
+
     /**
      * List of variables in the data set, in order.
      */
@@ -103,6 +110,18 @@ public final class Fges implements GraphSearch, GraphScorer {
      */
     private Score score;
 
+    /**
+     * The score used to evaluate arrows: the score itself, or the score wrapped
+     * in a CachedScore if a score cache has been set.
+     */
+    private Score searchScore;
+
+    /**
+     * A cache of local scores shared by the forward and backward phases, or
+     * null if local scores are not cached.
+     */
+    private LocalScoreCache scoreCache = null;
+
     /**
      * The logger for this class. The config needs to be set.
      */
@@ -238,6 +257,9 @@ public final class Fges implements GraphSearch, GraphScorer {
             graph = GraphUtils.replaceNodes(graph, nodes);
         }
 
+        knowledgeIndex = knowledge.getIndex();
+        knowledgeIndices = knowledgeIndex.indicesOf(score.getVariables());
+
         addRequiredEdges(graph);
 
         if (faithfulnessAssumed) {
@@ -435,6 +457,8 @@ public final class Fges implements GraphSearch, GraphScorer {
         if (score instanceof LocalDiscreteScore) {
             ((LocalDiscreteScore) score).setSamplePrior(samplePrior);
         }
+
+        clearScoreCache();
     }
 
     /**
@@ -444,6 +468,8 @@ public final class Fges implements GraphSearch, GraphScorer {
         if (score instanceof LocalDiscreteScore) {
             ((LocalDiscreteScore) score).setStructurePrior(expectedNumParents);
         }
+
+        clearScoreCache();
     }
 
     /**
@@ -456,6 +482,8 @@ public final class Fges implements GraphSearch, GraphScorer {
         if (score instanceof ISemBicScore) {
             ((ISemBicScore) score).setPenaltyDiscount(penaltyDiscount);
         }
+
+        clearScoreCache();
     }
 
     /**
@@ -483,6 +511,24 @@ public final class Fges implements GraphSearch, GraphScorer {
         this.symmetricFirstStep = symmetricFirstStep;
     }
 
+    /**
+     * @return the cache of local scores, or null if local scores are not cached.
+     */
+    public LocalScoreCache getScoreCache() {
+        return scoreCache;
+    }
+
+    /**
+     * Sets a cache of local scores to be shared by the forward and backward
+     * phases of the search, and by later searches with this score, so that no
+     * local score is computed twice. Its hit and miss counts may be read after
+     * the search. Null (the default) turns caching off.
+     */
+    public void setScoreCache(LocalScoreCache scoreCache) {
+        this.scoreCache = scoreCache;
+        this.searchScore = scoreCache == null ? score : new CachedScore(score, scoreCache);
+    }
+
     public String logEdgeBayesFactorsString(Graph dag) {
         Map<Edge, Double> factors = logEdgeBayesFactors(dag);
         return logBayesPosteriorFactorsString(factors);
@@ -496,6 +542,7 @@ public final class Fges implements GraphSearch, GraphScorer {
     //Sets the discrete scoring function to use.
     private void setScore(Score totalScore) {
         this.score = totalScore;
+        this.searchScore = scoreCache == null ? totalScore : new CachedScore(totalScore, scoreCache);
 
         this.variables = new ArrayList<>();
 
@@ -510,6 +557,13 @@ public final class Fges implements GraphSearch, GraphScorer {
         this.maxDegree = score.getMaxDegree();
     }
 
+    // Cached local scores are stale once the score's parameters change.
+    private void clearScoreCache() {
+        if (scoreCache != null) {
+            scoreCache.clear();
+        }
+    }
+
     final int[] count = new int[1];
 
     private int getMinChunk(int n) {
@@ -547,7 +601,7 @@ public final class Fges implements GraphSearch, GraphScorer {
                     Node x = nodes.get(j);
 
                     if (existsKnowledge()) {
-                        if (getKnowledge().isForbidden(x.getName(), y.getName()) && getKnowledge().isForbidden(y.getName(), x.getName())) {
+                        if (isForbidden(x, y) && isForbidden(y, x)) {
                             continue;
                         }
 
@@ -567,13 +621,13 @@ public final class Fges implements GraphSearch, GraphScorer {
 
                     // if the initial graph graph is empty, proceed as usual
                     if (initialGraph == null){
-                        bump = score.localScoreDiff(parent, child);
+                        bump = searchScore.localScoreDiff(parent, child);
 
                     }
                     else{
                         // if x or y has no adjacency in the initial graph, then proceed as if initial graph is empty
                         if (initialGraph.getAdjacentNodes(x).isEmpty() && initialGraph.getAdjacentNodes(y).isEmpty()) {
-                            bump = score.localScoreDiff(parent, child);
+                            bump = searchScore.localScoreDiff(parent, child);
 
                         }
                         // if x or y has adjacencies in the initial graph, then that should be considered in scoring
@@ -586,7 +640,7 @@ public final class Fges implements GraphSearch, GraphScorer {
                                 parentIndicesY[c++] = hashIndices.get(p);
                             }
 
-                            bump  = score.localScoreDiff(parent, child, parentIndicesY);
+                            bump  = searchScore.localScoreDiff(parent, child, parentIndicesY);
 
 //							if (verbose2){
 //								System.out.println("bump: " + bump);
@@ -599,12 +653,12 @@ public final class Fges implements GraphSearch, GraphScorer {
                     // computing the bump of an edge from y (child) --> x (parent)
                     if (symmetricFirstStep) {
                         if (initialGraph == null){
-                            bump2 = score.localScoreDiff(child, parent);
+                            bump2 = searchScore.localScoreDiff(child, parent);
                         }
                         else{
                             // if x or y has no adjacency, then proceed as an empty initial graph
                             if (initialGraph.getAdjacentNodes(x).isEmpty() && initialGraph.getAdjacentNodes(y).isEmpty()) {
-                                bump2 = score.localScoreDiff(child, parent);
+                                bump2 = searchScore.localScoreDiff(child, parent);
 
                             }
                             else{
@@ -616,7 +670,7 @@ public final class Fges implements GraphSearch, GraphScorer {
                                     parentIndicesX[c++] = hashIndices.get(p);
                                 }
 
-                                bump2  = score.localScoreDiff(child, parent, parentIndicesX);
+                                bump2  = searchScore.localScoreDiff(child, parent, parentIndicesX);
 
 //								if (verbose2){
 //									System.out.println("bump2: " + bump2);
@@ -801,7 +855,7 @@ public final class Fges implements GraphSearch, GraphScorer {
                             }
 
                             if (existsKnowledge()) {
-                                if (getKnowledge().isForbidden(x.getName(), y.getName()) && getKnowledge().isForbidden(y.getName(), x.getName())) {
+                                if (isForbidden(x, y) && isForbidden(y, x)) {
                                     continue;
                                 }
 
@@ -901,7 +955,7 @@ public final class Fges implements GraphSearch, GraphScorer {
                             }
 
                             if (existsKnowledge()) {
-                                if (getKnowledge().isForbidden(x.getName(), y.getName()) && getKnowledge().isForbidden(y.getName(), x.getName())) {
+                                if (isForbidden(x, y) && isForbidden(y, x)) {
                                     continue;
                                 }
 
@@ -982,7 +1036,16 @@ public final class Fges implements GraphSearch, GraphScorer {
                 continue;
             }
 
-            Set<Node> visited = reapplyOrientation(x, y, null);
+            Set<Edge> changed = new HashSet<>();
+            changed.add(graph.getEdge(x, y));
+
+            for (Node t : arrow.getHOrT()) {
+                if (graph.isAdjacentTo(t, y)) {
+                    changed.add(graph.getEdge(t, y));
+                }
+            }
+
+            Set<Node> visited = reapplyOrientation(changed);
             Set<Node> toProcess = new HashSet<>();
 
             for (Node node : visited) {
@@ -1050,7 +1113,20 @@ public final class Fges implements GraphSearch, GraphScorer {
                 continue;
             }
 
-            Set<Node> visited = reapplyOrientation(x, y, arrow.getHOrT());
+            Set<Edge> changed = new HashSet<>();
+            changed.add(edge);
+
+            for (Node h : arrow.getHOrT()) {
+                if (graph.isAdjacentTo(y, h)) {
+                    changed.add(graph.getEdge(y, h));
+                }
+
+                if (graph.isAdjacentTo(x, h)) {
+                    changed.add(graph.getEdge(x, h));
+                }
+            }
+
+            Set<Node> visited = reapplyOrientation(changed);
 
             Set<Node> toProcess = new HashSet<>();
 
@@ -1071,16 +1147,13 @@ public final class Fges implements GraphSearch, GraphScorer {
         }
     }
 
-    private Set<Node> reapplyOrientation(Node x, Node y, Set<Node> newArrows) {
-        Set<Node> toProcess = new HashSet<>();
-        toProcess.add(x);
-        toProcess.add(y);
-
-        if (newArrows != null) {
-            toProcess.addAll(newArrows);
-        }
-
-        return meekOrientRestricted(new ArrayList<>(toProcess), getKnowledge());
+    // Reorients from the endpoints of the edges just changed, including any just removed.
+    private Set<Node> reapplyOrientation(Collection<Edge> changed) {
+        MeekRules rules = new MeekRules();
+        rules.setKnowledge(getKnowledge());
+        rules.setUndirectUnforcedEdges(true);
+        rules.orientImplied(graph, changed);
+        return rules.getVisited();
     }
 
     // Returns true if knowledge is not empty.
@@ -1095,7 +1168,7 @@ public final class Fges implements GraphSearch, GraphScorer {
             Node y = edge.getNode2();
 
             if (existsKnowledge()) {
-                if (!getKnowledge().noEdgeRequired(x.getName(), y.getName())) {
+                if (!noEdgeRequired(x, y)) {
                     continue;
                 }
             }
@@ -1211,7 +1284,7 @@ public final class Fges implements GraphSearch, GraphScorer {
         }
 
         if (existsKnowledge()) {
-            if (getKnowledge().isForbidden(a.getName(), b.getName())) {
+            if (isForbidden(a, b)) {
                 return;
             }
         }
@@ -1350,7 +1423,7 @@ public final class Fges implements GraphSearch, GraphScorer {
     // Calculates the arrows for the removal in the backward direction.
     private void calculateArrowsBackward(Node a, Node b) {
         if (existsKnowledge()) {
-            if (!getKnowledge().noEdgeRequired(a.getName(), b.getName())) {
+            if (!noEdgeRequired(a, b)) {
                 return;
             }
         }
@@ -1670,12 +1743,12 @@ public final class Fges implements GraphSearch, GraphScorer {
         boolean violatesKnowledge = false;
 
         if (existsKnowledge()) {
-            if (knowledge.isForbidden(x.getName(), y.getName())) {
+            if (isForbidden(x, y)) {
                 violatesKnowledge = true;
             }
 
             for (Node t : T) {
-                if (knowledge.isForbidden(t.getName(), y.getName())) {
+                if (isForbidden(t, y)) {
                     violatesKnowledge = true;
                 }
             }
@@ -1693,11 +1766,11 @@ public final class Fges implements GraphSearch, GraphScorer {
 
         if (existsKnowledge()) {
             for (Node h : H) {
-                if (knowledge.isForbidden(x.getName(), h.getName())) {
+                if (isForbidden(x, h)) {
                     violatesKnowledge = true;
                 }
 
-                if (knowledge.isForbidden(y.getName(), h.getName())) {
+                if (isForbidden(y, h)) {
                     violatesKnowledge = true;
                 }
             }
@@ -1806,13 +1879,22 @@ public final class Fges implements GraphSearch, GraphScorer {
     // forbidden.
     private boolean invalidSetByKnowledge(Node y, Set<Node> subset) {
         for (Node node : subset) {
-            if (getKnowledge().isForbidden(node.getName(), y.getName())) {
+            if (isForbidden(node, y)) {
                 return true;
             }
         }
         return false;
     }
 
+    // Knowledge checks by column, against the compiled knowledge.
+    private boolean isForbidden(Node x, Node y) {
+        return knowledgeIndex.isForbidden(knowledgeIndices[hashIndices.get(x)], knowledgeIndices[hashIndices.get(y)]);
+    }
+
+    private boolean noEdgeRequired(Node x, Node y) {
+        return knowledgeIndex.noEdgeRequired(knowledgeIndices[hashIndices.get(x)], knowledgeIndices[hashIndices.get(y)]);
+    }
+
     // Find all adj that are connected to Y by an undirected edge that are adjacent to X (that is, by undirected or
     // directed edge).
     private Set<Node> getNaYX(Node x, Node y) {
@@ -1916,15 +1998,6 @@ public final class Fges implements GraphSearch, GraphScorer {
         return null;
     }
 
-    // Runs Meek rules on just the changed adj.
-    private Set<Node> meekOrientRestricted(List<Node> nodes, IKnowledge knowledge) {
-        MeekRules rules = new MeekRules();
-        rules.setKnowledge(knowledge);
-        rules.setUndirectUnforcedEdges(true);
-        rules.orientImplied(graph, nodes);
-        return rules.getVisited();
-    }
-
     // Maps adj to their indices for quick lookup.
     private void buildIndexing(List<Node> nodes) {
         this.hashIndices = new ConcurrentHashMap<>();
@@ -2036,7 +2109,7 @@ public final class Fges implements GraphSearch, GraphScorer {
             parentIndices[count++] = hashIndices.get(parent);
         }
 
-        return score.localScoreDiff(hashIndices.get(x), yIndex, parentIndices);
+        return searchScore.localScoreDiff(hashIndices.get(x), yIndex, parentIndices);
     }
 
     private List<Node> getVariables() {
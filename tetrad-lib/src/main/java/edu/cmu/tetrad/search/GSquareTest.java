@@ -22,12 +22,10 @@
 package edu.cmu.tetrad.search;
 
 import edu.cmu.tetrad.data.DataSet;
-import edu.cmu.tetrad.util.CombinationIterator;
+import edu.cmu.tetrad.data.PackedDiscreteData;
 import edu.cmu.tetrad.util.ProbUtils;
 
-import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.List;
 
 /**
  * Performs conditional independence tests of discrete data using the G Square method. Degrees of freedom are calculated
@@ -58,8 +56,14 @@ public final class GSquareTest extends ChiSquareTest {
 //     */
 //    private double alpha = 0.05;
 
+    /**
+     * The data, packed for counting.
+     */
+    private final PackedDiscreteData packedData;
+
     public GSquareTest(DataSet dataSet, double alpha) {
         super(dataSet, alpha);
+        this.packedData = new PackedDiscreteData(dataSet);
 //        if (alpha < 0.0 || alpha > 1.0) {
 //            throw new IllegalArgumentException("Significance level must be " +
 //                    "between 0.0 and 1.0: " + alpha);
@@ -82,105 +86,61 @@ public final class GSquareTest extends ChiSquareTest {
     /**
      * Calculates g square for a conditional crosstabulation table for independence question 0 _||_ 1 | 2, 3, ...max by
      * summing up g square and degrees of freedom for each conditional table in turn, where rows or columns that consist
-     * entirely of zeros have been removed.
+     * entirely of zeros have been removed. Only conditional tables for combinations of the conditioning variables that
+     * occur in the data are visited; the others are empty and contribute nothing.
      */
-    public synchronized GSquareTest.Result calcGSquare(int[] testIndices) {
+    public GSquareTest.Result calcGSquare(int[] testIndices) {
 
-        // Reset the cell table for the columns referred to in
-        // 'testIndices.' Do cell coefs for those columns.
-        getCellTable().addToTable(getDataSet(), testIndices);
+        // Count the columns referred to in 'testIndices', from the packed
+        // data, into scratch space belonging to this thread.
+        int[] conditioning = new int[testIndices.length - 2];
+        System.arraycopy(testIndices, 2, conditioning, 0, conditioning.length);
 
-        // Indicator arrays to tell the cell table which margins
-        // to calculate. For x _||_ y | z1, z2, ..., we want to
-        // calculate the margin for x, the margin for y, and the
-        // margin for x and y. (These will be used later.)
-        int[] firstVar = new int[]{0};
-        int[] secondVar = new int[]{1};
-        int[] bothVars = new int[]{0, 1};
+        PackedDiscreteData.Counts counts = packedData.count(testIndices[0], testIndices[1], conditioning);
 
         double g2 = 0.0;
         int df = 0;
 
-        int[] condDims = new int[testIndices.length - 2];
-        System.arraycopy(selectFromArray(getDims(), testIndices), 2, condDims, 0,
-                condDims.length);
-
-        int[] coords = new int[testIndices.length];
-        int numRows = this.getCellTable().getNumValues(0);
-        int numCols = this.getCellTable().getNumValues(1);
+        int numRows = getDims()[testIndices[0]];
+        int numCols = getDims()[testIndices[1]];
 
-        boolean[] attestedRows = new boolean[numRows];
-        boolean[] attestedCols = new boolean[numCols];
+        long[] sumRows = new long[numRows];
+        long[] sumCols = new long[numCols];
 
-        CombinationIterator combinationIterator =
-                new CombinationIterator(condDims);
+        for (int z = 0; z < counts.getNumOccupied(); z++) {
+            long total = counts.getRowTotal(z);
 
-        while (combinationIterator.hasNext()) {
-            int[] combination = (int[]) combinationIterator.next();
-
-            System.arraycopy(combination, 0, coords, 2, combination.length);
-            Arrays.fill(attestedRows, true);
-            Arrays.fill(attestedCols, true);
-
-            long total = this.getCellTable().calcMargin(coords, bothVars);
-
-            double _gSquare = 0.0;
-
-            List<Double> e = new ArrayList<>();
-            List<Long> o = new ArrayList<>();
+            // The margins for x and for y.
+            Arrays.fill(sumRows, 0);
+            Arrays.fill(sumCols, 0);
 
             for (int i = 0; i < numRows; i++) {
                 for (int j = 0; j < numCols; j++) {
-                    coords[0] = i;
-                    coords[1] = j;
-
-                    long sumRow = this.getCellTable().calcMargin(coords, secondVar);
-                    long sumCol = this.getCellTable().calcMargin(coords, firstVar);
-                    long observed = (int) this.getCellTable().getValue(coords);
-
-                    boolean skip = false;
-
-                    if (sumRow == 0) {
-                        attestedRows[i] = false;
-                        skip = true;
-                    }
-
-                    if (sumCol == 0) {
-                        attestedCols[j] = false;
-                        skip = true;
-                    }
-
-                    if (skip) {
-                        continue;
-                    }
-
-                    e.add((double) sumCol * sumRow);
-                    o.add(observed);
+                    int observed = counts.getCount(z, i * numCols + j);
+                    sumRows[i] += observed;
+                    sumCols[j] += observed;
                 }
             }
 
-            for (int i = 0; i < o.size(); i++) {
-                double expected = e.get(i) / (double) total;
-                _gSquare += Math.pow(o.get(i) - expected, 2.0) / expected;
-            }
-
-            if (total == 0) {
-                continue;
-            }
-
+            double _gSquare = 0.0;
             int numAttestedRows = 0;
             int numAttestedCols = 0;
 
-            for (boolean attestedRow : attestedRows) {
-                if (attestedRow) {
-                    numAttestedRows++;
+            for (int i = 0; i < numRows; i++) {
+                if (sumRows[i] == 0) continue;
+                numAttestedRows++;
+
+                for (int j = 0; j < numCols; j++) {
+                    if (sumCols[j] == 0) continue;
+
+                    long observed = counts.getCount(z, i * numCols + j);
+                    double expected = (double) sumCols[j] * sumRows[i] / (double) total;
+                    _gSquare += Math.pow(observed - expected, 2.0) / expected;
                 }
             }
 
-            for (boolean attestedCol : attestedCols) {
-                if (attestedCol) {
-                    numAttestedCols++;
-                }
+            for (int j = 0; j < numCols; j++) {
+                if (sumCols[j] != 0) numAttestedCols++;
             }
 
             int _df = (numAttestedRows - 1) * (numAttestedCols - 1);
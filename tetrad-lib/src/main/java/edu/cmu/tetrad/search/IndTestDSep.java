@@ -23,6 +23,7 @@ package edu.cmu.tetrad.search;
 
 import edu.cmu.tetrad.data.DataSet;
 import edu.cmu.tetrad.data.ICovarianceMatrix;
+import edu.cmu.tetrad.graph.DSeparationOracle;
 import edu.cmu.tetrad.graph.Graph;
 import edu.cmu.tetrad.graph.IndependenceFact;
 import edu.cmu.tetrad.graph.Node;
@@ -44,6 +45,11 @@ public class IndTestDSep implements IndependenceTest {
      */
     private Graph graph;
 
+    /**
+     * Answers the d-separation queries for the graph, caching results by (x, Z). Made when first needed.
+     */
+    private DSeparationOracle oracle;
+
     /**
      * The list of observed variables (i.e. variables for observed nodes).
      */
@@ -152,7 +158,7 @@ public class IndTestDSep implements IndependenceTest {
             }
         }
 
-        boolean dSeparated = !getGraph().isDConnectedTo(x, y, z);
+        boolean dSeparated = getOracle().isDSeparatedFrom(x, y, z);
 
         if (verbose) {
             if (dSeparated) {
@@ -207,7 +213,7 @@ public class IndTestDSep implements IndependenceTest {
             }
         }
 
-        return getGraph().isDSeparatedFrom(x, y, z);
+        return getOracle().isDSeparatedFrom(x, y, z);
     }
 
     /**
@@ -266,8 +272,17 @@ public class IndTestDSep implements IndependenceTest {
         return this.graph;
     }
     
-    public void setGraph(Graph graph) {
+    public synchronized void setGraph(Graph graph) {
         this.graph = graph;
+        this.oracle = null;
+    }
+
+    private synchronized DSeparationOracle getOracle() {
+        if (oracle == null) {
+            oracle = new DSeparationOracle(graph);
+        }
+
+        return oracle;
     }
 
     public String toString() {
@@ -23,6 +23,7 @@ package edu.cmu.tetrad.search;
 
 import edu.cmu.tetrad.data.*;
 import edu.cmu.tetrad.graph.Node;
+import edu.cmu.tetrad.graph.NodePair;
 import edu.cmu.tetrad.util.*;
 import org.apache.commons.math3.distribution.NormalDistribution;
 import org.apache.commons.math3.linear.SingularMatrixException;
@@ -72,6 +73,11 @@ public final class IndTestFisherZ implements IndependenceTest {
     private double cutoff = Double.NaN;
     private NormalDistribution normal = new NormalDistribution(0, 1);
 
+    /**
+     * Cholesky factors of the correlation matrices of conditioning sets, shared across tests.
+     */
+    private final CholeskyCache factors;
+
     //==========================CONSTRUCTORS=============================//
 
     /**
@@ -91,6 +97,7 @@ public final class IndTestFisherZ implements IndependenceTest {
         }
 
         this.cov = new CorrelationMatrix(dataSet);
+        this.factors = new CholeskyCache(this.cov);
         List<Node> nodes = this.cov.getVariables();
 
         this.variables = Collections.unmodifiableList(nodes);
@@ -111,6 +118,7 @@ public final class IndTestFisherZ implements IndependenceTest {
     public IndTestFisherZ(TetradMatrix data, List<Node> variables, double alpha) {
         this.dataSet = new BoxDataSet(new VerticalDoubleDataBox(data.transpose().toArray()), variables);
         this.cov = new CorrelationMatrix(dataSet);
+        this.factors = new CholeskyCache(this.cov);
         this.variables = Collections.unmodifiableList(variables);
         this.indexMap = indexMap(variables);
         this.nameMap = nameMap(variables);
@@ -123,6 +131,7 @@ public final class IndTestFisherZ implements IndependenceTest {
      */
     public IndTestFisherZ(ICovarianceMatrix covMatrix, double alpha) {
         this.cov = new CorrelationMatrix(covMatrix);
+        this.factors = new CholeskyCache(this.cov);
         this.variables = covMatrix.getVariables();
         this.indexMap = indexMap(variables);
         this.nameMap = nameMap(variables);
@@ -185,16 +194,108 @@ public final class IndTestFisherZ implements IndependenceTest {
         return fisherZ < cutoff;
     }
 
+    /**
+     * Determines, for each of the given pairs of variables, whether they are independent given the
+     * same list of conditioning variables z. The conditioning set is factored once (or found in the
+     * cache) and each variable is regressed on it once, however many pairs it is in, so this is
+     * much faster than a test per pair for, e.g., all of the edges tested against one set at a
+     * given depth.
+     *
+     * @param pairs the pairs of variables being compared.
+     * @param z     the list of conditioning variables.
+     * @return an array whose i'th element is true iff the i'th pair is independent given z.
+     */
+    public boolean[] isIndependent(List<NodePair> pairs, List<Node> z) {
+        double[] fisherZs = fisherZs(pairs, z);
+        boolean[] independent = new boolean[fisherZs.length];
+
+        for (int i = 0; i < fisherZs.length; i++) {
+            independent[i] = fisherZs[i] < cutoff;
+        }
+
+        return independent;
+    }
+
+    /**
+     * @return the p values of the tests of the given pairs of variables for independence given the
+     * same list of conditioning variables z. See <code>isIndependent(List, List)</code>.
+     */
+    public double[] getPValues(List<NodePair> pairs, List<Node> z) {
+        double[] fisherZs = fisherZs(pairs, z);
+        double[] pValues = new double[fisherZs.length];
+
+        for (int i = 0; i < fisherZs.length; i++) {
+            pValues[i] = 2.0 * (1.0 - normal.cumulativeProbability(abs(fisherZs[i])));
+        }
+
+        return pValues;
+    }
+
+    private double[] fisherZs(List<NodePair> pairs, List<Node> z) {
+        int n = sampleSize();
+        double[] fisherZs = new double[pairs.size()];
+
+        if (pairs.isEmpty()) {
+            return fisherZs;
+        }
+
+        CholeskyCache.Factor factor = factors.getFactor(indices(z));
+
+        if (factor == null) {
+            System.out.println(SearchLogUtils.determinismDetected(z, pairs.get(0).getFirst()));
+            Arrays.fill(fisherZs, Double.POSITIVE_INFINITY);
+            return fisherZs;
+        }
+
+        int[] xs = new int[pairs.size()];
+        int[] ys = new int[pairs.size()];
+
+        for (int i = 0; i < pairs.size(); i++) {
+            xs[i] = indexMap.get(pairs.get(i).getFirst());
+            ys[i] = indexMap.get(pairs.get(i).getSecond());
+        }
+
+        double[] r = factors.partialCorrelations(factor, xs, ys);
+
+        for (int i = 0; i < r.length; i++) {
+            if (isSingular(r[i])) {
+                fisherZs[i] = Double.POSITIVE_INFINITY;
+            } else {
+                double q = 0.5 * (log(1.0 + r[i]) - Math.log(1.0 - r[i]));
+                fisherZs[i] = sqrt((double) (n - 3 - z.size())) * abs(q);
+            }
+        }
+
+        return fisherZs;
+    }
+
+    // The partial correlation, computed against the cached Cholesky factor of the conditioning set.
     private double partialCorrelation(Node x, Node y, List<Node> z) throws SingularMatrixException {
-        int[] indices = new int[z.size() + 2];
-        indices[0] = indexMap.get(x);
-        indices[1] = indexMap.get(y);
+        CholeskyCache.Factor factor = factors.getFactor(indices(z));
+
+        if (factor == null) {
+            throw new SingularMatrixException();
+        }
+
+        double r = factors.partialCorrelation(factor, indexMap.get(x), indexMap.get(y));
 
-//        if (z.isEmpty()) return cov.getValue(indices[0], indices[1]);
+        if (isSingular(r)) {
+            throw new SingularMatrixException();
+        }
+
+        return r;
+    }
+
+    // A partial correlation of +/-1 or beyond, which rounding in a nearly singular factor can give, has no finite
+    // Fisher Z and is taken to mean x and y are determined by each other given z.
+    private static boolean isSingular(double r) {
+        return Double.isNaN(r) || abs(r) >= 1.0;
+    }
 
-        for (int i = 0; i < z.size(); i++) indices[i + 2] = indexMap.get(z.get(i));
-        TetradMatrix submatrix = cov.getSubmatrix(indices).getMatrix();
-        return StatUtils.partialCorrelation(submatrix);
+    private int[] indices(List<Node> z) {
+        int[] indices = new int[z.size()];
+        for (int i = 0; i < z.size(); i++) indices[i] = indexMap.get(z.get(i));
+        return indices;
     }
 
     public boolean isIndependent(Node x, Node y, Node... z) {
@@ -16,6 +16,7 @@ import org.apache.commons.math3.distribution.NormalDistribution;
 import org.apache.commons.math3.linear.RealMatrix;
 import org.apache.commons.math3.linear.RealVector;
 import org.apache.commons.math3.linear.SingularValueDecomposition;
+import org.apache.commons.math3.random.RandomGenerator;
 import org.apache.commons.math3.random.SynchronizedRandomGenerator;
 import org.apache.commons.math3.random.Well44497b;
 
@@ -39,6 +40,17 @@ import static java.lang.Math.*;
  * Bowman, A. W., & Azzalini, A. (1997). Applied smoothing techniques for data analysis: the kernel
  * approach with S-Plus illustrations (Vol. 18). OUP Oxford.
  *
+ * If a number of features m > 0 is set, each kernel matrix is replaced by a rank-m product of features,
+ * either Nystrom features from m landmark samples or random Fourier features, and the statistic and
+ * its null distribution are computed from m x m matrices, in O(N m^2) time rather than O(N^3). In the
+ * conditional case, the null distribution (Proposition 5) uses all m^2 products of eigenvectors of the two
+ * kernel matrices, in O(N min(m^2, N)^2) time, unless a number of products k > 0 is set, in which case only
+ * the k largest products are used, in O(N k^2) time, and the null distribution is approximate:
+ *
+ * Williams, C. K., & Seeger, M. (2001). Using the Nystrom method to speed up kernel machines. NIPS.
+ *
+ * Rahimi, A., & Recht, B. (2008). Random features for large-scale kernel machines. NIPS.
+ *
  * @author Vineet Raghu on 7/3/2016
  * @author jdramsey refactoring 7/4/2018
  */
@@ -65,10 +77,10 @@ public class Kci implements IndependenceTest, ScoreForFact {
     // P value used to judge independence. This is the last p value calculated.
     private double p;
 
-    // Centering matrix.
+    // Centering matrix, made when first needed.
     private TetradMatrix H;
 
-    // Identity N x N
+    // Identity N x N, made when first needed.
     private TetradMatrix I;
 
     // A normal distribution with 1 degree of freedom.
@@ -105,6 +117,18 @@ public class Kci implements IndependenceTest, ScoreForFact {
     private boolean verbose = false;
     private boolean fastFDR = false;
 
+    // Number of features for the low rank approximation of the kernel matrices; 0 for full kernel matrices.
+    private int numFeatures = 0;
+
+    // Number of eigenvector products kept in the low rank conditional null distribution; 0 for all of them.
+    private int numProducts = 0;
+
+    // True if random Fourier features are used for the low rank approximation, false for Nystrom features.
+    private boolean randomFeatures = false;
+
+    // Landmark samples for the Nystrom features, chosen when first needed.
+    private int[] landmarks = null;
+
     /**
      * Constructor.
      *
@@ -116,12 +140,6 @@ public class Kci implements IndependenceTest, ScoreForFact {
         this.variables = data.getVariables();
         this._data = this.data.getDoubleData().transpose().toArray();
         this.N = this.data.getNumRows();
-        this.I = TetradMatrix.identity(N);
-
-        TetradMatrix Ones = new TetradMatrix(N, 1);
-        for (int j = 0; j < N; j++) Ones.set(j, 0, 1);
-
-        this.H = TetradMatrix.identity(N).minus(Ones.times(Ones.transpose()).scalarMult(1.0 / N));
 
         this.alpha = alpha;
         this.p = -1;
@@ -179,7 +197,13 @@ public class Kci implements IndependenceTest, ScoreForFact {
             independent = facts.get(fact);
             this.p = pValues.get(fact);
         } else {
-            if (z.isEmpty()) {
+            if (getNumFeatures() > 0) {
+                if (z.isEmpty()) {
+                    independent = isIndependentUnconditionalLowRank(x, y, fact);
+                } else {
+                    independent = isIndependentConditionalLowRank(x, y, z, fact);
+                }
+            } else if (z.isEmpty()) {
                 independent = isIndependentUnconditional(x, y, fact);
             } else {
                 independent = isIndependentConditional(x, y, z, fact);
@@ -367,6 +391,46 @@ public class Kci implements IndependenceTest, ScoreForFact {
         this.epsilon = epsilon;
     }
 
+    public int getNumFeatures() {
+        return numFeatures;
+    }
+
+    /**
+     * Sets the number of features m used to approximate each kernel matrix. If m is 0, the default, the
+     * N x N kernel matrices are used.
+     */
+    public void setNumFeatures(int numFeatures) {
+        if (numFeatures < 0) throw new IllegalArgumentException("Num features must be >= 0: " + numFeatures);
+        this.numFeatures = numFeatures;
+    }
+
+    public int getNumProducts() {
+        return numProducts;
+    }
+
+    /**
+     * Sets the number k of products of eigenvectors of the two kernel matrices used for the null distribution
+     * of the conditional test when the number of features m is > 0. If k is 0, the default, all m^2 products
+     * are used, as they are with the full kernel matrices. Otherwise only the k products with the largest
+     * eigenvalues are used, which is faster but leaves out part of the null distribution.
+     */
+    public void setNumProducts(int numProducts) {
+        if (numProducts < 0) throw new IllegalArgumentException("Num products must be >= 0: " + numProducts);
+        this.numProducts = numProducts;
+    }
+
+    public boolean isRandomFeatures() {
+        return randomFeatures;
+    }
+
+    /**
+     * Sets whether the kernel matrices are approximated using random Fourier features rather than Nystrom
+     * features. Only used if the number of features is > 0.
+     */
+    public void setRandomFeatures(boolean randomFeatures) {
+        this.randomFeatures = randomFeatures;
+    }
+
     //====================================PRIVATE METHODS==================================//
 
     /**
@@ -446,7 +510,7 @@ public class Kci implements IndependenceTest, ScoreForFact {
             TetradMatrix Ky = center(kernelMatrix(_data, y, null, getWidthMultiplier()));
             TetradMatrix KZ = center(kernelMatrix(_data, null, z, getWidthMultiplier()));
 
-            TetradMatrix Rz = (KZ.plus(I.scalarMult(epsilon)).inverse().scalarMult(epsilon));
+            TetradMatrix Rz = (KZ.plus(getI().scalarMult(epsilon)).inverse().scalarMult(epsilon));
 
             kx = symmetrized(Rz.times(KXZ).times(Rz.transpose()));
             ky = symmetrized(Rz.times(Ky).times(Rz.transpose()));
@@ -460,6 +524,91 @@ public class Kci implements IndependenceTest, ScoreForFact {
         }
     }
 
+    /**
+     * The unconditional case with low rank kernel matrices. With centered N x m features Fx and Fy, Kx = Fx Fx',
+     * Ky = Fy Fy', tr(Kx Ky) = |Fx' Fy|^2, and the nonzero eigenvalues of Kx are those of Fx' Fx.
+     *
+     * @return true just in case independence holds.
+     */
+    private boolean isIndependentUnconditionalLowRank(Node x, Node y, IndependenceFact fact) {
+        try {
+            TetradMatrix fx = centerColumns(features(x, null));
+            TetradMatrix fy = centerColumns(features(y, null));
+
+            TetradMatrix fxx = fx.transpose().times(fx);
+            TetradMatrix fyy = fy.transpose().times(fy);
+            double sta = sumOfSquares(fx.transpose().times(fy));
+
+            if (isApproximate()) {
+                double mean_appr = fxx.trace() * fyy.trace() / N;
+                double var_appr = 2 * sumOfSquares(fxx) * sumOfSquares(fyy) / (N * N);
+                double k_appr = mean_appr * mean_appr / var_appr;
+                double theta_appr = var_appr / mean_appr;
+                p = 1.0 - new GammaDistribution(k_appr, theta_appr).cumulativeProbability(sta);
+                pValues.put(fact, p);
+                return isIndependent(p, fact);
+            } else {
+                List<Double> evx = new Eigendecomposition(fxx).invoke().getTopEigenvalues();
+                List<Double> evy = new Eigendecomposition(fyy).invoke().getTopEigenvalues();
+                return theorem4(sta / N, evx, evy, fact);
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+            pValues.put(fact, 0.0);
+            facts.put(fact, false);
+            return false;
+        }
+    }
+
+    /**
+     * The conditional case with low rank kernel matrices. With Kz = Fz Fz', the Woodbury identity gives
+     * Rz = epsilon (Kz + epsilon I)^-1 = I - Fz (Fz' Fz + epsilon I)^-1 Fz', so Rz Kxz Rz = (Rz Fxz)(Rz Fxz)'
+     * is again a product of N x m features.
+     *
+     * @return true just in case independence holds.
+     */
+    private boolean isIndependentConditionalLowRank(Node x, Node y, List<Node> z, IndependenceFact fact) {
+        try {
+            TetradMatrix fxz = centerColumns(features(x, z));
+            TetradMatrix fy = centerColumns(features(y, null));
+            TetradMatrix fz = centerColumns(features(null, z));
+
+            TetradMatrix fzt = fz.transpose();
+            TetradMatrix m = fzt.times(fz).plus(TetradMatrix.identity(fz.columns()).scalarMult(epsilon)).inverse();
+
+            TetradMatrix rx = fxz.minus(fz.times(m.times(fzt.times(fxz))));
+            TetradMatrix ry = fy.minus(fz.times(m.times(fzt.times(fy))));
+
+            double T = (1.0 / N) * sumOfSquares(rx.transpose().times(ry));
+
+            // The eigenvectors of Rx Rx' are Rx u / sqrt(lambda) for the eigenpairs (lambda, u) of Rx' Rx, so
+            // V D = Rx U.
+            TetradMatrix vdx = rx.times(new Eigendecomposition(rx.transpose().times(rx)).invoke().getV());
+            TetradMatrix vdy = ry.times(new Eigendecomposition(ry.transpose().times(ry)).invoke().getV());
+
+            int maxProducts = getNumProducts() > 0 ? getNumProducts() : Integer.MAX_VALUE;
+            return proposition5(vdx, vdy, T, maxProducts, fact);
+        } catch (Exception e) {
+            e.printStackTrace();
+            pValues.put(fact, 0.0);
+            facts.put(fact, false);
+            return false;
+        }
+    }
+
+    private boolean isIndependent(double p, IndependenceFact fact) {
+        if (fastFDR) {
+            final int d1 = 0; // reference
+            final int d2 = fact.getZ().size();
+            final int v = variables.size() - 2;
+
+            double alpha2 = (exp(log(alpha) + logChoose(v, d1) - logChoose(v, d2)));
+            return p > alpha2;
+        } else {
+            return p > alpha;
+        }
+    }
+
     private boolean theorem4(TetradMatrix kx, TetradMatrix ky, IndependenceFact fact) {
 
         double T = (1.0 / N) * (kx.times(ky).trace());
@@ -471,6 +620,11 @@ public class Kci implements IndependenceTest, ScoreForFact {
         Eigendecomposition eigendecompositiony = new Eigendecomposition(ky).invoke();
         List<Double> evy = eigendecompositiony.getTopEigenvalues();
 
+        return theorem4(T, evx, evy, fact);
+    }
+
+    private boolean theorem4(double T, List<Double> evx, List<Double> evy, IndependenceFact fact) {
+
         // Calculate formula (9).
         int sum = 0;
 
@@ -541,29 +695,40 @@ public class Kci implements IndependenceTest, ScoreForFact {
         TetradMatrix vdx = vx.times(dx);
         TetradMatrix vdy = vy.times(dy);
 
-        final int prod = vx.columns() * vy.columns();
+        return proposition5(vdx, vdy, T, Integer.MAX_VALUE, fact);
+    }
+
+    // The columns of UU are products of columns of vdx and vdy. If there are more than maxProducts of these, only
+    // the maxProducts with the largest norms are kept, so that UU is N x maxProducts and the null distribution is
+    // computed from a maxProducts x maxProducts matrix. The columns of vdx and vdy are eigenvectors scaled by
+    // the square roots of their eigenvalues, so the products dropped are those with the smallest eigenvalues.
+    private boolean proposition5(TetradMatrix vdx, TetradMatrix vdy, double T, int maxProducts,
+                                 IndependenceFact fact) {
+        int[][] products = topProducts(vdx, vdy, maxProducts);
+        final int prod = products.length;
         TetradMatrix UU = new TetradMatrix(N, prod);
 
         // stack
-        for (int i = 0; i < vx.columns(); i++) {
-            for (int j = 0; j < vy.columns(); j++) {
-                for (int k = 0; k < N; k++) {
-                    UU.set(k, i * dy.columns() + j, vdx.get(k, i) * vdy.get(k, j));
-                }
+        for (int c = 0; c < prod; c++) {
+            int i = products[c][0];
+            int j = products[c][1];
+
+            for (int k = 0; k < N; k++) {
+                UU.set(k, c, vdx.get(k, i) * vdy.get(k, j));
             }
         }
 
         TetradMatrix uuprod = prod > N ? UU.times(UU.transpose()) : UU.transpose().times(UU);
 
         if (isApproximate()) {
-            double sta = kx.times(ky).trace();
+            double sta = T * N;
             double mean_appr = uuprod.trace();
             double var_appr = 2.0 * uuprod.times(uuprod).trace();
             double k_appr = mean_appr * mean_appr / var_appr;
             double theta_appr = var_appr / mean_appr;
-            double p = 1.0 - new GammaDistribution(k_appr, theta_appr).cumulativeProbability(sta);
-            pValues.put(fact, p);
-            return p > getAlpha();
+            this.p = 1.0 - new GammaDistribution(k_appr, theta_appr).cumulativeProbability(sta);
+            pValues.put(fact, this.p);
+            return this.p > getAlpha();
         } else {
 
             // Get top eigenvalues of that.
@@ -626,6 +791,43 @@ public class Kci implements IndependenceTest, ScoreForFact {
         }
     }
 
+    // Pairs (i, j) of columns of vdx and vdy, all of them if there are at most maxProducts, otherwise the
+    // maxProducts pairs with the largest |vdx_i|^2 |vdy_j|^2, in order of i and then j.
+    private int[][] topProducts(TetradMatrix vdx, TetradMatrix vdy, int maxProducts) {
+        int mx = vdx.columns();
+        int my = vdy.columns();
+        double[] wx = columnSumsOfSquares(vdx);
+        double[] wy = columnSumsOfSquares(vdy);
+
+        List<int[]> products = new ArrayList<>();
+
+        for (int i = 0; i < mx; i++) {
+            for (int j = 0; j < my; j++) {
+                products.add(new int[]{i, j});
+            }
+        }
+
+        if (products.size() > maxProducts) {
+            products.sort((p1, p2) -> Double.compare(wx[p2[0]] * wy[p2[1]], wx[p1[0]] * wy[p1[1]]));
+            products = new ArrayList<>(products.subList(0, maxProducts));
+            products.sort((p1, p2) -> p1[0] != p2[0] ? Integer.compare(p1[0], p2[0]) : Integer.compare(p1[1], p2[1]));
+        }
+
+        return products.toArray(new int[products.size()][]);
+    }
+
+    private double[] columnSumsOfSquares(TetradMatrix m) {
+        double[] sums = new double[m.columns()];
+
+        for (int c = 0; c < m.columns(); c++) {
+            for (int r = 0; r < m.rows(); r++) {
+                sums[c] += m.get(r, c) * m.get(r, c);
+            }
+        }
+
+        return sums;
+    }
+
     private List<Integer> series(int size) {
         List<Integer> series = new ArrayList<>();
         for (int i = 0; i < size; i++) series.add(i);
@@ -633,9 +835,24 @@ public class Kci implements IndependenceTest, ScoreForFact {
     }
 
     private TetradMatrix center(TetradMatrix K) {
+        if (H == null) {
+            TetradMatrix Ones = new TetradMatrix(N, 1);
+            for (int j = 0; j < N; j++) Ones.set(j, 0, 1);
+
+            H = TetradMatrix.identity(N).minus(Ones.times(Ones.transpose()).scalarMult(1.0 / N));
+        }
+
         return H.times(K).times(H);
     }
 
+    private TetradMatrix getI() {
+        if (I == null) {
+            I = TetradMatrix.identity(N);
+        }
+
+        return I;
+    }
+
     private double getChisqSample() {
         double z = normal.sample();
         return z * z;
@@ -666,6 +883,158 @@ public class Kci implements IndependenceTest, ScoreForFact {
         return indices;
     }
 
+    // N x m features whose products approximate the kernel matrix of x and z.
+    private TetradMatrix features(Node x, List<Node> z) {
+        List<Integer> _z = new ArrayList<>();
+
+        if (x != null) {
+            _z.add(hash.get(x));
+        }
+
+        if (z != null) {
+            for (Node z2 : z) {
+                _z.add(hash.get(z2));
+            }
+        }
+
+        double width = getWidthMultiplier() * getH(_z);
+
+        if (randomFeatures) {
+            return randomFourierFeatures(_z, width);
+        } else {
+            return nystromFeatures(_z, width);
+        }
+    }
+
+    // Features C W^-1/2, where W is the kernel matrix of the landmark samples and C the kernel matrix between all
+    // samples and the landmarks, so that C W^-1 C' approximates the kernel matrix.
+    private TetradMatrix nystromFeatures(List<Integer> _z, double width) {
+        int[] landmarks = getLandmarks();
+        int m = landmarks.length;
+
+        TetradMatrix W = new TetradMatrix(m, m);
+
+        for (int a = 0; a < m; a++) {
+            for (int b = a; b < m; b++) {
+                double k = kernelGaussian(distance(_data, _z, landmarks[a], landmarks[b]), width);
+                W.set(a, b, k);
+                W.set(b, a, k);
+            }
+        }
+
+        EigenDecomposition ed = new EigenDecomposition(W.getRealMatrix());
+        double[] eigenvalues = ed.getRealEigenvalues();
+        double max = 0.0;
+        for (double eigenvalue : eigenvalues) max = Math.max(max, eigenvalue);
+
+        List<Integer> kept = new ArrayList<>();
+
+        for (int i = 0; i < eigenvalues.length; i++) {
+            if (eigenvalues[i] > 1e-10 * max) kept.add(i);
+        }
+
+        TetradMatrix invSqrt = new TetradMatrix(m, kept.size());
+
+        for (int c = 0; c < kept.size(); c++) {
+            RealVector u = ed.getEigenvector(kept.get(c));
+            double scale = 1.0 / sqrt(eigenvalues[kept.get(c)]);
+            for (int a = 0; a < m; a++) invSqrt.set(a, c, u.getEntry(a) * scale);
+        }
+
+        TetradMatrix C = new TetradMatrix(N, m);
+
+        for (int i = 0; i < N; i++) {
+            for (int a = 0; a < m; a++) {
+                C.set(i, a, kernelGaussian(distance(_data, _z, i, landmarks[a]), width));
+            }
+        }
+
+        return C.times(invSqrt);
+    }
+
+    // Random Fourier features sqrt(2 / m) cos(w'x + b) for the Gaussian kernel exp(-|x - y|^2 / (4 width^2))
+    // computed by kernelGaussian and distance, for which w ~ N(0, 1 / (2 width^2)) and b ~ U(0, 2 pi). Missing
+    // values are skipped, as in distance.
+    private TetradMatrix randomFourierFeatures(List<Integer> _z, double width) {
+        int m = getNumFeatures();
+        RandomGenerator random = new Well44497b(193924L + _z.hashCode());
+
+        double[][] w = new double[m][_z.size()];
+        double[] b = new double[m];
+
+        for (int c = 0; c < m; c++) {
+            for (int d = 0; d < _z.size(); d++) w[c][d] = random.nextGaussian() / (width * sqrt(2));
+            b[c] = 2 * PI * random.nextDouble();
+        }
+
+        TetradMatrix features = new TetradMatrix(N, m);
+        double scale = sqrt(2.0 / m);
+
+        for (int i = 0; i < N; i++) {
+            for (int c = 0; c < m; c++) {
+                double sum = b[c];
+
+                for (int d = 0; d < _z.size(); d++) {
+                    double v = _data[_z.get(d)][i];
+                    if (!Double.isNaN(v)) sum += w[c][d] * v;
+                }
+
+                features.set(i, c, scale * cos(sum));
+            }
+        }
+
+        return features;
+    }
+
+    // The same m samples are used as landmarks for every kernel matrix.
+    private int[] getLandmarks() {
+        if (landmarks == null || landmarks.length != min(getNumFeatures(), N)) {
+            int[] rows = new int[N];
+            for (int i = 0; i < N; i++) rows[i] = i;
+
+            RandomGenerator random = new Well44497b(193924L);
+            int m = min(getNumFeatures(), N);
+
+            for (int i = 0; i < m; i++) {
+                int j = i + random.nextInt(N - i);
+                int row = rows[j];
+                rows[j] = rows[i];
+                rows[i] = row;
+            }
+
+            landmarks = Arrays.copyOf(rows, m);
+        }
+
+        return landmarks;
+    }
+
+    // H F, subtracting the mean of each column, so that (H F)(H F)' = H F F' H.
+    private TetradMatrix centerColumns(TetradMatrix features) {
+        TetradMatrix centered = new TetradMatrix(features.rows(), features.columns());
+
+        for (int c = 0; c < features.columns(); c++) {
+            double mean = 0.0;
+            for (int i = 0; i < features.rows(); i++) mean += features.get(i, c);
+            mean /= features.rows();
+
+            for (int i = 0; i < features.rows(); i++) centered.set(i, c, features.get(i, c) - mean);
+        }
+
+        return centered;
+    }
+
+    private double sumOfSquares(TetradMatrix m) {
+        double sum = 0.0;
+
+        for (int i = 0; i < m.rows(); i++) {
+            for (int j = 0; j < m.columns(); j++) {
+                sum += m.get(i, j) * m.get(i, j);
+            }
+        }
+
+        return sum;
+    }
+
     private TetradMatrix symmetrized(TetradMatrix kx) {
         return (kx.plus(kx.transpose())).scalarMult(0.5);
     }
@@ -0,0 +1,326 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+
+package edu.cmu.tetrad.search;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * A k-d tree over some of the columns of a data set, for finding the rows
+ * nearest a given row in Euclidean distance. The tree is built by splitting
+ * the rows at the median of the column with the widest spread until each leaf
+ * has only a few rows; a query descends to the leaf of the row and then visits
+ * only the subtrees that may hold a nearer row than the farthest one found so
+ * far.
+ * <p>
+ * As in the distances used by the kernel regressions, a coordinate missing in
+ * either row contributes nothing to their distance. Rows with missing values
+ * are placed in the tree as though the missing values were 0, so that
+ * neighbors of such rows are approximate.
+ *
+ * @author Joseph Ramsey
+ */
+public final class KdTree {
+
+    // Maximum number of rows in a leaf.
+    private static final int LEAF_SIZE = 16;
+
+    // The data, column by column.
+    private final double[][] data;
+
+    // The indexed columns.
+    private final int[] columns;
+
+    // The rows, ordered so that each node holds a contiguous range.
+    private final int[] rows;
+
+    // Nodes of the tree, in depth-first order. For node n, from[n] to to[n]
+    // is its range of rows; an inner node splits on splitColumn[n] at
+    // splitValue[n] and has children left[n] = n + 1 and right[n].
+    private int[] from;
+    private int[] to;
+    private int[] splitColumn;
+    private double[] splitValue;
+    private int[] right;
+    private int numNodes = 0;
+
+    /**
+     * Builds a tree.
+     *
+     * @param data    the data, column by column, as data[column][row].
+     * @param columns the columns to index; must not be empty.
+     */
+    public KdTree(double[][] data, int[] columns) {
+        if (columns.length == 0) {
+            throw new IllegalArgumentException("Need at least one column to index.");
+        }
+
+        this.data = data;
+        this.columns = columns.clone();
+        int numRows = data[columns[0]].length;
+
+        this.rows = new int[numRows];
+        for (int i = 0; i < numRows; i++) rows[i] = i;
+
+        int capacity = Math.max(1, 4 * numRows / LEAF_SIZE + 1);
+        this.from = new int[capacity];
+        this.to = new int[capacity];
+        this.splitColumn = new int[capacity];
+        this.splitValue = new double[capacity];
+        this.right = new int[capacity];
+
+        build(0, numRows);
+    }
+
+    /**
+     * @return the number of rows in the tree.
+     */
+    public int getNumRows() {
+        return rows.length;
+    }
+
+    /**
+     * Finds the k rows nearest the given row, which is itself among them.
+     * Ties are broken arbitrarily.
+     *
+     * @param row the row.
+     * @param k   the number of rows to find; at most the number of rows in
+     *            the tree are returned.
+     * @return the nearest rows, nearest first.
+     */
+    public int[] nearest(int row, int k) {
+        k = Math.min(k, rows.length);
+        if (k <= 0) return new int[0];
+
+        Heap heap = new Heap(k);
+        search(0, row, heap);
+        return heap.sorted();
+    }
+
+    /**
+     * Finds the k nearest rows of each row, in parallel over the rows.
+     *
+     * @param k the number of rows to find for each row.
+     * @return for each row, its nearest rows, nearest first.
+     */
+    public int[][] nearest(int k) {
+        int[][] nearest = new int[rows.length][];
+        IntStream.range(0, rows.length).parallel().forEach(i -> nearest[i] = nearest(i, k));
+        return nearest;
+    }
+
+    //==============================PRIVATE METHODS==========================//
+
+    private int build(int lo, int hi) {
+        int node = newNode();
+        from[node] = lo;
+        to[node] = hi;
+
+        if (hi - lo <= LEAF_SIZE) {
+            splitColumn[node] = -1;
+            return node;
+        }
+
+        int bestColumn = -1;
+        double bestSpread = -1;
+
+        for (int c : columns) {
+            double min = Double.POSITIVE_INFINITY;
+            double max = Double.NEGATIVE_INFINITY;
+
+            for (int i = lo; i < hi; i++) {
+                double v = value(c, rows[i]);
+                if (v < min) min = v;
+                if (v > max) max = v;
+            }
+
+            if (max - min > bestSpread) {
+                bestSpread = max - min;
+                bestColumn = c;
+            }
+        }
+
+        if (bestSpread <= 0) {
+            splitColumn[node] = -1;
+            return node;
+        }
+
+        int mid = (lo + hi) >>> 1;
+        select(bestColumn, lo, hi - 1, mid);
+
+        splitColumn[node] = bestColumn;
+        splitValue[node] = value(bestColumn, rows[mid]);
+
+        build(lo, mid);
+        right[node] = build(mid, hi);
+
+        return node;
+    }
+
+    private int newNode() {
+        if (numNodes == from.length) {
+            int capacity = 2 * from.length;
+            from = Arrays.copyOf(from, capacity);
+            to = Arrays.copyOf(to, capacity);
+            splitColumn = Arrays.copyOf(splitColumn, capacity);
+            splitValue = Arrays.copyOf(splitValue, capacity);
+            right = Arrays.copyOf(right, capacity);
+        }
+
+        return numNodes++;
+    }
+
+    // Rearranges rows[lo..hi] so that the row at k has the kth value of the
+    // column, with no greater values before it and no smaller ones after it.
+    private void select(int column, int lo, int hi, int k) {
+        while (hi > lo) {
+            double pivot = value(column, rows[(lo + hi) >>> 1]);
+            int i = lo;
+            int j = hi;
+
+            while (i <= j) {
+                while (value(column, rows[i]) < pivot) i++;
+                while (value(column, rows[j]) > pivot) j--;
+
+                if (i <= j) {
+                    int t = rows[i];
+                    rows[i] = rows[j];
+                    rows[j] = t;
+                    i++;
+                    j--;
+                }
+            }
+
+            if (k <= j) {
+                hi = j;
+            } else if (k >= i) {
+                lo = i;
+            } else {
+                return;
+            }
+        }
+    }
+
+    private void search(int node, int row, Heap heap) {
+        if (splitColumn[node] == -1) {
+            for (int i = from[node]; i < to[node]; i++) {
+                int other = rows[i];
+                double d = squaredDistance(row, other);
+                if (!heap.isFull() || d < heap.max()) heap.add(other, d);
+            }
+
+            return;
+        }
+
+        double v = data[splitColumn[node]][row];
+        double diff = Double.isNaN(v) ? 0 : v - splitValue[node];
+
+        int near = diff < 0 ? node + 1 : right[node];
+        int far = diff < 0 ? right[node] : node + 1;
+
+        search(near, row, heap);
+
+        if (!heap.isFull() || diff * diff < heap.max()) {
+            search(far, row, heap);
+        }
+    }
+
+    private double squaredDistance(int i, int j) {
+        double sum = 0.0;
+
+        for (int c : columns) {
+            double d = data[c][i] - data[c][j];
+
+            if (!Double.isNaN(d)) {
+                sum += d * d;
+            }
+        }
+
+        return sum;
+    }
+
+    private double value(int column, int row) {
+        double v = data[column][row];
+        return Double.isNaN(v) ? 0 : v;
+    }
+
+    // A max-heap of the nearest rows found so far, keyed on distance.
+    private static class Heap {
+        private final int[] rows;
+        private final double[] distances;
+        private int size = 0;
+
+        Heap(int capacity) {
+            rows = new int[capacity];
+            distances = new double[capacity];
+        }
+
+        boolean isFull() {
+            return size == rows.length;
+        }
+
+        double max() {
+            return distances[0];
+        }
+
+        // Adds a row, replacing the farthest if the heap is full.
+        void add(int row, double distance) {
+            int i;
+
+            if (size < rows.length) {
+                i = size++;
+
+                while (i > 0 && distances[(i - 1) / 2] < distance) {
+                    rows[i] = rows[(i - 1) / 2];
+                    distances[i] = distances[(i - 1) / 2];
+                    i = (i - 1) / 2;
+                }
+            } else {
+                i = 0;
+
+                while (true) {
+                    int child = 2 * i + 1;
+                    if (child >= size) break;
+                    if (child + 1 < size && distances[child + 1] > distances[child]) child++;
+                    if (distances[child] <= distance) break;
+                    rows[i] = rows[child];
+                    distances[i] = distances[child];
+                    i = child;
+                }
+            }
+
+            rows[i] = row;
+            distances[i] = distance;
+        }
+
+        int[] sorted() {
+            Integer[] order = new Integer[size];
+            for (int i = 0; i < size; i++) order[i] = i;
+            Arrays.sort(order, (a, b) -> Double.compare(distances[a], distances[b]));
+
+            int[] sorted = new int[size];
+            for (int i = 0; i < size; i++) sorted[i] = rows[order[i]];
+            return sorted;
+        }
+    }
+}
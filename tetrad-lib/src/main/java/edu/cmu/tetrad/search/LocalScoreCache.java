@@ -19,50 +19,464 @@
 // Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
 ///////////////////////////////////////////////////////////////////////////////
 
-package edu.cmu.tetrad.search;
 
-import org.apache.commons.collections4.map.MultiKeyMap;
+package edu.cmu.tetrad.search;
 
-import java.util.HashSet;
-import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * Stores a map from (variable, parents) to score.
+ * <p>
+ * Keys are canonicalized by sorting the parents into a thread-local scratch array, so lookups do
+ * not allocate; a copy of the key is made only when a new score is added. The map is split into
+ * segments, each an open addressing (linear probing) table guarded by its own lock, so it may be
+ * shared by the parallel tasks of a search. The number of entries is bounded; once a segment is
+ * full, entries are evicted using the CLOCK (second chance) policy. Hit, miss and eviction counts
+ * are kept for tuning.
+ * <p>
+ * The bound is split among the segments, which each hold at least 16 entries (or all of them, for
+ * smaller bounds), so a segment may start evicting a little before the cache as a whole holds
+ * getMaxSize() entries, by about the spread in the number of keys hashed to each segment.
  *
  * @author Joseph Ramsey
  */
 public class LocalScoreCache {
-    private MultiKeyMap map;
 
+    // The default bound on the number of entries.
+    private static final int DEFAULT_MAX_SIZE = 1 << 20;
+
+    // The maximum number of segments; must be a power of two.
+    private static final int MAX_SEGMENTS = 64;
+
+    // The least bound on the number of entries in a segment, unless the cache holds fewer.
+    private static final int MIN_SEGMENT_SIZE = 16;
+
+    // The initial number of slots in each segment; must be a power of two.
+    private static final int INITIAL_CAPACITY = 16;
+
+    // Marks the absence of an extra parent.
+    private static final int NO_EXTRA = Integer.MIN_VALUE;
+
+    // The segments of the map.
+    private final Segment[] segments;
+
+    // The bound on the number of entries.
+    private final int maxSize;
+
+    // Statistics.
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    // Scratch space for canonicalizing keys, one per thread.
+    private final ThreadLocal<Key> scratch = ThreadLocal.withInitial(Key::new);
+
+    /**
+     * Constructs a cache holding at most 2^20 entries.
+     */
     public LocalScoreCache() {
-        map = new MultiKeyMap();
+        this(DEFAULT_MAX_SIZE);
     }
 
-    public void add(int variable, int[] parents, double score) {
-        Set<Integer> _parents = new HashSet<>(parents.length);
+    /**
+     * Constructs a cache holding at most the given number of entries.
+     *
+     * @param maxSize The bound on the number of entries, at least 1.
+     */
+    public LocalScoreCache(int maxSize) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("Max size must be at least 1: " + maxSize);
+        }
+
+        int numSegments = Math.min(MAX_SEGMENTS, Integer.highestOneBit(Math.max(1, maxSize / MIN_SEGMENT_SIZE)));
+
+        this.maxSize = maxSize;
+        this.segments = new Segment[numSegments];
 
-        for (int parent : parents) {
-            _parents.add(parent);
+        // The segment bounds add up to maxSize.
+        for (int i = 0; i < numSegments; i++) {
+            segments[i] = new Segment(maxSize / numSegments + (i < maxSize % numSegments ? 1 : 0));
         }
+    }
 
-        map.put(variable, _parents, score);
+    /**
+     * Records the score of the given variable conditional on the given parents. The order of the
+     * parents does not matter.
+     */
+    public void add(int variable, int[] parents, double score) {
+        add(variable, parents, NO_EXTRA, score);
     }
 
+    /**
+     * Records the score of the given variable conditional on the given parents plus one extra
+     * parent, without building the combined parent array.
+     */
+    public void add(int variable, int[] parents, int extra, double score) {
+        Key key = scratch.get().set(variable, parents, extra);
+        Segment segment = segmentFor(key.hash);
+
+        synchronized (segment) {
+            if (segment.put(key, score)) {
+                evictions.increment();
+            }
+        }
+    }
+
+    /**
+     * @return the score of the given variable conditional on the given parents, or NaN if it is not
+     * in the cache.
+     */
     public double get(int variable, int[] parents) {
-        Set<Integer> _parents = new HashSet<>(parents.length);
+        return get(variable, parents, NO_EXTRA);
+    }
 
-        for (int parent : parents) {
-            _parents.add(parent);
+    /**
+     * @return the score of the given variable conditional on the given parents plus one extra parent,
+     * or NaN if it is not in the cache.
+     */
+    public double get(int variable, int[] parents, int extra) {
+        Key key = scratch.get().set(variable, parents, extra);
+        Segment segment = segmentFor(key.hash);
+        double score;
+
+        synchronized (segment) {
+            score = segment.get(key);
+        }
+
+        if (Double.isNaN(score)) {
+            misses.increment();
+        } else {
+            hits.increment();
         }
 
-        Double _score = (Double) map.get(variable, _parents);
-        return _score == null ? Double.NaN : (_score);
+        return score;
     }
 
+    /**
+     * Removes all entries. The statistics are not reset.
+     */
     public void clear() {
-        map.clear();
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                segment.clear();
+            }
+        }
     }
-}
 
+    /**
+     * @return the number of entries currently in the cache.
+     */
+    public int size() {
+        int size = 0;
 
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.size;
+            }
+        }
 
+        return size;
+    }
+
+    /**
+     * @return the bound on the number of entries.
+     */
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * @return the number of lookups that found a score.
+     */
+    public long getNumHits() {
+        return hits.sum();
+    }
+
+    /**
+     * @return the number of lookups that did not find a score.
+     */
+    public long getNumMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * @return the number of entries evicted to keep the cache within its bound.
+     */
+    public long getNumEvictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * @return the fraction of lookups that found a score, or NaN if there have been no lookups.
+     */
+    public double getHitRate() {
+        long hits = getNumHits();
+        long total = hits + getNumMisses();
+        return total == 0 ? Double.NaN : hits / (double) total;
+    }
+
+    /**
+     * Resets the hit, miss and eviction counts.
+     */
+    public void resetStatistics() {
+        hits.reset();
+        misses.reset();
+        evictions.reset();
+    }
+
+    public String toString() {
+        return "LocalScoreCache: size = " + size() + ", hits = " + getNumHits() + ", misses = "
+                + getNumMisses() + ", evictions = " + getNumEvictions();
+    }
+
+    //=============================PRIVATE METHODS=========================//
+
+    private Segment segmentFor(long hash) {
+        return segments[(int) (hash >>> 32) & (segments.length - 1)];
+    }
+
+    /**
+     * A canonical (variable, sorted parents) key in reusable storage.
+     */
+    private static final class Key {
+        private int variable;
+        private int[] parents = new int[8];
+        private int length;
+        private long hash;
+
+        Key set(int variable, int[] parents, int extra) {
+            int n = parents.length + (extra == NO_EXTRA ? 0 : 1);
+
+            if (this.parents.length < n) {
+                this.parents = new int[Math.max(n, 2 * this.parents.length)];
+            }
+
+            this.variable = variable;
+            this.length = 0;
+
+            for (int parent : parents) {
+                insert(parent);
+            }
+
+            if (extra != NO_EXTRA) {
+                insert(extra);
+            }
+
+            long h = variable * 0x9E3779B97F4A7C15L;
+
+            for (int i = 0; i < length; i++) {
+                h = (h ^ this.parents[i]) * 0xFF51AFD7ED558CCDL;
+            }
+
+            h ^= h >>> 33;
+            h *= 0xC4CEB9FE1A85EC53L;
+            h ^= h >>> 33;
+
+            this.hash = h == 0 ? 1 : h;
+            return this;
+        }
+
+        // Insertion sort; parent sets are small. Duplicates are dropped, so the key is a set.
+        private void insert(int parent) {
+            int i = length - 1;
+
+            while (i >= 0 && parents[i] > parent) {
+                i--;
+            }
+
+            if (i >= 0 && parents[i] == parent) {
+                return;
+            }
+
+            System.arraycopy(parents, i + 1, parents, i + 2, length - i - 1);
+            parents[i + 1] = parent;
+            length++;
+        }
+
+        boolean matches(int[] stored) {
+            if (stored.length != length + 1 || stored[0] != variable) {
+                return false;
+            }
+
+            for (int i = 0; i < length; i++) {
+                if (stored[i + 1] != parents[i]) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+
+        int[] copy() {
+            int[] stored = new int[length + 1];
+            stored[0] = variable;
+            System.arraycopy(parents, 0, stored, 1, length);
+            return stored;
+        }
+    }
+
+    /**
+     * One linear probing table. A hash of zero marks an empty slot. Not thread safe; callers lock.
+     */
+    private static final class Segment {
+        private final int maxSize;
+        private long[] hashes;
+        private int[][] keys;
+        private double[] scores;
+        private boolean[] referenced;
+        private int size;
+        private int hand;
+
+        Segment(int maxSize) {
+            this.maxSize = maxSize;
+            allocate(Math.min(INITIAL_CAPACITY, capacityFor(maxSize)));
+        }
+
+        double get(Key key) {
+            int mask = hashes.length - 1;
+
+            for (int i = (int) key.hash & mask; hashes[i] != 0; i = (i + 1) & mask) {
+                if (hashes[i] == key.hash && key.matches(keys[i])) {
+                    referenced[i] = true;
+                    return scores[i];
+                }
+            }
+
+            return Double.NaN;
+        }
+
+        // Returns true if an entry was evicted to make room.
+        boolean put(Key key, double score) {
+            int mask = hashes.length - 1;
+
+            for (int i = (int) key.hash & mask; hashes[i] != 0; i = (i + 1) & mask) {
+                if (hashes[i] == key.hash && key.matches(keys[i])) {
+                    scores[i] = score;
+                    referenced[i] = true;
+                    return false;
+                }
+            }
+
+            boolean evicted = false;
+
+            if (size >= maxSize) {
+                evict();
+                evicted = true;
+            } else if (4 * (size + 1) > 3 * hashes.length) {
+                rehash(2 * hashes.length);
+            }
+
+            insert(key.hash, key.copy(), score);
+            return evicted;
+        }
+
+        void clear() {
+            allocate(Math.min(INITIAL_CAPACITY, capacityFor(maxSize)));
+        }
+
+        private int insert(long hash, int[] stored, double score) {
+            int mask = hashes.length - 1;
+            int i = (int) hash & mask;
+
+            while (hashes[i] != 0) {
+                i = (i + 1) & mask;
+            }
+
+            hashes[i] = hash;
+            keys[i] = stored;
+            scores[i] = score;
+            referenced[i] = false;
+            size++;
+            return i;
+        }
+
+        // CLOCK: sweep the hand, clearing reference bits, until an unreferenced entry is found.
+        private void evict() {
+            int mask = hashes.length - 1;
+
+            while (true) {
+                int i = hand;
+                hand = (hand + 1) & mask;
+
+                if (hashes[i] == 0) {
+                    continue;
+                }
+
+                if (referenced[i]) {
+                    referenced[i] = false;
+                } else {
+                    remove(i);
+                    return;
+                }
+            }
+        }
+
+        // Backward shift deletion, so no tombstones are needed.
+        private void remove(int i) {
+            int mask = hashes.length - 1;
+            int j = i;
+
+            while (true) {
+                j = (j + 1) & mask;
+
+                if (hashes[j] == 0) {
+                    break;
+                }
+
+                int home = (int) hashes[j] & mask;
+
+                // The entry at j may move to i only if its home slot is not cyclically in (i, j].
+                boolean stays = i <= j ? (i < home && home <= j) : (i < home || home <= j);
+
+                if (!stays) {
+                    hashes[i] = hashes[j];
+                    keys[i] = keys[j];
+                    scores[i] = scores[j];
+                    referenced[i] = referenced[j];
+                    i = j;
+                }
+            }
+
+            hashes[i] = 0;
+            keys[i] = null;
+            referenced[i] = false;
+            size--;
+        }
+
+        private void rehash(int capacity) {
+            long[] oldHashes = hashes;
+            int[][] oldKeys = keys;
+            double[] oldScores = scores;
+            boolean[] oldReferenced = referenced;
+
+            allocate(capacity);
+
+            for (int i = 0; i < oldHashes.length; i++) {
+                if (oldHashes[i] != 0) {
+                    int j = insert(oldHashes[i], oldKeys[i], oldScores[i]);
+                    referenced[j] = oldReferenced[i];
+                }
+            }
+        }
+
+        private void allocate(int capacity) {
+            hashes = new long[capacity];
+            keys = new int[capacity][];
+            scores = new double[capacity];
+            referenced = new boolean[capacity];
+            size = 0;
+            hand = 0;
+        }
+
+        // The smallest power of two table that holds the given number of entries at load 3/4.
+        private static int capacityFor(int entries) {
+            int capacity = INITIAL_CAPACITY;
+
+            while (3 * capacity < 4 * (entries + 1)) {
+                capacity <<= 1;
+            }
+
+            return capacity;
+        }
+    }
+}
@@ -49,9 +49,12 @@ public class MeekRules implements ImpliedOrientation {
     // If knowledge is available.
     boolean useRule4;
 
-    //The logger to use.
+    // The edges reoriented by the last call, from how they were before the call to how they are after it.
     private Map<Edge, Edge> changedEdges = new HashMap<>();
 
+    // For each edge in changedEdges, its current form mapped back to how it was before the call.
+    private Map<Edge, Edge> originalEdges = new HashMap<>();
+
     // The stack of nodes to be visited.
     private LinkedList<Node> directStack = new LinkedList<>();
 
@@ -91,6 +94,8 @@ public class MeekRules implements ImpliedOrientation {
     public void orientImplied(Graph graph, List<Node> nodes) {
         this.nodes = nodes;
         this.visited.addAll(nodes);
+        this.changedEdges = new HashMap<>();
+        this.originalEdges = new HashMap<>();
 
         TetradLogger.getInstance().log("impliedOrientations", "Starting Orientation Step D.");
         orientUsingMeekRulesLocally(knowledge, graph);
@@ -98,6 +103,26 @@ public class MeekRules implements ImpliedOrientation {
 
     }
 
+    /**
+     * Orients the edges implied by the given edges having changed since the graph was last oriented. Only the
+     * endpoints of these edges and the nodes reached from them by new orientations are visited, so the cost depends
+     * on the size of the change rather than the size of the graph. Edges that have been removed from the graph may be
+     * given as they were before removal.
+     *
+     * @return The edges reoriented, mapped from how they were before this call to how they are after it.
+     */
+    public Map<Edge, Edge> orientImplied(Graph graph, Collection<Edge> changedEdges) {
+        Set<Node> nodes = new LinkedHashSet<>();
+
+        for (Edge edge : changedEdges) {
+            nodes.add(edge.getNode1());
+            nodes.add(edge.getNode2());
+        }
+
+        orientImplied(graph, new ArrayList<>(nodes));
+        return getChangedEdges();
+    }
+
     public void setKnowledge(IKnowledge knowledge) {
         this.knowledge = knowledge;
     }
@@ -111,6 +136,10 @@ public class MeekRules implements ImpliedOrientation {
         this.aggressivelyPreventCycles = aggressivelyPreventCycles;
     }
 
+    /**
+     * @return The edges reoriented by the last call to orientImplied, mapped from how they were before the call to how
+     * they are after it. Edges that were reoriented and then put back as they were are not included.
+     */
     public Map<Edge, Edge> getChangedEdges() {
         return changedEdges;
     }
@@ -192,16 +221,28 @@ public class MeekRules implements ImpliedOrientation {
             return;
         }
 
-        ChoiceGenerator cg = new ChoiceGenerator(adjacentNodes.size(), 2);
-        int[] choice;
+        // Only pairs with a parent of b and an undirected neighbor of b can be oriented. R1 does not add parents of
+        // b, and an undirected neighbor that is stale here is checked again in r1Helper.
+        int size = adjacentNodes.size();
+        boolean[] parent = new boolean[size];
+        boolean[] undirected = new boolean[size];
 
-        while ((choice = cg.next()) != null) {
-            List<Node> nodes = GraphUtils.asList(choice, adjacentNodes);
-            Node a = nodes.get(0);
-            Node c = nodes.get(1);
+        for (int i = 0; i < size; i++) {
+            Edge edge = graph.getEdge(b, adjacentNodes.get(i));
+            parent[i] = edge.pointsTowards(b);
+            undirected[i] = Edges.isUndirectedEdge(edge);
+        }
+
+        for (int i = 0; i < size; i++) {
+            for (int j = i + 1; j < size; j++) {
+                if ((parent[i] && undirected[j]) || (parent[j] && undirected[i])) {
+                    Node a = adjacentNodes.get(i);
+                    Node c = adjacentNodes.get(j);
 
-            r1Helper(a, b, c, graph, knowledge);
-            r1Helper(c, b, a, graph, knowledge);
+                    r1Helper(a, b, c, graph, knowledge);
+                    r1Helper(c, b, a, graph, knowledge);
+                }
+            }
         }
     }
 
@@ -230,18 +271,32 @@ public class MeekRules implements ImpliedOrientation {
             return;
         }
 
-        ChoiceGenerator cg = new ChoiceGenerator(adjacentNodes.size(), 2);
-        int[] choice;
+        // Each case needs a directed edge between c and a or b. Orienting only ever directs edges, so the flags are
+        // brought up to date for a and b after each pair.
+        int size = adjacentNodes.size();
+        boolean[] directed = new boolean[size];
+
+        for (int i = 0; i < size; i++) {
+            directed[i] = Edges.isDirectedEdge(graph.getEdge(c, adjacentNodes.get(i)));
+        }
+
+        for (int i = 0; i < size; i++) {
+            for (int j = i + 1; j < size; j++) {
+                if (!directed[i] && !directed[j]) {
+                    continue;
+                }
+
+                Node a = adjacentNodes.get(i);
+                Node b = adjacentNodes.get(j);
 
-        while ((choice = cg.next()) != null) {
-            List<Node> nodes = GraphUtils.asList(choice, adjacentNodes);
-            Node a = nodes.get(0);
-            Node b = nodes.get(1);
+                r2Helper(a, b, c, graph, knowledge);
+                r2Helper(b, a, c, graph, knowledge);
+                r2Helper(a, c, b, graph, knowledge);
+                r2Helper(c, a, b, graph, knowledge);
 
-            r2Helper(a, b, c, graph, knowledge);
-            r2Helper(b, a, c, graph, knowledge);
-            r2Helper(a, c, b, graph, knowledge);
-            r2Helper(c, a, b, graph, knowledge);
+                directed[i] = Edges.isDirectedEdge(graph.getEdge(c, a));
+                directed[j] = Edges.isDirectedEdge(graph.getEdge(c, b));
+            }
         }
     }
 
@@ -266,18 +321,36 @@ public class MeekRules implements ImpliedOrientation {
             return;
         }
 
-        for (Node d : adjacentNodes) {
+        // A kite needs b and c to be parents of a; R3 adds a parent of a only by orienting d-->a.
+        int size = adjacentNodes.size();
+        boolean[] parent = new boolean[size];
+
+        for (int i = 0; i < size; i++) {
+            parent[i] = graph.getEdge(a, adjacentNodes.get(i)).pointsTowards(a);
+        }
+
+        for (int k = 0; k < size; k++) {
+            Node d = adjacentNodes.get(k);
+
             if (Edges.isUndirectedEdge(graph.getEdge(a, d))) {
-                List<Node> otherAdjacents = new ArrayList<>(adjacentNodes);
-                otherAdjacents.remove(d);
+                List<Node> parents = new ArrayList<>();
+
+                for (int i = 0; i < size; i++) {
+                    if (i != k && parent[i]) {
+                        parents.add(adjacentNodes.get(i));
+                    }
+                }
+
+                if (parents.size() < 2) {
+                    continue;
+                }
 
-                ChoiceGenerator cg = new ChoiceGenerator(otherAdjacents.size(), 2);
+                ChoiceGenerator cg = new ChoiceGenerator(parents.size(), 2);
                 int[] choice;
 
                 while ((choice = cg.next()) != null) {
-                    List<Node> nodes = GraphUtils.asList(choice, otherAdjacents);
-                    Node b = nodes.get(0);
-                    Node c = nodes.get(1);
+                    Node b = parents.get(choice[0]);
+                    Node c = parents.get(choice[1]);
 
                     boolean isKite = isKite(a, d, b, c, graph);
 
@@ -292,6 +365,8 @@ public class MeekRules implements ImpliedOrientation {
                         }
                     }
                 }
+
+                parent[k] = graph.getEdge(a, d).pointsTowards(a);
             }
         }
     }
@@ -379,6 +454,7 @@ public class MeekRules implements ImpliedOrientation {
 
         graph.removeEdge(before);
         graph.addEdge(after);
+        recordChange(before, after);
 
         oriented.add(after);
 
@@ -441,9 +517,13 @@ public class MeekRules implements ImpliedOrientation {
         for (Node x : parentsToUndirect) {
             boolean mustOrient = knowledge.isRequired(x.getName(), y.getName()) ||
                     knowledge.isForbidden(y.getName(), x.getName());
-            if (!oriented.contains(graph.getEdge(x, y)) && !mustOrient) {
-                graph.removeEdge(x, y);
-                graph.addUndirectedEdge(x, y);
+            Edge before = graph.getEdge(x, y);
+
+            if (!oriented.contains(before) && !mustOrient) {
+                graph.removeEdge(before);
+                Edge after = Edges.undirectedEdge(x, y);
+                graph.addEdge(after);
+                recordChange(before, after);
                 visited.add(x);
                 visited.add(y);
                 didit = true;
@@ -459,6 +539,21 @@ public class MeekRules implements ImpliedOrientation {
         }
     }
 
+    private void recordChange(Edge before, Edge after) {
+        Edge original = originalEdges.remove(before);
+
+        if (original == null) {
+            original = before;
+        }
+
+        if (original.equals(after)) {
+            changedEdges.remove(original);
+        } else {
+            changedEdges.put(original, after);
+            originalEdges.put(after, original);
+        }
+    }
+
     private void log(String message) {
         if (verbose) {
             System.out.println(message);
@@ -73,6 +73,9 @@ public class SemBicScore implements Score {
     // The structure prior, 0 for standard BIC.
     private double structurePrior = 0.0;
 
+    // Cholesky factors of parent set covariances, shared across calls; null to use matrix inverses.
+    private CholeskyCache factors;
+
     /**
      * Constructs the score using a covariance matrix.
      */
@@ -82,6 +85,7 @@ public class SemBicScore implements Score {
         }
 
         setCovariances(new CovarianceMatrix(covariances));
+        this.factors = new CholeskyCache(this.covariances);
         this.variables = covariances.getVariables();
         this.sampleSize = covariances.getSampleSize();
         this.indexMap = indexMap(this.variables);
@@ -99,6 +103,7 @@ public class SemBicScore implements Score {
 
         ICovarianceMatrix cov = new CovarianceMatrix(dataSet, true);
         setCovariances(cov);
+        this.factors = new CholeskyCache(cov);
 
         this.variables = covariances.getVariables();
         this.sampleSize = covariances.getSampleSize();
@@ -120,6 +125,17 @@ public class SemBicScore implements Score {
 
             return -n * Math.log(1.0 - r * r) - log(n)// - getErrorThreshold()
                     +  signum(getStructurePrior()) * (sp1 - sp2);
+        } else if (factors != null) {
+
+            // Regress y on z using the cached factor for z, and on z plus x by a rank-one update.
+            CholeskyCache.Factor factor = factors.getFactor(z, x);
+
+            if (factor == null) {
+                return Double.NaN;
+            }
+
+            double[] s2 = factors.residualVariances(factor, x, y);
+            return score(y, s2[1], z.length + 1) - score(y, s2[0], z.length);
         } else {
             return (localScore(y, append(z, x)) - localScore(y, z));// - getErrorThreshold();
         }
@@ -131,6 +147,15 @@ public class SemBicScore implements Score {
     }
 
     public double localScore(int i, int... parents) {
+        if (factors != null) {
+            CholeskyCache.Factor factor = factors.getFactor(parents);
+
+            if (factor == null) {
+                return Double.NaN;
+            }
+
+            return score(i, factors.residualVariance(factor, i), parents.length);
+        }
 
         try {
             final int p = parents.length;
@@ -164,6 +189,22 @@ public class SemBicScore implements Score {
         }
     }
 
+    // The score of i given p parents, from the residual variance of i given them.
+    private double score(int i, double s2, int p) {
+        double n = getSampleSize();
+        int k = p + 1;
+
+        if (!(s2 > 0)) {
+            if (isVerbose() && s2 <= 0) {
+                out.println("Nonpositive residual varianceY: resVar / varianceY = " + (s2 / getCovariances().getValue(i, i)));
+            }
+            return Double.NaN;
+        }
+
+        return -n * log(s2) - getPenaltyDiscount() * k * log(n)
+                + signum(getStructurePrior()) * getStructurePrior(p);
+    }
+
     private TetradMatrix getCoefs(TetradMatrix x, TetradMatrix y) {
         return (x.inverse()).times(y);
     }
@@ -227,6 +268,24 @@ public class SemBicScore implements Score {
         this.verbose = verbose;
     }
 
+    /**
+     * @return true if local scores are computed from cached Cholesky factors of parent set
+     * covariances (the default), false if from a fresh matrix inverse for each call.
+     */
+    public boolean isUseCholeskyFactors() {
+        return factors != null;
+    }
+
+    /**
+     * Sets whether local scores are computed from cached Cholesky factors of parent set
+     * covariances, so that a score difference costs O(k^2) for k parents when the factor for the
+     * parents is cached or one parent away from a cached one. The results agree with the
+     * matrix inverse up to floating point error.
+     */
+    public void setUseCholeskyFactors(boolean useCholeskyFactors) {
+        this.factors = useCholeskyFactors ? new CholeskyCache(covariances) : null;
+    }
+
     @Override
     public List<Node> getVariables() {
         return variables;
@@ -26,8 +26,9 @@ import edu.cmu.tetrad.util.TetradSerializable;
 
 import java.io.IOException;
 import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * <p>Stores a map from pairs of nodes to separating sets--that is, for each unordered pair of nodes {node1, node2} in a
@@ -39,6 +40,10 @@ import java.util.concurrent.ConcurrentHashMap;
  * variable-like objects to Node to allow them either to be variables explicitly or else to be graph nodes that in some
  * model could be considered as variables. This allows us to use d-separation as a graphical indicator of what
  * independendence in models ideally should be.</p>
+ * <p>Nodes are numbered as they are first seen. Each pair is stored as the two numbers packed into a long, in an open
+ * addressing hash table, and each sepset as a run of numbers in a single int array, so that maps for millions of pairs
+ * stay small and are quick to copy and serialize. All methods are synchronized, so that several threads may record
+ * sepsets at once.</p>
  *
  * @author Joseph Ramsey
  */
@@ -46,10 +51,60 @@ public final class SepsetMap implements TetradSerializable {
     static final long serialVersionUID = 23L;
 
     /**
-     * @serial
+     * The fields written when serializing. Older versions wrote the sepsets as a map from pairs to lists, which is
+     * still read.
      */
-    private Map<Set<Node>, List<Node>> sepsets = new ConcurrentHashMap<>();
-    private Map<Set<Node>, Double> pValues = new ConcurrentHashMap<>();
+    private static final ObjectStreamField[] serialPersistentFields = {
+            new ObjectStreamField("sepsets", Map.class),
+            new ObjectStreamField("nodes", List.class),
+            new ObjectStreamField("pairs", long[].class),
+            new ObjectStreamField("sets", int[].class),
+            new ObjectStreamField("parents", Map.class)
+    };
+
+    private static final long EMPTY = -1L;
+
+    /**
+     * The nodes seen so far; a node is referred to by its index in this list.
+     */
+    private transient List<Node> nodes = new ArrayList<>();
+
+    /**
+     * Map from nodes to their indices.
+     */
+    private transient Map<Node, Integer> indices = new HashMap<>();
+
+    /**
+     * The hash table of pairs, each the indices of its nodes, smaller first, packed into a long, or EMPTY.
+     */
+    private transient long[] keys = emptyKeys(16);
+
+    /**
+     * For each slot in the hash table, the offset in the arena of its sepset, or -1 if its sepset has been removed.
+     */
+    private transient int[] offsets = new int[16];
+
+    /**
+     * The number of slots used in the hash table.
+     */
+    private transient int numSlotsUsed = 0;
+
+    /**
+     * The number of pairs with sepsets.
+     */
+    private transient int size = 0;
+
+    /**
+     * The sepsets, each stored as its size followed by the indices of its nodes.
+     */
+    private transient int[] arena = new int[64];
+
+    /**
+     * The length of the arena in use, and the part of that no longer referred to.
+     */
+    private transient int arenaSize = 0;
+    private transient int garbage = 0;
+
     private Map<Node, HashSet<Node>> parents = new HashMap<>();
 //    private Set<Set<Node>> correlations;
 //    private boolean returnEmptyIfNotSet = false;
@@ -60,8 +115,17 @@ public final class SepsetMap implements TetradSerializable {
     }
 
     public SepsetMap(SepsetMap map) {
-        this.sepsets = new HashMap<>(map.sepsets);
-        this.pValues = new HashMap<>(map.pValues);
+        synchronized (map) {
+            this.nodes = new ArrayList<>(map.nodes);
+            this.indices = new HashMap<>(map.indices);
+            this.keys = map.keys.clone();
+            this.offsets = map.offsets.clone();
+            this.numSlotsUsed = map.numSlotsUsed;
+            this.size = map.size;
+            this.arena = Arrays.copyOf(map.arena, map.arenaSize);
+            this.arenaSize = map.arenaSize;
+            this.garbage = map.garbage;
+        }
     }
 
     /**
@@ -76,15 +140,28 @@ public final class SepsetMap implements TetradSerializable {
     /**
      * Sets the sepset for {x, y} to be z. Note that {x, y} is unordered.
      */
-    public void set(Node x, Node y, List<Node> z) {
-        Set<Node> pair = new HashSet<>(2);
-        pair.add(x);
-        pair.add(y);
+    public synchronized void set(Node x, Node y, List<Node> z) {
+        long key = key(index(x), index(y));
+
         if (z == null) {
-            sepsets.remove(pair);
-        } else {
-            sepsets.put(pair, z);
+            int slot = find(key);
+
+            if (slot != -1 && offsets[slot] != -1) {
+                garbage += arena[offsets[slot]] + 1;
+                offsets[slot] = -1;
+                size--;
+            }
+
+            return;
         }
+
+        int[] _z = new int[z.size()];
+
+        for (int i = 0; i < z.size(); i++) {
+            _z[i] = index(z.get(i));
+        }
+
+        put(key, _z);
     }
 
 //    public void setPValue(Node x, Node y, double p) {
@@ -97,31 +174,40 @@ public final class SepsetMap implements TetradSerializable {
     /**
      * Retrieves the sepset previously set for {a, b}, or null if no such set was previously set.
      */
-    public List<Node> get(Node a, Node b) {
-        Set<Node> pair = new HashSet<>(2);
-        pair.add(a);
-        pair.add(b);
+    public synchronized List<Node> get(Node a, Node b) {
+        Integer i = indices.get(a);
+        Integer j = indices.get(b);
+
+        if (i == null || j == null) {
+            return null;
+        }
+
+        int slot = find(key(i, j));
 
-//        if (correlations != null && !correlations.contains(pair)) {
-//            return Collections.emptyList();
-//        }
+        if (slot == -1 || offsets[slot] == -1) {
+            return null;
+        }
 
-//        if (/*returnEmptyIfNotSet && */ sepsets.get(pair) == null) {
-//            return Collections.emptyList();
-//        }
+        int offset = offsets[slot];
+        List<Node> sepset = new ArrayList<>(arena[offset]);
+
+        for (int k = 1; k <= arena[offset]; k++) {
+            sepset.add(nodes.get(arena[offset + k]));
+        }
 
-        return sepsets.get(pair);
+        return sepset;
     }
 
+    /**
+     * P-values are not recorded.
+     *
+     * @throws IllegalArgumentException always, since no p-value has been set for the pair.
+     */
     public double getPValue(Node x, Node y) {
-        Set<Node> pair = new HashSet<>(2);
-        pair.add(x);
-        pair.add(y);
-
-        return pValues.get(pair);
+        throw new IllegalArgumentException("No p-value recorded for " + x + " and " + y);
     }
 
-    public void set(Node x, LinkedHashSet<Node> z) {
+    public synchronized void set(Node x, LinkedHashSet<Node> z) {
         if (parents.get(x) != null) {
             parents.get(x).addAll(z);
         } else {
@@ -129,7 +215,7 @@ public final class SepsetMap implements TetradSerializable {
         }
     }
 
-    public HashSet<Node> get(Node x) {
+    public synchronized HashSet<Node> get(Node x) {
         return parents.get(x) == null ? new HashSet<Node>() : parents.get(x);
     }
 
@@ -143,32 +229,15 @@ public final class SepsetMap implements TetradSerializable {
         }
 
         SepsetMap _sepset = (SepsetMap) o;
-        return sepsets.equals(_sepset.sepsets);
-    }
-
-    /**
-     * Adds semantic checks to the default deserialization method. This method must have the standard signature for a
-     * readObject method, and the body of the method must begin with "s.defaultReadObject();". Other than that, any
-     * semantic checks can be specified and do not need to stay the same from version to version. A readObject method of
-     * this form may be added to any class, even if Tetrad sessions were previously saved out using a version of the
-     * class that didn't include it. (That's what the "s.defaultReadObject();" is for. See J. Bloch, Effective Java, for
-     * help.
-     */
-    private void readObject(ObjectInputStream s)
-            throws IOException, ClassNotFoundException {
-        s.defaultReadObject();
-
-        if (sepsets == null) {
-            throw new NullPointerException();
-        }
+        return toMap().equals(_sepset.toMap());
     }
 
-    public int size() {
-        return sepsets.keySet().size();
+    public synchronized int size() {
+        return size;
     }
 
     public String toString() {
-        return sepsets.toString();
+        return toMap().toString();
     }
 
     /**
@@ -188,11 +257,247 @@ public final class SepsetMap implements TetradSerializable {
 //    }
 
     public void addAll(SepsetMap newSepsets) {
-        sepsets.putAll(newSepsets.sepsets);
+        for (Map.Entry<Set<Node>, List<Node>> entry : newSepsets.toMap().entrySet()) {
+            Iterator<Node> pair = entry.getKey().iterator();
+            Node x = pair.next();
+            Node y = pair.hasNext() ? pair.next() : x;
+            set(x, y, entry.getValue());
+        }
     }
-}
 
+    //=============================PRIVATE METHODS========================//
+
+    // The sepsets keyed by pairs of nodes, as older versions stored them.
+    private synchronized Map<Set<Node>, List<Node>> toMap() {
+        Map<Set<Node>, List<Node>> map = new HashMap<>();
+
+        for (int slot = 0; slot < keys.length; slot++) {
+            if (keys[slot] == EMPTY || offsets[slot] == -1) continue;
+
+            Set<Node> pair = new HashSet<>(2);
+            pair.add(nodes.get((int) (keys[slot] >>> 32)));
+            pair.add(nodes.get((int) keys[slot]));
+
+            int offset = offsets[slot];
+            List<Node> sepset = new ArrayList<>(arena[offset]);
+
+            for (int k = 1; k <= arena[offset]; k++) {
+                sepset.add(nodes.get(arena[offset + k]));
+            }
+
+            map.put(pair, sepset);
+        }
+
+        return map;
+    }
+
+    private int index(Node node) {
+        if (node == null) {
+            throw new NullPointerException("Null node.");
+        }
+
+        Integer index = indices.get(node);
+
+        if (index == null) {
+            index = nodes.size();
+            nodes.add(node);
+            indices.put(node, index);
+        }
+
+        return index;
+    }
+
+    private static long key(int i, int j) {
+        return i < j ? ((long) i << 32) | j : ((long) j << 32) | i;
+    }
+
+    private static long[] emptyKeys(int capacity) {
+        long[] keys = new long[capacity];
+        Arrays.fill(keys, EMPTY);
+        return keys;
+    }
+
+    private static int hash(long key, int capacity) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h >>> 32) & (capacity - 1);
+    }
+
+    // The slot holding the key, or -1 if there is none.
+    private int find(long key) {
+        int slot = hash(key, keys.length);
+
+        while (keys[slot] != EMPTY) {
+            if (keys[slot] == key) return slot;
+            slot = (slot + 1) & (keys.length - 1);
+        }
+
+        return -1;
+    }
+
+    private void put(long key, int[] sepset) {
+        int slot = find(key);
+
+        if (slot == -1) {
+            if (2 * (numSlotsUsed + 1) > keys.length) {
+                rehash(2 * keys.length);
+            }
+
+            slot = hash(key, keys.length);
+
+            while (keys[slot] != EMPTY) {
+                slot = (slot + 1) & (keys.length - 1);
+            }
+
+            keys[slot] = key;
+            offsets[slot] = -1;
+            numSlotsUsed++;
+        }
+
+        if (offsets[slot] == -1) {
+            size++;
+        } else {
+            garbage += arena[offsets[slot]] + 1;
+        }
+
+        if (garbage > arenaSize / 2 && garbage > 1024) {
+            compact();
+        }
+
+        if (arenaSize + sepset.length + 1 > arena.length) {
+            arena = Arrays.copyOf(arena, Math.max(2 * arena.length, arenaSize + sepset.length + 1));
+        }
+
+        offsets[slot] = arenaSize;
+        arena[arenaSize++] = sepset.length;
+        System.arraycopy(sepset, 0, arena, arenaSize, sepset.length);
+        arenaSize += sepset.length;
+    }
+
+    private void rehash(int capacity) {
+        long[] oldKeys = keys;
+        int[] oldOffsets = offsets;
+
+        keys = emptyKeys(capacity);
+        offsets = new int[capacity];
+        numSlotsUsed = 0;
+
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] == EMPTY || oldOffsets[i] == -1) continue;
+
+            int slot = hash(oldKeys[i], capacity);
+
+            while (keys[slot] != EMPTY) {
+                slot = (slot + 1) & (capacity - 1);
+            }
 
+            keys[slot] = oldKeys[i];
+            offsets[slot] = oldOffsets[i];
+            numSlotsUsed++;
+        }
+    }
+
+    // Copies the sepsets still referred to into a new arena.
+    private void compact() {
+        int[] _arena = new int[Math.max(64, 2 * (arenaSize - garbage))];
+        int _arenaSize = 0;
+
+        for (int slot = 0; slot < keys.length; slot++) {
+            if (keys[slot] == EMPTY || offsets[slot] == -1) continue;
+
+            int length = arena[offsets[slot]] + 1;
+            System.arraycopy(arena, offsets[slot], _arena, _arenaSize, length);
+            offsets[slot] = _arenaSize;
+            _arenaSize += length;
+        }
+
+        arena = _arena;
+        arenaSize = _arenaSize;
+        garbage = 0;
+    }
+
+    private synchronized void writeObject(ObjectOutputStream s) throws IOException {
+        if (garbage > 0) {
+            compact();
+        }
+
+        long[] pairs = new long[size];
+        int n = 0;
+
+        for (int slot = 0; slot < keys.length; slot++) {
+            if (keys[slot] == EMPTY || offsets[slot] == -1) continue;
+            pairs[n++] = keys[slot];
+        }
+
+        // With no garbage, the sepsets are in the arena in the same slot order as the pairs.
+        int[] sets = new int[arenaSize];
+        n = 0;
+
+        for (int slot = 0; slot < keys.length; slot++) {
+            if (keys[slot] == EMPTY || offsets[slot] == -1) continue;
+
+            int length = arena[offsets[slot]] + 1;
+            System.arraycopy(arena, offsets[slot], sets, n, length);
+            n += length;
+        }
+
+        ObjectOutputStream.PutField fields = s.putFields();
+        fields.put("nodes", new ArrayList<>(nodes));
+        fields.put("pairs", pairs);
+        fields.put("sets", sets);
+        fields.put("parents", parents);
+        s.writeFields();
+    }
+
+    /**
+     * Adds semantic checks to the default deserialization method. This method must have the standard signature for a
+     * readObject method, and the body of the method must begin with "s.defaultReadObject();". Other than that, any
+     * semantic checks can be specified and do not need to stay the same from version to version. A readObject method of
+     * this form may be added to any class, even if Tetrad sessions were previously saved out using a version of the
+     * class that didn't include it. (That's what the "s.defaultReadObject();" is for. See J. Bloch, Effective Java, for
+     * help.
+     */
+    @SuppressWarnings("unchecked")
+    private void readObject(ObjectInputStream s)
+            throws IOException, ClassNotFoundException {
+        ObjectInputStream.GetField fields = s.readFields();
 
+        this.nodes = new ArrayList<>();
+        this.indices = new HashMap<>();
+        this.keys = emptyKeys(16);
+        this.offsets = new int[16];
+        this.arena = new int[64];
+        this.parents = (Map<Node, HashSet<Node>>) fields.get("parents", null);
 
+        if (parents == null) {
+            parents = new HashMap<>();
+        }
 
+        Map<Set<Node>, List<Node>> sepsets = (Map<Set<Node>, List<Node>>) fields.get("sepsets", null);
+        List<Node> nodes = (List<Node>) fields.get("nodes", null);
+        long[] pairs = (long[]) fields.get("pairs", null);
+        int[] sets = (int[]) fields.get("sets", null);
+
+        if (sepsets != null) {
+            for (Map.Entry<Set<Node>, List<Node>> entry : sepsets.entrySet()) {
+                Iterator<Node> pair = entry.getKey().iterator();
+                Node x = pair.next();
+                Node y = pair.hasNext() ? pair.next() : x;
+                set(x, y, entry.getValue());
+            }
+        } else if (nodes != null && pairs != null && sets != null) {
+            for (Node node : nodes) {
+                index(node);
+            }
+
+            int offset = 0;
+
+            for (long pair : pairs) {
+                int[] sepset = Arrays.copyOfRange(sets, offset + 1, offset + 1 + sets[offset]);
+                put(pair, sepset);
+                offset += sepset.length + 1;
+            }
+        } else {
+            throw new NullPointerException();
+        }
+    }
+}
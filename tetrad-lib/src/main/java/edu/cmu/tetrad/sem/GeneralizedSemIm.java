@@ -21,6 +21,7 @@
 
 package edu.cmu.tetrad.sem;
 
+import edu.cmu.tetrad.calculator.expression.CompiledExpression;
 import edu.cmu.tetrad.calculator.expression.Context;
 import edu.cmu.tetrad.calculator.expression.Expression;
 import edu.cmu.tetrad.calculator.parser.ExpressionLexer;
@@ -39,8 +40,8 @@ import org.apache.commons.math3.optim.nonlinear.scalar.noderiv.PowellOptimizer;
 
 import java.text.NumberFormat;
 import java.util.*;
-
-import static edu.cmu.tetrad.util.StatUtils.sd;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.IntStream;
 
 /**
  * Represents a generalized SEM instantiated model. The parameteric form of this
@@ -52,6 +53,9 @@ import static edu.cmu.tetrad.util.StatUtils.sd;
 public class GeneralizedSemIm implements IM, Simulator, TetradSerializable {
     static final long serialVersionUID = 23L;
 
+    // The number of rows simulated from each substream, in parallel.
+    private static final int SIMULATION_BLOCK_SIZE = 1000;
+
     /**
      * The wrapped PM, that holds all of the expressions and structure for the model.
      */
@@ -287,7 +291,7 @@ public class GeneralizedSemIm implements IM, Simulator, TetradSerializable {
         return buf.toString();
     }
 
-    public synchronized DataSet simulateData(int sampleSize, boolean latentDataSaved) {
+    public DataSet simulateData(int sampleSize, boolean latentDataSaved) {
         long seed = RandomUtil.getInstance().getSeed();
         TetradLogger.getInstance().log("info", "Seed = " + seed);
 
@@ -417,110 +421,66 @@ public class GeneralizedSemIm implements IM, Simulator, TetradSerializable {
      * @return the simulated data set.
      */
     public DataSet simulateDataRecursive(int sampleSize, boolean latentDataSaved) {
-        List<Node> variables = pm.getNodes();
-        Map<String, Double> std = new HashMap<>();
-
-        final Map<String, Double> variableValues = new HashMap<>();
-
-        Context context = new Context() {
-            public Double getValue(String term) {
-                Double value = parameterValues.get(term);
-
-                if (value != null) {
-                    return value;
-                }
-
-                value = variableValues.get(term);
-
-                if (value != null) {
-                    return value * 2 / std.get(term);
-                }
-
-                throw new IllegalArgumentException("No value recorded for '" + term + "'");
-            }
-        };
-
-        List<Node> continuousVariables = new LinkedList<>();
-        List<Node> nonErrorVariables = pm.getVariableNodes();
-
-        // Work with a copy of the variables, because their type can be set externally.
-        for (Node node : nonErrorVariables) {
-            ContinuousVariable var = new ContinuousVariable(node.getName());
-            var.setNodeType(node.getNodeType());
-
-            if (var.getNodeType() != NodeType.ERROR) {
-                continuousVariables.add(var);
-            }
-        }
+        return simulateDataRecursive(sampleSize, RandomUtil.getInstance().nextStream(), latentDataSaved);
+    }
 
-        DataSet fullDataSet = new BoxDataSet(new VerticalDoubleDataBox(sampleSize, continuousVariables.size()), continuousVariables);
+    /**
+     * Simulates data as <code>simulateDataRecursive(int, boolean)</code> does,
+     * drawing Normal and Uniform errors from the given stream. Rows are
+     * simulated in blocks that each draw from their own substream. The blocks
+     * are simulated in parallel if every expression in the model is thread
+     * safe, so the data depend only on the stream.
+     *
+     * @param sampleSize > 0.
+     * @param random     The stream to draw from.
+     * @return the simulated data set.
+     * @see CompiledExpression#isThreadSafe()
+     */
+    public DataSet simulateDataRecursive(int sampleSize, RandomStream random, boolean latentDataSaved) {
+        final List<Node> variableNodes = pm.getVariableNodes();
+        final int numVars = variableNodes.size();
 
-        // Create some index arrays to hopefully speed up the simulation.
-        SemGraph graph = pm.getGraph();
-        List<Node> tierOrdering = graph.getFullTierOrdering();
+        List<String> variables = getSimulationVariables(variableNodes);
+        final CompiledExpression[] expressions = compileExpressions(variableNodes, variables);
+        final CompiledExpression[] errorExpressions = compileExpressions(getErrorNodes(variableNodes), variables);
 
-        int[] tierIndices = new int[variables.size()];
+        // The variables in causal order.
+        List<Node> tierOrdering = pm.getGraph().getFullTierOrdering();
+        int[] order = new int[numVars];
+        int numOrdered = 0;
 
-        for (int i = 0; i < tierIndices.length; i++) {
-            tierIndices[i] = nonErrorVariables.indexOf(tierOrdering.get(i));
+        for (Node node : tierOrdering) {
+            int j = variableNodes.indexOf(node);
+            if (j != -1) order[numOrdered++] = j;
         }
 
-        int[][] _parents = new int[variables.size()][];
-
-        for (int i = 0; i < variables.size(); i++) {
-            Node node = variables.get(i);
-            List<Node> parents = graph.getParents(node);
+        final double[][] all = new double[numVars][sampleSize];
+        int numBlocks = (sampleSize + SIMULATION_BLOCK_SIZE - 1) / SIMULATION_BLOCK_SIZE;
+        IntStream blocks = IntStream.range(0, numBlocks);
 
-            _parents[i] = new int[parents.size()];
-
-            for (int j = 0; j < parents.size(); j++) {
-                Node _parent = parents.get(j);
-                _parents[i][j] = variables.indexOf(_parent);
-            }
+        if (isThreadSafe(expressions) && isThreadSafe(errorExpressions)) {
+            blocks = blocks.parallel();
         }
 
+        blocks.forEach(block -> {
+            RandomStream blockRandom = random.substream(block);
+            double[] values = new double[2 * numVars];
+            int to = Math.min(sampleSize, (block + 1) * SIMULATION_BLOCK_SIZE);
 
-        // Do the simulation.
-        for (int tier = 0; tier < variables.size(); tier++) {
-            double[] v = new double[sampleSize];
-
-            int col = tierIndices[tier];
-
-            if (col == -1) {
-                continue;
-            }
-
-            for (int row = 0; row < sampleSize; row++) {
-                variableValues.clear();
-
-                Node node = tierOrdering.get(tier);
-                Expression expression = pm.getNodeExpression(node);
-                double value = expression.evaluate(context);
-                v[row] = value;
-                variableValues.put(node.getName(), value);
-
-
-
-//                if (isSimulatePositiveDataOnly() && value < 0) {
-//                    row--;
-//                    continue ROW;
-//                }
-
-//                if (!Double.isNaN(selfLoopCoef) && row > 0) {
-//                    value += selfLoopCoef * fullDataSet.getDouble(row - 1, col);
-//                }
-
-//                value = min(max(value, -5.), 5.);
+            for (int row = block * SIMULATION_BLOCK_SIZE; row < to; row++) {
+                for (int j = 0; j < numVars; j++) {
+                    values[numVars + j] = errorExpressions[j].evaluate(values, blockRandom);
+                }
 
-                fullDataSet.setDouble(row, col, value);
+                for (int j : order) {
+                    double value = expressions[j].evaluate(values, blockRandom);
+                    values[j] = value;
+                    all[j][row] = value;
+                }
             }
+        });
 
-            std.put(tierOrdering.get(tier).getName(), sd(v));
-
-//            for (int row = 0; row < sampleSize; row++) {
-//                fullDataSet.setDouble(row, col, 2v[row] / std);
-//            }
-        }
+        DataSet fullDataSet = new BoxDataSet(new VerticalDoubleDataBox(all), getContinuousVariables(variableNodes));
 
         if (latentDataSaved) {
             return fullDataSet;
@@ -850,7 +810,7 @@ public class GeneralizedSemIm implements IM, Simulator, TetradSerializable {
      * @param sampleSize The number of samples to be drawn. Must be a positive
      *                   integer.
      */
-    public synchronized DataSet simulateDataFisher(int sampleSize) {
+    public DataSet simulateDataFisher(int sampleSize) {
         return simulateDataFisher(sampleSize, 50, 1e-10);
     }
 
@@ -867,111 +827,165 @@ public class GeneralizedSemIm implements IM, Simulator, TetradSerializable {
      *                              Must be positive integer.
      * @param epsilon               The convergence criterion; |xi.t - xi.t-1| < epsilon.
      */
-    public synchronized DataSet simulateDataFisher(int sampleSize, int intervalBetweenShocks,
-                                                   double epsilon) {
-        boolean printedUndefined = false;
-        boolean printedInfinite = false;
+    public DataSet simulateDataFisher(int sampleSize, int intervalBetweenShocks, double epsilon) {
+        return simulateDataFisher(sampleSize, intervalBetweenShocks, epsilon, RandomUtil.getInstance().nextStream());
+    }
 
+    /**
+     * Simulates data as <code>simulateDataFisher(int, int, double)</code> does,
+     * drawing Normal and Uniform shocks from the given stream. Rows are simulated
+     * in blocks; each block starts from zero and draws from its own substream.
+     * The blocks are simulated in parallel if every expression in the model is
+     * thread safe, so the data depend only on the stream.
+     *
+     * @param sampleSize            The number of samples to be drawn.
+     * @param intervalBetweenShocks External shock is applied every this many steps.
+     *                              Must be positive integer.
+     * @param epsilon               The convergence criterion; |xi.t - xi.t-1| < epsilon.
+     * @param random                The stream to draw from.
+     * @see CompiledExpression#isThreadSafe()
+     */
+    public DataSet simulateDataFisher(int sampleSize, int intervalBetweenShocks,
+                                      double epsilon, RandomStream random) {
         if (intervalBetweenShocks < 1) throw new IllegalArgumentException(
                 "Interval between shocks must be >= 1: " + intervalBetweenShocks);
         if (epsilon <= 0.0) throw new IllegalArgumentException(
                 "Epsilon must be > 0: " + epsilon);
 
-        final Map<String, Double> variableValues = new HashMap<>();
-
-        final Context context = new Context() {
-            public Double getValue(String term) {
-                Double value = parameterValues.get(term);
-
-                if (value != null) {
-                    return value;
-                }
-
-                value = variableValues.get(term);
+        final List<Node> variableNodes = pm.getVariableNodes();
+        final int numVars = variableNodes.size();
 
-                if (value != null) {
-                    return value;
-                }
+        List<String> variables = getSimulationVariables(variableNodes);
+        final CompiledExpression[] expressions = compileExpressions(variableNodes, variables);
+        final CompiledExpression[] errorExpressions = compileExpressions(getErrorNodes(variableNodes), variables);
 
-                throw new IllegalArgumentException("No value recorded for '" + term + "'");
-            }
-        };
-
-        final List<Node> variableNodes = pm.getVariableNodes();
+        final double[][] all = new double[numVars][sampleSize];
+        final AtomicBoolean printedUndefined = new AtomicBoolean(false);
+        final AtomicBoolean printedInfinite = new AtomicBoolean(false);
 
-        double[] t1 = new double[variableNodes.size()];
-        double[] t2 = new double[variableNodes.size()];
-        double[] shocks = new double[variableNodes.size()];
-        double[][] all = new double[variableNodes.size()][sampleSize];
+        int numBlocks = (sampleSize + SIMULATION_BLOCK_SIZE - 1) / SIMULATION_BLOCK_SIZE;
+        IntStream blocks = IntStream.range(0, numBlocks);
 
-        // Do the simulation.
+        if (isThreadSafe(expressions) && isThreadSafe(errorExpressions)) {
+            blocks = blocks.parallel();
+        }
 
-        for (int row = 0; row < sampleSize; row++) {
-            for (int j = 0; j < t1.length; j++) {
-                Node error = pm.getErrorNode(variableNodes.get(j));
+        // Do the simulation. The values array holds the variables, then their errors.
+        blocks.forEach(block -> {
+            RandomStream blockRandom = random.substream(block);
+            double[] values = new double[2 * numVars];
+            double[] t1 = new double[numVars];
+            double[] t2 = new double[numVars];
+            int to = Math.min(sampleSize, (block + 1) * SIMULATION_BLOCK_SIZE);
 
-                if (error == null) {
-                    throw new NullPointerException();
-                }
+            for (int row = block * SIMULATION_BLOCK_SIZE; row < to; row++) {
+                for (int j = 0; j < numVars; j++) {
+                    double value = errorExpressions[j].evaluate(values, blockRandom);
 
-                Expression expression = pm.getNodeExpression(error);
-                double value = expression.evaluate(context);
+                    if (Double.isNaN(value)) {
+                        throw new IllegalArgumentException("Undefined value for expression: " + errorExpressions[j]);
+                    }
 
-                if (Double.isNaN(value)) {
-                    throw new IllegalArgumentException("Undefined value for expression: " + expression);
+                    values[numVars + j] = value;
                 }
 
-                variableValues.put(error.getName(), value);
-                shocks[j] = value;
-                t2[j] += shocks[j];
-            }
+                for (int i = 0; i < intervalBetweenShocks; i++) {
+                    for (int j = 0; j < numVars; j++) {
+                        double value = expressions[j].evaluate(values, blockRandom);
 
-            for (int i = 0; i < intervalBetweenShocks; i++) {
-                for (int j = 0; j < t1.length; j++) {
-                    Node node = variableNodes.get(j);
-                    Expression expression = pm.getNodeExpression(node);
-                    t2[j] = expression.evaluate(context);
-
-                    if (Double.isNaN(t2[j])) {
-                        if (!printedUndefined) {
+                        if (Double.isNaN(value) && printedUndefined.compareAndSet(false, true)) {
                             System.out.println("Undefined value.");
-                            printedUndefined = true;
                         }
-                    }
 
-                    if (Double.isInfinite(t2[j])) {
-                        if (!printedInfinite) {
+                        if (Double.isInfinite(value) && printedInfinite.compareAndSet(false, true)) {
                             System.out.println("Infinite value.");
-                            printedInfinite = true;
                         }
+
+                        t2[j] = value;
+                        values[j] = value;
                     }
 
-                    variableValues.put(node.getName(), t2[j]);
-                }
+                    boolean converged = true;
 
-                boolean converged = true;
+                    for (int j = 0; j < numVars; j++) {
+                        if (Math.abs(t2[j] - t1[j]) > epsilon) {
+                            converged = false;
+                            break;
+                        }
+                    }
 
-                for (int j = 0; j < t1.length; j++) {
-                    if (Math.abs(t2[j] - t1[j]) > epsilon) {
-                        converged = false;
+                    double[] t3 = t1;
+                    t1 = t2;
+                    t2 = t3;
+
+                    if (converged) {
                         break;
                     }
                 }
 
-                double[] t3 = t1;
-                t1 = t2;
-                t2 = t3;
-
-                if (converged) {
-                    break;
+                for (int j = 0; j < numVars; j++) {
+                    all[j][row] = t1[j];
                 }
             }
+        });
+
+        BoxDataSet boxDataSet = new BoxDataSet(new VerticalDoubleDataBox(all), getContinuousVariables(variableNodes));
+        return DataUtils.restrictToMeasured(boxDataSet);
+    }
+
+    // The variables an expression may refer to in simulation: the variable nodes, then their error nodes.
+    private List<String> getSimulationVariables(List<Node> variableNodes) {
+        List<String> variables = new ArrayList<>();
+
+        for (Node node : variableNodes) {
+            variables.add(node.getName());
+        }
+
+        for (Node error : getErrorNodes(variableNodes)) {
+            variables.add(error.getName());
+        }
+
+        return variables;
+    }
+
+    private List<Node> getErrorNodes(List<Node> variableNodes) {
+        List<Node> errorNodes = new ArrayList<>();
 
-            for (int j = 0; j < t1.length; j++) {
-                all[j][row] = t1[j];
+        for (Node node : variableNodes) {
+            Node error = pm.getErrorNode(node);
+
+            if (error == null) {
+                throw new NullPointerException("No error term for " + node);
             }
+
+            errorNodes.add(error);
+        }
+
+        return errorNodes;
+    }
+
+    private CompiledExpression[] compileExpressions(List<Node> nodes, List<String> variables) {
+        CompiledExpression[] expressions = new CompiledExpression[nodes.size()];
+
+        for (int i = 0; i < nodes.size(); i++) {
+            expressions[i] = CompiledExpression.compile(pm.getNodeExpression(nodes.get(i)), parameterValues, variables);
         }
 
+        return expressions;
+    }
+
+    private static boolean isThreadSafe(CompiledExpression[] expressions) {
+        for (CompiledExpression expression : expressions) {
+            if (!expression.isThreadSafe()) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    // Work with copies of the variables, because their type can be set externally.
+    private List<Node> getContinuousVariables(List<Node> variableNodes) {
         List<Node> continuousVars = new ArrayList<>();
 
         for (Node node : variableNodes) {
@@ -980,8 +994,7 @@ public class GeneralizedSemIm implements IM, Simulator, TetradSerializable {
             continuousVars.add(var);
         }
 
-        BoxDataSet boxDataSet = new BoxDataSet(new VerticalDoubleDataBox(all), continuousVars);
-        return DataUtils.restrictToMeasured(boxDataSet);
+        return continuousVars;
     }
 
 
@@ -123,6 +123,10 @@ public final class LargeScaleSimulation {
         int size = variableNodes.size();
         setupModel(size);
 
+        // Each row has its own stream, so the data do not depend on how the
+        // rows are split among threads.
+        final RandomStream random = RandomUtil.getInstance().nextStream();
+
         class SimulateTask extends RecursiveTask<Boolean> {
 
             private final int from;
@@ -139,8 +143,8 @@ public final class LargeScaleSimulation {
 
             @Override
             protected Boolean compute() {
-                if (from - to > chunk) {
-                    int mid = from + to / 2;
+                if (to - from > chunk) {
+                    int mid = (from + to) / 2;
                     SimulateTask left = new SimulateTask(from, mid, all, chunk);
                     SimulateTask right = new SimulateTask(mid, to, all, chunk);
                     left.fork();
@@ -149,15 +153,14 @@ public final class LargeScaleSimulation {
                     return true;
                 } else {
                     for (int i = from; i < to; i++) {
-                        NormalDistribution normal = new NormalDistribution(new Well1024a(++seed), 0, 1);//sqrt(errorVars[col]));
-                        normal.sample();
+                        RandomStream normal = random.substream(i);
 
                         if (verbose && (i + 1) % 50 == 0) {
                             System.out.println("Simulating " + (i + 1));
                         }
 
                         for (int col : tierIndices) {
-                            double value = normal.sample() * sqrt(errorVars[col]);
+                            double value = normal.nextNormal() * sqrt(errorVars[col]);
 
                             for (int j = 0; j < parents[col].length; j++) {
                                 value += all[parents[col][j]][i] * coefs[col][j];
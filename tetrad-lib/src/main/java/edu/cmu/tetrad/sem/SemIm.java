@@ -1297,7 +1297,7 @@ public final class SemIm implements IM, ISemIm, TetradSerializable {
      */
     @Override
     public DataSet simulateData(int sampleSize, boolean latentDataSaved) {
-        return simulateData(sampleSize, null, latentDataSaved);
+        return simulateData(sampleSize, (DataSet) null, latentDataSaved);
     }
 
     private DataSet simulateData(int sampleSize, DataSet initialValues, boolean latentDataSaved) {
@@ -1384,21 +1384,27 @@ public final class SemIm implements IM, ISemIm, TetradSerializable {
     }
 
     /**
-     * This simulate method uses the implied covariance metrix directly to
-     * simulate data, instead of going tier by tier. It should work for cyclic
-     * graphs as well as acyclic graphs.
+     * Simulates data with a SemSampler, which goes through the variables in
+     * causal order for acyclic graphs and uses the reduced form for cyclic
+     * graphs. Time lag models are simulated tier by tier from RandomUtil,
+     * seeded with the given seed.
      *
      * @param sampleSize how many data points in sample
-     * @param seed a seed for random number generation
+     * @param seed a seed for random number generation; the data depend only
+     * on this, not on RandomUtil or the number of threads
      */
     @Override
     public DataSet simulateData(int sampleSize, long seed, boolean latentDataSaved) {
-        RandomUtil random = RandomUtil.getInstance();
-        long _seed = random.getSeed();
-        random.setSeed(seed);
-        DataSet dataSet = simulateData(sampleSize, latentDataSaved);
-        random.revertSeed(_seed);
-        return dataSet;
+        if (semPm.getGraph().isTimeLagModel()) {
+            RandomUtil random = RandomUtil.getInstance();
+            long _seed = random.getSeed();
+            random.setSeed(seed);
+            DataSet dataSet = simulateData(sampleSize, latentDataSaved);
+            random.revertSeed(_seed);
+            return dataSet;
+        }
+
+        return simulateData(sampleSize, new RandomStream(seed), latentDataSaved);
     }
 
     /**
@@ -1660,6 +1666,23 @@ public final class SemIm implements IM, ISemIm, TetradSerializable {
         }
     }
 
+    /**
+     * Simulates data from the linear model with a SemSampler, drawing errors
+     * from the given stream rather than from RandomUtil. Variables are
+     * computed from their parents in causal order for acyclic graphs, and
+     * from the errors through (I - B)^-1 for cyclic graphs. Correlated errors
+     * are simulated with their covariances. Rows are simulated in parallel
+     * blocks, so the data depend only on the stream and not on the number of
+     * threads. Suited to very large samples.
+     *
+     * @param sampleSize how many data points in sample
+     * @param random the stream to draw from
+     * @see SemSampler
+     */
+    public DataSet simulateData(int sampleSize, RandomStream random, boolean latentDataSaved) {
+        return new SemSampler(this).sample(sampleSize, random, latentDataSaved);
+    }
+
     public DataSet simulateDataReducedForm(int sampleSize, boolean latentDataSaved) {
         int numVars = getVariableNodes().size();
 
@@ -0,0 +1,342 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.sem;
+
+import edu.cmu.tetrad.data.BoxDataSet;
+import edu.cmu.tetrad.data.ContinuousVariable;
+import edu.cmu.tetrad.data.DataSet;
+import edu.cmu.tetrad.data.DataUtils;
+import edu.cmu.tetrad.data.VerticalDoubleDataBox;
+import edu.cmu.tetrad.graph.Node;
+import edu.cmu.tetrad.util.MatrixUtils;
+import edu.cmu.tetrad.util.RandomStream;
+import edu.cmu.tetrad.util.TetradAlgebra;
+import edu.cmu.tetrad.util.TetradMatrix;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Simulates data from a linear SEM in blocks of rows, for large samples. Within a block, each variable is a column:
+ * errors are drawn a column at a time, correlated errors are mixed in by the Cholesky factor of the error covariance
+ * matrix, and each variable's column is computed from its parents' columns in causal order, or, if the model is
+ * cyclic, from the error columns through (I - B)^-1. Blocks are simulated in parallel, each drawing from its own
+ * substream, so the data depend only on the stream and not on the number of threads. The data are written straight
+ * into a column-major data box.
+ * <p>
+ * Like <code>SemIm.simulateDataReducedForm</code>, this uses only the edge coefficients, error covariances and means
+ * of the model; connection functions and error distributions are ignored.
+ *
+ * @author Joseph Ramsey
+ */
+public final class SemSampler {
+
+    // The number of rows simulated from each substream.
+    private static final int BLOCK_SIZE = 1000;
+
+    private final List<Node> variableNodes;
+
+    // The variables in the order they are computed.
+    private final int[] order;
+
+    // For each variable, the columns it is computed from and their coefficients. These are parents if the model is
+    // recursive and errors if not.
+    private final int[][] parents;
+    private final double[][] coefs;
+
+    // For each variable, a constant added to its column.
+    private final double[] intercepts;
+
+    // True if variables are computed from the errors by the reduced form.
+    private final boolean reducedForm;
+
+    // The nonzero entries of each row of the Cholesky factor of the error covariance matrix.
+    private final int[][] errorParents;
+    private final double[][] errorCoefs;
+
+    private final boolean positiveDataOnly;
+
+    /**
+     * Constructs a sampler for the given model, as it stands. Later changes to the model are not seen by the
+     * sampler.
+     *
+     * @param semIm A SEM IM, which must not be a time lag model.
+     */
+    public SemSampler(SemIm semIm) {
+        if (semIm.getSemPm().getGraph().isTimeLagModel()) {
+            throw new IllegalArgumentException("Time lag models can't be simulated in blocks.");
+        }
+
+        this.variableNodes = new ArrayList<>(semIm.getVariableNodes());
+        this.positiveDataOnly = semIm.isSimulatedPositiveDataOnly();
+
+        int numVars = variableNodes.size();
+        TetradMatrix edgeCoef = semIm.getEdgeCoef();
+        double[] means = semIm.getVariableMeans();
+
+        this.errorParents = new int[numVars][];
+        this.errorCoefs = new double[numVars][];
+        TetradMatrix errCovar = semIm.getErrCovar();
+
+        if (isDiagonal(errCovar)) {
+
+            // Uncorrelated errors, the usual case, need only their standard deviations.
+            for (int i = 0; i < numVars; i++) {
+                errorParents[i] = new int[]{i};
+                errorCoefs[i] = new double[]{Math.sqrt(errCovar.get(i, i))};
+            }
+        } else {
+            double[][] l = MatrixUtils.cholesky(errCovar).toArray();
+
+            for (int i = 0; i < numVars; i++) {
+                setNonzero(l[i], i + 1, errorParents, errorCoefs, i);
+            }
+        }
+
+        this.parents = new int[numVars][];
+        this.coefs = new double[numVars][];
+        this.intercepts = new double[numVars];
+        int[] causalOrder = causalOrder(edgeCoef);
+
+        if (causalOrder != null) {
+            this.reducedForm = false;
+            this.order = causalOrder;
+            double[] column = new double[numVars];
+
+            // Parents include their means, so each variable subtracts them out again.
+            for (int i = 0; i < numVars; i++) {
+                for (int j = 0; j < numVars; j++) {
+                    column[j] = edgeCoef.get(j, i);
+                }
+
+                setNonzero(column, numVars, parents, coefs, i);
+                intercepts[i] = means[i];
+
+                for (int k = 0; k < parents[i].length; k++) {
+                    intercepts[i] -= coefs[i][k] * means[parents[i][k]];
+                }
+            }
+        } else {
+            this.reducedForm = true;
+            this.order = new int[numVars];
+            TetradMatrix b = edgeCoef.transpose();
+            double[][] a = TetradAlgebra.identity(numVars).minus(b).inverse().toArray();
+
+            for (int i = 0; i < numVars; i++) {
+                order[i] = i;
+                setNonzero(a[i], numVars, parents, coefs, i);
+                intercepts[i] = means[i];
+            }
+        }
+    }
+
+    /**
+     * Simulates data.
+     *
+     * @param sampleSize      The number of rows to simulate.
+     * @param random          The stream to draw from.
+     * @param latentDataSaved True iff data for latents should be saved.
+     * @return the simulated data set.
+     */
+    public DataSet sample(int sampleSize, RandomStream random, boolean latentDataSaved) {
+        if (sampleSize < 0) {
+            throw new IllegalArgumentException("Sample size must be >= 0: " + sampleSize);
+        }
+
+        final double[][] data = new double[variableNodes.size()][sampleSize];
+        int numBlocks = (sampleSize + BLOCK_SIZE - 1) / BLOCK_SIZE;
+
+        IntStream.range(0, numBlocks).parallel().forEach(block -> {
+            int from = block * BLOCK_SIZE;
+            int rows = Math.min(sampleSize - from, BLOCK_SIZE);
+            sampleBlock(data, from, rows, random.substream(block));
+        });
+
+        List<Node> continuousVars = new ArrayList<>();
+
+        for (Node node : variableNodes) {
+            final ContinuousVariable var = new ContinuousVariable(node.getName());
+            var.setNodeType(node.getNodeType());
+            continuousVars.add(var);
+        }
+
+        DataSet fullDataSet = new BoxDataSet(new VerticalDoubleDataBox(data), continuousVars);
+
+        if (latentDataSaved) {
+            return fullDataSet;
+        } else {
+            return DataUtils.restrictToMeasured(fullDataSet);
+        }
+    }
+
+    //==============================PRIVATE METHODS=======================//
+
+    // Fills the given rows of data. If only positive data are wanted, rows with negative values are drawn again.
+    private void sampleBlock(double[][] data, int from, int rows, RandomStream random) {
+        int numVars = variableNodes.size();
+        double[][] z = new double[numVars][rows];
+        double[][] e = new double[numVars][rows];
+        double[][] x = new double[numVars][rows];
+        int filled = 0;
+
+        while (filled < rows) {
+            int n = rows - filled;
+            simulate(z, e, x, n, random);
+
+            if (!positiveDataOnly) {
+                for (int i = 0; i < numVars; i++) {
+                    System.arraycopy(x[i], 0, data[i], from + filled, n);
+                }
+
+                filled += n;
+                continue;
+            }
+
+            ROW:
+            for (int r = 0; r < n; r++) {
+                for (int i = 0; i < numVars; i++) {
+                    if (x[i][r] < 0) continue ROW;
+                }
+
+                for (int i = 0; i < numVars; i++) {
+                    data[i][from + filled] = x[i][r];
+                }
+
+                filled++;
+            }
+        }
+    }
+
+    // Simulates n rows into the first n entries of each column of x.
+    private void simulate(double[][] z, double[][] e, double[][] x, int n, RandomStream random) {
+        for (double[] column : z) {
+            for (int r = 0; r < n; r++) {
+                column[r] = random.nextNormal();
+            }
+        }
+
+        for (int i = 0; i < e.length; i++) {
+            linearCombination(e[i], 0.0, errorParents[i], errorCoefs[i], z, n);
+        }
+
+        for (int i : order) {
+            if (reducedForm) {
+                linearCombination(x[i], intercepts[i], parents[i], coefs[i], e, n);
+            } else {
+                System.arraycopy(e[i], 0, x[i], 0, n);
+                addLinearCombination(x[i], intercepts[i], parents[i], coefs[i], x, n);
+            }
+        }
+    }
+
+    // Sets the first n entries of y to c + sum_k coefs[k] * columns[indices[k]].
+    private static void linearCombination(double[] y, double c, int[] indices, double[] coefs,
+                                          double[][] columns, int n) {
+        Arrays.fill(y, 0, n, c);
+        addLinearCombination(y, 0.0, indices, coefs, columns, n);
+    }
+
+    // Adds c + sum_k coefs[k] * columns[indices[k]] to the first n entries of y.
+    private static void addLinearCombination(double[] y, double c, int[] indices, double[] coefs,
+                                             double[][] columns, int n) {
+        if (c != 0.0) {
+            for (int r = 0; r < n; r++) {
+                y[r] += c;
+            }
+        }
+
+        for (int k = 0; k < indices.length; k++) {
+            double coef = coefs[k];
+            double[] column = columns[indices[k]];
+
+            for (int r = 0; r < n; r++) {
+                y[r] += coef * column[r];
+            }
+        }
+    }
+
+    // Records the nonzero entries among the first n of the given row.
+    private static void setNonzero(double[] row, int n, int[][] indices, double[][] values, int i) {
+        int count = 0;
+
+        for (int j = 0; j < n; j++) {
+            if (row[j] != 0.0) count++;
+        }
+
+        indices[i] = new int[count];
+        values[i] = new double[count];
+        count = 0;
+
+        for (int j = 0; j < n; j++) {
+            if (row[j] != 0.0) {
+                indices[i][count] = j;
+                values[i][count++] = row[j];
+            }
+        }
+    }
+
+    private static boolean isDiagonal(TetradMatrix m) {
+        for (int i = 0; i < m.rows(); i++) {
+            for (int j = 0; j < m.columns(); j++) {
+                if (i != j && m.get(i, j) != 0.0) {
+                    return false;
+                }
+            }
+        }
+
+        return true;
+    }
+
+    // A causal order of the variables, where edgeCoef[i][j] != 0 means i is a parent of j, or null if there is a
+    // cycle.
+    private static int[] causalOrder(TetradMatrix edgeCoef) {
+        int n = edgeCoef.rows();
+        int[] numParents = new int[n];
+
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < n; j++) {
+                if (edgeCoef.get(i, j) != 0.0) numParents[j]++;
+            }
+        }
+
+        int[] order = new int[n];
+        int count = 0;
+
+        for (int j = 0; j < n; j++) {
+            if (numParents[j] == 0) order[count++] = j;
+        }
+
+        for (int k = 0; k < count; k++) {
+            int i = order[k];
+
+            for (int j = 0; j < n; j++) {
+                if (edgeCoef.get(i, j) != 0.0 && --numParents[j] == 0) {
+                    order[count++] = j;
+                }
+            }
+        }
+
+        return count == n ? order : null;
+    }
+}
@@ -0,0 +1,301 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+
+package edu.cmu.tetrad.util;
+
+import java.util.Arrays;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Enumerates the combinations of a choose b, for b in a range, as a Spliterator, so that they may be visited by a
+ * parallel stream without a lock. Combinations are arrays x[] of b integers i, 0 <= i < a, with x[j] < x[j + 1], and
+ * come in the order ChoiceGenerator gives them, smaller b first, so that for b in 0..depth the order is that of
+ * DepthChoiceGenerator. Each combination has a rank, its position in this order; a combination may be found from its
+ * rank and vice versa, which is what allows the sequence to be split at any point.
+ * <p>
+ * Each combination is given to the consumer as a new array, which it may keep.
+ * <p>
+ * For instance, <code>ChoiceSpliterator.stream(5, 3, true).forEach(...)</code> visits the combinations of 5
+ * choose 3 in parallel.
+ *
+ * @author Joseph Ramsey
+ */
+public final class ChoiceSpliterator implements Spliterator<int[]> {
+
+    /**
+     * The number of objects being selected from.
+     */
+    private final int a;
+
+    /**
+     * The smallest number of objects selected.
+     */
+    private final int minB;
+
+    /**
+     * offsets[b - minB] is the rank of the first combination of size b; the last entry is the total number of
+     * combinations.
+     */
+    private final long[] offsets;
+
+    /**
+     * The rank of the next combination to be visited.
+     */
+    private long index;
+
+    /**
+     * One past the rank of the last combination to be visited.
+     */
+    private final long end;
+
+    /**
+     * The combination with rank index, or null if it has not been found yet.
+     */
+    private int[] choice;
+
+    /**
+     * Constructs a spliterator over the combinations of a choose b.
+     *
+     * @param a the number of objects being selected from.
+     * @param b the number of objects in the desired selection.
+     */
+    public ChoiceSpliterator(int a, int b) {
+        this(a, b, b);
+    }
+
+    /**
+     * Constructs a spliterator over the combinations of a choose b for minB <= b <= maxB.
+     *
+     * @param a    the number of objects being selected from.
+     * @param minB the smallest number of objects selected.
+     * @param maxB the largest number of objects selected.
+     */
+    public ChoiceSpliterator(int a, int minB, int maxB) {
+        if (a < 0 || minB < 0 || minB > maxB || maxB > a) {
+            throw new IllegalArgumentException("For 'a choose b', need 0 <= minB <= maxB <= a: a = " + a
+                    + ", minB = " + minB + ", maxB = " + maxB);
+        }
+
+        this.a = a;
+        this.minB = minB;
+        this.offsets = new long[maxB - minB + 2];
+
+        for (int b = minB; b <= maxB; b++) {
+            offsets[b - minB + 1] = Math.addExact(offsets[b - minB], getNumCombinations(a, b));
+        }
+
+        this.index = 0;
+        this.end = offsets[offsets.length - 1];
+    }
+
+    private ChoiceSpliterator(ChoiceSpliterator spliterator, long index, long end) {
+        this.a = spliterator.a;
+        this.minB = spliterator.minB;
+        this.offsets = spliterator.offsets;
+        this.index = index;
+        this.end = end;
+    }
+
+    /**
+     * @return a stream of the combinations of a choose b.
+     */
+    public static Stream<int[]> stream(int a, int b, boolean parallel) {
+        return StreamSupport.stream(new ChoiceSpliterator(a, b), parallel);
+    }
+
+    /**
+     * @return the number of combinations of a choose b.
+     * @throws ArithmeticException if the number does not fit in a long.
+     */
+    public static long getNumCombinations(int a, int b) {
+        if (b < 0 || b > a) return 0;
+
+        b = Math.min(b, a - b);
+        long n = 1;
+
+        // n (a - i) / (i + 1) is a binomial coefficient, so after dividing n by g = gcd(n, i + 1), (i + 1) / g
+        // divides a - i, and the only product taken is the next coefficient itself.
+        for (int i = 0; i < b; i++) {
+            long g = gcd(n, i + 1);
+            n = Math.multiplyExact(n / g, (a - i) / ((i + 1) / g));
+        }
+
+        return n;
+    }
+
+    private static long gcd(long x, long y) {
+        while (y != 0) {
+            long r = x % y;
+            x = y;
+            y = r;
+        }
+
+        return x;
+    }
+
+    /**
+     * @return the combination with the given rank.
+     */
+    public int[] unrank(long rank) {
+        if (rank < 0 || rank >= offsets[offsets.length - 1]) {
+            throw new IllegalArgumentException("Rank out of range: " + rank);
+        }
+
+        int k = 0;
+
+        while (rank >= offsets[k + 1]) k++;
+
+        int b = minB + k;
+        rank -= offsets[k];
+
+        int[] choice = new int[b];
+        int c = 0;
+
+        for (int i = 0; i < b; i++) {
+            long count;
+
+            while (rank >= (count = getNumCombinations(a - c - 1, b - i - 1))) {
+                rank -= count;
+                c++;
+            }
+
+            choice[i] = c++;
+        }
+
+        return choice;
+    }
+
+    /**
+     * @return the rank of the given combination.
+     */
+    public long rank(int[] choice) {
+        int b = choice.length;
+
+        if (b < minB || b - minB + 1 >= offsets.length) {
+            throw new IllegalArgumentException("Not a combination of the sizes enumerated: " + Arrays.toString(choice));
+        }
+
+        long rank = offsets[b - minB];
+        int c = 0;
+
+        for (int i = 0; i < b; i++) {
+            for (; c < choice[i]; c++) {
+                rank += getNumCombinations(a - c - 1, b - i - 1);
+            }
+
+            c++;
+        }
+
+        return rank;
+    }
+
+    /**
+     * @return a spliterator over the combinations with ranks from <code>from</code> (inclusive) to <code>to</code>
+     * (exclusive), so that a large number of combinations may be handed out in chunks.
+     */
+    public ChoiceSpliterator range(long from, long to) {
+        if (from < 0 || from > to || to > offsets[offsets.length - 1]) {
+            throw new IllegalArgumentException("Range out of bounds: " + from + " to " + to);
+        }
+
+        return new ChoiceSpliterator(this, from, to);
+    }
+
+    /**
+     * @return the rank of the next combination to be visited.
+     */
+    public long getIndex() {
+        return index;
+    }
+
+    public boolean tryAdvance(Consumer<? super int[]> action) {
+        if (index >= end) {
+            return false;
+        }
+
+        if (choice == null) {
+            choice = unrank(index);
+        }
+
+        action.accept(choice.clone());
+
+        if (++index < end) {
+            advance();
+        }
+
+        return true;
+    }
+
+    public void forEachRemaining(Consumer<? super int[]> action) {
+        while (tryAdvance(action)) ;
+    }
+
+    public Spliterator<int[]> trySplit() {
+        long mid = index + (end - index) / 2;
+
+        if (mid <= index) {
+            return null;
+        }
+
+        ChoiceSpliterator prefix = new ChoiceSpliterator(this, index, mid);
+        prefix.choice = choice;
+        this.index = mid;
+        this.choice = null;
+        return prefix;
+    }
+
+    public long estimateSize() {
+        return end - index;
+    }
+
+    public int characteristics() {
+        return ORDERED | DISTINCT | SIZED | SUBSIZED | NONNULL | IMMUTABLE;
+    }
+
+    // Moves the choice on to the next combination, starting on the next size if the combinations of this size are
+    // done.
+    private void advance() {
+        int b = choice.length;
+        int diff = a - b;
+
+        for (int i = b - 1; i >= 0; i--) {
+            if (choice[i] < i + diff) {
+                choice[i]++;
+
+                for (int j = i + 1; j < b; j++) {
+                    choice[j] = choice[j - 1] + 1;
+                }
+
+                return;
+            }
+        }
+
+        choice = new int[b + 1];
+
+        for (int i = 0; i <= b; i++) {
+            choice[i] = i;
+        }
+    }
+}
@@ -19,6 +19,7 @@
 package edu.cmu.tetrad.util;
 
 import edu.cmu.tetrad.data.BoxDataSet;
+import edu.cmu.tetrad.data.BufferDataBox;
 import edu.cmu.tetrad.data.ContinuousVariable;
 import edu.cmu.tetrad.data.CovarianceMatrix;
 import edu.cmu.tetrad.data.DataBox;
@@ -33,11 +34,14 @@ import edu.pitt.dbmi.data.reader.ContinuousData;
 import edu.pitt.dbmi.data.reader.Data;
 import edu.pitt.dbmi.data.reader.DataColumn;
 import edu.pitt.dbmi.data.reader.DiscreteDataColumn;
+import edu.pitt.dbmi.data.reader.columnar.ColumnarData;
 import edu.pitt.dbmi.data.reader.covariance.CovarianceData;
 import edu.pitt.dbmi.data.reader.metadata.ColumnMetadata;
 import edu.pitt.dbmi.data.reader.metadata.Metadata;
 import edu.pitt.dbmi.data.reader.tabular.MixedTabularData;
 import edu.pitt.dbmi.data.reader.tabular.VerticalDiscreteTabularData;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
 import java.util.Arrays;
 import java.util.List;
 import java.util.stream.Collectors;
@@ -62,6 +66,8 @@ public class DataConvertUtils {
             return toMixedDataBox((MixedTabularData) data, metadata);
         } else if (data instanceof CovarianceData) {
             return toCovarianceMatrix((CovarianceData) data);
+        } else if (data instanceof ColumnarData) {
+            return toBufferDataBox((ColumnarData) data);
         } else {
             return null;
         }
@@ -76,6 +82,8 @@ public class DataConvertUtils {
             return toMixedDataBox((MixedTabularData) data);
         } else if (data instanceof CovarianceData) {
             return toCovarianceMatrix((CovarianceData) data);
+        } else if (data instanceof ColumnarData) {
+            return toBufferDataBox((ColumnarData) data);
         } else {
             return null;
         }
@@ -124,6 +132,31 @@ public class DataConvertUtils {
         return new BoxDataSet(new MixedDataBox(nodeList, numOfRows, continuousData, discreteData), nodeList);
     }
 
+    /**
+     * Wraps the columns of columnar data without copying them.
+     *
+     * @param dataset
+     * @return
+     */
+    public static DataModel toBufferDataBox(ColumnarData dataset) {
+        int numOfRows = dataset.getNumOfRows();
+        DiscreteDataColumn[] columns = dataset.getDataColumns();
+        DoubleBuffer[] continuousData = new DoubleBuffer[columns.length];
+        IntBuffer[] discreteData = new IntBuffer[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            continuousData[i] = dataset.getContinuousData(i);
+            discreteData[i] = dataset.getDiscreteData(i);
+        }
+
+        List<Node> nodes = Arrays.stream(columns)
+                .map(e -> e.getDataColumn().isDiscrete()
+                ? new DiscreteVariable(e.getDataColumn().getName(), e.getCategories())
+                : new ContinuousVariable(e.getDataColumn().getName()))
+                .collect(Collectors.toList());
+
+        return new BoxDataSet(new BufferDataBox(nodes, numOfRows, continuousData, discreteData), nodes);
+    }
+
     public static DataModel toMixedDataBox(MixedTabularData dataset) {
         int numOfRows = dataset.getNumOfRows();
         DiscreteDataColumn[] columns = dataset.getDataColumns();
@@ -0,0 +1,156 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.util;
+
+import java.util.SplittableRandom;
+
+/**
+ * A stream of random numbers for one task, for use where work is split across threads. RandomUtil is one generator
+ * shared by the whole process, so parallel tasks contend for it and draw from it in whatever order they happen to
+ * run. A stream instead belongs to a single task, needs no locking, and gives numbers that depend only on its seed.
+ * <p>
+ * Work that is split into tasks should make one stream per task with <code>substream</code>, which depends only on
+ * this stream's seed and the task's index, so that results are the same however many threads run the tasks. The
+ * first stream of a run is usually taken from <code>RandomUtil.getInstance().nextStream()</code>, so that the run is
+ * repeated by setting the seed there.
+ * <p>
+ * A stream is not thread safe; each thread should draw from its own.
+ *
+ * @author Joseph Ramsey
+ */
+public final class RandomStream {
+
+    // The golden ratio gamma used by SplittableRandom, for spacing seeds apart.
+    private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+
+    private final long seed;
+    private final SplittableRandom random;
+
+    // The polar method makes normals in pairs; the second is kept here.
+    private double nextNormal;
+    private boolean haveNextNormal = false;
+
+    /**
+     * Constructs a stream using the given seed.
+     *
+     * @param seed A long value. Streams with the same seed give the same numbers.
+     */
+    public RandomStream(long seed) {
+        this.seed = seed;
+        this.random = new SplittableRandom(seed);
+    }
+
+    /**
+     * @return the seed this stream was constructed with.
+     */
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * @param index The index of a task, usually its position in the list of tasks.
+     * @return a stream for the given task. This depends only on the seed of this stream and the index, not on what
+     * has been drawn from this stream, so tasks may be handed out in any order.
+     */
+    public RandomStream substream(long index) {
+        return new RandomStream(mix(seed + GOLDEN_GAMMA * (index + 1)));
+    }
+
+    /**
+     * @return a new stream, seeded from the next number in this one.
+     */
+    public RandomStream split() {
+        return new RandomStream(random.nextLong());
+    }
+
+    /**
+     * @param n Ibid.
+     * @return a uniform int in [0, n).
+     */
+    public int nextInt(int n) {
+        return random.nextInt(n);
+    }
+
+    public long nextLong() {
+        return random.nextLong();
+    }
+
+    /**
+     * @return a uniform double in [0, 1).
+     */
+    public double nextDouble() {
+        return random.nextDouble();
+    }
+
+    /**
+     * @param low  Ibid.
+     * @param high Ibid.
+     * @return Ibid.
+     */
+    public double nextUniform(double low, double high) {
+        if (low == high) return low;
+        return low + (high - low) * random.nextDouble();
+    }
+
+    /**
+     * @return a standard normal, by Marsaglia's polar method.
+     */
+    public double nextNormal() {
+        if (haveNextNormal) {
+            haveNextNormal = false;
+            return nextNormal;
+        }
+
+        double v1, v2, s;
+
+        do {
+            v1 = 2 * random.nextDouble() - 1;
+            v2 = 2 * random.nextDouble() - 1;
+            s = v1 * v1 + v2 * v2;
+        } while (s >= 1 || s == 0);
+
+        double multiplier = Math.sqrt(-2 * Math.log(s) / s);
+        nextNormal = v2 * multiplier;
+        haveNextNormal = true;
+        return v1 * multiplier;
+    }
+
+    /**
+     * @param mean The mean of the Normal.
+     * @param sd   The standard deviation of the Normal.
+     * @return Ibid.
+     */
+    public double nextNormal(double mean, double sd) {
+        if (sd <= 0) {
+            throw new IllegalArgumentException("Standard deviation must be non-negative: " + sd);
+        }
+
+        return nextNormal() * sd + mean;
+    }
+
+    // The finalizer of SplitMix64, to spread nearby seeds apart.
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+}
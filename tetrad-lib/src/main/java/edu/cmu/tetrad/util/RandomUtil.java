@@ -261,6 +261,15 @@ public class RandomUtil {
     public long nextLong() {
         return randomGenerator.nextLong();
     }
+
+    /**
+     * @return a new stream of random numbers, seeded from this generator, for work that is split across threads.
+     * Streams for the tasks of that work should be taken from it with <code>substream</code>.
+     * @see RandomStream
+     */
+    public RandomStream nextStream() {
+        return new RandomStream(randomGenerator.nextLong());
+    }
 }
 
 
@@ -12,6 +12,7 @@ import java.util.concurrent.Executors;
 
 import edu.cmu.tetrad.algcomparison.algorithm.Algorithm;
 import edu.cmu.tetrad.algcomparison.algorithm.MultiDataSetAlgorithm;
+import edu.cmu.tetrad.data.BootstrapCovariances;
 import edu.cmu.tetrad.data.DataModel;
 import edu.cmu.tetrad.data.DataSet;
 import edu.cmu.tetrad.data.DataUtils;
@@ -19,6 +20,8 @@ import edu.cmu.tetrad.data.IKnowledge;
 import edu.cmu.tetrad.data.Knowledge2;
 import edu.cmu.tetrad.graph.Graph;
 import edu.cmu.tetrad.util.Parameters;
+import edu.cmu.tetrad.util.RandomStream;
+import edu.cmu.tetrad.util.RandomUtil;
 import edu.pitt.dbmi.algo.resampling.task.GeneralResamplingSearchRunnable;
 
 /**
@@ -43,6 +46,8 @@ public class GeneralResamplingSearch {
 	
 	private boolean addOriginalDataset = false;
 
+	private boolean resampleCovariances = false;
+
 	private boolean verbose = false;
 
 	private List<Graph> PAGs = Collections.synchronizedList(new ArrayList<>());
@@ -115,6 +120,19 @@ public class GeneralResamplingSearch {
 		this.addOriginalDataset = addOriginalDataset;
 	}
 
+	/**
+	 * Sets whether each resample of continuous data is given to the algorithm
+	 * as a covariance matrix computed from the original data, weighted by the
+	 * number of times each row was drawn, rather than as a resampled data set.
+	 * This saves copying the data for each resample; the algorithm must accept
+	 * a covariance matrix, as for instance those using SemBicScore or
+	 * IndTestFisherZ do. It has no effect for multiple data sets or data that
+	 * are not continuous.
+	 */
+	public void setResampleCovariances(boolean resampleCovariances) {
+		this.resampleCovariances = resampleCovariances;
+	}
+
 	public void setVerbose(boolean verbose) {
 		this.verbose = verbose;
 	}
@@ -168,43 +186,23 @@ public class GeneralResamplingSearch {
 		PAGs.clear();
 		parameters.set("numberResampling", 0); // This needs to be set to zero to not loop indefinitely
 
+		BootstrapCovariances covariances = null;
+
+		if (resampleCovariances && data != null && data.isContinuous()) {
+			covariances = new BootstrapCovariances(data);
+		}
+
+		// Each resampling draws from its own stream, so the resamples are the
+		// same however the tasks are run.
+		RandomStream random = RandomUtil.getInstance().nextStream();
+
 		if (!this.runParallel) {
 			// Running in the sequential form
 			if (verbose) {
 				out.println("Running Resamplings in Sequential Mode, numberResampling = " + numberResampling);
 			}
 			for (int i1 = 0; i1 < this.numberResampling; i1++) {
-				GeneralResamplingSearchRunnable task = null;
-
-				// Bootstrapping
-				if (resamplingWithReplacement) {
-					if (data != null) {
-						DataSet dataSet = DataUtils.getBootstrapSample(data, (int)(data.getNumRows()*percentResampleSize/100.0));
-						task = new GeneralResamplingSearchRunnable(dataSet, algorithm, parameters, this, verbose);
-					} else {
-						List<DataModel> dataModels = new ArrayList<>();
-						for (DataSet data : dataSets) {
-							DataSet dataSet = DataUtils.getBootstrapSample(data, (int)(data.getNumRows()*percentResampleSize/100.0));
-							dataModels.add(dataSet);
-						}
-						task = new GeneralResamplingSearchRunnable(dataModels, multiDataSetAlgorithm, parameters, this,
-								verbose);
-					}
-				// Sub-sampling
-				} else {
-					if (data != null) {
-						DataSet dataSet = DataUtils.getResamplingDataset(data, (int)(data.getNumRows()*percentResampleSize/100.0));
-						task = new GeneralResamplingSearchRunnable(dataSet, algorithm, parameters, this, verbose);
-					} else {
-						List<DataModel> dataModels = new ArrayList<>();
-						for (DataSet data : dataSets) {
-							DataSet dataSet = DataUtils.getResamplingDataset(data, (int)(data.getNumRows()*percentResampleSize/100.0));
-							dataModels.add(dataSet);
-						}
-						task = new GeneralResamplingSearchRunnable(dataModels, multiDataSetAlgorithm, parameters, this,
-								verbose);
-					}
-				}
+				GeneralResamplingSearchRunnable task = createResamplingTask(covariances, random.substream(i1));
 
 				if (initialGraph != null) {
 					task.setInitialGraph(initialGraph);
@@ -243,37 +241,7 @@ public class GeneralResamplingSearch {
 
 			for (int i1 = 0; i1 < this.numberResampling; i1++) {
 
-				GeneralResamplingSearchRunnable task = null;
-
-				// Bootstrapping
-				if (resamplingWithReplacement) {
-					if (data != null) {
-						DataSet dataSet = DataUtils.getBootstrapSample(data, (int)(data.getNumRows()*percentResampleSize/100.0));
-						task = new GeneralResamplingSearchRunnable(dataSet, algorithm, parameters, this, verbose);
-					} else {
-						List<DataModel> dataModels = new ArrayList<>();
-						for (DataSet data : dataSets) {
-							DataSet dataSet = DataUtils.getBootstrapSample(data, (int)(data.getNumRows()*percentResampleSize/100.0));
-							dataModels.add(dataSet);
-						}
-						task = new GeneralResamplingSearchRunnable(dataModels, multiDataSetAlgorithm, parameters, this,
-								verbose);
-					}
-				// Sub-sampling
-				} else {
-					if (data != null) {
-						DataSet dataSet = DataUtils.getResamplingDataset(data, (int)(data.getNumRows()*percentResampleSize/100.0));
-						task = new GeneralResamplingSearchRunnable(dataSet, algorithm, parameters, this, verbose);
-					} else {
-						List<DataModel> dataModels = new ArrayList<>();
-						for (DataSet data : dataSets) {
-							DataSet dataSet = DataUtils.getResamplingDataset(data, (int)(data.getNumRows()*percentResampleSize/100.0));
-							dataModels.add(dataSet);
-						}
-						task = new GeneralResamplingSearchRunnable(dataModels, multiDataSetAlgorithm, parameters, this,
-								verbose);
-					}
-				}
+				GeneralResamplingSearchRunnable task = createResamplingTask(covariances, random.substream(i1));
 
 				if (initialGraph != null) {
 					task.setInitialGraph(initialGraph);
@@ -321,37 +289,7 @@ public class GeneralResamplingSearch {
 		// If the pool is prematurely terminated, do sequentially
 		if (PAGs == null || PAGs.size() == 0) {
 			for (int i1 = 0; i1 < this.numberResampling; i1++) {
-				GeneralResamplingSearchRunnable task = null;
-
-				// Bootstrapping
-				if (resamplingWithReplacement) {
-					if (data != null) {
-						DataSet dataSet = DataUtils.getBootstrapSample(data, (int)(data.getNumRows()*percentResampleSize/100.0));
-						task = new GeneralResamplingSearchRunnable(dataSet, algorithm, parameters, this, verbose);
-					} else {
-						List<DataModel> dataModels = new ArrayList<>();
-						for (DataSet data : dataSets) {
-							DataSet dataSet = DataUtils.getBootstrapSample(data, (int)(data.getNumRows()*percentResampleSize/100.0));
-							dataModels.add(dataSet);
-						}
-						task = new GeneralResamplingSearchRunnable(dataModels, multiDataSetAlgorithm, parameters, this,
-								verbose);
-					}
-				// Sub-sampling
-				} else {
-					if (data != null) {
-						DataSet dataSet = DataUtils.getResamplingDataset(data, (int)(data.getNumRows()*percentResampleSize/100.0));
-						task = new GeneralResamplingSearchRunnable(dataSet, algorithm, parameters, this, verbose);
-					} else {
-						List<DataModel> dataModels = new ArrayList<>();
-						for (DataSet data : dataSets) {
-							DataSet dataSet = DataUtils.getResamplingDataset(data, (int)(data.getNumRows()*percentResampleSize/100.0));
-							dataModels.add(dataSet);
-						}
-						task = new GeneralResamplingSearchRunnable(dataModels, multiDataSetAlgorithm, parameters, this,
-								verbose);
-					}
-				}
+				GeneralResamplingSearchRunnable task = createResamplingTask(covariances, random.substream(i1));
 
 				if (initialGraph != null) {
 					task.setInitialGraph(initialGraph);
@@ -389,4 +327,47 @@ public class GeneralResamplingSearch {
 		return PAGs;
 	}
 
+	private GeneralResamplingSearchRunnable createResamplingTask(BootstrapCovariances covariances, RandomStream random) {
+		GeneralResamplingSearchRunnable task = null;
+
+		// Weighted covariances
+		if (covariances != null) {
+			int sampleSize = (int)(data.getNumRows()*percentResampleSize/100.0);
+			int[] counts = resamplingWithReplacement
+					? covariances.getBootstrapCounts(sampleSize, random)
+					: covariances.getSubsampleCounts(sampleSize, random);
+			task = new GeneralResamplingSearchRunnable(covariances, counts, algorithm, parameters, this, verbose);
+		// Bootstrapping
+		} else if (resamplingWithReplacement) {
+			if (data != null) {
+				DataSet dataSet = DataUtils.getBootstrapSample(data, (int)(data.getNumRows()*percentResampleSize/100.0), random);
+				task = new GeneralResamplingSearchRunnable(dataSet, algorithm, parameters, this, verbose);
+			} else {
+				List<DataModel> dataModels = new ArrayList<>();
+				for (DataSet data : dataSets) {
+					DataSet dataSet = DataUtils.getBootstrapSample(data, (int)(data.getNumRows()*percentResampleSize/100.0), random);
+					dataModels.add(dataSet);
+				}
+				task = new GeneralResamplingSearchRunnable(dataModels, multiDataSetAlgorithm, parameters, this,
+						verbose);
+			}
+		// Sub-sampling
+		} else {
+			if (data != null) {
+				DataSet dataSet = DataUtils.getResamplingDataset(data, (int)(data.getNumRows()*percentResampleSize/100.0), random);
+				task = new GeneralResamplingSearchRunnable(dataSet, algorithm, parameters, this, verbose);
+			} else {
+				List<DataModel> dataModels = new ArrayList<>();
+				for (DataSet data : dataSets) {
+					DataSet dataSet = DataUtils.getResamplingDataset(data, (int)(data.getNumRows()*percentResampleSize/100.0), random);
+					dataModels.add(dataSet);
+				}
+				task = new GeneralResamplingSearchRunnable(dataModels, multiDataSetAlgorithm, parameters, this,
+						verbose);
+			}
+		}
+
+		return task;
+	}
+
 }
@@ -51,6 +51,8 @@ public class GeneralResamplingTest {
 	
 	private boolean addOriginalDataset = false;
 
+	private boolean resampleCovariances = false;
+
 	/**
 	 * An initial graph to start from.
 	 */
@@ -135,6 +137,16 @@ public class GeneralResamplingTest {
 		this.addOriginalDataset = addOriginalDataset;
 	}
 
+	/**
+	 * Sets whether resamples of continuous data are given to the algorithm as
+	 * weighted covariance matrices rather than as resampled data sets.
+	 *
+	 * @see GeneralResamplingSearch#setResampleCovariances(boolean)
+	 */
+	public void setResampleCovariances(boolean resampleCovariances) {
+		this.resampleCovariances = resampleCovariances;
+	}
+
 	/**
 	 * Sets the initial graph.
 	 */
@@ -187,6 +199,7 @@ public class GeneralResamplingTest {
 		}
 		
 		resamplingSearch.setAddOriginalDataset(addOriginalDataset);
+		resamplingSearch.setResampleCovariances(resampleCovariances);
 		
 		if(initialGraph != null){
 			resamplingSearch.setInitialGraph(initialGraph);
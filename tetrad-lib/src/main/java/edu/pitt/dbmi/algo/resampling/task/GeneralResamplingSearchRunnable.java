@@ -6,6 +6,7 @@ import java.util.List;
 import edu.cmu.tetrad.algcomparison.algorithm.Algorithm;
 import edu.cmu.tetrad.algcomparison.algorithm.MultiDataSetAlgorithm;
 import edu.cmu.tetrad.algcomparison.utils.HasKnowledge;
+import edu.cmu.tetrad.data.BootstrapCovariances;
 import edu.cmu.tetrad.data.DataModel;
 import edu.cmu.tetrad.data.DataSet;
 import edu.cmu.tetrad.data.IKnowledge;
@@ -25,6 +26,10 @@ public class GeneralResamplingSearchRunnable implements Runnable {
 
 	private DataSet dataSet = null;
 
+	private BootstrapCovariances covariances = null;
+
+	private int[] counts = null;
+
 	private List<DataModel> dataSets = null;
 
 	private Algorithm algorithm = null;
@@ -58,6 +63,25 @@ public class GeneralResamplingSearchRunnable implements Runnable {
 		this.verbose = verbose;
 	}
 	
+	/**
+	 * Runs the algorithm on the covariance matrix of a resample of the data,
+	 * computed when the task is run.
+	 *
+	 * @param covariances
+	 *            the original data.
+	 * @param counts
+	 *            the number of times each row of the data was drawn.
+	 */
+	public GeneralResamplingSearchRunnable(BootstrapCovariances covariances, int[] counts, Algorithm algorithm,
+			Parameters parameters, GeneralResamplingSearch resamplingAlgorithmSearch, boolean verbose){
+		this.covariances = covariances;
+		this.counts = counts;
+		this.algorithm = algorithm;
+		this.parameters = parameters;
+		this.resamplingAlgorithmSearch = resamplingAlgorithmSearch;
+		this.verbose = verbose;
+	}
+
 	public GeneralResamplingSearchRunnable(List<DataModel> dataSets, MultiDataSetAlgorithm multiDataSetAlgorithm, Parameters parameters,
 			GeneralResamplingSearch resamplingAlgorithmSearch, boolean verbose){
 		this.dataSets = dataSets;
@@ -123,14 +147,18 @@ public class GeneralResamplingSearchRunnable implements Runnable {
 
 		Graph graph = null;
 		
-		if(dataSet != null){
+		if(dataSet != null || covariances != null){
 			if (algorithm instanceof HasKnowledge) {
                 ((HasKnowledge) algorithm).setKnowledge(knowledge);
         		if (verbose) {
         			out.println("knowledge being set ... ");
         		}
             }
-			graph = algorithm.search(dataSet, parameters);
+			if (dataSet != null) {
+				graph = algorithm.search(dataSet, parameters);
+			} else {
+				graph = algorithm.search(covariances.getCovarianceMatrix(counts), parameters);
+			}
 		}else{
 			if (multiDataSetAlgorithm instanceof HasKnowledge) {
                 ((HasKnowledge) multiDataSetAlgorithm).setKnowledge(knowledge);
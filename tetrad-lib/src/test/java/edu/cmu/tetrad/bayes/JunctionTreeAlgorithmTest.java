@@ -138,6 +138,47 @@ public class JunctionTreeAlgorithmTest {
         }
     }
 
+    @Test
+    public void testMarginalProbabilitiesInBatch() {
+        String graphFile = this.getClass().getResource("/jta/graph.txt").getFile();
+        String dataFile = this.getClass().getResource("/jta/data.txt").getFile();
+        try {
+            JunctionTreeAlgorithm jta = getJunctionTreeAlgorithm(graphFile, dataFile);
+
+            int[][] evidence = {
+                {-1, 0, -1},
+                {-1, 1, -1},
+                {-1, 0, 1},
+                {-1, 0, -1},
+                {-1, -1, -1}
+            };
+            double[][][] marginals = jta.getMarginalProbabilities(evidence);
+
+            Assert.assertArrayEquals(jta.getConditionalProbabilities(0, new int[]{1}, new int[]{0}), marginals[0][0], 1e-10);
+            Assert.assertArrayEquals(jta.getConditionalProbabilities(2, new int[]{1}, new int[]{1}), marginals[1][2], 1e-10);
+            Assert.assertArrayEquals(jta.getConditionalProbabilities(0, new int[]{1, 2}, new int[]{0, 1}), marginals[2][0], 1e-10);
+            for (int iNode = 0; iNode < jta.getNumberOfNodes(); iNode++) {
+                Assert.assertArrayEquals(marginals[0][iNode], marginals[3][iNode], 0.0);
+            }
+
+            // The returned arrays are copies; changing them must not affect the cached calibrations.
+            double[] expected = marginals[0][0].clone();
+            marginals[0][0][0] = -1.0;
+            Assert.assertArrayEquals(expected, marginals[3][0], 0.0);
+            Assert.assertArrayEquals(expected, jta.getMarginalProbabilities(evidence)[0][0], 0.0);
+
+            for (int iNode = 0; iNode < jta.getNumberOfNodes(); iNode++) {
+                Assert.assertArrayEquals(jta.getMarginalProbability(iNode), marginals[4][iNode], 1e-10);
+            }
+
+            double[] probabilities = jta.getEvidenceProbabilities(evidence);
+            Assert.assertEquals(jta.getMarginalProbability(1, 0), probabilities[0], 1e-10);
+            Assert.assertEquals(1.0, probabilities[4], 1e-10);
+        } catch (IOException exception) {
+            exception.printStackTrace(System.err);
+        }
+    }
+
     private static void printExampleProof(JunctionTreeAlgorithm jta, int[] values) {
         int v1 = 0;
         int v2 = 1;
@@ -23,8 +23,13 @@ package edu.cmu.tetrad.test;
 
 import edu.cmu.tetrad.bayes.BayesIm;
 import edu.cmu.tetrad.bayes.BayesPm;
+import edu.cmu.tetrad.bayes.BayesSampler;
 import edu.cmu.tetrad.bayes.MlBayesIm;
+import edu.cmu.tetrad.bayes.RowSummingExactUpdater;
+import edu.cmu.tetrad.data.DataSet;
 import edu.cmu.tetrad.graph.*;
+import edu.cmu.tetrad.util.RandomStream;
+import edu.cmu.tetrad.util.RandomUtil;
 import org.junit.Test;
 
 import static org.junit.Assert.assertEquals;
@@ -47,6 +52,44 @@ public final class TestBayesIm {
         assertEquals(bayesIm, bayesIm2);
     }
 
+    /**
+     * Frequencies in data from the block sampler should come close to the
+     * marginals, and the same seed should give the same data.
+     */
+    @Test
+    public void testBayesSampler() {
+        RandomUtil.getInstance().setSeed(3928402L);
+        Dag dag = new Dag(GraphUtils.randomGraph(8, 0, 12, 4, 4, 4, false));
+        BayesPm bayesPm = new BayesPm(dag, 2, 4);
+        MlBayesIm bayesIm = new MlBayesIm(bayesPm, MlBayesIm.RANDOM);
+
+        int sampleSize = 100000;
+        DataSet data = new BayesSampler(bayesIm).sample(sampleSize, new RandomStream(48239L), true);
+        RowSummingExactUpdater updater = new RowSummingExactUpdater(bayesIm);
+
+        for (int node = 0; node < bayesIm.getNumNodes(); node++) {
+            int column = data.getColumn(data.getVariable(bayesIm.getNode(node).getName()));
+            int[] counts = new int[bayesIm.getNumColumns(node)];
+
+            for (int row = 0; row < sampleSize; row++) {
+                counts[data.getInt(row, column)]++;
+            }
+
+            for (int value = 0; value < counts.length; value++) {
+                assertEquals(updater.getMarginal(node, value), counts[value] / (double) sampleSize, 0.01);
+            }
+        }
+
+        DataSet data1 = bayesIm.simulateData(2500, 123L, true);
+        DataSet data2 = bayesIm.simulateData(2500, 123L, true);
+
+        for (int row = 0; row < data1.getNumRows(); row++) {
+            for (int column = 0; column < data1.getNumColumns(); column++) {
+                assertEquals(data1.getInt(row, column), data2.getInt(row, column));
+            }
+        }
+    }
+
     @Test
     public void testConstructManual() {
         Graph graph = GraphConverter.convert("X1-->X2,X1-->X3,X2-->X4,X3-->X4");
@@ -0,0 +1,140 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+
+package edu.cmu.tetrad.test;
+
+import edu.cmu.tetrad.data.*;
+import edu.cmu.tetrad.graph.Node;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests data boxes whose columns are held off the heap.
+ *
+ * @author Joseph Ramsey
+ */
+public class TestBufferDataBox {
+
+    @Test
+    public void testDirect() {
+        checkBox(BufferDataBox.allocateDirect(variables(), 200));
+    }
+
+    @Test
+    public void testMapped() throws IOException {
+        Path spillDirectory = Files.createTempDirectory("spill");
+
+        try {
+            checkBox(BufferDataBox.allocateMapped(variables(), 200, spillDirectory));
+        } finally {
+            Files.deleteIfExists(spillDirectory);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testDirectTooLarge() {
+        BufferDataBox.allocateDirect(variables(), 300000000);
+    }
+
+    @Test
+    public void testCovariances() {
+        List<Node> variables = new ArrayList<>();
+        for (int j = 0; j < 5; j++) variables.add(new ContinuousVariable("X" + j));
+
+        BufferDataBox dataBox = BufferDataBox.allocateDirect(variables, 500);
+        DoubleDataBox expectedBox = new DoubleDataBox(500, 5);
+        Random random = new Random(42);
+
+        for (int i = 0; i < 500; i++) {
+            double x = random.nextGaussian();
+
+            for (int j = 0; j < 5; j++) {
+                double value = j * x + random.nextGaussian();
+                dataBox.set(i, j, value);
+                expectedBox.set(i, j, value);
+            }
+        }
+
+        ICovarianceMatrix expected = new CovarianceMatrix(new BoxDataSet(expectedBox, variables));
+        ICovarianceMatrix covariances = new CovarianceMatrix(new BoxDataSet(dataBox, variables));
+
+        for (int j = 0; j < 5; j++) {
+            for (int k = 0; k < 5; k++) {
+                assertEquals(expected.getValue(j, k), covariances.getValue(j, k), 1e-10);
+            }
+        }
+    }
+
+    private void checkBox(BufferDataBox dataBox) {
+        DataSet dataSet = new BoxDataSet(dataBox, variables());
+
+        assertTrue(Double.isNaN(dataSet.getDouble(0, 0)));
+        assertEquals(-99, dataSet.getInt(0, 2));
+        assertTrue(dataBox.getContinuousData(0).isDirect());
+
+        for (int i = 0; i < dataSet.getNumRows(); i++) {
+            dataSet.setDouble(i, 0, i);
+            dataSet.setDouble(i, 1, -i);
+            dataSet.setInt(i, 2, i % 2);
+        }
+
+        DataSet rows = dataSet.subsetRows(new int[]{3, 150, 7});
+        assertEquals(150, rows.getDouble(1, 0), 0.0);
+        assertEquals(-7, rows.getDouble(2, 1), 0.0);
+        assertEquals(0, rows.getInt(1, 2));
+
+        DataSet columns = dataSet.subsetColumns(new int[]{2, 0});
+        assertEquals(1, columns.getInt(199, 0));
+        assertEquals(199, columns.getDouble(199, 1), 0.0);
+
+        BufferDataBox copy = (BufferDataBox) dataBox.copy();
+        assertTrue(copy.getContinuousData(0).isDirect());
+        copy.set(5, 0, 1000);
+        assertEquals(5, dataBox.get(5, 0).doubleValue(), 0.0);
+        assertEquals(1000, copy.get(5, 0).doubleValue(), 0.0);
+
+        BufferDataBox like = (BufferDataBox) dataBox.like();
+        assertEquals(dataBox.numRows(), like.numRows());
+        assertEquals(dataBox.numCols(), like.numCols());
+        assertTrue(like.getContinuousData(0).isDirect());
+        assertEquals(0, like.get(150, 0).doubleValue(), 0.0);
+        assertEquals(0, like.get(199, 2).intValue());
+        assertNull(like.getContinuousData(2));
+    }
+
+    private List<Node> variables() {
+        List<Node> variables = new ArrayList<>();
+        variables.add(new ContinuousVariable("X1"));
+        variables.add(new ContinuousVariable("X2"));
+        variables.add(new DiscreteVariable("X3", Arrays.asList("a", "b")));
+        return variables;
+    }
+}
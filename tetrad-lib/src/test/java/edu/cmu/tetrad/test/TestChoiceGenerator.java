@@ -22,11 +22,18 @@
 package edu.cmu.tetrad.test;
 
 import edu.cmu.tetrad.util.ChoiceGenerator;
+import edu.cmu.tetrad.util.ChoiceSpliterator;
 import edu.cmu.tetrad.util.DepthChoiceGenerator;
 import edu.cmu.tetrad.util.PermutationGenerator;
 import edu.cmu.tetrad.util.SelectionGenerator;
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
+
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.fail;
 
@@ -118,10 +125,55 @@ public class TestChoiceGenerator {
         }
     }
 
+    /**
+     * Tests that the choice spliterator gives the same combinations in the same order as the choice generators,
+     * sequentially and in parallel, and that ranks and combinations correspond.
+     */
+    @Test
+    public void testChoiceSpliterator() {
+        for (int a = 0; a <= 10; a++) {
+            for (int b = 0; b <= a; b++) {
+                List<String> expected = new ArrayList<>();
+                ChoiceGenerator generator = new ChoiceGenerator(a, b);
+                int[] choice;
 
-}
+                while ((choice = generator.next()) != null) {
+                    expected.add(Arrays.toString(choice));
+                }
 
+                assertEquals(expected, ChoiceSpliterator.stream(a, b, false)
+                        .map(Arrays::toString).collect(Collectors.toList()));
+                assertEquals(expected, ChoiceSpliterator.stream(a, b, true)
+                        .map(Arrays::toString).collect(Collectors.toList()));
 
+                ChoiceSpliterator spliterator = new ChoiceSpliterator(a, b);
 
+                for (int rank = 0; rank < expected.size(); rank++) {
+                    assertEquals(expected.get(rank), Arrays.toString(spliterator.unrank(rank)));
+                    assertEquals(rank, spliterator.rank(spliterator.unrank(rank)));
+                }
+            }
 
+            for (int depth = 0; depth <= a; depth++) {
+                List<String> expected = new ArrayList<>();
+                DepthChoiceGenerator generator = new DepthChoiceGenerator(a, depth);
+                int[] choice;
 
+                while ((choice = generator.next()) != null) {
+                    expected.add(Arrays.toString(choice));
+                }
+
+                assertEquals(expected, StreamSupport.stream(new ChoiceSpliterator(a, 0, depth), true)
+                        .map(Arrays::toString).collect(Collectors.toList()));
+            }
+        }
+
+        assertEquals(118264581564861424L, ChoiceSpliterator.getNumCombinations(60, 30));
+        assertEquals(7219428434016265740L, ChoiceSpliterator.getNumCombinations(66, 33));
+    }
+
+    @Test(expected = ArithmeticException.class)
+    public void testNumCombinationsTooLarge() {
+        ChoiceSpliterator.getNumCombinations(67, 33);
+    }
+}
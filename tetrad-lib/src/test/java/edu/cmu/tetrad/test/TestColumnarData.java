@@ -0,0 +1,128 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+
+package edu.cmu.tetrad.test;
+
+import edu.cmu.tetrad.data.*;
+import edu.cmu.tetrad.graph.Node;
+import edu.cmu.tetrad.util.DataConvertUtils;
+import edu.pitt.dbmi.data.reader.columnar.ColumnarDataFileReader;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests saving data sets in the columnar format and mapping them back.
+ *
+ * @author Joseph Ramsey
+ */
+public class TestColumnarData {
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        DataSet dataSet = mixedDataSet(100);
+
+        Path file = Files.createTempFile("columnar", ".tcdf");
+
+        try {
+            ColumnarDataWriter.writeColumnarData(dataSet, file);
+            DataSet mapped = (DataSet) DataConvertUtils.toDataModel(new ColumnarDataFileReader(file).readInData());
+
+            assertTrue(((BoxDataSet) mapped).getDataBox() instanceof BufferDataBox);
+            assertEquals(dataSet.getNumRows(), mapped.getNumRows());
+            assertEquals(dataSet.getNumColumns(), mapped.getNumColumns());
+
+            for (int j = 0; j < dataSet.getNumColumns(); j++) {
+                Node variable = dataSet.getVariable(j);
+                Node _variable = mapped.getVariable(j);
+                assertEquals(variable.getName(), _variable.getName());
+
+                if (variable instanceof DiscreteVariable) {
+                    assertEquals(((DiscreteVariable) variable).getCategories(),
+                            ((DiscreteVariable) _variable).getCategories());
+                } else {
+                    assertTrue(_variable instanceof ContinuousVariable);
+                }
+
+                for (int i = 0; i < dataSet.getNumRows(); i++) {
+                    assertEquals(dataSet.getDouble(i, j), mapped.getDouble(i, j), 0.0);
+                    assertEquals(dataSet.getInt(i, j), mapped.getInt(i, j));
+                }
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    public void testCopyOnWrite() throws IOException {
+        DataSet dataSet = mixedDataSet(20);
+
+        Path file = Files.createTempFile("columnar", ".tcdf");
+
+        try {
+            ColumnarDataWriter.writeColumnarData(dataSet, file);
+            DataSet mapped = (DataSet) DataConvertUtils.toDataModel(new ColumnarDataFileReader(file).readInData());
+            DataSet copy = mapped.copy();
+
+            copy.setDouble(3, 0, 42.0);
+            copy.setInt(4, 1, 2);
+
+            assertEquals(42.0, copy.getDouble(3, 0), 0.0);
+            assertEquals(2, copy.getInt(4, 1));
+            assertEquals(dataSet.getDouble(3, 0), mapped.getDouble(3, 0), 0.0);
+            assertEquals(dataSet.getInt(4, 1), mapped.getInt(4, 1));
+
+            DataSet subset = mapped.subsetColumns(new int[]{2, 0});
+            assertEquals(dataSet.getDouble(7, 2), subset.getDouble(7, 0), 0.0);
+            assertEquals(dataSet.getDouble(7, 0), subset.getDouble(7, 1), 0.0);
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    private DataSet mixedDataSet(int numRows) {
+        List<Node> variables = new ArrayList<>();
+        variables.add(new ContinuousVariable("X1"));
+        variables.add(new DiscreteVariable("X2", Arrays.asList("low", "medium", "high")));
+        variables.add(new ContinuousVariable("X3"));
+
+        DataSet dataSet = new BoxDataSet(new MixedDataBox(variables, numRows), variables);
+        Random random = new Random(42);
+
+        for (int i = 0; i < numRows; i++) {
+            dataSet.setDouble(i, 0, random.nextGaussian());
+            dataSet.setInt(i, 1, i % 10 == 0 ? -99 : random.nextInt(3));
+            dataSet.setDouble(i, 2, i % 9 == 0 ? Double.NaN : random.nextDouble());
+        }
+
+        return dataSet;
+    }
+}
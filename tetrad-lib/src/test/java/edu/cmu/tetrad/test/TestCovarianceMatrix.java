@@ -27,6 +27,7 @@ import edu.cmu.tetrad.util.RandomUtil;
 import edu.cmu.tetrad.util.TetradMatrix;
 import org.junit.Test;
 
+import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
 
@@ -85,9 +86,162 @@ public final class TestCovarianceMatrix {
         assertEquals(-.051, c2.getValue(0, 1), 0.001);
         assertEquals(-.609, c3.getValue(0, 1), 0.001);
     }
-}
 
+    /**
+     * Tests that covariances accumulated row by row, in batches and in merged
+     * parts agree with covariances computed from the whole data set.
+     */
+    @Test
+    public void testAccumulator() {
+        RandomUtil.getInstance().setSeed(4828384834L);
+
+        List<Node> variables = new LinkedList<>();
+
+        for (int i = 0; i < 5; i++) {
+            variables.add(new ContinuousVariable("X" + i));
+        }
+
+        DataSet dataSet = new BoxDataSet(new DoubleDataBox(1000, variables.size()), variables);
+
+        for (int i = 0; i < 1000; i++) {
+            double x = RandomUtil.getInstance().nextNormal(0, 1);
+
+            for (int j = 0; j < 5; j++) {
+                dataSet.setDouble(i, j, 1000 + j * x + RandomUtil.getInstance().nextNormal(0, 1));
+            }
+        }
+
+        double[][] data = dataSet.getDoubleData().toArray();
+
+        CovarianceAccumulator byRow = new CovarianceAccumulator(variables);
+        for (double[] row : data) byRow.addRow(row);
+
+        CovarianceAccumulator part1 = new CovarianceAccumulator(variables);
+        part1.addRows(Arrays.copyOfRange(data, 0, 300));
+
+        CovarianceAccumulator part2 = new CovarianceAccumulator(variables);
+        part2.addRows(Arrays.copyOfRange(data, 300, 1000));
+        part1.merge(part2);
 
+        ICovarianceMatrix expected = new CovarianceMatrix(dataSet);
 
+        for (ICovarianceMatrix actual : new ICovarianceMatrix[]{byRow.getCovarianceMatrix(), part1.getCovarianceMatrix()}) {
+            assertEquals(1000, actual.getSampleSize());
 
+            for (int i = 0; i < 5; i++) {
+                for (int j = 0; j < 5; j++) {
+                    assertEquals(expected.getValue(i, j), actual.getValue(i, j), 1e-8);
+                }
+            }
+        }
+    }
+
+    /**
+     * Tests that covariances computed tile by tile agree with covariances
+     * computed all at once, and that evicted tiles are recomputed.
+     */
+    @Test
+    public void testOnTheFly() {
+        RandomUtil.getInstance().setSeed(4828384834L);
+
+        List<Node> variables = new LinkedList<>();
 
+        for (int i = 0; i < 10; i++) {
+            variables.add(new ContinuousVariable("X" + i));
+        }
+
+        DataSet dataSet = new BoxDataSet(new DoubleDataBox(100, variables.size()), variables);
+
+        for (int i = 0; i < 100; i++) {
+            for (int j = 0; j < 10; j++) {
+                dataSet.setDouble(i, j, RandomUtil.getInstance().nextNormal(0, 1));
+            }
+        }
+
+        ICovarianceMatrix expected = new CovarianceMatrix(dataSet);
+        CovarianceMatrixOnTheFly cov = new CovarianceMatrixOnTheFly(dataSet, true, 3, 2);
+
+        for (int i = 0; i < 10; i++) {
+            for (int j = 0; j < 10; j++) {
+                assertEquals(expected.getValue(i, j), cov.getValue(i, j), 1e-10);
+            }
+        }
+
+        assertEquals(2, cov.getNumCachedTiles());
+
+        int[] rows = {9, 0, 4};
+        int[] cols = {1, 9};
+        TetradMatrix selection = cov.getSelection(rows, cols);
+
+        for (int i = 0; i < rows.length; i++) {
+            for (int j = 0; j < cols.length; j++) {
+                assertEquals(expected.getValue(rows[i], cols[j]), selection.get(i, j), 1e-10);
+            }
+        }
+
+        assertEquals(2, cov.getNumCachedTiles());
+
+        cov.getValue(9, 9);
+        long hits = cov.getTileHits();
+        long misses = cov.getTileMisses();
+        cov.getValue(9, 8);
+        assertEquals(hits + 1, cov.getTileHits());
+        assertEquals(misses, cov.getTileMisses());
+
+        // Changing the sample size must not change cached or newly computed covariances.
+        cov.setSampleSize(50);
+
+        for (int i = 0; i < 10; i++) {
+            for (int j = 0; j < 10; j++) {
+                assertEquals(expected.getValue(i, j), cov.getValue(i, j), 1e-10);
+            }
+        }
+    }
+
+    /**
+     * Tests that covariances of weighted resamples agree with covariances of
+     * the resampled data sets.
+     */
+    @Test
+    public void testBootstrapCovariances() {
+        RandomUtil.getInstance().setSeed(4828384834L);
+
+        List<Node> variables = new LinkedList<>();
+
+        for (int i = 0; i < 6; i++) {
+            variables.add(new ContinuousVariable("X" + i));
+        }
+
+        DataSet dataSet = new BoxDataSet(new DoubleDataBox(2500, variables.size()), variables);
+
+        for (int i = 0; i < 2500; i++) {
+            for (int j = 0; j < 6; j++) {
+                dataSet.setDouble(i, j, RandomUtil.getInstance().nextNormal(0, 1));
+            }
+        }
+
+        BootstrapCovariances covariances = new BootstrapCovariances(dataSet);
+
+        for (int[] counts : new int[][]{covariances.getBootstrapCounts(2500), covariances.getSubsampleCounts(1200)}) {
+            List<Integer> rows = new LinkedList<>();
+
+            for (int i = 0; i < counts.length; i++) {
+                for (int k = 0; k < counts[i]; k++) rows.add(i);
+            }
+
+            int[] _rows = new int[rows.size()];
+            for (int i = 0; i < _rows.length; i++) _rows[i] = rows.get(i);
+
+            ICovarianceMatrix expected = new CovarianceMatrix(dataSet.subsetRows(_rows));
+            ICovarianceMatrix actual = covariances.getCovarianceMatrix(counts);
+
+            assertEquals(_rows.length, actual.getSampleSize());
+
+            for (int i = 0; i < 6; i++) {
+                for (int j = 0; j < 6; j++) {
+                    assertEquals(expected.getValue(i, j), actual.getValue(i, j), 1e-10);
+                }
+            }
+        }
+    }
+}
@@ -34,6 +34,7 @@ import java.util.ArrayList;
 import java.util.List;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 /**
@@ -231,7 +232,37 @@ public class TestDagInPatternIterator {
 
         assertEquals(6, count);
     }
-}
 
+    /**
+     * Edges highlighted as reoriented must be edges of the DAG returned, not the undirected edges they replaced.
+     */
+    @Test
+    public void testHighlightedEdges() {
+        RandomUtil.getInstance().setSeed(4829384L);
+
+        for (int t = 0; t < 10; t++) {
+            Graph graph = GraphUtils.randomGraph(10, 0, 15, 4, 4, 4, false);
+            Graph pattern = SearchGraphUtils.patternForDag(graph);
+
+            List<Edge> candidates = new ArrayList<>();
+
+            for (Edge edge : pattern.getEdges()) {
+                candidates.add(edge);
+                candidates.add(Edges.directedEdge(edge.getNode1(), edge.getNode2()));
+                candidates.add(Edges.directedEdge(edge.getNode2(), edge.getNode1()));
+            }
+
+            DagInPatternIterator iterator = new DagInPatternIterator(pattern);
 
+            while (iterator.hasNext()) {
+                Graph dag = iterator.next();
 
+                for (Edge edge : candidates) {
+                    if (dag.isHighlighted(edge)) {
+                        assertTrue(dag.containsEdge(edge));
+                    }
+                }
+            }
+        }
+    }
+}
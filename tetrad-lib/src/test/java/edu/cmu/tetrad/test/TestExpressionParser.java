@@ -21,9 +21,11 @@
 
 package edu.cmu.tetrad.test;
 
+import edu.cmu.tetrad.calculator.expression.CompiledExpression;
 import edu.cmu.tetrad.calculator.expression.Context;
 import edu.cmu.tetrad.calculator.expression.Expression;
 import edu.cmu.tetrad.calculator.parser.ExpressionParser;
+import edu.cmu.tetrad.util.RandomStream;
 import org.junit.Test;
 
 import java.text.ParseException;
@@ -366,6 +368,98 @@ public class TestExpressionParser {
             e.printStackTrace();
         }
     }
-}
 
+    // Compiled expressions should agree with the interpreter.
+    @Test
+    public void test6() {
+        final Map<String, Double> values = new HashMap<>();
+
+        Context context = new Context() {
+            public Double getValue(String var) {
+                return values.get(var);
+            }
+        };
+
+        // Coefficients are compiled as constants, variables are read from an array.
+        Map<String, Double> parameters = new HashMap<>();
+        parameters.put("b1", 0.5);
+        parameters.put("b2", -1.5);
+        values.putAll(parameters);
+
+        List<String> variables = Arrays.asList("X1", "X2", "X3");
+
+        List<String> formulas = Arrays.asList(
+                "b1 * X1 + X2 * b2 + X3",
+                "b1*X1 + sin(X2) + b2*X2*X3 + tanh(b1 * X3)",
+                "-X1 + (X2 - X3) / 2 + pow(abs(X1), 1.5) + X2^2",
+                "exp(-X1^2) + logistic(X2) + sqrt(abs(X3)) + ln(abs(X1) + 1) + log10(abs(X2) + 1)",
+                "max(X1, X2, X3, b1) + min(X1, X2, b2) + round(X3) + ceil(X1) + floor(X2) + signum(X3)",
+                "IF(X1 > X2, X1, X2) + IF(X2 >= X3 AND X1 < 0, 1, 2) + (X1 <= X2) + (X1 = X1)",
+                "XOR(X1 > 0, X2 > 0) + OR(X1 > 0, X3 > 0) + AND(X1 > 0, X3 < 0, 1)",
+                "cos(X1) + acos(X2 / 10) + asin(X3 / 10) + atan(X1) + cosh(X2 / 10) + sinh(X3 / 10) + tan(X1)",
+                "2 * 3 + b1 * b2 + X1");
+
+        ExpressionParser parser = new ExpressionParser();
+        RandomStream random = new RandomStream(3928L);
+
+        try {
+            for (String formula : formulas) {
+                Expression expression = parser.parseExpression(formula);
+                CompiledExpression compiled = CompiledExpression.compile(expression, parameters, variables);
+                assertTrue(compiled.isThreadSafe());
+
+                for (int i = 0; i < 100; i++) {
+                    double[] x = new double[variables.size()];
+
+                    for (int j = 0; j < x.length; j++) {
+                        x[j] = random.nextNormal(0, 3);
+                        values.put(variables.get(j), x[j]);
+                    }
 
+                    assertEquals(expression.evaluate(context), compiled.evaluate(x, random), 0.0);
+                }
+            }
+        } catch (ParseException e) {
+            e.printStackTrace();
+        }
+    }
+
+    // Compiled distributions should have the right means.
+    @Test
+    public void test7() {
+        Map<String, Boolean> formulas = new LinkedHashMap<>();
+
+        formulas.put("Normal(2, 3)", true);
+        formulas.put("N(2, 3)", true);
+        formulas.put("U(1.5, 2.5)", true);
+        formulas.put("Uniform(1.5, 2.5)", true);
+        formulas.put("Split(0, 1, 3, 4)", false);
+        formulas.put("Gamma(4, .5)", false);
+
+        ExpressionParser parser = new ExpressionParser();
+        RandomStream random = new RandomStream(40223L);
+        double[] values = new double[0];
+
+        try {
+            for (String formula : formulas.keySet()) {
+                Expression expression = parser.parseExpression(formula);
+                CompiledExpression compiled = CompiledExpression.compile(expression,
+                        Collections.<String, Double>emptyMap(), Collections.<String>emptyList());
+
+                // Distributions the compiler doesn't know are evaluated by the interpreter.
+                assertEquals(formulas.get(formula), compiled.isThreadSafe());
+
+                double sum = 0.0;
+                int sampleSize = 10000;
+
+                for (int i = 0; i < sampleSize; i++) {
+                    sum += compiled.evaluate(values, random);
+                }
+
+                assertEquals(2.0, sum / sampleSize, 0.1);
+            }
+        } catch (ParseException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -30,6 +30,7 @@ import org.junit.Test;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 
 import static org.junit.Assert.assertEquals;
 
@@ -58,6 +59,53 @@ public class TestFas {
 
         assertEquals(fasGraph, GraphUtils.undirectedGraph(pcGraph));
     }
+
+    @Test
+    public void testParallel() {
+        int numVars = 30;
+
+        List<Node> vars = new ArrayList<>();
+
+        for (int i = 0; i < numVars; i++) {
+            vars.add(new ContinuousVariable("X" + i));
+        }
+
+        Graph graph = GraphUtils.randomGraphRandomForwardEdges(vars, 0, 2 * numVars, 30, 15, 15, false, true);
+
+        IndependenceTest test = new IndTestDSep(graph);
+
+        Graph stableGraph = new FasStable(test).search();
+
+        ForkJoinPool pool1 = new ForkJoinPool(1);
+        ForkJoinPool pool4 = new ForkJoinPool(4);
+        FasParallel fas1 = new FasParallel(test);
+        FasParallel fas4 = new FasParallel(test);
+        Graph graph1;
+        Graph graph4;
+
+        try {
+            fas1.setPool(pool1);
+            graph1 = fas1.search();
+
+            fas4.setPool(pool4);
+            graph4 = fas4.search();
+        } finally {
+            pool1.shutdown();
+            pool4.shutdown();
+        }
+
+        assertEquals(stableGraph, graph1);
+        assertEquals(graph1, graph4);
+
+        for (int i = 0; i < numVars; i++) {
+            for (int j = i + 1; j < numVars; j++) {
+                assertEquals(fas1.getSepsets().get(vars.get(i), vars.get(j)),
+                        fas4.getSepsets().get(vars.get(i), vars.get(j)));
+            }
+        }
+
+        assertEquals(fas1.getTestsPerSecond().size(), fas4.getTestsPerSecond().size());
+    }
 }
 
 
@@ -0,0 +1,187 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.test;
+
+import edu.cmu.tetrad.data.DataSet;
+import edu.cmu.tetrad.graph.EdgeListGraph;
+import edu.cmu.tetrad.graph.Graph;
+import edu.cmu.tetrad.graph.GraphNode;
+import edu.cmu.tetrad.graph.Node;
+import edu.cmu.tetrad.sem.GeneralizedSemIm;
+import edu.cmu.tetrad.sem.GeneralizedSemPm;
+import edu.cmu.tetrad.util.RandomStream;
+import org.junit.Test;
+
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests simulation from generalized SEMs with compiled expressions, drawing from random streams.
+ *
+ * @author Joseph Ramsey
+ */
+public class TestGeneralizedSemSimulation {
+
+    // X1 = E1, X2 = 0.8 X1 + E2, X3 = -0.6 X1 + 0.5 X2 + E3, with error standard deviations 1, 0.5 and 0.7.
+    private static final double[][] EXPECTED_COVARIANCES = expectedCovariances();
+
+    @Test
+    public void testReproducible() {
+        GeneralizedSemIm im = linearIm();
+
+        assertSameData(im.simulateDataRecursive(2500, new RandomStream(4829L), false),
+                im.simulateDataRecursive(2500, new RandomStream(4829L), false));
+        assertSameData(im.simulateDataFisher(2500, 50, 1e-10, new RandomStream(4829L)),
+                im.simulateDataFisher(2500, 50, 1e-10, new RandomStream(4829L)));
+        assertSameData(im.simulateData(2500, 4829L, false), im.simulateData(2500, 4829L, false));
+    }
+
+    /**
+     * Blocks are simulated in parallel for thread safe models. On one thread they must give the same data.
+     */
+    @Test
+    public void testParallelSameAsSequential() throws Exception {
+        GeneralizedSemIm im = linearIm();
+        ForkJoinPool pool = new ForkJoinPool(1);
+
+        try {
+            DataSet sequential = pool.submit(() -> im.simulateDataRecursive(4500, new RandomStream(93L), false)).get();
+            assertSameData(sequential, im.simulateDataRecursive(4500, new RandomStream(93L), false));
+
+            sequential = pool.submit(() -> im.simulateDataFisher(4500, 50, 1e-10, new RandomStream(93L))).get();
+            assertSameData(sequential, im.simulateDataFisher(4500, 50, 1e-10, new RandomStream(93L)));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testLinearCovariances() {
+        GeneralizedSemIm im = linearIm();
+
+        assertCovariances(im.simulateDataRecursive(50000, new RandomStream(3872L), false));
+        assertCovariances(im.simulateDataFisher(50000, 50, 1e-10, new RandomStream(3872L)));
+    }
+
+    //==============================PRIVATE METHODS=======================//
+
+    private GeneralizedSemIm linearIm() {
+        Node x1 = new GraphNode("X1");
+        Node x2 = new GraphNode("X2");
+        Node x3 = new GraphNode("X3");
+
+        Graph graph = new EdgeListGraph();
+        graph.addNode(x1);
+        graph.addNode(x2);
+        graph.addNode(x3);
+        graph.addDirectedEdge(x1, x2);
+        graph.addDirectedEdge(x1, x3);
+        graph.addDirectedEdge(x2, x3);
+
+        GeneralizedSemPm pm = new GeneralizedSemPm(graph);
+
+        try {
+            pm.setNodeExpression(x1, pm.getErrorNode(x1).getName());
+            pm.setNodeExpression(x2, "0.8 * X1 + " + pm.getErrorNode(x2).getName());
+            pm.setNodeExpression(x3, "0.5 * X2 - 0.6 * X1 + " + pm.getErrorNode(x3).getName());
+
+            pm.setNodeExpression(pm.getErrorNode(x1), "N(0, 1)");
+            pm.setNodeExpression(pm.getErrorNode(x2), "N(0, 0.5)");
+            pm.setNodeExpression(pm.getErrorNode(x3), "N(0, 0.7)");
+        } catch (java.text.ParseException e) {
+            throw new IllegalStateException(e);
+        }
+
+        return new GeneralizedSemIm(pm);
+    }
+
+    private static double[][] expectedCovariances() {
+        double[][] b = {{0, 0, 0}, {0.8, 0, 0}, {-0.6, 0.5, 0}};
+        double[] variances = {1, 0.25, 0.49};
+
+        // X = A E, where A = (I - B)^-1 is found row by row, since B is lower triangular.
+        double[][] a = new double[3][3];
+
+        for (int i = 0; i < 3; i++) {
+            a[i][i] = 1;
+
+            for (int k = 0; k < i; k++) {
+                for (int j = 0; j < 3; j++) {
+                    a[i][j] += b[i][k] * a[k][j];
+                }
+            }
+        }
+
+        double[][] covariances = new double[3][3];
+
+        for (int i = 0; i < 3; i++) {
+            for (int j = 0; j < 3; j++) {
+                for (int k = 0; k < 3; k++) {
+                    covariances[i][j] += a[i][k] * a[j][k] * variances[k];
+                }
+            }
+        }
+
+        return covariances;
+    }
+
+    private void assertCovariances(DataSet data) {
+        int n = data.getNumRows();
+        int[] columns = new int[3];
+        double[] means = new double[3];
+
+        for (int i = 0; i < 3; i++) {
+            columns[i] = data.getColumn(data.getVariable("X" + (i + 1)));
+
+            for (int row = 0; row < n; row++) {
+                means[i] += data.getDouble(row, columns[i]) / n;
+            }
+
+            assertEquals(0.0, means[i], 0.03);
+        }
+
+        for (int i = 0; i < 3; i++) {
+            for (int j = 0; j < 3; j++) {
+                double covariance = 0.0;
+
+                for (int row = 0; row < n; row++) {
+                    covariance += (data.getDouble(row, columns[i]) - means[i])
+                            * (data.getDouble(row, columns[j]) - means[j]);
+                }
+
+                assertEquals(EXPECTED_COVARIANCES[i][j], covariance / (n - 1), 0.03);
+            }
+        }
+    }
+
+    private void assertSameData(DataSet data1, DataSet data2) {
+        assertEquals(data1.getNumRows(), data2.getNumRows());
+        assertEquals(data1.getNumColumns(), data2.getNumColumns());
+
+        for (int row = 0; row < data1.getNumRows(); row++) {
+            for (int column = 0; column < data1.getNumColumns(); column++) {
+                assertEquals(data1.getDouble(row, column), data2.getDouble(row, column), 0.0);
+            }
+        }
+    }
+}
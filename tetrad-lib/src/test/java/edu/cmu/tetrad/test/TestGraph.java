@@ -209,6 +209,44 @@ public final class TestGraph {
         assertFalse(graph.isHighlighted(Edges.directedEdge(x1, x2)));
     }
 
+    @Test
+    public void testDSeparationOracle() {
+        RandomUtil.getInstance().setSeed(4929384L);
+
+        List<Node> nodes = new ArrayList<>();
+
+        for (int i = 0; i < 20; i++) {
+            nodes.add(new ContinuousVariable("X" + (i + 1)));
+        }
+
+        for (int trial = 0; trial < 5; trial++) {
+            Graph graph = GraphUtils.randomGraph(nodes, 0, 30, 5, 5, 5, false);
+            DSeparationOracle oracle = new DSeparationOracle(graph);
+
+            for (int k = 0; k < 200; k++) {
+                Node x = nodes.get(RandomUtil.getInstance().nextInt(nodes.size()));
+                Node y = nodes.get(RandomUtil.getInstance().nextInt(nodes.size()));
+                List<Node> z = new ArrayList<>();
+
+                for (Node node : nodes) {
+                    if (node != x && node != y && RandomUtil.getInstance().nextDouble() < 0.2) {
+                        z.add(node);
+                    }
+                }
+
+                assertEquals(graph.isDConnectedTo(x, y, z), oracle.isDConnectedTo(x, y, z));
+
+                Set<Node> connected = new HashSet<>(oracle.getDConnectedNodes(x, z));
+
+                for (Node node : nodes) {
+                    if (node != x) {
+                        assertEquals(graph.isDConnectedTo(x, node, z), connected.contains(node));
+                    }
+                }
+            }
+        }
+    }
+
     private Triple pickRandomTriple(Graph graph) {
         List<Node> nodes = graph.getNodes();
 
@@ -33,10 +33,14 @@ import edu.cmu.tetrad.util.StatUtils;
 import edu.cmu.tetrad.util.TetradMatrix;
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 import static java.lang.Math.*;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 
 
 /**
@@ -99,6 +103,66 @@ public class TestIndTestFisherZ {
         assertEquals(0.38, p3, 0.01);
     }
 
+    @Test
+    public void testBatchedPairs() {
+        RandomUtil.getInstance().setSeed(48285934L);
+
+        List<Node> nodes = new ArrayList<>();
+
+        for (int i = 0; i < 8; i++) {
+            nodes.add(new ContinuousVariable("X" + (i + 1)));
+        }
+
+        Graph graph = GraphUtils.randomGraph(nodes, 0, 10, 30, 15, 15, false);
+        SemIm im = new SemIm(new SemPm(graph));
+        DataSet data = im.simulateData(500, false);
+        IndTestFisherZ test = new IndTestFisherZ(data, 0.05);
+
+        List<Node> vars = test.getVariables();
+        List<Node> z = Arrays.asList(vars.get(0), vars.get(1));
+        List<NodePair> pairs = new ArrayList<>();
+
+        for (int i = 2; i < vars.size(); i++) {
+            for (int j = i + 1; j < vars.size(); j++) {
+                pairs.add(new NodePair(vars.get(i), vars.get(j)));
+            }
+        }
+
+        boolean[] independent = test.isIndependent(pairs, z);
+        double[] pValues = test.getPValues(pairs, z);
+
+        for (int i = 0; i < pairs.size(); i++) {
+            boolean single = test.isIndependent(pairs.get(i).getFirst(), pairs.get(i).getSecond(), z);
+            assertEquals(single, independent[i]);
+            assertEquals(test.getPValue(), pValues[i], 1e-10);
+        }
+    }
+
+    @Test
+    public void testBatchedPairsEdgeCases() {
+        List<Node> nodes = new ArrayList<>();
+
+        for (int i = 0; i < 3; i++) {
+            nodes.add(new ContinuousVariable("X" + (i + 1)));
+        }
+
+        // X1 and X2 correlate just past 1, as rounding can leave a nearly singular matrix.
+        double[][] c = {{1.0, 1.0 + 1e-9, 0.0}, {1.0 + 1e-9, 1.0, 0.0}, {0.0, 0.0, 1.0}};
+        IndTestFisherZ test = new IndTestFisherZ(new CovarianceMatrix(nodes, new TetradMatrix(c), 100), 0.05);
+        List<Node> z = new ArrayList<>();
+
+        assertEquals(0, test.isIndependent(new ArrayList<NodePair>(), z).length);
+        assertEquals(0, test.getPValues(new ArrayList<NodePair>(), z).length);
+
+        List<NodePair> pairs = Collections.singletonList(new NodePair(nodes.get(0), nodes.get(1)));
+
+        assertFalse(test.isIndependent(pairs, z)[0]);
+        assertEquals(0.0, test.getPValues(pairs, z)[0], 0.0);
+
+        assertFalse(test.isIndependent(nodes.get(0), nodes.get(1), z));
+        assertEquals(0.0, test.getPValue(), 0.0);
+    }
+
     @Test
     public void test2() {
 //        for (int p = 0; p < 50; p++) {
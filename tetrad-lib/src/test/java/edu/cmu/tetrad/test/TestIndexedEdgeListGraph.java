@@ -0,0 +1,97 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+
+package edu.cmu.tetrad.test;
+
+import edu.cmu.tetrad.graph.*;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks the adjacency, parent, child and ancestor queries of IndexedEdgeListGraph against those of EdgeListGraph
+ * over random sequences of edits.
+ *
+ * @author Joseph Ramsey
+ */
+public final class TestIndexedEdgeListGraph {
+
+    @Test
+    public void testSameAsEdgeListGraph() {
+        Random random = new Random(42);
+
+        for (int trial = 0; trial < 20; trial++) {
+            List<Node> nodes = new ArrayList<>();
+            for (int i = 0; i < 12; i++) nodes.add(new GraphNode("X" + i));
+
+            Graph graph = new EdgeListGraph(nodes);
+            IndexedEdgeListGraph indexed = new IndexedEdgeListGraph(nodes);
+
+            for (int step = 0; step < 100; step++) {
+                Node x = nodes.get(random.nextInt(nodes.size()));
+                Node y = nodes.get(random.nextInt(nodes.size()));
+                if (x == y) continue;
+
+                int op = random.nextInt(5);
+
+                if (op < 2 && !graph.isAdjacentTo(x, y)) {
+                    graph.addDirectedEdge(x, y);
+                    indexed.addDirectedEdge(x, y);
+                } else if (op == 2 && !graph.isAdjacentTo(x, y)) {
+                    graph.addUndirectedEdge(x, y);
+                    indexed.addUndirectedEdge(x, y);
+                } else if (op == 3) {
+                    graph.removeEdges(x, y);
+                    indexed.removeEdges(x, y);
+                } else if (op == 4 && graph.isAdjacentTo(x, y)) {
+                    graph.setEndpoint(x, y, Endpoint.ARROW);
+                    indexed.setEndpoint(x, y, Endpoint.ARROW);
+                }
+
+                if (step == 50) {
+                    Node node = nodes.remove(random.nextInt(nodes.size()));
+                    graph.removeNode(node);
+                    indexed.removeNode(node);
+                }
+
+                for (Node u : nodes) {
+                    assertEquals(new HashSet<>(graph.getParents(u)), new HashSet<>(indexed.getParents(u)));
+                    assertEquals(new HashSet<>(graph.getChildren(u)), new HashSet<>(indexed.getChildren(u)));
+                    assertEquals(new HashSet<>(graph.getAdjacentNodes(u)), new HashSet<>(indexed.getAdjacentNodes(u)));
+
+                    for (Node v : nodes) {
+                        assertEquals(graph.isAdjacentTo(u, v), indexed.isAdjacentTo(u, v));
+                        assertEquals(graph.isParentOf(u, v), indexed.isParentOf(u, v));
+                        assertEquals(graph.isAncestorOf(u, v), indexed.isAncestorOf(u, v));
+                    }
+                }
+            }
+
+            assertEquals(graph, new EdgeListGraph(indexed));
+        }
+    }
+}
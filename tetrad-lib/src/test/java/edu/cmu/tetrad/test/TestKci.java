@@ -0,0 +1,87 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.test;
+
+import edu.cmu.tetrad.data.DataSet;
+import edu.cmu.tetrad.graph.Graph;
+import edu.cmu.tetrad.graph.GraphConverter;
+import edu.cmu.tetrad.graph.Node;
+import edu.cmu.tetrad.search.Kci;
+import edu.cmu.tetrad.sem.SemIm;
+import edu.cmu.tetrad.sem.SemPm;
+import edu.cmu.tetrad.util.RandomUtil;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Joseph Ramsey
+ */
+public class TestKci {
+
+    /**
+     * With as many Nystrom features as samples, the low rank kernel matrices are the full kernel matrices, and by
+     * default all products of their eigenvectors are used in the conditional case, so the low rank p-values should
+     * agree with those of the exact test.
+     */
+    @Test
+    public void testLowRankAgreesWithExact() {
+        RandomUtil.getInstance().setSeed(3820492L);
+
+        Graph graph = GraphConverter.convert("X1-->X2,X1-->X3,X2-->X4,X3-->X4");
+        SemIm im = new SemIm(new SemPm(graph));
+        int sampleSize = 200;
+        DataSet data = im.simulateData(sampleSize, false);
+
+        Kci exact = new Kci(data, 0.05);
+        exact.setApproximate(true);
+
+        Kci lowRank = new Kci(data, 0.05);
+        lowRank.setApproximate(true);
+        lowRank.setNumFeatures(sampleSize);
+
+        Node x1 = data.getVariable("X1");
+        Node x2 = data.getVariable("X2");
+        Node x3 = data.getVariable("X3");
+        Node x4 = data.getVariable("X4");
+
+        checkPValues(exact, lowRank, x1, x4, Collections.<Node>emptyList());
+        checkPValues(exact, lowRank, x2, x3, Collections.<Node>emptyList());
+        checkPValues(exact, lowRank, x2, x3, Collections.singletonList(x1));
+        checkPValues(exact, lowRank, x1, x4, Collections.singletonList(x2));
+
+        // Keeping only some of the products still gives a p-value.
+        lowRank.setNumProducts(sampleSize);
+        lowRank.isIndependent(x2, x3, Collections.singletonList(x1));
+        assertTrue(lowRank.getPValue() >= 0.0 && lowRank.getPValue() <= 1.0);
+    }
+
+    private void checkPValues(Kci exact, Kci lowRank, Node x, Node y, List<Node> z) {
+        exact.isIndependent(x, y, z);
+        lowRank.isIndependent(x, y, z);
+        assertEquals(exact.getPValue(), lowRank.getPValue(), 0.02);
+    }
+}
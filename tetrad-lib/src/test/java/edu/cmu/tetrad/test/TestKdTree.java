@@ -0,0 +1,85 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+
+package edu.cmu.tetrad.test;
+
+import edu.cmu.tetrad.search.KdTree;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests the nearest neighbor queries of the k-d tree against a brute force search.
+ *
+ * @author Joseph Ramsey
+ */
+public class TestKdTree {
+
+    @Test
+    public void testNearest() {
+        Random random = new Random(42);
+        int numRows = 500;
+        double[][] data = new double[4][numRows];
+
+        for (double[] column : data) {
+            for (int i = 0; i < numRows; i++) column[i] = random.nextGaussian();
+        }
+
+        int[] columns = {0, 2, 3};
+        int k = 25;
+
+        KdTree tree = new KdTree(data, columns);
+        int[][] nearest = tree.nearest(k);
+
+        for (int i = 0; i < numRows; i++) {
+            final int row = i;
+
+            double[] expected = IntStream.range(0, numRows).boxed()
+                    .sorted(Comparator.comparingDouble(j -> distance(data, columns, row, j)))
+                    .limit(k).mapToDouble(j -> distance(data, columns, row, j)).toArray();
+            double[] actual = Arrays.stream(nearest[i]).mapToDouble(j -> distance(data, columns, row, j)).toArray();
+
+            assertEquals(row, nearest[i][0]);
+            assertEquals(k, actual.length);
+
+            for (int j = 0; j < k; j++) {
+                assertEquals(expected[j], actual[j], 1e-12);
+            }
+        }
+    }
+
+    private double distance(double[][] data, int[] columns, int i, int j) {
+        double sum = 0.0;
+
+        for (int c : columns) {
+            double d = data[c][i] - data[c][j];
+            sum += d * d;
+        }
+
+        return sum;
+    }
+}
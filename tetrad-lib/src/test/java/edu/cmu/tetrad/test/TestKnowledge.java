@@ -25,6 +25,7 @@ import edu.cmu.tetrad.data.ContinuousVariable;
 import edu.cmu.tetrad.data.IKnowledge;
 import edu.cmu.tetrad.data.Knowledge2;
 import edu.cmu.tetrad.data.KnowledgeEdge;
+import edu.cmu.tetrad.data.KnowledgeIndex;
 import edu.cmu.tetrad.graph.Graph;
 import edu.cmu.tetrad.graph.GraphUtils;
 import edu.cmu.tetrad.graph.Node;
@@ -34,7 +35,10 @@ import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 /**
@@ -164,9 +168,67 @@ public final class TestKnowledge {
             assertTrue(knowledge.isForbidden("X11", "X22"));
         }
     }
-}
 
+    @Test
+    public final void testIndex() {
+        List<String> vars = new ArrayList<>();
+
+        for (int i = 0; i < 30; i++) {
+            vars.add("X" + i);
+        }
+
+        IKnowledge knowledge = new Knowledge2(vars);
 
+        knowledge.addToTier(0, "X1*");
+        knowledge.addToTier(1, "X2*");
+        knowledge.setTierForbiddenWithin(1, true);
+        knowledge.setForbidden("X3", "X4");
+        knowledge.setRequired("X4", "X3");
+        knowledge.setRequired("X20", "X10");
+
+        KnowledgeIndex index = knowledge.getIndex();
+        assertSame(index, knowledge.getIndex());
+
+        // The expected values follow the rules above directly: X1* is X1 and X10 - X19 and X2* is X2 and
+        // X20 - X29, since there are 30 variables.
+        for (String x : vars) {
+            int i = index.indexOf(x);
+
+            for (String y : vars) {
+                int j = index.indexOf(y);
+
+                int tierX = x.startsWith("X1") ? 0 : x.startsWith("X2") ? 1 : -1;
+                int tierY = y.startsWith("X1") ? 0 : y.startsWith("X2") ? 1 : -1;
+                boolean forbiddenByTiers = tierX != -1 && tierY != -1 && (tierY < tierX || tierX == 1 && tierY == 1);
+
+                boolean required = x.equals("X4") && y.equals("X3") || x.equals("X20") && y.equals("X10");
+                boolean forbidden = !required && (forbiddenByTiers || x.equals("X3") && y.equals("X4"));
+
+                assertEquals(forbidden, index.isForbidden(i, j));
+                assertEquals(required, index.isRequired(i, j));
+                assertEquals(forbiddenByTiers, index.isForbiddenByTiers(i, j));
+                assertEquals(forbidden, knowledge.isForbidden(x, y));
+                assertEquals(required, knowledge.isRequired(x, y));
+            }
+        }
 
+        assertTrue(index.isForbidden(index.indexOf("X3"), index.indexOf("X4")));
+        assertFalse(index.isForbidden(index.indexOf("X20"), index.indexOf("X10")));
+        assertTrue(index.isForbidden(index.indexOf("X21"), index.indexOf("X10")));
+        assertTrue(index.isForbidden(index.indexOf("X21"), index.indexOf("X22")));
+        assertEquals(1, index.getTier(index.indexOf("X25")));
+        assertEquals(-1, index.indexOf("Y"));
+        assertFalse(index.isForbidden(-1, index.indexOf("X3")));
 
+        // A copy is independent of the original.
+        IKnowledge copy = knowledge.copy();
+        copy.addToTier(1, "X3");
+        assertTrue(copy.isForbidden("X3", "X10"));
+        assertFalse(knowledge.isForbidden("X3", "X10"));
+        assertSame(index, knowledge.getIndex());
 
+        knowledge.removeRequired("X20", "X10");
+        assertNotSame(index, knowledge.getIndex());
+        assertTrue(knowledge.isForbidden("X20", "X10"));
+    }
+}
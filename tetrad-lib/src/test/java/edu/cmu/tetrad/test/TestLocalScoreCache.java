@@ -0,0 +1,133 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+
+package edu.cmu.tetrad.test;
+
+import edu.cmu.tetrad.search.LocalScoreCache;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the local score cache.
+ *
+ * @author Joseph Ramsey
+ */
+public class TestLocalScoreCache {
+
+    @Test
+    public void testParentOrderIgnored() {
+        LocalScoreCache cache = new LocalScoreCache();
+
+        cache.add(3, new int[]{5, 1, 4}, -10.5);
+
+        assertEquals(-10.5, cache.get(3, new int[]{1, 4, 5}), 0.0);
+        assertEquals(-10.5, cache.get(3, new int[]{4, 5, 1}), 0.0);
+        assertEquals(-10.5, cache.get(3, new int[]{1, 5}, 4), 0.0);
+        assertTrue(Double.isNaN(cache.get(2, new int[]{1, 4, 5})));
+        assertTrue(Double.isNaN(cache.get(3, new int[]{1, 4})));
+
+        assertEquals(3, cache.getNumHits());
+        assertEquals(2, cache.getNumMisses());
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void testUpdateAndClear() {
+        LocalScoreCache cache = new LocalScoreCache();
+
+        cache.add(0, new int[0], 1.0);
+        cache.add(0, new int[0], 2.0);
+
+        assertEquals(2.0, cache.get(0, new int[0]), 0.0);
+        assertEquals(1, cache.size());
+
+        cache.clear();
+
+        assertEquals(0, cache.size());
+        assertTrue(Double.isNaN(cache.get(0, new int[0])));
+    }
+
+    @Test
+    public void testBoundedSize() {
+        LocalScoreCache cache = new LocalScoreCache(100);
+
+        for (int i = 0; i < 10000; i++) {
+            cache.add(i % 50, new int[]{i, i + 1}, i);
+        }
+
+        assertTrue(cache.size() <= 100);
+        assertTrue(cache.getNumEvictions() >= 9900);
+
+        // Whatever survived must still map to the right score.
+        for (int i = 0; i < 10000; i++) {
+            double score = cache.get(i % 50, new int[]{i + 1, i});
+            assertTrue(Double.isNaN(score) || score == i);
+        }
+    }
+
+    /**
+     * A small cache should hold close to its bound before it starts evicting.
+     */
+    @Test
+    public void testFillsBeforeEvicting() {
+        LocalScoreCache cache = new LocalScoreCache(100);
+
+        for (int i = 0; i < 50; i++) {
+            cache.add(i, new int[]{i + 1}, i);
+        }
+
+        assertEquals(50, cache.size());
+        assertEquals(0, cache.getNumEvictions());
+    }
+
+    @Test
+    public void testConcurrentUse() throws InterruptedException {
+        final LocalScoreCache cache = new LocalScoreCache(1000);
+        List<Thread> threads = new ArrayList<>();
+
+        for (int t = 0; t < 8; t++) {
+            threads.add(new Thread(() -> {
+                for (int i = 0; i < 20000; i++) {
+                    int[] parents = {i % 37, i % 101 + 37};
+                    double score = cache.get(i % 13, parents);
+
+                    if (Double.isNaN(score)) {
+                        cache.add(i % 13, parents, parents[0] + parents[1] + i % 13);
+                    } else {
+                        assertEquals(parents[0] + parents[1] + i % 13, score, 0.0);
+                    }
+                }
+            }));
+        }
+
+        for (Thread thread : threads) thread.start();
+        for (Thread thread : threads) thread.join();
+
+        assertTrue(cache.size() <= 1000);
+        assertEquals(8 * 20000, cache.getNumHits() + cache.getNumMisses());
+    }
+}
@@ -0,0 +1,89 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.test;
+
+import edu.cmu.tetrad.graph.*;
+import edu.cmu.tetrad.search.MeekRules;
+import edu.cmu.tetrad.search.SearchGraphUtils;
+import edu.cmu.tetrad.util.RandomUtil;
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests that orienting from a set of changed edges agrees with orienting the whole graph.
+ *
+ * @author Joseph Ramsey
+ */
+public final class TestMeekRules {
+
+    @Test
+    public void testOrientFromChangedEdges() {
+        RandomUtil.getInstance().setSeed(48283934L);
+
+        for (int t = 0; t < 50; t++) {
+            Graph dag = GraphUtils.randomGraph(20, 0, 40, 100, 100, 100, false);
+            Graph pattern = SearchGraphUtils.patternForDag(dag);
+
+            List<Edge> undirected = new ArrayList<>();
+
+            for (Edge edge : pattern.getEdges()) {
+                if (Edges.isUndirectedEdge(edge)) {
+                    undirected.add(edge);
+                }
+            }
+
+            if (undirected.isEmpty()) continue;
+
+            // Orient one undirected edge as it is in the DAG.
+            Edge edge = undirected.get(RandomUtil.getInstance().nextInt(undirected.size()));
+            Edge directed = dag.getEdge(edge.getNode1(), edge.getNode2());
+
+            Graph full = new EdgeListGraph(pattern);
+            full.removeEdge(edge);
+            full.addEdge(directed);
+            new MeekRules().orientImplied(full);
+
+            Graph incremental = new EdgeListGraph(pattern);
+            incremental.removeEdge(edge);
+            incremental.addEdge(directed);
+
+            Graph before = new EdgeListGraph(incremental);
+            Map<Edge, Edge> changed = new MeekRules().orientImplied(incremental, Collections.singleton(directed));
+
+            assertEquals(new HashSet<>(full.getEdges()), new HashSet<>(incremental.getEdges()));
+
+            for (Edge _edge : incremental.getEdges()) {
+                if (!before.containsEdge(_edge)) {
+                    assertTrue(changed.containsValue(_edge));
+                }
+            }
+
+            for (Map.Entry<Edge, Edge> entry : changed.entrySet()) {
+                assertTrue(before.containsEdge(entry.getKey()));
+                assertTrue(incremental.containsEdge(entry.getValue()));
+            }
+        }
+    }
+}
@@ -0,0 +1,333 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.test;
+
+import edu.cmu.tetrad.data.BoxDataSet;
+import edu.cmu.tetrad.data.DataSet;
+import edu.cmu.tetrad.data.DiscreteVariable;
+import edu.cmu.tetrad.data.PackedDiscreteData;
+import edu.cmu.tetrad.data.VerticalIntDataBox;
+import edu.cmu.tetrad.graph.Node;
+import edu.cmu.tetrad.search.BDeuScore;
+import edu.cmu.tetrad.search.GSquareTest;
+import edu.cmu.tetrad.util.ProbUtils;
+import edu.cmu.tetrad.util.RandomUtil;
+import org.apache.commons.math3.special.Gamma;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks counts from packed discrete data, and the BDeu scores and G square p-values computed from them, against
+ * counts made row by row with DataSet.getInt.
+ *
+ * @author Joseph Ramsey
+ */
+public class TestPackedDiscreteData {
+
+    // Numbers of categories of the columns. The column with 130 categories is packed into shorts rather than bytes.
+    private static final int[] NUM_CATEGORIES = {2, 3, 4, 5, 4, 3, 130, 4, 4, 2};
+
+    // Parent sets, including ones with more configurations than rows, which are renumbered as they are counted.
+    private static final int[][] PARENTS = {
+            {}, {1}, {2, 3}, {6}, {1, 2, 3, 4}, {2, 3, 4, 7, 8}, {6, 3, 4}, {9, 7, 6, 5, 4}
+    };
+
+    @Test
+    public void testCounts() {
+        for (boolean missing : new boolean[]{false, true}) {
+            DataSet dataSet = dataSet(300, missing);
+            PackedDiscreteData packed = new PackedDiscreteData(dataSet);
+
+            for (int child = 0; child < dataSet.getNumColumns(); child++) {
+                for (int[] parents : PARENTS) {
+                    if (contains(parents, child)) continue;
+
+                    int[][] expected = countRows(dataSet, new int[]{child}, parents);
+                    PackedDiscreteData.Counts counts = packed.count(child, parents);
+
+                    assertEquals(expected.length, counts.getNumOccupied());
+                    assertEquals(configurations(dataSet, parents), counts.getNumConfigurations(), 0.0);
+
+                    int[][] actual = new int[counts.getNumOccupied()][counts.getNumValues()];
+
+                    for (int z = 0; z < counts.getNumOccupied(); z++) {
+                        int total = 0;
+
+                        for (int k = 0; k < counts.getNumValues(); k++) {
+                            actual[z][k] = counts.getCount(z, k);
+                            total += actual[z][k];
+                        }
+
+                        assertEquals(total, counts.getRowTotal(z));
+                    }
+
+                    assertEquals(sorted(expected), sorted(actual));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testBDeuScore() {
+        for (boolean missing : new boolean[]{false, true}) {
+            DataSet dataSet = dataSet(300, missing);
+            BDeuScore score = new BDeuScore(dataSet);
+            score.setSamplePrior(2.5);
+            score.setStructurePrior(1.5);
+
+            for (int child = 0; child < dataSet.getNumColumns(); child++) {
+                for (int[] parents : PARENTS) {
+                    if (contains(parents, child)) continue;
+
+                    double expected = bdeu(dataSet, child, parents, 2.5, 1.5);
+                    assertEquals(expected, score.localScore(child, parents), 1e-8 * Math.abs(expected));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testGSquare() {
+        for (boolean missing : new boolean[]{false, true}) {
+            DataSet dataSet = dataSet(300, missing);
+            GSquareTest test = new GSquareTest(dataSet, 0.05);
+
+            for (int x = 0; x < dataSet.getNumColumns(); x++) {
+                for (int y = x + 1; y < dataSet.getNumColumns(); y++) {
+                    for (int[] z : PARENTS) {
+                        if (contains(z, x) || contains(z, y)) continue;
+
+                        int[] testIndices = new int[z.length + 2];
+                        testIndices[0] = x;
+                        testIndices[1] = y;
+                        System.arraycopy(z, 0, testIndices, 2, z.length);
+
+                        GSquareTest.Result result = test.calcGSquare(testIndices);
+                        double[] expected = gSquare(dataSet, testIndices);
+
+                        assertEquals(expected[0], result.getGSquare(), 1e-8 * Math.max(1, expected[0]));
+                        assertEquals((int) expected[1], result.getDf());
+                        assertEquals(expected[2], result.getPValue(), 1e-10);
+                    }
+                }
+            }
+        }
+    }
+
+    //==============================PRIVATE METHODS=======================//
+
+    private DataSet dataSet(int sampleSize, boolean missing) {
+        RandomUtil.getInstance().setSeed(29384729L);
+
+        List<Node> variables = new ArrayList<>();
+        int[][] data = new int[NUM_CATEGORIES.length][sampleSize];
+
+        for (int j = 0; j < NUM_CATEGORIES.length; j++) {
+            variables.add(new DiscreteVariable("X" + (j + 1), NUM_CATEGORIES[j]));
+
+            for (int i = 0; i < sampleSize; i++) {
+
+                // Skew the values toward a few categories, so that tables have empty rows and columns.
+                int value = RandomUtil.getInstance().nextInt(NUM_CATEGORIES[j]);
+                if (RandomUtil.getInstance().nextDouble() < 0.5) value = value % 2;
+                if (j > 0 && RandomUtil.getInstance().nextDouble() < 0.3) value = data[j - 1][i] % NUM_CATEGORIES[j];
+
+                data[j][i] = value;
+            }
+        }
+
+        if (missing) {
+            for (int[] column : data) {
+                for (int i = 0; i < sampleSize; i++) {
+                    if (RandomUtil.getInstance().nextDouble() < 0.03) column[i] = DiscreteVariable.MISSING_VALUE;
+                }
+            }
+        }
+
+        return new BoxDataSet(new VerticalIntDataBox(data), variables);
+    }
+
+    // For each configuration of the given columns occurring among rows with no missing values, the number of rows
+    // with each combination of values of the given children.
+    private int[][] countRows(DataSet dataSet, int[] children, int[] parents) {
+        int product = 1;
+        for (int child : children) product *= NUM_CATEGORIES[child];
+        final int numValues = product;
+
+        Map<List<Integer>, int[]> counts = new HashMap<>();
+
+        ROW:
+        for (int i = 0; i < dataSet.getNumRows(); i++) {
+            List<Integer> configuration = new ArrayList<>();
+
+            for (int parent : parents) {
+                int value = dataSet.getInt(i, parent);
+                if (value == DiscreteVariable.MISSING_VALUE) continue ROW;
+                configuration.add(value);
+            }
+
+            int value = 0;
+
+            for (int child : children) {
+                int childValue = dataSet.getInt(i, child);
+                if (childValue == DiscreteVariable.MISSING_VALUE) continue ROW;
+                value = value * NUM_CATEGORIES[child] + childValue;
+            }
+
+            counts.computeIfAbsent(configuration, k -> new int[numValues])[value]++;
+        }
+
+        return counts.values().toArray(new int[counts.size()][]);
+    }
+
+    private double configurations(DataSet dataSet, int[] parents) {
+        double r = 1;
+        for (int parent : parents) r *= ((DiscreteVariable) dataSet.getVariable(parent)).getNumCategories();
+        return r;
+    }
+
+    // The BDeu score as computed before packing, over all parent configurations, occurring or not.
+    private double bdeu(DataSet dataSet, int child, int[] parents, double samplePrior, double structurePrior) {
+        int c = NUM_CATEGORIES[child];
+        double r = configurations(dataSet, parents);
+        int[][] nJk = countRows(dataSet, new int[]{child}, parents);
+
+        int vm = dataSet.getNumColumns() - 1;
+        double score = parents.length * Math.log(structurePrior / vm)
+                + (vm - parents.length) * Math.log(1.0 - structurePrior / vm);
+
+        double cellPrior = samplePrior / (c * r);
+        double rowPrior = samplePrior / r;
+
+        // Empty configurations add logGamma(cellPrior) c times and subtract logGamma(rowPrior) once.
+        double numEmpty = r - nJk.length;
+        score += numEmpty * (c * Gamma.logGamma(cellPrior) - Gamma.logGamma(rowPrior));
+
+        for (int[] row : nJk) {
+            int nJ = 0;
+
+            for (int k = 0; k < c; k++) {
+                score += Gamma.logGamma(cellPrior + row[k]);
+                nJ += row[k];
+            }
+
+            score -= Gamma.logGamma(rowPrior + nJ);
+        }
+
+        score += r * Gamma.logGamma(rowPrior);
+        score -= c * r * Gamma.logGamma(cellPrior);
+
+        return score;
+    }
+
+    // The statistic, degrees of freedom and p-value as computed before packing, one conditional table at a time.
+    private double[] gSquare(DataSet dataSet, int[] testIndices) {
+        int numRows = NUM_CATEGORIES[testIndices[0]];
+        int numCols = NUM_CATEGORIES[testIndices[1]];
+        int[] z = Arrays.copyOfRange(testIndices, 2, testIndices.length);
+        int[][] tables = countRows(dataSet, new int[]{testIndices[0], testIndices[1]}, z);
+
+        double g2 = 0.0;
+        int df = 0;
+
+        for (int[] table : tables) {
+            long[] sumRows = new long[numRows];
+            long[] sumCols = new long[numCols];
+            long total = 0;
+
+            for (int i = 0; i < numRows; i++) {
+                for (int j = 0; j < numCols; j++) {
+                    sumRows[i] += table[i * numCols + j];
+                    sumCols[j] += table[i * numCols + j];
+                    total += table[i * numCols + j];
+                }
+            }
+
+            double _gSquare = 0.0;
+            int numAttestedRows = 0;
+            int numAttestedCols = 0;
+
+            for (int i = 0; i < numRows; i++) {
+                if (sumRows[i] != 0) numAttestedRows++;
+            }
+
+            for (int j = 0; j < numCols; j++) {
+                if (sumCols[j] != 0) numAttestedCols++;
+            }
+
+            for (int i = 0; i < numRows; i++) {
+                for (int j = 0; j < numCols; j++) {
+                    if (sumRows[i] == 0 || sumCols[j] == 0) continue;
+                    double expected = sumCols[j] * sumRows[i] / (double) total;
+                    _gSquare += Math.pow(table[i * numCols + j] - expected, 2.0) / expected;
+                }
+            }
+
+            int _df = (numAttestedRows - 1) * (numAttestedCols - 1);
+
+            if (_df > 0) {
+                df += _df;
+                g2 += _gSquare;
+            }
+        }
+
+        if (df == 0) df = 1;
+
+        return new double[]{g2, df, 1.0 - ProbUtils.chisqCdf(g2, df)};
+    }
+
+    private List<List<Integer>> sorted(int[][] rows) {
+        List<List<Integer>> sorted = new ArrayList<>();
+
+        for (int[] row : rows) {
+            List<Integer> list = new ArrayList<>();
+            for (int count : row) list.add(count);
+            sorted.add(list);
+        }
+
+        sorted.sort((a, b) -> {
+            for (int k = 0; k < a.size(); k++) {
+                int c = Integer.compare(a.get(k), b.get(k));
+                if (c != 0) return c;
+            }
+
+            return 0;
+        });
+
+        return sorted;
+    }
+
+    private boolean contains(int[] array, int value) {
+        for (int a : array) {
+            if (a == value) return true;
+        }
+
+        return false;
+    }
+}
@@ -0,0 +1,89 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.test;
+
+import edu.cmu.tetrad.data.DataSet;
+import edu.cmu.tetrad.graph.Dag;
+import edu.cmu.tetrad.graph.GraphUtils;
+import edu.cmu.tetrad.sem.SemIm;
+import edu.cmu.tetrad.sem.SemPm;
+import edu.cmu.tetrad.util.RandomStream;
+import edu.cmu.tetrad.util.RandomUtil;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests random streams.
+ *
+ * @author Joseph Ramsey
+ */
+public final class TestRandomStream {
+
+    @Test
+    public void testSubstreams() {
+        RandomStream random = new RandomStream(40392L);
+
+        // Substreams depend on the seed and index, not on what has been drawn.
+        double x = random.substream(3).nextDouble();
+        random.nextDouble();
+        random.split();
+        assertEquals(x, random.substream(3).nextDouble(), 0);
+        assertEquals(x, new RandomStream(40392L).substream(3).nextDouble(), 0);
+        assertTrue(x != random.substream(4).nextDouble());
+    }
+
+    @Test
+    public void testNormal() {
+        RandomStream random = new RandomStream(1249L);
+        int n = 200000;
+        double sum = 0;
+        double sumSq = 0;
+
+        for (int i = 0; i < n; i++) {
+            double x = random.nextNormal(1, 2);
+            sum += x;
+            sumSq += x * x;
+        }
+
+        double mean = sum / n;
+        assertEquals(1, mean, 0.02);
+        assertEquals(4, sumSq / n - mean * mean, 0.05);
+    }
+
+    @Test
+    public void testSimulateDataWithSeed() {
+        RandomUtil.getInstance().setSeed(2938434L);
+
+        Dag graph = new Dag(GraphUtils.randomGraph(10, 0, 10, 3, 3, 3, false));
+        SemIm im = new SemIm(new SemPm(graph));
+
+        DataSet data1 = im.simulateData(2500, 72L, false);
+        RandomUtil.getInstance().nextDouble();
+        DataSet data2 = im.simulateData(2500, 72L, false);
+
+        assertTrue(data1.getDoubleData().equals(data2.getDoubleData(), 0));
+        assertFalse(data1.getDoubleData().equals(im.simulateData(2500, 73L, false).getDoubleData(), 0));
+    }
+}
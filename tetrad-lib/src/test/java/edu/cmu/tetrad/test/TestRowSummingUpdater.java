@@ -24,7 +24,9 @@ package edu.cmu.tetrad.test;
 import edu.cmu.tetrad.bayes.*;
 import edu.cmu.tetrad.graph.Dag;
 import edu.cmu.tetrad.graph.GraphNode;
+import edu.cmu.tetrad.graph.GraphUtils;
 import edu.cmu.tetrad.graph.Node;
+import edu.cmu.tetrad.util.RandomUtil;
 import org.junit.Test;
 
 import static org.junit.Assert.assertEquals;
@@ -266,6 +268,97 @@ public final class TestRowSummingUpdater {
         assertEquals(marginal1, marginal2, 0.000001);
     }
 
+    /**
+     * Variable elimination should agree with row summing, with and without
+     * manipulation.
+     */
+    @Test
+    public void testVariableElimination() {
+        RandomUtil.getInstance().setSeed(48293L);
+
+        for (int trial = 0; trial < 5; trial++) {
+            Dag graph = new Dag(GraphUtils.randomGraph(7, 0, 9, 4, 3, 3, false));
+            BayesPm bayesPm = new BayesPm(graph, 2, 3);
+            MlBayesIm bayesIm = new MlBayesIm(bayesPm, MlBayesIm.RANDOM);
+
+            Evidence evidence = Evidence.tautology(bayesIm);
+            evidence.getProposition().setCategory(1, 0);
+            evidence.getProposition().removeCategory(4, 0);
+
+            if (trial % 2 == 1) {
+                evidence.setManipulated(1, true);
+            }
+
+            ManipulatingBayesUpdater updater1 = new RowSummingExactUpdater(bayesIm);
+            updater1.setEvidence(evidence);
+
+            ManipulatingBayesUpdater updater2 = new VariableEliminationUpdater(bayesIm);
+            updater2.setEvidence(evidence);
+
+            BayesIm updatedIm1 = updater1.getUpdatedBayesIm();
+            BayesIm updatedIm2 = updater2.getUpdatedBayesIm();
+
+            for (int node = 0; node < bayesIm.getNumNodes(); node++) {
+                for (int col = 0; col < bayesIm.getNumColumns(node); col++) {
+                    assertEquals(updater1.getMarginal(node, col), updater2.getMarginal(node, col), 1e-9);
+                }
+
+                for (int row = 0; row < updatedIm1.getNumRows(node); row++) {
+                    for (int col = 0; col < updatedIm1.getNumColumns(node); col++) {
+                        double p1 = updatedIm1.getProbability(node, row, col);
+                        double p2 = updatedIm2.getProbability(node, row, col);
+
+                        if (Double.isNaN(p1)) {
+                            assertTrue(Double.isNaN(p2));
+                        } else {
+                            assertEquals(p1, p2, 1e-9);
+                        }
+                    }
+                }
+            }
+
+            int[] variables = {0, 6};
+            int[] values = {1, 0};
+            assertEquals(updater1.getJointMarginal(variables, values),
+                    updater2.getJointMarginal(variables, values), 1e-9);
+        }
+    }
+
+    /**
+     * Likelihood weighting should come close to row summing, with and without
+     * manipulation.
+     */
+    @Test
+    public void testApproximateUpdater() {
+        RandomUtil.getInstance().setSeed(48293L);
+
+        for (int trial = 0; trial < 4; trial++) {
+            Dag graph = new Dag(GraphUtils.randomGraph(7, 0, 9, 4, 3, 3, false));
+            BayesPm bayesPm = new BayesPm(graph, 2, 3);
+            MlBayesIm bayesIm = new MlBayesIm(bayesPm, MlBayesIm.RANDOM);
+
+            Evidence evidence = Evidence.tautology(bayesIm);
+            evidence.getProposition().setCategory(1, 0);
+            evidence.getProposition().removeCategory(4, 0);
+
+            if (trial % 2 == 1) {
+                evidence.setManipulated(1, true);
+            }
+
+            ManipulatingBayesUpdater updater1 = new RowSummingExactUpdater(bayesIm);
+            updater1.setEvidence(evidence);
+
+            ManipulatingBayesUpdater updater2 = new ApproximateUpdater(bayesIm);
+            updater2.setEvidence(evidence);
+
+            for (int node = 0; node < bayesIm.getNumNodes(); node++) {
+                for (int col = 0; col < bayesIm.getNumColumns(node); col++) {
+                    assertEquals(updater1.getMarginal(node, col), updater2.getMarginal(node, col), 0.03);
+                }
+            }
+        }
+    }
+
     private BayesIm sampleBayesIm0() {
         Node z = new GraphNode("z");
 
@@ -0,0 +1,134 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+
+package edu.cmu.tetrad.test;
+
+import edu.cmu.tetrad.data.ContinuousVariable;
+import edu.cmu.tetrad.data.CovarianceMatrix;
+import edu.cmu.tetrad.data.DataSet;
+import edu.cmu.tetrad.data.ICovarianceMatrix;
+import edu.cmu.tetrad.graph.Graph;
+import edu.cmu.tetrad.graph.GraphUtils;
+import edu.cmu.tetrad.graph.Node;
+import edu.cmu.tetrad.search.CholeskyCache;
+import edu.cmu.tetrad.search.SemBicScore;
+import edu.cmu.tetrad.sem.SemIm;
+import edu.cmu.tetrad.sem.SemPm;
+import edu.cmu.tetrad.util.RandomUtil;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that scores computed from cached Cholesky factors agree with scores computed from
+ * matrix inverses.
+ *
+ * @author Joseph Ramsey
+ */
+public class TestSemBicScore {
+
+    @Test
+    public void testCholeskyAgreesWithInverse() {
+        ICovarianceMatrix cov = simulateCovariances(15);
+
+        SemBicScore inverse = new SemBicScore(cov);
+        inverse.setUseCholeskyFactors(false);
+
+        SemBicScore cholesky = new SemBicScore(cov);
+
+        for (int t = 0; t < 500; t++) {
+            int[] z = randomSubset(15, RandomUtil.getInstance().nextInt(6));
+            int x = RandomUtil.getInstance().nextInt(15);
+            int y = RandomUtil.getInstance().nextInt(15);
+
+            if (x == y || contains(z, x) || contains(z, y)) continue;
+
+            assertEquals(inverse.localScore(y, z), cholesky.localScore(y, z), 1e-8 * Math.abs(inverse.localScore(y, z)));
+            assertEquals(inverse.localScoreDiff(x, y, z), cholesky.localScoreDiff(x, y, z), 1e-6);
+        }
+    }
+
+    @Test
+    public void testFactorUpdates() {
+        ICovarianceMatrix cov = simulateCovariances(10);
+        CholeskyCache cache = new CholeskyCache(cov);
+
+        CholeskyCache.Factor full = cache.getFactor(new int[]{1, 3, 5, 7});
+        CholeskyCache.Factor downdated = cache.remove(full, 3);
+        CholeskyCache.Factor extended = cache.extend(downdated, 9);
+
+        CholeskyCache fresh = new CholeskyCache(cov);
+
+        for (int j : new int[]{0, 2, 4}) {
+            assertEquals(fresh.residualVariance(fresh.getFactor(new int[]{1, 5, 7}), j),
+                    cache.residualVariance(downdated, j), 1e-10);
+            assertEquals(fresh.residualVariance(fresh.getFactor(new int[]{9, 7, 5, 1}), j),
+                    cache.residualVariance(extended, j), 1e-10);
+        }
+
+        // {1, 5, 7} is cached, so {1, 5, 7, 8} is obtained by an update.
+        cache.getFactor(new int[]{1, 5, 7});
+        cache.getFactor(new int[]{8, 1, 5, 7});
+        assertTrue(cache.getNumUpdates() >= 1);
+    }
+
+    private ICovarianceMatrix simulateCovariances(int numVars) {
+        RandomUtil.getInstance().setSeed(1450184147770L);
+
+        List<Node> nodes = new ArrayList<>();
+
+        for (int i = 0; i < numVars; i++) {
+            nodes.add(new ContinuousVariable("X" + (i + 1)));
+        }
+
+        Graph graph = GraphUtils.randomGraph(nodes, 0, numVars, 30, 15, 15, false);
+        SemPm pm = new SemPm(graph);
+        SemIm im = new SemIm(pm);
+        DataSet data = im.simulateData(1000, false);
+        return new CovarianceMatrix(data);
+    }
+
+    private int[] randomSubset(int n, int k) {
+        int[] all = new int[n];
+        for (int i = 0; i < n; i++) all[i] = i;
+
+        for (int i = 0; i < k; i++) {
+            int j = i + RandomUtil.getInstance().nextInt(n - i);
+            int t = all[i];
+            all[i] = all[j];
+            all[j] = t;
+        }
+
+        int[] subset = new int[k];
+        System.arraycopy(all, 0, subset, 0, k);
+        return subset;
+    }
+
+    private boolean contains(int[] z, int x) {
+        for (int i : z) if (i == x) return true;
+        return false;
+    }
+}
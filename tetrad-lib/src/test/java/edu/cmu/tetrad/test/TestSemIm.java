@@ -111,6 +111,46 @@ public class TestSemIm {
         new CovarianceMatrix(dataSet);
     }
 
+    @Test
+    public void testSemSampler() {
+        RandomUtil.getInstance().setSeed(39482934L);
+        List<Node> nodes = new ArrayList<>();
+
+        for (int i = 0; i < 6; i++) {
+            nodes.add(new ContinuousVariable("X" + (i + 1)));
+        }
+
+        Graph randomGraph = new Dag(GraphUtils.randomGraph(nodes, 0, 8, 30, 15, 15, false));
+        SemPm semPm = new SemPm(randomGraph);
+        SemIm semIm = new SemIm(semPm);
+        semIm.setIntercept(semIm.getVariableNodes().get(0), 2.0);
+
+        DataSet dataSet = semIm.simulateData(100000, new RandomStream(3829L), true);
+        double[][] cov = new CovarianceMatrix(dataSet).getMatrix().toArray();
+        double[][] implCovar = semIm.getImplCovar(true).toArray();
+
+        for (int i = 0; i < nodes.size(); i++) {
+            double mean = 0.0;
+
+            for (int row = 0; row < dataSet.getNumRows(); row++) {
+                mean += dataSet.getDouble(row, i);
+            }
+
+            mean /= dataSet.getNumRows();
+            assertEquals(semIm.getMean(semIm.getVariableNodes().get(i)), mean, 0.02 * Math.sqrt(implCovar[i][i]));
+
+            for (int j = 0; j < nodes.size(); j++) {
+                double scale = Math.sqrt(implCovar[i][i] * implCovar[j][j]);
+                assertEquals(implCovar[i][j] / scale, cov[i][j] / scale, 0.02);
+            }
+        }
+
+        // The data depend only on the stream.
+        DataSet dataSet2 = semIm.simulateData(2500, new RandomStream(3829L), true);
+        DataSet dataSet3 = semIm.simulateData(2500, new RandomStream(3829L), true);
+        assertTrue(dataSet2.getDoubleData().equals(dataSet3.getDoubleData(), 0));
+    }
+
     @Test
     public void testIntercepts() {
         List<Node> nodes = new ArrayList<>();
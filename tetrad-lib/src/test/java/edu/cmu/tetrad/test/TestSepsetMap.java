@@ -0,0 +1,147 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.test;
+
+import edu.cmu.tetrad.graph.GraphNode;
+import edu.cmu.tetrad.graph.Node;
+import edu.cmu.tetrad.search.SepsetMap;
+import org.junit.Test;
+
+import java.io.*;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests SepsetMap against a map from pairs of nodes to sepsets.
+ *
+ * @author Joseph Ramsey
+ */
+public final class TestSepsetMap {
+
+    @Test
+    public void testSetAndGet() {
+        List<Node> nodes = new ArrayList<>();
+
+        for (int i = 0; i < 40; i++) {
+            nodes.add(new GraphNode("X" + (i + 1)));
+        }
+
+        SepsetMap map = new SepsetMap();
+        Map<Set<Node>, List<Node>> expected = new HashMap<>();
+        Random random = new Random(42);
+
+        for (int t = 0; t < 20000; t++) {
+            Node x = nodes.get(random.nextInt(nodes.size()));
+            Node y = nodes.get(random.nextInt(nodes.size()));
+            if (x == y) continue;
+
+            Set<Node> pair = new HashSet<>(Arrays.asList(x, y));
+
+            if (random.nextInt(4) == 0) {
+                map.set(x, y, null);
+                expected.remove(pair);
+            } else {
+                List<Node> z = new ArrayList<>();
+
+                for (int k = random.nextInt(5); k > 0; k--) {
+                    z.add(nodes.get(random.nextInt(nodes.size())));
+                }
+
+                map.set(x, y, z);
+                expected.put(pair, z);
+            }
+        }
+
+        assertEquals(expected.size(), map.size());
+
+        for (Node x : nodes) {
+            for (Node y : nodes) {
+                if (x == y) continue;
+                assertEquals(expected.get(new HashSet<>(Arrays.asList(x, y))), map.get(x, y));
+            }
+        }
+
+        assertNull(map.get(nodes.get(0), new GraphNode("Y")));
+
+        map.set(nodes.get(0), nodes.get(1), new ArrayList<Node>());
+        assertTrue(map.get(nodes.get(1), nodes.get(0)).isEmpty());
+
+        SepsetMap copy = new SepsetMap(map);
+        assertEquals(map, copy);
+
+        copy.set(nodes.get(0), nodes.get(1), null);
+        assertNull(copy.get(nodes.get(0), nodes.get(1)));
+        assertNotNull(map.get(nodes.get(0), nodes.get(1)));
+
+        SepsetMap all = new SepsetMap();
+        all.addAll(map);
+        assertEquals(map, all);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testSerialization() throws Exception {
+        List<Node> nodes = new ArrayList<>();
+
+        for (int i = 0; i < 10; i++) {
+            nodes.add(new GraphNode("X" + (i + 1)));
+        }
+
+        SepsetMap map = new SepsetMap();
+
+        for (int i = 0; i < nodes.size(); i++) {
+            for (int j = i + 1; j < nodes.size(); j++) {
+                map.set(nodes.get(i), nodes.get(j), nodes.subList(0, (i + j) % 4));
+            }
+        }
+
+        map.set(nodes.get(0), nodes.get(1), null);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(nodes);
+        out.writeObject(map);
+        out.close();
+
+        ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        List<Node> _nodes = (List<Node>) in.readObject();
+        SepsetMap _map = (SepsetMap) in.readObject();
+
+        assertEquals(map.size(), _map.size());
+
+        for (int i = 0; i < nodes.size(); i++) {
+            for (int j = 0; j < nodes.size(); j++) {
+                if (i == j) continue;
+
+                List<Node> sepset = map.get(nodes.get(i), nodes.get(j));
+                List<Node> _sepset = _map.get(_nodes.get(i), _nodes.get(j));
+
+                if (sepset == null) {
+                    assertNull(_sepset);
+                } else {
+                    assertEquals(sepset.toString(), _sepset.toString());
+                }
+            }
+        }
+    }
+}